@@ -0,0 +1,62 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.benchmark;
+
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockCommands;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * 基准测试的公共状态, 每轮测试启动 redis 服务并按 {@link #adapter} 创建对应的适配器.
+ *
+ * @author yangzexiong
+ */
+@State(Scope.Benchmark)
+public abstract class AbstractRedisBenchmark {
+
+    @Param({ "JEDIS_POOL", "LETTUCE_CLIENT", "REDIS_CONNECTION", "REDIS_TEMPLATE", "IN_MEMORY" })
+    public BenchmarkAdapter adapter;
+
+    private BenchmarkRedis redis;
+
+    private BenchmarkAdapter.Connection connection;
+
+    @Setup(Level.Trial)
+    public void startRedis() {
+        redis = BenchmarkRedis.start();
+        connection = adapter.connect(redis);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopRedis() {
+        try {
+            if (connection != null) {
+                connection.close();
+            }
+        } finally {
+            redis.stop();
+        }
+    }
+
+    protected RedisLockCommands getCommands() {
+        return connection.getCommands();
+    }
+
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.benchmark;
+
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockCommands;
+import com.github.ayoungbear.distbtsync.redis.lock.support.InMemoryRedisLockCommands;
+import com.github.ayoungbear.distbtsync.redis.lock.support.JedisPoolCommandsAdapter;
+import com.github.ayoungbear.distbtsync.redis.lock.support.LettuceClientCommandsAdapter;
+import com.github.ayoungbear.distbtsync.redis.lock.support.RedisConnectionCommandsAdapter;
+import com.github.ayoungbear.distbtsync.redis.lock.support.RedisTemplateCommandsAdapter;
+import io.lettuce.core.RedisClient;
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * 参与基准测试的 {@code redis.lock.support} 单机适配器.
+ * 集群适配器需要 redis 集群环境, 不在离线基准测试范围内;
+ * {@link #IN_MEMORY} 不经过网络, 用于衡量锁本身的开销.
+ *
+ * @author yangzexiong
+ */
+public enum BenchmarkAdapter {
+
+    JEDIS_POOL {
+        @Override
+        public Connection connect(BenchmarkRedis redis) {
+            GenericObjectPoolConfig<?> config = new GenericObjectPoolConfig<>();
+            config.setMaxTotal(MAX_CONNECTIONS);
+            config.setMaxIdle(MAX_CONNECTIONS);
+            JedisPool jedisPool = new JedisPool(config, redis.getHost(), redis.getPort());
+            return new Connection(new JedisPoolCommandsAdapter(jedisPool), jedisPool::close);
+        }
+    },
+
+    LETTUCE_CLIENT {
+        @Override
+        public Connection connect(BenchmarkRedis redis) {
+            RedisClient client = RedisClient.create(redis.getUri());
+            return new Connection(new LettuceClientCommandsAdapter(client), client::shutdown);
+        }
+    },
+
+    REDIS_CONNECTION {
+        @Override
+        public Connection connect(BenchmarkRedis redis) {
+            LettuceConnectionFactory factory = createConnectionFactory(redis);
+            return new Connection(new RedisConnectionCommandsAdapter(factory), factory::destroy);
+        }
+    },
+
+    REDIS_TEMPLATE {
+        @Override
+        public Connection connect(BenchmarkRedis redis) {
+            LettuceConnectionFactory factory = createConnectionFactory(redis);
+            StringRedisTemplate redisTemplate = new StringRedisTemplate(factory);
+            return new Connection(new RedisTemplateCommandsAdapter(redisTemplate), factory::destroy);
+        }
+    },
+
+    IN_MEMORY {
+        @Override
+        public Connection connect(BenchmarkRedis redis) {
+            return new Connection(new InMemoryRedisLockCommands(), () -> {
+            });
+        }
+    };
+
+    private static final int MAX_CONNECTIONS = 64;
+
+    /**
+     * 连接到给定的 redis 服务并创建适配器.
+     * @param redis
+     * @return
+     */
+    public abstract Connection connect(BenchmarkRedis redis);
+
+    /**
+     * 创建基于 Lettuce 的 Spring Data Redis 连接工厂.
+     * @param redis
+     * @return
+     */
+    public static LettuceConnectionFactory createConnectionFactory(BenchmarkRedis redis) {
+        LettuceConnectionFactory factory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(redis.getHost(), redis.getPort()));
+        factory.afterPropertiesSet();
+        return factory;
+    }
+
+    /**
+     * 适配器及其底层连接资源.
+     *
+     * @author yangzexiong
+     */
+    public static final class Connection {
+
+        private final RedisLockCommands commands;
+
+        private final Runnable closer;
+
+        Connection(RedisLockCommands commands, Runnable closer) {
+            this.commands = commands;
+            this.closer = closer;
+        }
+
+        public RedisLockCommands getCommands() {
+            return commands;
+        }
+
+        public void close() {
+            closer.run();
+        }
+
+    }
+
+}
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.benchmark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import redis.embedded.RedisServer;
+
+/**
+ * 基准测试使用的 redis 服务, 默认在本地启动内嵌的 redis 服务, 结果可以离线复现.
+ * 也可以通过系统属性 {@value #HOST_PROPERTY} 和 {@value #PORT_PROPERTY} 指定已有的 redis 服务.
+ *
+ * @author yangzexiong
+ */
+public final class BenchmarkRedis {
+
+    public static final String HOST_PROPERTY = "distbtsync.benchmark.redis.host";
+
+    public static final String PORT_PROPERTY = "distbtsync.benchmark.redis.port";
+
+    private static final String LOCALHOST = "127.0.0.1";
+
+    private final String host;
+
+    private final int port;
+
+    private final RedisServer server;
+
+    private BenchmarkRedis(String host, int port, RedisServer server) {
+        this.host = host;
+        this.port = port;
+        this.server = server;
+    }
+
+    /**
+     * 启动 redis 服务, 指定了外部 redis 服务时直接使用.
+     * @return
+     */
+    public static BenchmarkRedis start() {
+        String host = System.getProperty(HOST_PROPERTY);
+        if (host != null) {
+            return new BenchmarkRedis(host, Integer.getInteger(PORT_PROPERTY, 6379), null);
+        }
+        int port = findFreePort();
+        RedisServer server = RedisServer.builder().bind(LOCALHOST).port(port).setting("save \"\"")
+                .setting("appendonly no").build();
+        server.start();
+        return new BenchmarkRedis(LOCALHOST, port, server);
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getUri() {
+        return "redis://" + host + ":" + port;
+    }
+
+    private static int findFreePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            socket.setReuseAddress(true);
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new IllegalStateException("No free port for embedded redis", e);
+        }
+    }
+
+}
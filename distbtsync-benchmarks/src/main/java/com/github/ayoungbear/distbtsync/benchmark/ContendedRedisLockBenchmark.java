@@ -0,0 +1,65 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.benchmark;
+
+import com.github.ayoungbear.distbtsync.redis.lock.RedisBasedLock;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 多线程竞争同一个 key 时 {@link RedisBasedLock} 加锁/解锁的吞吐量和延迟.
+ * 线程数默认为 4, 可以通过 JMH 的 {@code -t} 参数调整.
+ *
+ * @author yangzexiong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+public class ContendedRedisLockBenchmark extends AbstractRedisBenchmark {
+
+    private RedisBasedLock lock;
+
+    @Setup(Level.Trial)
+    public void createLock() {
+        lock = RedisBasedLock.newSharedLock("distbtsync:benchmark:" + UUID.randomUUID(), getCommands());
+    }
+
+    /**
+     * 竞争同一个 key 的加锁后解锁.
+     */
+    @Benchmark
+    public void contended() {
+        lock.lock();
+        lock.unlock();
+    }
+
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.benchmark;
+
+import com.github.ayoungbear.distbtsync.redis.lock.RedisBasedLock;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * 无竞争场景下 {@link RedisBasedLock} 加锁/解锁的吞吐量和延迟.
+ * 每个线程使用独立的 key, 衡量的是单次加锁/解锁的命令往返和客户端开销.
+ *
+ * @author yangzexiong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(1)
+public class RedisLockBenchmark extends AbstractRedisBenchmark {
+
+    /**
+     * 无竞争的加锁后解锁.
+     * @param state
+     */
+    @Benchmark
+    public void uncontended(ThreadLock state) {
+        RedisBasedLock lock = state.lock;
+        lock.lock();
+        lock.unlock();
+    }
+
+    /**
+     * 持有锁时再次重入加锁, 然后依次释放.
+     * @param state
+     */
+    @Benchmark
+    public void reentrant(ThreadLock state) {
+        RedisBasedLock lock = state.lock;
+        lock.lock();
+        try {
+            lock.lock();
+            lock.unlock();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 每个线程独立的锁.
+     *
+     * @author yangzexiong
+     */
+    @State(Scope.Thread)
+    public static class ThreadLock {
+
+        RedisBasedLock lock;
+
+        @Setup(Level.Trial)
+        public void setUp(RedisLockBenchmark benchmark) {
+            lock = new RedisBasedLock("distbtsync:benchmark:" + UUID.randomUUID(), benchmark.getCommands());
+        }
+
+    }
+
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.benchmark;
+
+import com.github.ayoungbear.distbtsync.spring.redis.EnableRedisSync;
+import com.github.ayoungbear.distbtsync.spring.redis.RedisLockSynchronizerProvider;
+import com.github.ayoungbear.distbtsync.spring.redis.RedisSync;
+import com.github.ayoungbear.distbtsync.spring.redis.RedisSyncAttributes;
+import com.github.ayoungbear.distbtsync.spring.redis.RedisSynchronizer;
+import com.github.ayoungbear.distbtsync.spring.redis.RedisSynchronizerProvider;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+
+/**
+ * {@link RedisSync} 方法拦截的开销, 与直接使用同步器加锁/解锁的结果对比,
+ * 两者的差值即为表达式解析、同步器查找等拦截器自身的开销.
+ *
+ * @author yangzexiong
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(1)
+public class RedisSyncBenchmark extends AbstractRedisBenchmark {
+
+    private AnnotationConfigApplicationContext context;
+
+    private SyncService syncService;
+
+    private RedisSynchronizerProvider synchronizerProvider;
+
+    @Setup(Level.Trial)
+    public void startContext() {
+        synchronizerProvider = new RedisLockSynchronizerProvider(getCommands());
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(RedisSynchronizerProvider.class, () -> synchronizerProvider);
+        context.register(SyncConfiguration.class);
+        context.refresh();
+        syncService = context.getBean(SyncService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void closeContext() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    /**
+     * 通过 {@link RedisSync} 拦截调用同步方法.
+     * @param state
+     * @return
+     */
+    @Benchmark
+    public String redisSync(ThreadKey state) {
+        return syncService.sync(state.id);
+    }
+
+    /**
+     * 直接使用同步器加锁/解锁后调用方法.
+     * @param state
+     * @return
+     */
+    @Benchmark
+    public String manualSync(ThreadKey state) {
+        RedisSynchronizer synchronizer = synchronizerProvider.getSynchronizer(state.attributes);
+        synchronizer.acquire();
+        try {
+            return syncService.plain(state.id);
+        } finally {
+            synchronizer.release();
+        }
+    }
+
+    /**
+     * 每个线程独立的同步 key.
+     *
+     * @author yangzexiong
+     */
+    @State(Scope.Thread)
+    public static class ThreadKey {
+
+        String id;
+
+        RedisSyncAttributes attributes;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            id = UUID.randomUUID().toString();
+            attributes = RedisSyncAttributes.create().setName(SyncService.KEY_PREFIX + id);
+        }
+
+    }
+
+    @EnableRedisSync
+    static class SyncConfiguration {
+
+        @Bean
+        SyncService syncService() {
+            return new SyncService();
+        }
+
+    }
+
+    /**
+     * 被同步的服务.
+     *
+     * @author yangzexiong
+     */
+    public static class SyncService {
+
+        static final String KEY_PREFIX = "distbtsync:benchmark:sync:";
+
+        @RedisSync(KEY_PREFIX + "#{#id}")
+        public String sync(String id) {
+            return id;
+        }
+
+        public String plain(String id) {
+            return id;
+        }
+
+    }
+
+}
@@ -17,9 +17,11 @@
 package com.github.ayoungbear.distbtsync.redis.lock;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.CompletionStage;
 
 /**
  * 基于 redis 的分布式锁基础类, 定义加锁的实际操作并提供了基础功能方法,
@@ -40,7 +42,18 @@ public abstract class AbstractRedisLock implements RedisLock {
 
     private static final String CHANNEL_PREFIX = "__distbtsync_redis_lock_";
 
-    private static final String TRY_ACQUIRE_SCRIPT =
+    /**
+     * 等待标记, 加锁失败后需要等待解锁通知时写入锁对应的 hash 中, 完全解锁时只有存在等待标记才发布解锁消息
+     */
+    protected static final String WAITING_FIELD = "__distbtsync_waiting";
+
+    protected static final String NOT_WAITING = "";
+
+    private static final String PUBLISH = "publish";
+
+    private static final String SHARDED_PUBLISH = "spublish";
+
+    private static final RedisLockScript TRY_ACQUIRE_SCRIPT = RedisLockScript.of("tryAcquire",
             "if (redis.call('exists', KEYS[1]) == 0) or (redis.call('hexists', KEYS[1], ARGV[1])) == 1 then " +
                     "redis.call('hincrby', KEYS[1], ARGV[1], 1); " +
                     "if (tonumber(ARGV[2]) > 0) then " +
@@ -48,32 +61,48 @@ public abstract class AbstractRedisLock implements RedisLock {
                     "end; " +
                     "return 'OK'; " +
                     "end; " +
-                    "return tostring(redis.call('pttl', KEYS[1])); ";
+                    "if ARGV[3] ~= '' then " +
+                    "redis.call('hset', KEYS[1], ARGV[3], 1); " +
+                    "end; " +
+                    "return tostring(redis.call('pttl', KEYS[1])); ");
 
-    private static final String TRY_RELEASE_SCRIPT = "if (redis.call('hexists', KEYS[1], ARGV[1]) == 0) then " +
-            "return '-1';" +
-            "end; " +
-            "local counter = redis.call('hincrby', KEYS[1], ARGV[1], -1); " +
-            "if (counter > 0) then " +
-            "return tostring(counter); " +
-            "else " +
-            "redis.call('del', KEYS[1]); " +
-            "redis.call('publish', ARGV[2], KEYS[1]); " +
-            "return '0'; " +
-            "end; ";
+    private static final RedisLockScript TRY_RELEASE_SCRIPT = RedisLockScript.of("tryRelease",
+            "if (redis.call('hexists', KEYS[1], ARGV[1]) == 0) then " +
+                    "return '-1';" +
+                    "end; " +
+                    "local counter = redis.call('hincrby', KEYS[1], ARGV[1], -1); " +
+                    "if (counter > 0) then " +
+                    "return tostring(counter); " +
+                    "else " +
+                    "local waiting = redis.call('hexists', KEYS[1], ARGV[3]); " +
+                    "redis.call('del', KEYS[1]); " +
+                    "if (waiting == 1) then " +
+                    "redis.call(ARGV[4], ARGV[2], KEYS[1]); " +
+                    "end; " +
+                    "return '0'; " +
+                    "end; ");
 
-    private static final String DELETE_SCRIPT = "return tostring(redis.call('del', KEYS[1])); ";
+    protected static final RedisLockScript DELETE_SCRIPT = RedisLockScript.of("delete",
+            "return tostring(redis.call('del', KEYS[1])); ");
 
-    private static final String IS_ACQUIRED_SCRIPT = "return tostring(redis.call('hexists', KEYS[1], ARGV[1])); ";
+    private static final RedisLockScript IS_ACQUIRED_SCRIPT = RedisLockScript.of("isAcquired",
+            "return tostring(redis.call('hexists', KEYS[1], ARGV[1])); ");
 
-    private static final String EXISTS_SCRIPT = "return tostring(redis.call('exists', KEYS[1])); ";
+    private static final RedisLockScript EXISTS_SCRIPT = RedisLockScript.of("exists",
+            "return tostring(redis.call('exists', KEYS[1])); ");
 
-    private static final String HOLD_COUNT_SCRIPT = "return tostring(redis.call('hget', KEYS[1], ARGV[1])); ";
+    private static final RedisLockScript HOLD_COUNT_SCRIPT = RedisLockScript.of("holdCount",
+            "return tostring(redis.call('hget', KEYS[1], ARGV[1])); ");
 
-    private static final String EXPIRED_SCRIPT = "if (redis.call('hexists', KEYS[1], ARGV[1]) == 0) then " +
-            "return '0';" +
-            "end; " +
-            "return tostring(redis.call('pexpire', KEYS[1], ARGV[2])); ";
+    protected static final RedisLockScript EXPIRED_SCRIPT = RedisLockScript.of("expired",
+            "if (redis.call('hexists', KEYS[1], ARGV[1]) == 0) then " +
+                    "return '0';" +
+                    "end; " +
+                    "if (tonumber(ARGV[2]) > 0) then " +
+                    "return tostring(redis.call('pexpire', KEYS[1], ARGV[2])); " +
+                    "end; " +
+                    "redis.call('persist', KEYS[1]); " +
+                    "return '1'; ");
 
     /**
      * 锁名称
@@ -87,6 +116,10 @@ public abstract class AbstractRedisLock implements RedisLock {
      * 锁释放通知频道
      */
     protected final String channel;
+    /**
+     * 发布解锁消息的命令, 分片发布订阅时为 spublish
+     */
+    protected final String publishCommand;
     /**
      * redis 锁基础操作接口
      */
@@ -97,11 +130,17 @@ public abstract class AbstractRedisLock implements RedisLock {
      */
     private volatile long ttl = -1;
 
+    /**
+     * 锁运行情况的观察者
+     */
+    protected volatile RedisLockObserver observer = RedisLockObserver.NONE;
+
     protected AbstractRedisLock(String key, RedisLockCommands commands) {
         this.key = Objects.requireNonNull(key, "Key must not be null");
         this.commands = Objects.requireNonNull(commands, "RedisLockCommands must not be null");
         this.id = key + ":" + UUID.randomUUID().toString() + ":";
-        this.channel = CHANNEL_PREFIX + getLockName();
+        this.channel = getChannel(getLockName());
+        this.publishCommand = commands.isShardedPubSub() ? SHARDED_PUBLISH : PUBLISH;
     }
 
     @Override
@@ -119,6 +158,20 @@ public abstract class AbstractRedisLock implements RedisLock {
         return doExists();
     }
 
+    /**
+     * 设置锁运行情况的观察者.
+     * @param observer
+     * @return
+     */
+    public AbstractRedisLock setObserver(RedisLockObserver observer) {
+        this.observer = observer == null ? RedisLockObserver.NONE : observer;
+        return this;
+    }
+
+    public RedisLockObserver getObserver() {
+        return observer;
+    }
+
     /**
      * 获取锁失效时间缓存(ms), 在 尝试加锁 后才会更新远程锁的失效时间.
      *
@@ -136,7 +189,21 @@ public abstract class AbstractRedisLock implements RedisLock {
      * @return {@code true} 加锁成功
      */
     protected boolean doTryAcquire(String identifier, long leaseTimeMillis) {
-        String result = eval(TRY_ACQUIRE_SCRIPT, key, identifier, String.valueOf(leaseTimeMillis));
+        return doTryAcquire(identifier, leaseTimeMillis, false);
+    }
+
+    /**
+     * 使用给定的标识尝试加锁, 同时会缓存锁的失效时间ttl.
+     * 如果 {@code waiting} 为 {@code true}, 加锁失败时会在锁上留下等待标记, 锁完全释放时才会发布解锁消息.
+     *
+     * @param identifier 锁标识
+     * @param leaseTimeMillis 过期时间(ms)
+     * @param waiting 加锁失败后是否会等待解锁通知
+     * @return {@code true} 加锁成功
+     */
+    protected boolean doTryAcquire(String identifier, long leaseTimeMillis, boolean waiting) {
+        String result = eval(TRY_ACQUIRE_SCRIPT, key, identifier, String.valueOf(leaseTimeMillis),
+                waiting ? WAITING_FIELD : NOT_WAITING);
         if (TRY_ACQUIRE_SUCCESS.equals(result)) {
             // 加锁成功
             this.ttl = leaseTimeMillis;
@@ -147,6 +214,20 @@ public abstract class AbstractRedisLock implements RedisLock {
         }
     }
 
+    /**
+     * 使用给定的标识异步尝试加锁.
+     *
+     * @param identifier 锁标识
+     * @param leaseTimeMillis 过期时间(ms)
+     * @param waiting 加锁失败后是否会等待解锁通知
+     * @return 加锁成功时结果为 {@code null}, 否则为锁的剩余过期时间(ms)
+     */
+    protected CompletionStage<Long> doTryAcquireAsync(String identifier, long leaseTimeMillis, boolean waiting) {
+        return evalAsync(TRY_ACQUIRE_SCRIPT, key, identifier, String.valueOf(leaseTimeMillis),
+                waiting ? WAITING_FIELD : NOT_WAITING)
+                .thenApply((result) -> TRY_ACQUIRE_SUCCESS.equals(result) ? null : Long.valueOf(result));
+    }
+
     /**
      * 使用给定的标识尝试解锁, 只有锁的持有者才能解锁成功.
      *
@@ -154,10 +235,21 @@ public abstract class AbstractRedisLock implements RedisLock {
      * @return 返回剩余的加锁次数(可重入)
      */
     protected int doTryRelease(String identifier) {
-        Integer result = Integer.valueOf(eval(TRY_RELEASE_SCRIPT, key, identifier, channel));
+        Integer result = Integer.valueOf(eval(TRY_RELEASE_SCRIPT, key, identifier, channel, WAITING_FIELD, publishCommand));
         return result;
     }
 
+    /**
+     * 使用给定的标识异步尝试解锁.
+     *
+     * @param identifier 锁标识
+     * @return 返回剩余的加锁次数(可重入)
+     */
+    protected CompletionStage<Integer> doTryReleaseAsync(String identifier) {
+        return evalAsync(TRY_RELEASE_SCRIPT, key, identifier, channel, WAITING_FIELD,
+                publishCommand).thenApply(Integer::valueOf);
+    }
+
     /**
      * 删除锁对应的key.
      *
@@ -200,6 +292,7 @@ public abstract class AbstractRedisLock implements RedisLock {
 
     /**
      * 使用给定的锁标识延长锁的过期时间, 只有锁的持有者可以延长.
+     * 过期时间小于等于 0 时会移除锁的过期时间.
      *
      * @param identifier
      * @param leaseTimeMillis
@@ -222,6 +315,16 @@ public abstract class AbstractRedisLock implements RedisLock {
         return identifier;
     }
 
+    /**
+     * 获取异步加锁的标识, 异步加锁的持有者与线程无关.
+     *
+     * @param ownerId 持有者标识
+     * @return
+     */
+    protected String getAsyncIdentifier(long ownerId) {
+        return id + "async:" + ownerId;
+    }
+
     /**
      * 获取源加锁标识.
      *
@@ -265,6 +368,97 @@ public abstract class AbstractRedisLock implements RedisLock {
         return result;
     }
 
+    /**
+     * 通过脚本摘要执行加锁操作脚本命令, 脚本未缓存时由适配器回退为完整脚本执行.
+     *
+     * @param script
+     * @param key
+     * @param args
+     * @return
+     */
+    protected final String eval(RedisLockScript script, String key, String... args) {
+        RedisLockObserver observer = this.observer;
+        if (observer == RedisLockObserver.NONE) {
+            return commands.evalsha(script, key, args);
+        }
+        long start = System.nanoTime();
+        try {
+            String result = commands.evalsha(script, key, args);
+            observer.onCommand(key, script.getName(), System.nanoTime() - start, null);
+            return result;
+        } catch (RuntimeException e) {
+            observer.onCommand(key, script.getName(), System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 通过脚本摘要执行多键的加锁操作脚本命令, 所有键需要位于同一个槽位.
+     *
+     * @param script
+     * @param keys
+     * @param args
+     * @return
+     */
+    protected final String eval(RedisLockScript script, List<String> keys, List<String> args) {
+        RedisLockObserver observer = this.observer;
+        if (observer == RedisLockObserver.NONE) {
+            return commands.evalsha(script, keys, args);
+        }
+        long start = System.nanoTime();
+        try {
+            String result = commands.evalsha(script, keys, args);
+            observer.onCommand(key, script.getName(), System.nanoTime() - start, null);
+            return result;
+        } catch (RuntimeException e) {
+            observer.onCommand(key, script.getName(), System.nanoTime() - start, e);
+            throw e;
+        }
+    }
+
+    /**
+     * 异步执行加锁操作脚本命令.
+     *
+     * @param script
+     * @param key
+     * @param args
+     * @return
+     */
+    protected final CompletionStage<String> evalAsync(RedisLockScript script, String key, String... args) {
+        RedisLockObserver observer = this.observer;
+        if (observer == RedisLockObserver.NONE) {
+            return commands.evalAsync(script, key, args);
+        }
+        long start = System.nanoTime();
+        return commands.evalAsync(script, key, args).whenComplete(
+                (result, e) -> observer.onCommand(key, script.getName(), System.nanoTime() - start, e));
+    }
+
+    /**
+     * 返回给定锁名称的解锁通知频道, 分片发布订阅时频道与锁名称位于同一槽位, 才能在解锁脚本中分片发布.
+     * @param key
+     * @return
+     */
+    protected String getChannel(String key) {
+        return CHANNEL_PREFIX + (commands.isShardedPubSub() ? getHashTagged(key) : key);
+    }
+
+    /**
+     * 返回与给定键位于同一槽位的 hash tag 形式, 已经包含 hash tag 的键保持不变.
+     * @param key
+     * @return
+     */
+    protected static String getHashTagged(String key) {
+        int start = key.indexOf('{');
+        if (start >= 0) {
+            int end = key.indexOf('}', start + 1);
+            if (end > start + 1) {
+                return key;
+            }
+        }
+        return "{" + key + "}";
+    }
+
     /**
      * 校验锁过期时间是否合法.
      *
@@ -16,13 +16,25 @@
 
 package com.github.ayoungbear.distbtsync.redis.lock;
 
+import com.github.ayoungbear.distbtsync.redis.lock.sub.MessageConsumer;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisMultiplexSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisSubscription;
 import java.lang.ref.WeakReference;
+import java.util.Map;
 import java.util.Set;
+import java.util.Queue;
 import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.AbstractQueuedSynchronizer;
 import java.util.stream.Collectors;
 
@@ -30,12 +42,26 @@ import java.util.stream.Collectors;
  * 基于 redis 的可重入分布式锁.
  * 可通过 {@link #newSharedLock(String, RedisLockCommands)} 方式来获取使用
  * 共享阻塞队列的公平锁对象.
+ * 公平锁可以开启本地移交模式 {@link #setLocalHandoff(int, long, TimeUnit)}, 解锁时如果本节点有其他线程在等待,
+ * 会直接把 redis 锁移交给下一个等待线程而不在 redis 中释放.
+ * 异步加锁 {@link #lockAsync(long)} 由解锁通知驱动, 等待期间不占用线程, 持有者由 {@code ownerId} 标识,
+ * 需要使用同一个锁对象解锁. 异步加锁不参与本地移交.
+ * 可以通过 {@link #setObserver(RedisLockObserver)} 观察阻塞和异步加锁的耗时, 等待, 持有时间以及 redis 命令调用情况.
  *
  * @author yangzexiong
  * @see RedisLockCommands
  */
 public class RedisBasedLock extends AbstractRedisLock {
 
+    /**
+     * 移交时锁剩余过期时间的最小值, 小于该值则不再移交
+     */
+    private static final long HANDOFF_LEASE_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    /**
+     * 异步加锁时订阅未生效的重试间隔
+     */
+    private static final long ASYNC_SUBSCRIBE_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
     private final Sync sync;
 
     /**
@@ -50,6 +76,26 @@ public class RedisBasedLock extends AbstractRedisLock {
      */
     private AtomicInteger competitor = new AtomicInteger(0);
 
+    /**
+     * 看门狗(如果有), 未指定过期时间的加锁会使用看门狗的过期时间并在持有期间自动续期
+     */
+    private volatile RedisLockWatchdog watchdog;
+
+    /**
+     * 本地移交模式下每次从 redis 加锁使用的锁标识序号, 锁标识不再与线程绑定
+     */
+    private final AtomicLong handoffSequence = new AtomicLong(0);
+
+    /**
+     * 有观察者时记录锁在 redis 中开始持有的时间(ns), 用于统计持有时间
+     */
+    private final Map<String, Long> holdStartNanos = new ConcurrentHashMap<>(4);
+
+    /**
+     * 在 redis 中持有的锁标识及其过期时刻, 用于在本地判断是否仍持有锁, 锁是否丢失由解锁脚本的返回值确认
+     */
+    private final Map<String, LocalOwnership> ownerships = new ConcurrentHashMap<>(4);
+
     public RedisBasedLock(String key, RedisLockCommands commands) {
         this(key, commands, true);
     }
@@ -95,6 +141,14 @@ public class RedisBasedLock extends AbstractRedisLock {
         return Sync.SYNC_QUEUE_CACHE.keySet().stream().map((sync) -> sync.key).collect(Collectors.toSet());
     }
 
+    /**
+     * 获取当前正在订阅解锁消息的阻塞队列数量.
+     * @return
+     */
+    public static int getActiveSubscriptionCount() {
+        return Sync.ACTIVE_SUBSCRIPTIONS.get();
+    }
+
     @Override
     public void lock() {
         try {
@@ -166,24 +220,30 @@ public class RedisBasedLock extends AbstractRedisLock {
     public boolean renewLeaseTime(long leaseTime, TimeUnit unit) {
         validateLeaseTime(leaseTime);
         if (onceLocked()) {
-            return doExpired(getSourceIdentifier(), unit.toMillis(leaseTime));
+            String identifier = getSourceIdentifier();
+            long leaseTimeMillis = unit.toMillis(leaseTime);
+            long leaseStartNanos = System.nanoTime();
+            if (doExpired(identifier, leaseTimeMillis)) {
+                renewOwnership(identifier, leaseTimeMillis, leaseStartNanos);
+                return true;
+            }
         }
         return false;
     }
 
     @Override
     public boolean releaseLock() {
+        if (sync.isLocalHandoffEnabled() && sync.isOwnedBy(Thread.currentThread())) {
+            return releaseWithHandoff();
+        }
         if (onceLocked()) {
             String identifier = getSourceIdentifier();
             if (identifier != null) {
-                int holdCount = doTryRelease(identifier);
-                boolean releaseSuccessful = holdCount >= 0;
+                int holdCount = release(identifier);
                 if (holdCount <= 0) {
                     removeIdentifier();
-                    // 解锁时自动唤醒阻塞线程, 虽然多触发一次自旋, 但一定程度防止了死锁的发生, 并且在高并发下减少了消息通知的延迟影响
-                    sync.signal();
                 }
-                return releaseSuccessful;
+                return holdCount >= 0;
             }
         }
         return false;
@@ -193,7 +253,11 @@ public class RedisBasedLock extends AbstractRedisLock {
     public boolean isHeldLock() {
         boolean result = false;
         if (onceLocked()) {
-            result = isAcquired(getSourceIdentifier());
+            String identifier = getSourceIdentifier();
+            result = isAcquired(identifier);
+            if (!result) {
+                ownerships.remove(identifier);
+            }
         }
         if (!result) {
             removeIdentifier();
@@ -201,8 +265,46 @@ public class RedisBasedLock extends AbstractRedisLock {
         return result;
     }
 
+    @Override
+    public boolean isHeldLockLocally() {
+        boolean result = false;
+        if (sync.isLocalHandoffEnabled() && sync.isOwnedBy(Thread.currentThread())) {
+            result = isLeaseValid(sync.getOwnership());
+        } else {
+            String identifier = getSourceIdentifier();
+            if (identifier != null) {
+                LocalOwnership ownership = ownerships.get(identifier);
+                if (ownership != null) {
+                    // 根据本地记录的过期时刻判断, 锁被强制解锁的情况由解锁时的返回值确认
+                    result = isLeaseValid(ownership);
+                    if (!result) {
+                        ownerships.remove(identifier, ownership);
+                    }
+                } else {
+                    // 没有本地持有记录(由相同名称的其他锁对象加锁), 只能在 redis 中判断
+                    result = isAcquired(identifier);
+                }
+            }
+        }
+        if (!result) {
+            removeIdentifier();
+        }
+        return result;
+    }
+
+    @Override
+    public boolean forceUnlock() {
+        boolean result = super.forceUnlock();
+        ownerships.clear();
+        return result;
+    }
+
     @Override
     public int getHoldCount() {
+        if (sync.isLocalHandoffEnabled() && sync.isOwnedBy(Thread.currentThread())) {
+            // 本地移交模式下重入次数只在本地记录
+            return sync.getLocalHoldCount();
+        }
         String identifier = getSourceIdentifier();
         if (identifier != null) {
             return doGetHoldCount(identifier);
@@ -210,6 +312,77 @@ public class RedisBasedLock extends AbstractRedisLock {
         return 0;
     }
 
+    @Override
+    public CompletionStage<Void> lockAsync(long ownerId) {
+        return acquireAsync(ownerId, UNLIMIT_LEASE_TIME, false, 0L).thenApply((acquired) -> null);
+    }
+
+    @Override
+    public CompletionStage<Boolean> tryLockAsync(long waitTime, long leaseTime, TimeUnit unit, long ownerId) {
+        long leaseTimeMillis = leaseTime > 0 ? unit.toMillis(leaseTime) : UNLIMIT_LEASE_TIME;
+        if (waitTime < 0) {
+            return acquireAsync(ownerId, leaseTimeMillis, false, 0L);
+        }
+        long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        return acquireAsync(ownerId, leaseTimeMillis, true, deadline);
+    }
+
+    @Override
+    public CompletionStage<Void> unlockAsync(long ownerId) {
+        return releaseAsync(getAsyncIdentifier(ownerId)).thenApply((holdCount) -> {
+            if (holdCount < 0) {
+                throw new IllegalMonitorStateException("Not locked by owner " + ownerId);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 设置看门狗, 设置后未指定过期时间的加锁操作会使用看门狗的过期时间,
+     * 并在锁被完全释放前由看门狗在后台自动续期.
+     * @param watchdog
+     * @return
+     */
+    public RedisBasedLock setWatchdog(RedisLockWatchdog watchdog) {
+        this.watchdog = watchdog;
+        return this;
+    }
+
+    public RedisLockWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * 设置锁运行情况的观察者, 只统计阻塞和异步加锁, 非阻塞的 {@link #tryLock()} 只统计 redis 命令.
+     * @param observer
+     * @return
+     */
+    @Override
+    public RedisBasedLock setObserver(RedisLockObserver observer) {
+        super.setObserver(observer);
+        return this;
+    }
+
+    /**
+     * 开启本地移交模式, 只对公平锁有效, 并作用于使用同一阻塞队列的所有锁对象.
+     * 开启后, 锁的持有者完全解锁时如果本节点还有线程在等待该锁, 会直接把 redis 锁移交给等待线程,
+     * 不需要在 redis 中解锁再重新加锁; 重入加锁和解锁也只在本地计数.
+     * 为了避免其他节点饿死, 连续移交次数达到 {@code maxHandoffs} 或者本节点持有锁的时间达到 {@code maxHoldTime} 后,
+     * 会在 redis 中真正释放锁.
+     * 注意移交时不会访问 redis 校验锁是否仍然有效, 锁被其他节点强制解锁的情况无法感知.
+     * @param maxHandoffs 最大连续移交次数, 小于等于 0 表示关闭本地移交
+     * @param maxHoldTime 本节点连续持有锁的最长时间
+     * @param unit 时间单位
+     * @return
+     */
+    public RedisBasedLock setLocalHandoff(int maxHandoffs, long maxHoldTime, TimeUnit unit) {
+        if (maxHandoffs > 0 && !fair) {
+            throw new IllegalStateException("Local handoff is only supported by fair lock");
+        }
+        sync.setLocalHandoff(maxHandoffs, unit.toNanos(maxHoldTime));
+        return this;
+    }
+
     /**
      * 获取当前对象中自旋竞争锁的线程数.
      * @return
@@ -244,11 +417,59 @@ public class RedisBasedLock extends AbstractRedisLock {
         // 是否超时可中断模式
         boolean timeoutMode = timeoutNanos > 0;
 
+        RedisLockObserver observer = this.observer;
         // 如果已持有锁则尝试重新加锁, 可重入
         if (onceLocked() && operation.doLock(this)) {
+            if (observer != RedisLockObserver.NONE) {
+                observer.onAcquired(key, System.nanoTime() - (deadline - timeoutNanos), 1);
+            }
             return true;
         }
 
+        boolean handoff = sync.isLocalHandoffEnabled();
+        if (handoff) {
+            sync.incrementLocalWaiters();
+        }
+        try {
+            if (observer == RedisLockObserver.NONE) {
+                return doSpinLock(operation, interruptible, timeoutNanos, deadline, timeoutMode, null);
+            }
+            return observeSpinLock(observer, operation, interruptible, timeoutNanos, deadline, timeoutMode);
+        } finally {
+            if (handoff && !sync.decrementLocalWaiters()) {
+                // 没有其他本地等待线程了, 回收可能无人接手的移交
+                reclaimHandoff();
+            }
+        }
+    }
+
+    /**
+     * 有观察者时自旋争用分布式锁, 统计加锁耗时, 尝试次数和结果.
+     */
+    private final boolean observeSpinLock(RedisLockObserver observer, RedisLockOperation operation,
+            boolean interruptible, long timeoutNanos, long deadline, boolean timeoutMode)
+            throws InterruptedException {
+        final long start = deadline - timeoutNanos;
+        SpinStats stats = new SpinStats(observer);
+        observer.onWaitStart(key);
+        try {
+            boolean acquired = doSpinLock(operation, interruptible, timeoutNanos, deadline, timeoutMode, stats);
+            if (acquired) {
+                observer.onAcquired(key, System.nanoTime() - start, stats.attempts);
+            } else {
+                observer.onTimeout(key, System.nanoTime() - start, stats.attempts);
+            }
+            return acquired;
+        } catch (InterruptedException | RuntimeException | Error e) {
+            observer.onFailure(key, System.nanoTime() - start, stats.attempts, e);
+            throw e;
+        } finally {
+            observer.onWaitEnd(key);
+        }
+    }
+
+    private final boolean doSpinLock(RedisLockOperation operation, boolean interruptible, long timeoutNanos,
+            long deadline, boolean timeoutMode, SpinStats stats) throws InterruptedException {
         // 获取加锁资格, 公平模式下只有一个能获取成功并执行加锁(或者是锁持有者可重入), 非公平模式下则无需获取直接竞争锁
         boolean canSpinLock = acquire(interruptible, timeoutNanos);
         if (canSpinLock) {
@@ -256,6 +477,9 @@ public class RedisBasedLock extends AbstractRedisLock {
             competitor.incrementAndGet();
             try {
                 for (; ; ) {
+                    if (stats != null) {
+                        stats.attempts++;
+                    }
                     if (operation.doLock(this)) {
                         return true;
                     }
@@ -276,7 +500,13 @@ public class RedisBasedLock extends AbstractRedisLock {
                     // 当剩余时间过小则继续自旋不再阻塞
                     if (nanosTtl < 0 || nanosTtl > SPIN_FOR_BLOCK_TIMEOUT_THRESHOLD) {
                         if (sync.activeSubWorker(commands, channel)) {
-                            sync.await(interruptible, nanosTtl);
+                            if (stats != null) {
+                                long parkStart = System.nanoTime();
+                                sync.await(interruptible, nanosTtl);
+                                stats.observer.onParked(key, System.nanoTime() - parkStart);
+                            } else {
+                                sync.await(interruptible, nanosTtl);
+                            }
                         }
                     }
 
@@ -285,7 +515,7 @@ public class RedisBasedLock extends AbstractRedisLock {
                     }
                 }
             } finally {
-                if (competitor.decrementAndGet() == 0 && !sync.hasQueuedThreads()) {
+                if (competitor.decrementAndGet() == 0 && !sync.hasQueuedThreads() && !sync.hasAsyncAcquirers()) {
                     // 如果没有其他线程需要加锁那么停止订阅者的工作
                     sync.terminateSubWorker();
                 }
@@ -296,15 +526,279 @@ public class RedisBasedLock extends AbstractRedisLock {
     }
 
     private final boolean tryLock(long leaseTimeMillis) {
+        RedisLockWatchdog watchdog = leaseTimeMillis <= 0 ? this.watchdog : null;
+        if (watchdog != null) {
+            leaseTimeMillis = watchdog.getLeaseTimeMillis();
+        }
+        if (sync.isLocalHandoffEnabled()) {
+            return tryLockWithHandoff(leaseTimeMillis, watchdog);
+        }
         String identifier = getIdentifier();
-        boolean acquireSuccessful = doTryAcquire(identifier, leaseTimeMillis);
+        long leaseStartNanos = System.nanoTime();
+        // 有线程在自旋争用时加锁失败会等待解锁通知
+        boolean acquireSuccessful = doTryAcquire(identifier, leaseTimeMillis, competitor.get() > 0);
         if (acquireSuccessful) {
             setSourceIdentifier(identifier);
+            if (watchdog != null) {
+                watchdog.register(commands, key, identifier, leaseStartNanos);
+            }
+            markHoldStart(identifier);
+            markOwnership(identifier, leaseTimeMillis, watchdog != null, leaseStartNanos);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 本地移交模式下尝试加锁: 已持有则本地重入, 有移交给当前线程的锁则直接接手, 否则使用新的锁标识在 redis 中加锁.
+     * @param leaseTimeMillis
+     * @param watchdog
+     * @return
+     */
+    private final boolean tryLockWithHandoff(long leaseTimeMillis, RedisLockWatchdog watchdog) {
+        Thread current = Thread.currentThread();
+        if (sync.isOwnedBy(current)) {
+            sync.incrementLocalHoldCount();
+            return true;
+        }
+        LocalOwnership handoff = sync.takeHandoff(current);
+        if (handoff != null) {
+            LocalOwnership ownership = adoptHandoff(handoff, leaseTimeMillis, watchdog);
+            if (ownership != null) {
+                setSourceIdentifier(ownership.identifier);
+                sync.setOwner(current, ownership);
+                return true;
+            }
+        }
+        String identifier = id + "handoff:" + handoffSequence.incrementAndGet();
+        long leaseStartNanos = System.nanoTime();
+        if (doTryAcquire(identifier, leaseTimeMillis, competitor.get() > 0)) {
+            setSourceIdentifier(identifier);
+            if (watchdog != null) {
+                watchdog.register(commands, key, identifier, leaseStartNanos);
+            }
+            markHoldStart(identifier);
+            sync.setOwner(current,
+                    LocalOwnership.acquired(identifier, leaseTimeMillis, watchdog != null, leaseStartNanos));
             return true;
         }
         return false;
     }
 
+    /**
+     * 接手移交的锁, 如果过期时间与移交前不一致需要在 redis 中重新设置过期时间.
+     * @param handoff
+     * @param leaseTimeMillis
+     * @param watchdog
+     * @return 接手后的持有信息, 锁已丢失则返回 {@code null}
+     */
+    private final LocalOwnership adoptHandoff(LocalOwnership handoff, long leaseTimeMillis,
+            RedisLockWatchdog watchdog) {
+        String identifier = handoff.identifier;
+        LocalOwnership ownership = handoff;
+        if (handoff.leaseTimeMillis != leaseTimeMillis) {
+            long leaseStartNanos = System.nanoTime();
+            if (!doExpired(identifier, leaseTimeMillis)) {
+                // 锁已丢失
+                if (this.watchdog != null) {
+                    this.watchdog.unregister(key, identifier);
+                }
+                return null;
+            }
+            ownership = handoff.renewed(leaseTimeMillis, watchdog != null, leaseStartNanos);
+        }
+        if (watchdog != null) {
+            // 过期时间没有变化时锁的过期时刻仍以原来加锁的时刻为准
+            watchdog.register(commands, key, identifier, ownership.leaseStartNanos());
+        } else if (this.watchdog != null) {
+            this.watchdog.unregister(key, identifier);
+        }
+        return ownership;
+    }
+
+    /**
+     * 本地移交模式下解锁, 完全解锁时如果有本地等待线程并且未超出移交限制, 则把锁移交给等待线程.
+     * @return
+     */
+    private final boolean releaseWithHandoff() {
+        if (sync.decrementLocalHoldCount() > 0) {
+            return true;
+        }
+        LocalOwnership ownership = sync.clearOwner();
+        removeIdentifier();
+        if (canHandoff(ownership)) {
+            sync.offerHandoff(ownership.handedOff());
+            sync.signal();
+            if (!sync.hasLocalWaiters()) {
+                // 等待线程已经离开, 回收移交
+                reclaimHandoff();
+            }
+            return true;
+        }
+        return release(ownership.identifier) >= 0;
+    }
+
+    private final boolean canHandoff(LocalOwnership ownership) {
+        if (!sync.hasLocalWaiters() || ownership.handoffCount >= sync.maxHandoffs) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (now - ownership.acquiredNanos >= sync.maxHoldNanos) {
+            return false;
+        }
+        if (ownership.leaseBounded && ownership.leaseDeadlineNanos - now <= HANDOFF_LEASE_MARGIN_NANOS) {
+            // 锁即将过期
+            return false;
+        }
+        RedisLockWatchdog watchdog = this.watchdog;
+        if (ownership.watched && watchdog != null && !watchdog.isWatched(key, ownership.identifier)) {
+            // 看门狗续期时发现锁已丢失
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 回收无人接手的移交, 并在 redis 中释放锁.
+     */
+    private final void reclaimHandoff() {
+        LocalOwnership handoff = sync.pollHandoff();
+        if (handoff != null) {
+            release(handoff.identifier);
+        }
+    }
+
+    /**
+     * 在 redis 中解锁, 完全解锁后注销看门狗续期并唤醒等待线程.
+     * @param identifier
+     * @return 剩余的加锁次数, 小于 0 表示未持有锁
+     */
+    private final int release(String identifier) {
+        int holdCount = doTryRelease(identifier);
+        if (holdCount <= 0) {
+            afterRelease(identifier);
+        }
+        return holdCount;
+    }
+
+    /**
+     * 异步在 redis 中解锁.
+     * @param identifier
+     * @return 剩余的加锁次数, 小于 0 表示未持有锁
+     */
+    private final CompletionStage<Integer> releaseAsync(String identifier) {
+        return doTryReleaseAsync(identifier).thenApply((holdCount) -> {
+            if (holdCount <= 0) {
+                afterRelease(identifier);
+            }
+            return holdCount;
+        });
+    }
+
+    private final void afterRelease(String identifier) {
+        ownerships.remove(identifier);
+        RedisLockWatchdog watchdog = this.watchdog;
+        if (watchdog != null) {
+            watchdog.unregister(key, identifier);
+        }
+        if (!holdStartNanos.isEmpty()) {
+            Long start = holdStartNanos.remove(identifier);
+            if (start != null) {
+                observer.onReleased(key, System.nanoTime() - start);
+            }
+        }
+        // 解锁时自动唤醒阻塞线程, 虽然多触发一次自旋, 但一定程度防止了死锁的发生, 并且在高并发下减少了消息通知的延迟影响
+        sync.signal();
+    }
+
+    /**
+     * 有观察者时记录锁开始持有的时间, 重入时保留首次加锁的时间.
+     * @param identifier
+     */
+    private final void markHoldStart(String identifier) {
+        if (observer != RedisLockObserver.NONE) {
+            holdStartNanos.putIfAbsent(identifier, System.nanoTime());
+        }
+    }
+
+    /**
+     * 记录锁在 redis 中的过期时刻, 重入时没有指定过期时间不会修改锁的过期时间.
+     * @param identifier
+     * @param leaseTimeMillis
+     * @param watched
+     * @param leaseStartNanos 加锁请求发出的时刻(ns)
+     */
+    private final void markOwnership(String identifier, long leaseTimeMillis, boolean watched,
+            long leaseStartNanos) {
+        if (leaseTimeMillis > 0 || !ownerships.containsKey(identifier)) {
+            ownerships.put(identifier, LocalOwnership.acquired(identifier, leaseTimeMillis, watched, leaseStartNanos));
+        }
+    }
+
+    /**
+     * 续期成功后更新本地记录的过期时刻.
+     * @param identifier
+     * @param leaseTimeMillis
+     * @param leaseStartNanos 续期请求发出的时刻(ns)
+     */
+    private final void renewOwnership(String identifier, long leaseTimeMillis, long leaseStartNanos) {
+        if (sync.isLocalHandoffEnabled() && sync.isOwnedBy(Thread.currentThread())) {
+            LocalOwnership ownership = sync.getOwnership();
+            sync.setOwnership(ownership.renewed(leaseTimeMillis, ownership.watched, leaseStartNanos));
+            return;
+        }
+        LocalOwnership ownership = ownerships.get(identifier);
+        if (ownership != null) {
+            ownerships.replace(identifier, ownership,
+                    ownership.renewed(leaseTimeMillis, ownership.watched, leaseStartNanos));
+        }
+    }
+
+    /**
+     * 根据本地记录判断锁是否还未过期, 由看门狗续期的锁以最近一次续期的时刻为准.
+     * @param ownership
+     * @return
+     */
+    private final boolean isLeaseValid(LocalOwnership ownership) {
+        if (ownership == null) {
+            return false;
+        }
+        RedisLockWatchdog watchdog = this.watchdog;
+        if (ownership.watched && watchdog != null) {
+            return watchdog.isLeaseValid(key, ownership.identifier);
+        }
+        return ownership.leaseTimeMillis <= 0 || ownership.leaseDeadlineNanos - System.nanoTime() > 0;
+    }
+
+    /**
+     * 开始异步加锁.
+     * @param ownerId
+     * @param leaseTimeMillis
+     * @param timed
+     * @param deadline
+     * @return
+     */
+    private final CompletableFuture<Boolean> acquireAsync(long ownerId, long leaseTimeMillis, boolean timed,
+            long deadline) {
+        RedisLockWatchdog watchdog = leaseTimeMillis <= 0 ? this.watchdog : null;
+        if (watchdog != null) {
+            leaseTimeMillis = watchdog.getLeaseTimeMillis();
+        }
+        AsyncAcquisition acquisition = new AsyncAcquisition(getAsyncIdentifier(ownerId), leaseTimeMillis, watchdog,
+                timed, deadline);
+        acquisition.attempt();
+        return acquisition.future;
+    }
+
+    /**
+     * 如果没有任何线程或者异步请求在等待锁则停止订阅.
+     */
+    private final void terminateSubWorkerIfIdle() {
+        if (competitor.get() == 0 && !sync.hasQueuedThreads() && !sync.hasAsyncAcquirers()) {
+            sync.terminateSubWorker();
+        }
+    }
+
     /**
      * 请求争用锁的互斥资源, 公平模式下只有一个线程能争用分布式锁,
      * 获取到后才开始自旋争用分布式锁.
@@ -363,6 +857,10 @@ public class RedisBasedLock extends AbstractRedisLock {
          * 可通过 {@link #newShared(String)} 来获取共享阻塞队列.
          */
         private static final WeakHashMap<Sync, WeakReference<Sync>> SYNC_QUEUE_CACHE = new WeakHashMap<>(256);
+        /**
+         * 正在订阅解锁消息的阻塞队列数量
+         */
+        private static final AtomicInteger ACTIVE_SUBSCRIPTIONS = new AtomicInteger(0);
         private final String key;
         /**
          * 是否共享用队列
@@ -373,6 +871,58 @@ public class RedisBasedLock extends AbstractRedisLock {
          * 解锁信息订阅工作线程
          */
         private volatile SubWorker subWorker;
+        /**
+         * 解锁信息的共享复用订阅者(如果有), 使用后不再需要单独的订阅工作线程
+         */
+        private volatile RedisMultiplexSubscription multiplexSubscription;
+        /**
+         * 复用订阅的频道
+         */
+        private volatile String subscribedChannel;
+        /**
+         * 注册到复用订阅者上的解锁消息消费者
+         */
+        private final transient MessageConsumer<String> releaseMessageConsumer = this::onReleaseMessage;
+        /**
+         * 等待解锁通知的异步加锁请求
+         */
+        private final transient Queue<AsyncWaiter> asyncWaiters = new ConcurrentLinkedQueue<>();
+        /**
+         * 正在等待中的异步加锁请求数
+         */
+        private final AtomicInteger asyncAcquirers = new AtomicInteger(0);
+        /**
+         * 唤醒次数, 异步加锁用于判断加锁期间是否错过了解锁通知
+         */
+        private final AtomicLong signalCount = new AtomicLong(0);
+        /**
+         * 本地移交的最大连续次数, 小于等于 0 表示未开启本地移交
+         */
+        private volatile int maxHandoffs = 0;
+        /**
+         * 本节点连续持有锁的最长时间(ns)
+         */
+        private volatile long maxHoldNanos = 0;
+        /**
+         * 本地移交模式下正在等待加锁的线程数
+         */
+        private final AtomicInteger localWaiters = new AtomicInteger(0);
+        /**
+         * 等待接手的移交
+         */
+        private final transient AtomicReference<LocalOwnership> pendingHandoff = new AtomicReference<>();
+        /**
+         * 本地移交模式下锁的持有线程
+         */
+        private transient volatile Thread owner;
+        /**
+         * 持有信息, 只由持有线程读写
+         */
+        private transient LocalOwnership ownership;
+        /**
+         * 本地重入次数, 只由持有线程读写
+         */
+        private transient int localHoldCount;
 
         private Sync(String key, boolean shared) {
             this.key = key;
@@ -414,6 +964,7 @@ public class RedisBasedLock extends AbstractRedisLock {
             int c = getState();
             if (c == 0) {
                 if (!hasQueuedPredecessors() && compareAndSetState(0, acquires)) {
+                    setExclusiveOwnerThread(Thread.currentThread());
                     return true;
                 }
             }
@@ -422,6 +973,7 @@ public class RedisBasedLock extends AbstractRedisLock {
 
         @Override
         protected final boolean tryRelease(int releases) {
+            setExclusiveOwnerThread(null);
             setState(0);
             return true;
         }
@@ -503,17 +1055,55 @@ public class RedisBasedLock extends AbstractRedisLock {
          * 如果有等待线程则唤醒线程争用锁.
          */
         public void signalIfNecessary() {
-            if (hasWaiterForRelease()) {
+            if (hasWaiterForRelease() || !asyncWaiters.isEmpty()) {
                 signal();
             }
         }
 
         /**
-         * 唤醒 {@code num} 个等待线程争用锁.
+         * 唤醒 {@code num} 个等待线程以及 {@code num} 个异步加锁请求争用锁.
          * @param num
          */
         public void signal(int num) {
+            signalCount.incrementAndGet();
             semaphore.release(num);
+            for (int woken = 0; woken < num; ) {
+                AsyncWaiter waiter = asyncWaiters.poll();
+                if (waiter == null) {
+                    break;
+                }
+                if (waiter.wakeup()) {
+                    woken++;
+                }
+            }
+        }
+
+        public long getSignalCount() {
+            return signalCount.get();
+        }
+
+        /**
+         * 注册等待解锁通知的异步加锁请求.
+         * @param waiter
+         */
+        public void addAsyncWaiter(AsyncWaiter waiter) {
+            asyncWaiters.offer(waiter);
+        }
+
+        public void removeAsyncWaiter(AsyncWaiter waiter) {
+            asyncWaiters.remove(waiter);
+        }
+
+        public void incrementAsyncAcquirers() {
+            asyncAcquirers.incrementAndGet();
+        }
+
+        public void decrementAsyncAcquirers() {
+            asyncAcquirers.decrementAndGet();
+        }
+
+        public boolean hasAsyncAcquirers() {
+            return asyncAcquirers.get() > 0;
         }
 
         /**
@@ -524,6 +1114,102 @@ public class RedisBasedLock extends AbstractRedisLock {
             return semaphore.hasQueuedThreads();
         }
 
+        /**
+         * 设置本地移交的限制.
+         * @param maxHandoffs
+         * @param maxHoldNanos
+         */
+        public void setLocalHandoff(int maxHandoffs, long maxHoldNanos) {
+            this.maxHoldNanos = maxHoldNanos;
+            this.maxHandoffs = maxHandoffs;
+        }
+
+        public boolean isLocalHandoffEnabled() {
+            return maxHandoffs > 0;
+        }
+
+        public void incrementLocalWaiters() {
+            localWaiters.incrementAndGet();
+        }
+
+        /**
+         * 减少本地等待线程数.
+         * @return 是否还有其他本地等待线程
+         */
+        public boolean decrementLocalWaiters() {
+            return localWaiters.decrementAndGet() > 0;
+        }
+
+        public boolean hasLocalWaiters() {
+            return localWaiters.get() > 0;
+        }
+
+        public boolean isOwnedBy(Thread thread) {
+            return owner == thread;
+        }
+
+        public void setOwner(Thread thread, LocalOwnership ownership) {
+            this.ownership = ownership;
+            this.localHoldCount = 1;
+            this.owner = thread;
+        }
+
+        public LocalOwnership getOwnership() {
+            return ownership;
+        }
+
+        public void setOwnership(LocalOwnership ownership) {
+            this.ownership = ownership;
+        }
+
+        public LocalOwnership clearOwner() {
+            LocalOwnership ownership = this.ownership;
+            this.ownership = null;
+            this.localHoldCount = 0;
+            this.owner = null;
+            return ownership;
+        }
+
+        public int getLocalHoldCount() {
+            return localHoldCount;
+        }
+
+        public void incrementLocalHoldCount() {
+            localHoldCount++;
+        }
+
+        public int decrementLocalHoldCount() {
+            return --localHoldCount;
+        }
+
+        /**
+         * 发起移交, 等待有加锁资格的线程接手.
+         * @param handoff
+         */
+        public void offerHandoff(LocalOwnership handoff) {
+            pendingHandoff.set(handoff);
+        }
+
+        /**
+         * 接手移交, 只有持有加锁资格的线程才能接手, 保持公平.
+         * @param thread
+         * @return 没有可接手的移交则返回 {@code null}
+         */
+        public LocalOwnership takeHandoff(Thread thread) {
+            if (pendingHandoff.get() != null && getExclusiveOwnerThread() == thread) {
+                return pendingHandoff.getAndSet(null);
+            }
+            return null;
+        }
+
+        /**
+         * 取出等待中的移交(如果有).
+         * @return
+         */
+        public LocalOwnership pollHandoff() {
+            return pendingHandoff.get() == null ? null : pendingHandoff.getAndSet(null);
+        }
+
         @Override
         public int hashCode() {
             return key.hashCode();
@@ -550,16 +1236,41 @@ public class RedisBasedLock extends AbstractRedisLock {
 
         /**
          * 启动订阅者, 监听解锁信息.
+         * 如果 {@link RedisLockCommands} 提供了共享的复用订阅者则注册到该订阅者上,
+         * 否则启动单独的订阅工作线程.
          * @param commands
          * @param channel
          * @return 订阅者是否已正常开始订阅
          */
         public boolean activeSubWorker(RedisLockCommands commands, String channel) {
+            RedisMultiplexSubscription multiplexSubscription = this.multiplexSubscription;
+            if (multiplexSubscription == null) {
+                multiplexSubscription = commands.getMultiplexSubscription();
+                if (multiplexSubscription != null) {
+                    synchronized (this) {
+                        if (this.multiplexSubscription == null) {
+                            this.subscribedChannel = channel;
+                            this.multiplexSubscription = multiplexSubscription;
+                            ACTIVE_SUBSCRIPTIONS.incrementAndGet();
+                        }
+                        multiplexSubscription = this.multiplexSubscription;
+                        channel = this.subscribedChannel;
+                    }
+                }
+            } else {
+                channel = this.subscribedChannel;
+            }
+            if (multiplexSubscription != null) {
+                // 订阅未生效时重复调用会尝试重新订阅
+                return multiplexSubscription.isSubscribed(channel)
+                        || multiplexSubscription.subscribe(channel, releaseMessageConsumer);
+            }
             if (!isSubWorkerAlive()) {
                 synchronized (this) {
                     if (!isSubWorkerAlive()) {
                         RedisSubscription subscription = commands.getSubscription(channel, this::onReleaseMessage);
-                        this.subWorker = SubWorker.create(subscription).setCloseCallback(this::signalIfNecessary)
+                        ACTIVE_SUBSCRIPTIONS.incrementAndGet();
+                        this.subWorker = SubWorker.create(subscription).setCloseCallback(this::onSubWorkerClosed)
                                 .subscribe();
                     }
                 }
@@ -571,6 +1282,16 @@ public class RedisBasedLock extends AbstractRedisLock {
          * 终止订阅工作.
          */
         public void terminateSubWorker() {
+            if (multiplexSubscription != null) {
+                synchronized (this) {
+                    if (multiplexSubscription != null) {
+                        multiplexSubscription.unsubscribe(subscribedChannel, releaseMessageConsumer);
+                        this.multiplexSubscription = null;
+                        this.subscribedChannel = null;
+                        ACTIVE_SUBSCRIPTIONS.decrementAndGet();
+                    }
+                }
+            }
             if (subWorker != null) {
                 synchronized (this) {
                     if (subWorker != null) {
@@ -581,6 +1302,14 @@ public class RedisBasedLock extends AbstractRedisLock {
             }
         }
 
+        /**
+         * 订阅工作线程结束后唤醒等待线程, 避免等待线程错过通知.
+         */
+        private void onSubWorkerClosed() {
+            ACTIVE_SUBSCRIPTIONS.decrementAndGet();
+            signalIfNecessary();
+        }
+
         /**
          * 收到解锁消息后唤醒等待线程竞争锁.
          * @param message
@@ -595,6 +1324,261 @@ public class RedisBasedLock extends AbstractRedisLock {
 
     }
 
+    /**
+     * 异步加锁请求, 加锁失败后注册到 {@link Sync} 上等待解锁通知或者锁过期后重新尝试, 等待期间不占用线程.
+     * 异步加锁不经过公平模式的阻塞队列, 与阻塞加锁的线程直接竞争.
+     *
+     * @author yangzexiong
+     */
+    private final class AsyncAcquisition {
+
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+        private final String identifier;
+        private final long leaseTimeMillis;
+        private final RedisLockWatchdog watchdog;
+        private final boolean timed;
+        private final long deadline;
+        private final RedisLockObserver observer = RedisBasedLock.this.observer;
+        private final long startNanos = observer != RedisLockObserver.NONE ? System.nanoTime() : 0L;
+        /**
+         * 在 redis 中尝试加锁的次数
+         */
+        private volatile int attempts = 0;
+        /**
+         * 是否已计入 {@link Sync} 的异步等待数
+         */
+        private volatile boolean waiting = false;
+
+        private AsyncAcquisition(String identifier, long leaseTimeMillis, RedisLockWatchdog watchdog, boolean timed,
+                long deadline) {
+            this.identifier = identifier;
+            this.leaseTimeMillis = leaseTimeMillis;
+            this.watchdog = watchdog;
+            this.timed = timed;
+            this.deadline = deadline;
+        }
+
+        private void attempt() {
+            if (future.isDone()) {
+                // 已被调用方取消
+                complete(null, null);
+                return;
+            }
+            long signals = sync.getSignalCount();
+            attempts++;
+            boolean waiting = !timed || deadline - System.nanoTime() > 0L;
+            doTryAcquireAsync(identifier, leaseTimeMillis, waiting).whenComplete((ttl, e) -> {
+                if (e != null) {
+                    complete(null, e);
+                } else if (ttl == null) {
+                    if (watchdog != null) {
+                        watchdog.register(commands, key, identifier);
+                    }
+                    markHoldStart(identifier);
+                    complete(Boolean.TRUE, null);
+                } else {
+                    await(ttl, signals);
+                }
+            });
+        }
+
+        private void await(long ttl, long signals) {
+            // 锁的剩余过期时间, ttl 小于0表示锁没有设置过期时间
+            long nanosTtl = TimeUnit.MILLISECONDS.toNanos(ttl);
+            if (timed) {
+                long nanosTimed = deadline - System.nanoTime();
+                if (nanosTimed <= 0L) {
+                    complete(Boolean.FALSE, null);
+                    return;
+                }
+                if (nanosTtl < 0 || nanosTimed < nanosTtl) {
+                    nanosTtl = nanosTimed;
+                }
+            }
+            if (!waiting) {
+                waiting = true;
+                sync.incrementAsyncAcquirers();
+                observer.onWaitStart(key);
+            }
+            if (!sync.activeSubWorker(commands, channel)
+                    && (nanosTtl < 0 || nanosTtl > ASYNC_SUBSCRIBE_RETRY_NANOS)) {
+                // 订阅未生效时无法保证收到解锁通知
+                nanosTtl = ASYNC_SUBSCRIBE_RETRY_NANOS;
+            }
+            AsyncWaiter waiter = new AsyncWaiter(sync, this::attempt);
+            sync.addAsyncWaiter(waiter);
+            if (sync.getSignalCount() != signals || (nanosTtl >= 0 && nanosTtl <= SPIN_FOR_BLOCK_TIMEOUT_THRESHOLD)) {
+                // 加锁期间锁已被释放(可能错过了通知)或者即将过期, 交给调度线程立即重试, 避免在当前调用栈中递归
+                waiter.schedule(0L);
+            } else if (nanosTtl > 0) {
+                waiter.schedule(nanosTtl);
+            }
+        }
+
+        private void complete(Boolean acquired, Throwable e) {
+            if (waiting) {
+                waiting = false;
+                sync.decrementAsyncAcquirers();
+                observer.onWaitEnd(key);
+                terminateSubWorkerIfIdle();
+            }
+            if (observer != RedisLockObserver.NONE) {
+                long latencyNanos = System.nanoTime() - startNanos;
+                if (e != null) {
+                    observer.onFailure(key, latencyNanos, attempts, e);
+                } else if (Boolean.TRUE.equals(acquired)) {
+                    observer.onAcquired(key, latencyNanos, attempts);
+                } else if (Boolean.FALSE.equals(acquired)) {
+                    observer.onTimeout(key, latencyNanos, attempts);
+                }
+            }
+            if (e != null) {
+                future.completeExceptionally(e);
+            } else if (acquired != null && !future.complete(acquired) && acquired) {
+                // 加锁成功前调用方已取消, 释放这次加锁
+                releaseAsync(identifier);
+            }
+        }
+
+    }
+
+    /**
+     * 等待解锁通知或者超时的异步加锁请求, 只会被唤醒一次.
+     *
+     * @author yangzexiong
+     */
+    static final class AsyncWaiter implements Runnable {
+
+        private final Sync sync;
+        private final Runnable task;
+        private final AtomicBoolean fired = new AtomicBoolean(false);
+        private volatile ScheduledFuture<?> timer;
+
+        AsyncWaiter(Sync sync, Runnable task) {
+            this.sync = sync;
+            this.task = task;
+        }
+
+        /**
+         * 超时后唤醒.
+         * @param delayNanos
+         */
+        void schedule(long delayNanos) {
+            this.timer = RedisLockScheduler.schedule(this, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        /**
+         * 唤醒并执行任务.
+         * @return 是否是本次唤醒成功
+         */
+        boolean wakeup() {
+            if (fired.compareAndSet(false, true)) {
+                ScheduledFuture<?> timer = this.timer;
+                if (timer != null) {
+                    timer.cancel(false);
+                }
+                task.run();
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            sync.removeAsyncWaiter(this);
+            wakeup();
+        }
+
+    }
+
+    /**
+     * 有观察者时一次自旋加锁的统计信息.
+     *
+     * @author yangzexiong
+     */
+    private static final class SpinStats {
+
+        private final RedisLockObserver observer;
+        private int attempts = 0;
+
+        private SpinStats(RedisLockObserver observer) {
+            this.observer = observer;
+        }
+
+    }
+
+    /**
+     * 锁在本节点的持有信息, 用于在本地判断是否仍持有锁, 本地移交模式下移交时原样传递给接手的线程.
+     *
+     * @author yangzexiong
+     */
+    static final class LocalOwnership {
+
+        /**
+         * redis 中的锁标识
+         */
+        private final String identifier;
+        /**
+         * 已连续移交的次数
+         */
+        private final int handoffCount;
+        /**
+         * 本节点在 redis 中加锁的时间(ns), 按发出请求的时刻计算
+         */
+        private final long acquiredNanos;
+        /**
+         * 锁的过期时间(ms)
+         */
+        private final long leaseTimeMillis;
+        /**
+         * 是否由看门狗续期
+         */
+        private final boolean watched;
+        /**
+         * 过期时间是否有限(有过期时间并且不由看门狗续期)
+         */
+        private final boolean leaseBounded;
+        /**
+         * 锁的过期时刻(ns)
+         */
+        private final long leaseDeadlineNanos;
+
+        private LocalOwnership(String identifier, int handoffCount, long acquiredNanos, long leaseTimeMillis,
+                boolean watched, long leaseStartNanos) {
+            this.identifier = identifier;
+            this.handoffCount = handoffCount;
+            this.acquiredNanos = acquiredNanos;
+            this.leaseTimeMillis = leaseTimeMillis;
+            this.watched = watched;
+            this.leaseBounded = leaseTimeMillis > 0 && !watched;
+            this.leaseDeadlineNanos = leaseStartNanos + TimeUnit.MILLISECONDS.toNanos(Math.max(leaseTimeMillis, 0));
+        }
+
+        static LocalOwnership acquired(String identifier, long leaseTimeMillis, boolean watched,
+                long leaseStartNanos) {
+            return new LocalOwnership(identifier, 0, leaseStartNanos, leaseTimeMillis, watched, leaseStartNanos);
+        }
+
+        LocalOwnership handedOff() {
+            return new LocalOwnership(identifier, handoffCount + 1, acquiredNanos, leaseTimeMillis, watched,
+                    leaseStartNanos());
+        }
+
+        LocalOwnership renewed(long leaseTimeMillis, boolean watched, long leaseStartNanos) {
+            return new LocalOwnership(identifier, handoffCount, acquiredNanos, leaseTimeMillis, watched,
+                    leaseStartNanos);
+        }
+
+        /**
+         * 最近一次在 redis 中设置过期时间的时刻(ns).
+         * @return
+         */
+        long leaseStartNanos() {
+            return leaseDeadlineNanos - TimeUnit.MILLISECONDS.toNanos(Math.max(leaseTimeMillis, 0));
+        }
+
+    }
+
     /**
      * 订阅解锁信息工作线程.
      *
@@ -0,0 +1,600 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import com.github.ayoungbear.distbtsync.redis.lock.RedisBasedLock.SubWorker;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.MessageConsumer;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisMultiplexSubscription;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 基于 redis 等待队列的全局公平可重入分布式锁.
+ * 加锁失败的线程按先后顺序进入 redis 中的等待队列(所有服务节点共享), 解锁时由解锁脚本直接把锁授予队首的等待者,
+ * 并且只通知该等待者, 其他节点收到消息后不会再访问 redis 争用锁, 避免了热点锁每次解锁都被所有节点争抢的问题.
+ * <p>
+ * 等待队列使用列表保存等待者的顺序, 使用有序集合保存等待者的存活期限, 等待者在等待期间会定期刷新存活期限,
+ * 超过期限的等待者(比如节点已经宕机)会被移出队列; 被授予锁的等待者需要在存活期限内接手, 否则锁自动失效.
+ * 存活期限使用客户端时间计算, 各节点的时钟偏差需要远小于 {@link #setWaiterTimeout(long, TimeUnit)}.
+ * <p>
+ * 队列相关的键通过 hash tag 与锁名称位于同一槽位, 同一个锁名称不能同时使用 {@link RedisBasedLock} 加锁.
+ * 暂不支持异步加锁和本地移交.
+ *
+ * @author yangzexiong
+ * @see RedisBasedLock
+ */
+public class RedisFairLock extends AbstractRedisLock {
+
+    /**
+     * 默认的等待者存活期限(ms)
+     */
+    public static final long DEFAULT_WAITER_TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+    private static final String QUEUE_PREFIX = "__distbtsync_redis_lock_queue:";
+
+    private static final String TIMEOUT_PREFIX = "__distbtsync_redis_lock_timeout:";
+
+    private static final String ENQUEUE = "1";
+
+    private static final String NOT_ENQUEUE = "0";
+
+    /**
+     * 订阅未生效时的重试间隔
+     */
+    private static final long SUBSCRIBE_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * 移出已过期的队首等待者, KEYS[2] 为等待队列, KEYS[3] 为存活期限, ARGV[3] 为当前时间(ms)
+     */
+    private static final String REMOVE_EXPIRED_WAITERS =
+            "while true do " +
+                    "local first = redis.call('lindex', KEYS[2], 0); " +
+                    "if first == false then break; end; " +
+                    "local timeout = redis.call('zscore', KEYS[3], first); " +
+                    "if timeout ~= false and tonumber(timeout) > tonumber(ARGV[3]) then break; end; " +
+                    "redis.call('lpop', KEYS[2]); " +
+                    "redis.call('zrem', KEYS[3], first); " +
+                    "end; ";
+
+    /**
+     * 把锁授予下一个存活的等待者并只通知该等待者, 授予的锁以 0 次加锁记录, 需要在 ARGV[4] 时间内接手,
+     * ARGV[2] 为通知频道, ARGV[3] 为当前时间(ms), ARGV[5] 为发布命令
+     */
+    private static final String GRANT_NEXT_WAITER =
+            "while true do " +
+                    "local next = redis.call('lpop', KEYS[2]); " +
+                    "if next == false then break; end; " +
+                    "local timeout = redis.call('zscore', KEYS[3], next); " +
+                    "redis.call('zrem', KEYS[3], next); " +
+                    "if timeout ~= false and tonumber(timeout) > tonumber(ARGV[3]) then " +
+                    "redis.call('hset', KEYS[1], next, 0); " +
+                    "redis.call('pexpire', KEYS[1], ARGV[4]); " +
+                    "redis.call(ARGV[5], ARGV[2], next); " +
+                    "break; " +
+                    "end; " +
+                    "end; ";
+
+    /**
+     * 公平加锁, 被授予锁或者已持有锁(可重入)时加锁成功, 锁空闲时只有队首等待者(或者队列为空时)才能加锁;
+     * 否则 ARGV[5] 为 1 时进入等待队列并刷新存活期限, 返回锁的剩余过期时间.
+     * ARGV[1] 锁标识, ARGV[2] 过期时间, ARGV[3] 当前时间, ARGV[4] 等待者存活期限, ARGV[5] 是否进入等待队列
+     */
+    private static final RedisLockScript FAIR_ACQUIRE_SCRIPT = RedisLockScript.of("fairTryAcquire",
+            REMOVE_EXPIRED_WAITERS +
+                    "local count = redis.call('hget', KEYS[1], ARGV[1]); " +
+                    "if count ~= false then " +
+                    "redis.call('hincrby', KEYS[1], ARGV[1], 1); " +
+                    "if (tonumber(ARGV[2]) > 0) then " +
+                    "redis.call('pexpire', KEYS[1], ARGV[2]); " +
+                    "elseif count == '0' then " +
+                    "redis.call('persist', KEYS[1]); " +
+                    "end; " +
+                    "return 'OK'; " +
+                    "end; " +
+                    "if (redis.call('exists', KEYS[1]) == 0) then " +
+                    "local first = redis.call('lindex', KEYS[2], 0); " +
+                    "if first == false or first == ARGV[1] then " +
+                    "if first ~= false then " +
+                    "redis.call('lpop', KEYS[2]); " +
+                    "redis.call('zrem', KEYS[3], ARGV[1]); " +
+                    "end; " +
+                    "redis.call('hset', KEYS[1], ARGV[1], 1); " +
+                    "if (tonumber(ARGV[2]) > 0) then " +
+                    "redis.call('pexpire', KEYS[1], ARGV[2]); " +
+                    "end; " +
+                    "return 'OK'; " +
+                    "end; " +
+                    "end; " +
+                    "if ARGV[5] == '1' then " +
+                    "if redis.call('zscore', KEYS[3], ARGV[1]) == false then " +
+                    "redis.call('rpush', KEYS[2], ARGV[1]); " +
+                    "end; " +
+                    "redis.call('zadd', KEYS[3], tonumber(ARGV[3]) + tonumber(ARGV[4]), ARGV[1]); " +
+                    "end; " +
+                    "return tostring(redis.call('pttl', KEYS[1])); ");
+
+    /**
+     * 公平解锁, 完全解锁后把锁授予下一个等待者.
+     * ARGV[1] 锁标识, ARGV[2] 通知频道, ARGV[3] 当前时间, ARGV[4] 等待者存活期限, ARGV[5] 发布命令
+     */
+    private static final RedisLockScript FAIR_RELEASE_SCRIPT = RedisLockScript.of("fairRelease",
+            "if (redis.call('hexists', KEYS[1], ARGV[1]) == 0) then " +
+                    "return '-1'; " +
+                    "end; " +
+                    "local counter = redis.call('hincrby', KEYS[1], ARGV[1], -1); " +
+                    "if (counter > 0) then " +
+                    "return tostring(counter); " +
+                    "end; " +
+                    "redis.call('del', KEYS[1]); " +
+                    GRANT_NEXT_WAITER +
+                    "return '0'; ");
+
+    /**
+     * 放弃等待, 移出等待队列, 如果期间已被授予锁则转授给下一个等待者, 参数同 {@link #FAIR_RELEASE_SCRIPT}
+     */
+    private static final RedisLockScript FAIR_CANCEL_SCRIPT = RedisLockScript.of("fairCancel",
+            "redis.call('lrem', KEYS[2], 0, ARGV[1]); " +
+                    "redis.call('zrem', KEYS[3], ARGV[1]); " +
+                    "if redis.call('hget', KEYS[1], ARGV[1]) == '0' then " +
+                    "redis.call('del', KEYS[1]); " +
+                    GRANT_NEXT_WAITER +
+                    "return '1'; " +
+                    "end; " +
+                    "return '0'; ");
+
+    /**
+     * 强制解锁并把锁授予下一个等待者, 参数同 {@link #FAIR_RELEASE_SCRIPT}
+     */
+    private static final RedisLockScript FAIR_FORCE_UNLOCK_SCRIPT = RedisLockScript.of("fairForceUnlock",
+            "local deleted = redis.call('del', KEYS[1]); " +
+                    GRANT_NEXT_WAITER +
+                    "return tostring(deleted); ");
+
+    /**
+     * 锁名称, 等待队列, 等待者存活期限对应的键
+     */
+    private final List<String> keys;
+
+    /**
+     * 正在等待的线程, 以锁标识区分
+     */
+    private final Map<String, Waiter> waiters = new ConcurrentHashMap<>(8);
+
+    /**
+     * 授予锁的消息消费者
+     */
+    private final MessageConsumer<String> grantMessageConsumer = this::onGrantMessage;
+
+    /**
+     * 等待者存活期限(ms)
+     */
+    private volatile long waiterTimeoutMillis = DEFAULT_WAITER_TIMEOUT;
+
+    /**
+     * 看门狗(如果有), 未指定过期时间的加锁会使用看门狗的过期时间并在持有期间自动续期
+     */
+    private volatile RedisLockWatchdog watchdog;
+
+    private volatile RedisMultiplexSubscription multiplexSubscription;
+
+    private volatile SubWorker subWorker;
+
+    public RedisFairLock(String key, RedisLockCommands commands) {
+        super(key, commands);
+        String taggedKey = getHashTagged(key);
+        this.keys = Arrays.asList(key, QUEUE_PREFIX + taggedKey, TIMEOUT_PREFIX + taggedKey);
+        if (commands.keySlot(key) != commands.keySlot(keys.get(1))) {
+            throw new IllegalArgumentException("Lock key '" + key + "' has an unsupported hash tag");
+        }
+    }
+
+    @Override
+    public void lock() {
+        try {
+            acquire(UNLIMIT_LEASE_TIME, false, -1);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        acquire(UNLIMIT_LEASE_TIME, true, -1);
+    }
+
+    @Override
+    public boolean tryLock() {
+        return tryAcquireOnce(UNLIMIT_LEASE_TIME);
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (time <= 0L) {
+            return tryLock();
+        }
+        return acquire(UNLIMIT_LEASE_TIME, true, unit.toNanos(time));
+    }
+
+    @Override
+    public void unlock() throws IllegalMonitorStateException {
+        if (!releaseLock()) {
+            throw new IllegalMonitorStateException("Not locked by current thread");
+        }
+    }
+
+    @Override
+    public void lockTimed(long leaseTime, TimeUnit unit) {
+        validateLeaseTime(leaseTime);
+        try {
+            acquire(unit.toMillis(leaseTime), false, -1);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean tryLockTimed(long leaseTime, TimeUnit unit) {
+        validateLeaseTime(leaseTime);
+        return tryAcquireOnce(unit.toMillis(leaseTime));
+    }
+
+    @Override
+    public boolean tryLockTimed(long time, long leaseTime, TimeUnit unit) throws InterruptedException {
+        validateLeaseTime(leaseTime);
+        if (time <= 0L) {
+            return tryAcquireOnce(unit.toMillis(leaseTime));
+        }
+        return acquire(unit.toMillis(leaseTime), true, unit.toNanos(time));
+    }
+
+    @Override
+    public boolean renewLeaseTime(long leaseTime, TimeUnit unit) {
+        validateLeaseTime(leaseTime);
+        if (onceLocked()) {
+            return doExpired(getSourceIdentifier(), unit.toMillis(leaseTime));
+        }
+        return false;
+    }
+
+    @Override
+    public boolean releaseLock() {
+        String identifier = getSourceIdentifier();
+        if (identifier == null) {
+            return false;
+        }
+        int holdCount = Integer.parseInt(eval(FAIR_RELEASE_SCRIPT, keys, grantArgs(identifier)));
+        if (holdCount <= 0) {
+            removeIdentifier();
+            RedisLockWatchdog watchdog = this.watchdog;
+            if (watchdog != null) {
+                watchdog.unregister(key, identifier);
+            }
+        }
+        return holdCount >= 0;
+    }
+
+    /**
+     * 强制解锁, 并把锁授予下一个等待者.
+     */
+    @Override
+    public boolean forceUnlock() {
+        return SUCCESS.equals(eval(FAIR_FORCE_UNLOCK_SCRIPT, keys, grantArgs("")));
+    }
+
+    @Override
+    public boolean isHeldLock() {
+        boolean result = false;
+        if (onceLocked()) {
+            result = isAcquired(getSourceIdentifier());
+        }
+        if (!result) {
+            removeIdentifier();
+        }
+        return result;
+    }
+
+    @Override
+    public int getHoldCount() {
+        String identifier = getSourceIdentifier();
+        if (identifier != null) {
+            return doGetHoldCount(identifier);
+        }
+        return 0;
+    }
+
+    /**
+     * 设置看门狗, 设置后未指定过期时间的加锁操作会使用看门狗的过期时间,
+     * 并在锁被完全释放前由看门狗在后台自动续期.
+     * @param watchdog
+     * @return
+     */
+    public RedisFairLock setWatchdog(RedisLockWatchdog watchdog) {
+        this.watchdog = watchdog;
+        return this;
+    }
+
+    public RedisLockWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * 设置等待者的存活期限, 等待者每隔三分之一的期限刷新一次, 超过期限未刷新的等待者会被移出队列,
+     * 被授予锁的等待者也需要在该期限内接手.
+     * @param waiterTimeout
+     * @param unit
+     * @return
+     */
+    public RedisFairLock setWaiterTimeout(long waiterTimeout, TimeUnit unit) {
+        if (waiterTimeout <= 0) {
+            throw new IllegalArgumentException("Invalid waiter timeout '" + waiterTimeout + "'");
+        }
+        this.waiterTimeoutMillis = unit.toMillis(waiterTimeout);
+        return this;
+    }
+
+    public long getWaiterTimeoutMillis() {
+        return waiterTimeoutMillis;
+    }
+
+    @Override
+    public RedisFairLock setObserver(RedisLockObserver observer) {
+        super.setObserver(observer);
+        return this;
+    }
+
+    /**
+     * 获取本地正在等待的线程数.
+     * @return
+     */
+    public int getWaiterCount() {
+        return waiters.size();
+    }
+
+    @Override
+    public String toString() {
+        return this.key + "@" + this.commands.getClass().getSimpleName() + "@" + super.toString();
+    }
+
+    private boolean tryAcquireOnce(long leaseTimeMillis) {
+        RedisLockWatchdog watchdog = leaseTimeMillis <= 0 ? this.watchdog : null;
+        if (watchdog != null) {
+            leaseTimeMillis = watchdog.getLeaseTimeMillis();
+        }
+        String identifier = getIdentifier();
+        if (TRY_ACQUIRE_SUCCESS.equals(tryAcquire(identifier, leaseTimeMillis, NOT_ENQUEUE))) {
+            onAcquired(identifier, watchdog);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 阻塞加锁, 加锁失败后进入等待队列, 直到被授予锁, 或者超时/被中断.
+     * @param leaseTimeMillis 过期时间(ms)
+     * @param interruptible 是否可中断
+     * @param timeoutNanos 超时时间, 小于 0 表示不超时
+     * @return
+     * @throws InterruptedException
+     */
+    private boolean acquire(long leaseTimeMillis, boolean interruptible, long timeoutNanos)
+            throws InterruptedException {
+        RedisLockWatchdog watchdog = leaseTimeMillis <= 0 ? this.watchdog : null;
+        if (watchdog != null) {
+            leaseTimeMillis = watchdog.getLeaseTimeMillis();
+        }
+        RedisLockObserver observer = this.observer;
+        long start = System.nanoTime();
+        int attempts = 1;
+        String identifier = getIdentifier();
+        String result = tryAcquire(identifier, leaseTimeMillis, ENQUEUE);
+        if (TRY_ACQUIRE_SUCCESS.equals(result)) {
+            onAcquired(identifier, watchdog);
+            observer.onAcquired(key, System.nanoTime() - start, attempts);
+            return true;
+        }
+
+        boolean acquired = false;
+        boolean interrupted = false;
+        Waiter waiter = new Waiter(Thread.currentThread());
+        waiters.put(identifier, waiter);
+        observer.onWaitStart(key);
+        try {
+            long refreshNanos = TimeUnit.MILLISECONDS.toNanos(waiterTimeoutMillis) / 3;
+            boolean subscribed = false;
+            for (; ; ) {
+                long ttl = Long.parseLong(result);
+                long parkNanos = ttl > 0 ? Math.min(TimeUnit.MILLISECONDS.toNanos(ttl), refreshNanos) : refreshNanos;
+                if (timeoutNanos >= 0) {
+                    long remaining = start + timeoutNanos - System.nanoTime();
+                    if (remaining <= 0L) {
+                        break;
+                    }
+                    parkNanos = Math.min(parkNanos, remaining);
+                }
+                boolean park = true;
+                if (!subscribed) {
+                    subscribed = subscribe();
+                    if (subscribed) {
+                        // 订阅生效前的授予消息可能已经错过, 立即重试
+                        park = false;
+                    } else {
+                        parkNanos = Math.min(parkNanos, SUBSCRIBE_RETRY_NANOS);
+                    }
+                }
+                if (park && !waiter.granted) {
+                    long parkStart = System.nanoTime();
+                    LockSupport.parkNanos(this, parkNanos);
+                    observer.onParked(key, System.nanoTime() - parkStart);
+                }
+                waiter.granted = false;
+                if (Thread.interrupted()) {
+                    if (interruptible) {
+                        throw new InterruptedException();
+                    }
+                    interrupted = true;
+                }
+                attempts++;
+                result = tryAcquire(identifier, leaseTimeMillis, ENQUEUE);
+                if (TRY_ACQUIRE_SUCCESS.equals(result)) {
+                    onAcquired(identifier, watchdog);
+                    acquired = true;
+                    observer.onAcquired(key, System.nanoTime() - start, attempts);
+                    return true;
+                }
+            }
+            observer.onTimeout(key, System.nanoTime() - start, attempts);
+            return false;
+        } catch (InterruptedException | RuntimeException | Error e) {
+            observer.onFailure(key, System.nanoTime() - start, attempts, e);
+            throw e;
+        } finally {
+            waiters.remove(identifier);
+            if (!acquired) {
+                cancelQuietly(identifier);
+            }
+            observer.onWaitEnd(key);
+            unsubscribeIfIdle();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private String tryAcquire(String identifier, long leaseTimeMillis, String enqueue) {
+        return eval(FAIR_ACQUIRE_SCRIPT, keys, Arrays.asList(identifier, String.valueOf(leaseTimeMillis),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(waiterTimeoutMillis), enqueue));
+    }
+
+    private void onAcquired(String identifier, RedisLockWatchdog watchdog) {
+        setSourceIdentifier(identifier);
+        if (watchdog != null) {
+            watchdog.register(commands, key, identifier);
+        }
+    }
+
+    /**
+     * 放弃等待, 避免等待队列中的无效等待者阻塞其他等待者.
+     * @param identifier
+     */
+    private void cancelQuietly(String identifier) {
+        try {
+            eval(FAIR_CANCEL_SCRIPT, keys, grantArgs(identifier));
+        } catch (RuntimeException e) {
+            // 超过存活期限后会被移出队列, 授予的锁也会失效
+        }
+    }
+
+    private List<String> grantArgs(String identifier) {
+        return Arrays.asList(identifier, channel, String.valueOf(System.currentTimeMillis()),
+                String.valueOf(waiterTimeoutMillis), publishCommand);
+    }
+
+    /**
+     * 收到授予锁的消息后只唤醒对应的等待线程, 订阅中断时唤醒所有等待线程.
+     * @param message
+     */
+    private void onGrantMessage(String message) {
+        if (message == null) {
+            waiters.values().forEach(Waiter::wakeup);
+            return;
+        }
+        Waiter waiter = waiters.get(message);
+        if (waiter != null) {
+            waiter.wakeup();
+        }
+    }
+
+    /**
+     * 订阅授予锁的消息, 优先使用共享的复用订阅者.
+     * @return 订阅是否已生效
+     */
+    private boolean subscribe() {
+        RedisMultiplexSubscription multiplexSubscription = this.multiplexSubscription;
+        if (multiplexSubscription == null && subWorker == null) {
+            synchronized (this) {
+                if (this.multiplexSubscription == null && this.subWorker == null) {
+                    multiplexSubscription = commands.getMultiplexSubscription();
+                    if (multiplexSubscription != null) {
+                        this.multiplexSubscription = multiplexSubscription;
+                    } else {
+                        this.subWorker = SubWorker.create(commands.getSubscription(channel, grantMessageConsumer))
+                                .subscribe();
+                    }
+                }
+                multiplexSubscription = this.multiplexSubscription;
+            }
+        }
+        if (multiplexSubscription != null) {
+            return multiplexSubscription.isSubscribed(channel)
+                    || multiplexSubscription.subscribe(channel, grantMessageConsumer);
+        }
+        SubWorker subWorker = this.subWorker;
+        return subWorker != null && subWorker.isSubscribed();
+    }
+
+    /**
+     * 没有等待线程时取消订阅.
+     */
+    private void unsubscribeIfIdle() {
+        if (!waiters.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            if (!waiters.isEmpty()) {
+                return;
+            }
+            if (multiplexSubscription != null) {
+                multiplexSubscription.unsubscribe(channel, grantMessageConsumer);
+                multiplexSubscription = null;
+            }
+            if (subWorker != null) {
+                subWorker.unsubscribe();
+                subWorker = null;
+            }
+        }
+    }
+
+    /**
+     * 等待被授予锁的线程.
+     *
+     * @author yangzexiong
+     */
+    private static final class Waiter {
+
+        private final Thread thread;
+
+        private volatile boolean granted = false;
+
+        private Waiter(Thread thread) {
+            this.thread = thread;
+        }
+
+        private void wakeup() {
+            granted = true;
+            LockSupport.unpark(thread);
+        }
+
+    }
+
+}
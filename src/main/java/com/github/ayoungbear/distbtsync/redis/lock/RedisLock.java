@@ -16,6 +16,7 @@
 
 package com.github.ayoungbear.distbtsync.redis.lock;
 
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -148,12 +149,23 @@ public interface RedisLock extends Lock {
     boolean isLocked();
 
     /**
-     * 当前线程是否持有锁.
+     * 当前线程是否持有锁, 以 redis 中的状态为准.
      *
      * @return
      */
     boolean isHeldLock();
 
+    /**
+     * 当前线程是否持有锁, 实现类可以只根据本地记录的持有状态和过期时间判断而不访问 redis,
+     * 因此无法感知其他节点的强制解锁, 只适用于随后会由解锁结果确认的场景.
+     * 默认同 {@link #isHeldLock()}.
+     *
+     * @return
+     */
+    default boolean isHeldLockLocally() {
+        return isHeldLock();
+    }
+
     /**
      * 当前线程持有该锁加锁的次数(用于可重入锁下获取加锁次数).
      *
@@ -163,4 +175,41 @@ public interface RedisLock extends Lock {
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * 异步加锁, 等待锁释放期间不占用线程.
+     * 异步加锁的持有者由 {@code ownerId} 标识而不是线程, 可以在任意线程中使用相同的 {@code ownerId} 解锁,
+     * 相同的 {@code ownerId} 可重入.
+     *
+     * @param ownerId 持有者标识
+     * @return 加锁成功后完成
+     */
+    default CompletionStage<Void> lockAsync(long ownerId) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 异步限时加锁, 等待锁释放期间不占用线程.
+     *
+     * @param waitTime 超时时间, 等于 0 时只尝试加锁一次, 小于 0 时持续等待直到加锁成功
+     * @param leaseTime 过期时间, 小于等于 0 时不设置过期时间
+     * @param unit 时间单位
+     * @param ownerId 持有者标识
+     * @return 是否加锁成功
+     * @see #lockAsync(long)
+     */
+    default CompletionStage<Boolean> tryLockAsync(long waitTime, long leaseTime, TimeUnit unit, long ownerId) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 异步解锁, 如果 {@code ownerId} 没有持有锁则以 {@link IllegalMonitorStateException} 异常完成.
+     *
+     * @param ownerId 持有者标识
+     * @return 解锁后完成
+     * @see #lockAsync(long)
+     */
+    default CompletionStage<Void> unlockAsync(long ownerId) {
+        throw new UnsupportedOperationException();
+    }
+
 }
@@ -17,7 +17,12 @@
 package com.github.ayoungbear.distbtsync.redis.lock;
 
 import com.github.ayoungbear.distbtsync.redis.lock.sub.MessageConsumer;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisMultiplexSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisSubscription;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * 定义 Redis 分布式锁实现所需的基础操作接口.
@@ -35,6 +40,81 @@ public interface RedisLockCommands {
      */
     String eval(String script, String key, String... args);
 
+    /**
+     * 使用脚本的 SHA1 摘要执行给定的脚本并将结果作为字符串返回,
+     * 若 redis 服务器上不存在对应的脚本缓存(NOSCRIPT), 实现类应回退使用完整的脚本内容执行.
+     * 默认直接使用脚本内容执行.
+     * @param script 脚本定义
+     * @param key 键值
+     * @param args 参数
+     * @return
+     */
+    default String evalsha(RedisLockScript script, String key, String... args) {
+        return eval(script.getScript(), key, args);
+    }
+
+    /**
+     * 异步执行给定的脚本, 语义与 {@link #evalsha(RedisLockScript, String, String...)} 相同.
+     * 调用方可能是订阅线程或者定时调度线程, 不能在调用线程中阻塞执行.
+     * 默认交给 {@link RedisLockScheduler#getBlockingExecutor()} 执行, 执行器拒绝时不会阻塞或在调用线程中执行,
+     * 而是返回以 {@link RejectedExecutionException} 异常完成的结果, 异步加锁随之失败, 调用方可以据此快速失败或稍后重试.
+     * 可以通过 {@link RedisLockScheduler#setBlockingExecutor(java.util.concurrent.Executor)} 调整线程数和饱和时的处理策略,
+     * 锁续期使用单独的执行器, 不受饱和影响. 支持异步命令的客户端应覆盖该方法, 使等待 redis 响应时不占用任何线程.
+     * @param script 脚本定义
+     * @param key 键值
+     * @param args 参数
+     * @return
+     */
+    default CompletionStage<String> evalAsync(RedisLockScript script, String key, String... args) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        try {
+            RedisLockScheduler.getBlockingExecutor().execute(() -> {
+                try {
+                    result.complete(evalsha(script, key, args));
+                } catch (Throwable e) {
+                    result.completeExceptionally(e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    /**
+     * 使用脚本的 SHA1 摘要执行给定的多键脚本并将结果作为字符串返回,
+     * 集群模式下调用方需保证所有键位于同一个槽位(参考 {@link #keySlot(String)}).
+     * 默认不支持, 调用方应回退为逐个键执行.
+     * @param script 脚本定义
+     * @param keys 键值
+     * @param args 参数
+     * @return
+     * @throws UnsupportedOperationException 如果不支持多键脚本
+     */
+    default String evalsha(RedisLockScript script, List<String> keys, List<String> args) {
+        throw new UnsupportedOperationException("Multi-key script is not supported");
+    }
+
+    /**
+     * 返回给定键所在的槽位, 只有槽位相同的键才能在同一个多键脚本中执行.
+     * 非集群模式下所有键都位于同一槽位, 默认返回 0.
+     * @param key
+     * @return
+     */
+    default int keySlot(String key) {
+        return 0;
+    }
+
+    /**
+     * 是否使用分片发布订阅(SPUBLISH/SSUBSCRIBE), 需要 redis 7.0 以上.
+     * 使用时解锁通知频道与锁名称位于同一槽位, 集群模式下消息只会发送到该槽位所在的分片.
+     * 默认返回 {@code false}, 使用普通的发布订阅.
+     * @return
+     */
+    default boolean isShardedPubSub() {
+        return false;
+    }
+
     /**
      * 根据给定的频道和消息消费操作, 返回相应 redis 订阅者的实现类.
      * @param channel
@@ -43,4 +123,14 @@ public interface RedisLockCommands {
      */
     RedisSubscription getSubscription(String channel, MessageConsumer<String> messageConsumer);
 
+    /**
+     * 返回共享的多频道复用订阅者, 同一个实例的所有锁都通过它订阅解锁消息,
+     * 线程数和连接数不会随着争用的锁数量增长.
+     * 默认返回 {@code null}, 表示每个锁使用 {@link #getSubscription(String, MessageConsumer)} 单独订阅.
+     * @return
+     */
+    default RedisMultiplexSubscription getMultiplexSubscription() {
+        return null;
+    }
+
 }
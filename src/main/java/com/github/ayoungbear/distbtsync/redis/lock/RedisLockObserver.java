@@ -0,0 +1,103 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+/**
+ * 分布式锁运行情况的观察者, 用于收集加锁耗时, 等待, 持有时间以及 redis 命令调用等指标.
+ * 回调在加锁和解锁的线程中同步执行, 实现需要足够轻量并且不能抛出异常.
+ * 时间单位均为纳秒.
+ *
+ * @author yangzexiong
+ * @see RedisBasedLock#setObserver(RedisLockObserver)
+ */
+public interface RedisLockObserver {
+
+    /**
+     * 不做任何处理的观察者
+     */
+    RedisLockObserver NONE = new RedisLockObserver() {
+    };
+
+    /**
+     * 开始阻塞等待加锁.
+     * @param key 锁名称
+     */
+    default void onWaitStart(String key) {
+    }
+
+    /**
+     * 结束阻塞等待加锁.
+     * @param key 锁名称
+     */
+    default void onWaitEnd(String key) {
+    }
+
+    /**
+     * 加锁成功.
+     * @param key 锁名称
+     * @param latencyNanos 加锁耗时
+     * @param attempts 在 redis 中尝试加锁的次数
+     */
+    default void onAcquired(String key, long latencyNanos, int attempts) {
+    }
+
+    /**
+     * 加锁超时.
+     * @param key 锁名称
+     * @param latencyNanos 加锁耗时
+     * @param attempts 在 redis 中尝试加锁的次数
+     */
+    default void onTimeout(String key, long latencyNanos, int attempts) {
+    }
+
+    /**
+     * 加锁异常(包括被中断).
+     * @param key 锁名称
+     * @param latencyNanos 加锁耗时
+     * @param attempts 在 redis 中尝试加锁的次数
+     * @param error 异常
+     */
+    default void onFailure(String key, long latencyNanos, int attempts, Throwable error) {
+    }
+
+    /**
+     * 加锁失败后阻塞等待解锁通知.
+     * @param key 锁名称
+     * @param parkedNanos 阻塞时间
+     */
+    default void onParked(String key, long parkedNanos) {
+    }
+
+    /**
+     * 在 redis 中完全释放锁.
+     * @param key 锁名称
+     * @param holdNanos 持有时间
+     */
+    default void onReleased(String key, long holdNanos) {
+    }
+
+    /**
+     * 执行 redis 命令(一次网络往返).
+     * @param key 锁名称
+     * @param command 命令名称
+     * @param latencyNanos 耗时
+     * @param error 异常, 成功时为 {@code null}
+     */
+    default void onCommand(String key, String command, long latencyNanos, Throwable error) {
+    }
+
+}
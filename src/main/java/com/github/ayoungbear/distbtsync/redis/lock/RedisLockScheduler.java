@@ -0,0 +1,162 @@
+/**
+ * Copyright 2021 yangzexiong.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * redis 锁共用的定时调度器, 所有后台定时任务(比如锁续期)都在同一个守护线程上执行,
+ * 线程数不会随着锁的数量增长, 因此提交的任务必须是非阻塞的短任务.
+ * 需要执行同步 redis 命令等可能阻塞的操作时, 应交给 {@link #getBlockingExecutor()} 执行,
+ * 锁续期则使用单独的 {@link #getRenewExecutor()}, 不会被业务的异步命令占满.
+ *
+ * @author yangzexiong
+ */
+public final class RedisLockScheduler {
+
+    /**
+     * 自定义的阻塞任务执行器
+     */
+    private static volatile Executor blockingExecutor;
+
+    private RedisLockScheduler() {
+    }
+
+    /**
+     * 延迟执行任务.
+     * @param task
+     * @param delay
+     * @param unit
+     * @return
+     */
+    public static ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+        return SchedulerHolder.SCHEDULER.schedule(task, delay, unit);
+    }
+
+    /**
+     * 以固定的频率周期执行任务.
+     * @param task
+     * @param initialDelay
+     * @param period
+     * @param unit
+     * @return
+     */
+    public static ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelay, long period,
+            TimeUnit unit) {
+        return SchedulerHolder.SCHEDULER.scheduleAtFixedRate(task, initialDelay, period, unit);
+    }
+
+    /**
+     * 返回执行阻塞任务(比如同步的 redis 命令)共用的执行器, 默认是线程数和队列长度都有上限的线程池,
+     * 队列已满时拒绝执行并抛出 {@link java.util.concurrent.RejectedExecutionException}.
+     * @return
+     * @see #setBlockingExecutor(Executor)
+     */
+    public static Executor getBlockingExecutor() {
+        Executor executor = blockingExecutor;
+        return executor != null ? executor : ExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * 替换执行阻塞任务共用的执行器, 用于调整线程数或者饱和时的处理策略.
+     * 执行器会在订阅线程和定时调度线程上提交任务, 饱和时不能在提交线程中直接执行任务.
+     * @param executor 为 {@code null} 时恢复使用默认的有界线程池
+     */
+    public static void setBlockingExecutor(Executor executor) {
+        blockingExecutor = executor;
+    }
+
+    /**
+     * 返回锁续期专用的线程池, 与 {@link #getBlockingExecutor()} 相互独立, 业务命令饱和时不影响续期.
+     * 同一个看门狗同时只有一轮续期在执行, 提交的任务数不超过续期分组数, 因此队列不设上限, 不会拒绝执行.
+     * @return
+     */
+    public static Executor getRenewExecutor() {
+        return RenewExecutorHolder.EXECUTOR;
+    }
+
+    /**
+     * 延迟加载的调度器.
+     *
+     * @author yangzexiong
+     */
+    private static class SchedulerHolder {
+
+        private static final ScheduledThreadPoolExecutor SCHEDULER = newScheduler();
+
+        private static ScheduledThreadPoolExecutor newScheduler() {
+            ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, (runnable) -> {
+                Thread thread = new Thread(runnable, "RedisLockScheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.setRemoveOnCancelPolicy(true);
+            return scheduler;
+        }
+
+    }
+
+    /**
+     * 延迟加载的阻塞任务线程池.
+     *
+     * @author yangzexiong
+     */
+    private static class ExecutorHolder {
+
+        private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+        private static final int QUEUE_CAPACITY = 1024;
+
+        private static final ThreadPoolExecutor EXECUTOR = newExecutor("RedisLockExecutor-", POOL_SIZE,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY));
+
+    }
+
+    /**
+     * 延迟加载的续期线程池.
+     *
+     * @author yangzexiong
+     */
+    private static class RenewExecutorHolder {
+
+        private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+        private static final ThreadPoolExecutor EXECUTOR = newExecutor("RedisLockRenewal-", POOL_SIZE,
+                new LinkedBlockingQueue<>());
+
+    }
+
+    private static ThreadPoolExecutor newExecutor(String threadNamePrefix, int poolSize,
+            BlockingQueue<Runnable> queue) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS, queue,
+                (runnable) -> {
+                    Thread thread = new Thread(runnable, threadNamePrefix + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+}
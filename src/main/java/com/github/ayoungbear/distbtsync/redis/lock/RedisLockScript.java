@@ -0,0 +1,149 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+/**
+ * redis 锁使用的 LUA 脚本定义, 包含脚本内容及其 SHA1 摘要,
+ * 适配器可以据此使用 EVALSHA 执行脚本, 避免每次都传输完整的脚本内容.
+ *
+ * @author yangzexiong
+ * @see RedisLockCommands#evalsha(RedisLockScript, String, String...)
+ */
+public final class RedisLockScript {
+
+    private static final char[] HEX_CHARS = "0123456789abcdef".toCharArray();
+
+    /**
+     * 脚本名称
+     */
+    private final String name;
+    /**
+     * 脚本内容
+     */
+    private final String script;
+    /**
+     * 脚本内容的 SHA1 摘要
+     */
+    private final String sha1;
+
+    private RedisLockScript(String name, String script) {
+        this.name = Objects.requireNonNull(name, "Name must not be null");
+        this.script = Objects.requireNonNull(script, "Script must not be null");
+        this.sha1 = sha1DigestAsHex(script);
+    }
+
+    /**
+     * 根据脚本名称和内容创建脚本定义.
+     *
+     * @param name 脚本名称
+     * @param script LUA脚本内容
+     * @return
+     */
+    public static RedisLockScript of(String name, String script) {
+        return new RedisLockScript(name, script);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getScript() {
+        return script;
+    }
+
+    public String getSha1() {
+        return sha1;
+    }
+
+    /**
+     * 判断异常是否由于 redis 服务器缓存中不存在对应脚本导致(NOSCRIPT),
+     * 比如主从切换或执行了 SCRIPT FLUSH 后.
+     *
+     * @param e
+     * @return
+     */
+    public static boolean isNoScriptError(Throwable e) {
+        Throwable current = e;
+        while (current != null) {
+            String message = current.getMessage();
+            if (message != null && message.contains("NOSCRIPT")) {
+                return true;
+            }
+            current = current.getCause() == current ? null : current.getCause();
+        }
+        return false;
+    }
+
+    /**
+     * 异步执行脚本时的 NOSCRIPT 回退处理, 通过摘要执行失败并且是由于脚本未缓存导致时,
+     * 使用完整脚本重新执行.
+     *
+     * @param evalsha 通过摘要执行的结果
+     * @param eval 使用完整脚本执行的操作
+     * @return
+     */
+    public static <T> CompletionStage<T> fallbackOnNoScript(CompletionStage<T> evalsha,
+            Supplier<? extends CompletionStage<T>> eval) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        evalsha.whenComplete((value, e) -> {
+            if (e == null) {
+                result.complete(value);
+            } else if (isNoScriptError(e)) {
+                eval.get().whenComplete((v, ex) -> {
+                    if (ex == null) {
+                        result.complete(v);
+                    } else {
+                        result.completeExceptionally(ex);
+                    }
+                });
+            } else {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + sha1 + ")";
+    }
+
+    private static String sha1DigestAsHex(String script) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Could not find MessageDigest with algorithm SHA-1", e);
+        }
+        byte[] bytes = digest.digest(script.getBytes(StandardCharsets.UTF_8));
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_CHARS[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX_CHARS[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import com.github.ayoungbear.distbtsync.redis.lock.RedisBasedLock.SubWorker;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.MessageConsumer;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisMultiplexSubscription;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于解锁通知的等待器, 尝试失败后订阅给定的频道, 收到任意一个频道的消息或者超过剩余过期时间后重新尝试.
+ * 本节点的所有等待线程共享订阅, 没有等待线程时取消订阅.
+ *
+ * @author yangzexiong
+ * @see RedisMultiLock
+ */
+final class RedisLockWaiter {
+
+    /**
+     * 订阅未生效时的重试间隔
+     */
+    private static final long SUBSCRIBE_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final String name;
+
+    private final RedisLockCommands commands;
+
+    private final List<String> channels;
+
+    /**
+     * 唤醒次数, 用于判断等待前是否错过了通知
+     */
+    private final AtomicLong signals = new AtomicLong(0);
+
+    /**
+     * 等待通知的线程数
+     */
+    private final AtomicInteger waiters = new AtomicInteger(0);
+
+    private final Object monitor = new Object();
+
+    private final MessageConsumer<String> messageConsumer = this::onMessage;
+
+    private final Map<String, SubWorker> subWorkers = new ConcurrentHashMap<>(4);
+
+    private volatile RedisMultiplexSubscription multiplexSubscription;
+
+    RedisLockWaiter(String name, RedisLockCommands commands, Collection<String> channels) {
+        this.name = Objects.requireNonNull(name, "Name must not be null");
+        this.commands = Objects.requireNonNull(commands, "RedisLockCommands must not be null");
+        this.channels = new ArrayList<>(channels);
+    }
+
+    /**
+     * 尝试获取, 失败后等待通知或者剩余过期时间后重试, 直到成功, 或者超时/被中断.
+     * @param attempt 尝试获取的操作
+     * @param observer 观察者
+     * @param interruptible 是否可中断
+     * @param timeoutNanos 超时时间, 等于 0 时只尝试一次, 小于 0 表示不超时
+     * @return
+     * @throws InterruptedException
+     */
+    boolean acquire(Attempt attempt, RedisLockObserver observer, boolean interruptible, long timeoutNanos)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        boolean waiting = timeoutNanos != 0;
+        long signals = this.signals.get();
+        Long ttl = attempt.tryAcquire(waiting);
+        if (ttl == null) {
+            observer.onAcquired(name, System.nanoTime() - start, 1);
+            return true;
+        }
+        if (!waiting) {
+            return false;
+        }
+
+        int attempts = 1;
+        boolean interrupted = false;
+        boolean subscribed = false;
+        waiters.incrementAndGet();
+        observer.onWaitStart(name);
+        try {
+            for (; ; ) {
+                // ttl 小于 0 表示没有设置过期时间, 只能等待通知
+                long parkNanos = ttl >= 0 ? TimeUnit.MILLISECONDS.toNanos(ttl) : -1;
+                if (timeoutNanos > 0) {
+                    long remaining = start + timeoutNanos - System.nanoTime();
+                    if (remaining <= 0L) {
+                        observer.onTimeout(name, System.nanoTime() - start, attempts);
+                        return false;
+                    }
+                    parkNanos = parkNanos < 0 ? remaining : Math.min(parkNanos, remaining);
+                }
+                boolean wasSubscribed = subscribed;
+                subscribed = subscribe();
+                if (!subscribed) {
+                    // 订阅未生效时无法保证收到通知
+                    parkNanos = parkNanos < 0 ? SUBSCRIBE_RETRY_NANOS : Math.min(parkNanos, SUBSCRIBE_RETRY_NANOS);
+                } else if (!wasSubscribed) {
+                    // 订阅生效前发布的通知会丢失, 生效后先重试一次再等待
+                    parkNanos = 0;
+                }
+                if (parkNanos != 0) {
+                    long parkStart = System.nanoTime();
+                    try {
+                        await(signals, parkNanos);
+                    } catch (InterruptedException e) {
+                        if (interruptible) {
+                            throw e;
+                        }
+                        interrupted = true;
+                    }
+                    observer.onParked(name, System.nanoTime() - parkStart);
+                }
+                attempts++;
+                signals = this.signals.get();
+                ttl = attempt.tryAcquire(true);
+                if (ttl == null) {
+                    observer.onAcquired(name, System.nanoTime() - start, attempts);
+                    return true;
+                }
+            }
+        } catch (InterruptedException | RuntimeException | Error e) {
+            observer.onFailure(name, System.nanoTime() - start, attempts, e);
+            throw e;
+        } finally {
+            observer.onWaitEnd(name);
+            if (waiters.decrementAndGet() == 0) {
+                unsubscribeIfIdle();
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 获取本地正在等待的线程数.
+     * @return
+     */
+    int getWaiterCount() {
+        return waiters.get();
+    }
+
+    /**
+     * 等待通知, 如果尝试期间已经收到过通知则直接返回.
+     * @param signals 尝试前的唤醒次数
+     * @param timeoutNanos 小于 0 表示一直等待
+     * @throws InterruptedException
+     */
+    private void await(long signals, long timeoutNanos) throws InterruptedException {
+        synchronized (monitor) {
+            if (signals != this.signals.get()) {
+                return;
+            }
+            if (timeoutNanos < 0) {
+                monitor.wait();
+            } else {
+                TimeUnit.NANOSECONDS.timedWait(monitor, timeoutNanos);
+            }
+        }
+    }
+
+    /**
+     * 收到任意一个频道的消息后唤醒所有等待线程, 订阅中断时也会唤醒.
+     * @param message
+     */
+    private void onMessage(String message) {
+        signals.incrementAndGet();
+        synchronized (monitor) {
+            monitor.notifyAll();
+        }
+    }
+
+    /**
+     * 订阅所有频道, 优先使用共享的复用订阅者.
+     * @return 所有频道的订阅是否都已生效
+     */
+    private boolean subscribe() {
+        RedisMultiplexSubscription multiplexSubscription = this.multiplexSubscription;
+        if (multiplexSubscription == null && subWorkers.isEmpty()) {
+            synchronized (this) {
+                if (this.multiplexSubscription == null && subWorkers.isEmpty()) {
+                    this.multiplexSubscription = commands.getMultiplexSubscription();
+                }
+                multiplexSubscription = this.multiplexSubscription;
+            }
+        }
+        boolean subscribed = true;
+        for (String channel : channels) {
+            if (multiplexSubscription != null) {
+                // 频道可能已被其他锁订阅, 仍需注册自己的消费者, 重复注册不会产生影响
+                subscribed &= multiplexSubscription.subscribe(channel, messageConsumer);
+            } else {
+                subscribed &= getSubWorker(channel).isSubscribed();
+            }
+        }
+        return subscribed;
+    }
+
+    /**
+     * 获取频道的订阅工作线程, 没有或者已经结束时重新创建.
+     * @param channel
+     * @return
+     */
+    private SubWorker getSubWorker(String channel) {
+        SubWorker subWorker = subWorkers.get(channel);
+        if (subWorker == null || !subWorker.isAlive() || subWorker.isTerminated()) {
+            synchronized (this) {
+                subWorker = subWorkers.get(channel);
+                if (subWorker == null || !subWorker.isAlive() || subWorker.isTerminated()) {
+                    subWorker = SubWorker.create(commands.getSubscription(channel, messageConsumer))
+                            .setCloseCallback(() -> onMessage(null)).subscribe();
+                    subWorkers.put(channel, subWorker);
+                }
+            }
+        }
+        return subWorker;
+    }
+
+    /**
+     * 没有等待线程时取消订阅.
+     */
+    private void unsubscribeIfIdle() {
+        synchronized (this) {
+            if (waiters.get() > 0) {
+                return;
+            }
+            if (multiplexSubscription != null) {
+                for (String channel : channels) {
+                    multiplexSubscription.unsubscribe(channel, messageConsumer);
+                }
+                multiplexSubscription = null;
+            }
+            for (SubWorker subWorker : subWorkers.values()) {
+                subWorker.unsubscribe();
+            }
+            subWorkers.clear();
+        }
+    }
+
+    /**
+     * 尝试获取的操作.
+     *
+     * @author yangzexiong
+     */
+    @FunctionalInterface
+    interface Attempt {
+
+        /**
+         * 尝试获取一次.
+         * @param waiting 失败后是否会等待通知
+         * @return 成功返回 {@code null}, 否则返回剩余过期时间(ms), 小于 0 表示没有过期时间
+         */
+        Long tryAcquire(boolean waiting);
+
+    }
+
+}
@@ -0,0 +1,357 @@
+/**
+ * Copyright 2021 yangzexiong.
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * redis 锁的看门狗, 为未指定过期时间的锁设置较短的过期时间, 并在锁被持有期间在后台自动续期,
+ * 这样持有者崩溃后锁也会在较短的时间内自动失效.
+ * 所有注册的锁共用 {@link RedisLockScheduler} 的一个周期任务, 每个周期内按 {@link RedisLockCommands} 和
+ * 键的槽位分组, 每组只执行一次多键续期脚本, 而不是每个锁一个定时任务.
+ * 续期命令是阻塞的, 定时线程只负责分组和提交, 续期在单独的执行器上进行, 多个分组并行续期且互不等待.
+ *
+ * @author yangzexiong
+ * @see RedisBasedLock#setWatchdog(RedisLockWatchdog)
+ */
+public class RedisLockWatchdog {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisLockWatchdog.class);
+
+    /**
+     * 默认的看门狗过期时间(ms)
+     */
+    public static final long DEFAULT_LEASE_TIME_MILLIS = 30000;
+
+    /**
+     * 单次续期脚本最多包含的键数量
+     */
+    private static final int MAX_BATCH_SIZE = 256;
+
+    private static final char RENEWED = '1';
+
+    /**
+     * 批量续期脚本, 依次为每个仍被对应标识持有的键续期, 返回每个键的续期结果('1' 成功, '0' 锁已丢失).
+     * KEYS 为锁名称, ARGV[i] 为 KEYS[i] 对应的锁标识, 最后一个参数为过期时间.
+     */
+    private static final RedisLockScript RENEW_SCRIPT = RedisLockScript.of("renew",
+            "local result = ''; " +
+                    "for i = 1, #KEYS do " +
+                    "if (redis.call('hexists', KEYS[i], ARGV[i]) == 1) then " +
+                    "redis.call('pexpire', KEYS[i], ARGV[#KEYS + 1]); " +
+                    "result = result .. '1'; " +
+                    "else " +
+                    "result = result .. '0'; " +
+                    "end; " +
+                    "end; " +
+                    "return result; ");
+
+    /**
+     * 看门狗设置的过期时间(ms)
+     */
+    private final long leaseTimeMillis;
+
+    /**
+     * 续期周期(ms)
+     */
+    private final long renewIntervalMillis;
+
+    /**
+     * 需要续期的锁
+     */
+    private final Map<String, WatchedLock> watchedLocks = new ConcurrentHashMap<>(256);
+
+    private volatile boolean started = false;
+
+    /**
+     * 是否正在续期, 上一次续期未完成时跳过本周期
+     */
+    private final AtomicBoolean renewing = new AtomicBoolean(false);
+
+    /**
+     * 执行续期的执行器, 默认使用 {@link RedisLockScheduler#getRenewExecutor()}
+     */
+    private volatile Executor renewExecutor;
+
+    public RedisLockWatchdog() {
+        this(DEFAULT_LEASE_TIME_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    public RedisLockWatchdog(long leaseTime, TimeUnit unit) {
+        this.leaseTimeMillis = unit.toMillis(leaseTime);
+        if (leaseTimeMillis < 3) {
+            throw new IllegalArgumentException("Invalid watchdog lease time '" + leaseTimeMillis + "ms'");
+        }
+        this.renewIntervalMillis = leaseTimeMillis / 3;
+    }
+
+    /**
+     * 看门狗设置的过期时间(ms).
+     * @return
+     */
+    public long getLeaseTimeMillis() {
+        return leaseTimeMillis;
+    }
+
+    /**
+     * 设置执行续期的执行器, 续期命令会阻塞执行线程, 不能使用定时调度线程, 也不应与业务命令共用.
+     * @param renewExecutor 为 {@code null} 时使用 {@link RedisLockScheduler#getRenewExecutor()}
+     * @return
+     */
+    public RedisLockWatchdog setRenewExecutor(Executor renewExecutor) {
+        this.renewExecutor = renewExecutor;
+        return this;
+    }
+
+    /**
+     * 注册需要续期的锁, 重复注册是安全的.
+     * @param commands
+     * @param key 锁名称
+     * @param identifier 锁标识
+     */
+    public void register(RedisLockCommands commands, String key, String identifier) {
+        register(commands, key, identifier, System.nanoTime());
+    }
+
+    /**
+     * 注册需要续期的锁, 并根据加锁时设置过期时间的时刻记录锁的过期时刻, 重复注册是安全的.
+     * @param commands
+     * @param key 锁名称
+     * @param identifier 锁标识
+     * @param leaseStartNanos 加锁请求发出的时刻(ns)
+     */
+    public void register(RedisLockCommands commands, String key, String identifier, long leaseStartNanos) {
+        Objects.requireNonNull(commands, "RedisLockCommands must not be null");
+        long leaseDeadlineNanos = leaseStartNanos + TimeUnit.MILLISECONDS.toNanos(leaseTimeMillis);
+        WatchedLock watchedLock = watchedLocks.putIfAbsent(watchedKey(key, identifier),
+                new WatchedLock(commands, key, identifier, leaseDeadlineNanos));
+        if (watchedLock != null) {
+            // 重入加锁时也会重新设置过期时间
+            watchedLock.extendLease(leaseDeadlineNanos);
+        }
+        startIfNecessary();
+    }
+
+    /**
+     * 注销锁的续期, 在锁完全释放后调用.
+     * @param key 锁名称
+     * @param identifier 锁标识
+     */
+    public void unregister(String key, String identifier) {
+        watchedLocks.remove(watchedKey(key, identifier));
+    }
+
+    /**
+     * 判断锁是否仍在续期中, 续期时发现锁已丢失会自动注销.
+     * @param key 锁名称
+     * @param identifier 锁标识
+     * @return
+     */
+    public boolean isWatched(String key, String identifier) {
+        return watchedLocks.containsKey(watchedKey(key, identifier));
+    }
+
+    /**
+     * 判断锁是否仍在续期中并且未超过最近一次续期后的过期时刻, 只根据本地记录判断, 不访问 redis.
+     * @param key 锁名称
+     * @param identifier 锁标识
+     * @return
+     */
+    public boolean isLeaseValid(String key, String identifier) {
+        WatchedLock watchedLock = watchedLocks.get(watchedKey(key, identifier));
+        return watchedLock != null && watchedLock.leaseDeadlineNanos - System.nanoTime() > 0;
+    }
+
+    /**
+     * 获取当前需要续期的锁的数量.
+     * @return
+     */
+    public int getWatchedCount() {
+        return watchedLocks.size();
+    }
+
+    /**
+     * 立即为所有注册的锁续期一次, 续期失败(锁已丢失)的锁会被注销, 调用线程等待全部分组续期完成.
+     * 不能在续期执行器的线程上调用, 否则可能占满执行器并等待自己.
+     */
+    public void renew() {
+        renewAsync().join();
+    }
+
+    /**
+     * 为所有注册的锁续期一次, 各个分组提交到续期执行器上并行执行, 不阻塞调用线程.
+     * 执行器拒绝的分组不会续期, 保留到下个周期重试.
+     * @return 全部分组续期完成时完成
+     */
+    public CompletableFuture<Void> renewAsync() {
+        // 按 RedisLockCommands 和槽位分组, 集群模式下多键脚本的键必须在同一个槽位
+        Map<RedisLockCommands, Map<Integer, List<WatchedLock>>> groups = new HashMap<>();
+        for (WatchedLock watchedLock : watchedLocks.values()) {
+            groups.computeIfAbsent(watchedLock.commands, (c) -> new HashMap<>())
+                    .computeIfAbsent(watchedLock.commands.keySlot(watchedLock.key), (s) -> new ArrayList<>())
+                    .add(watchedLock);
+        }
+        // 集群模式下各个槽位的续期互不依赖, 并行执行避免逐个等待往返
+        Executor executor = getRenewExecutor();
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (Map.Entry<RedisLockCommands, Map<Integer, List<WatchedLock>>> group : groups.entrySet()) {
+            RedisLockCommands commands = group.getKey();
+            for (List<WatchedLock> slotGroup : group.getValue().values()) {
+                for (int from = 0; from < slotGroup.size(); from += MAX_BATCH_SIZE) {
+                    List<WatchedLock> batch = slotGroup.subList(from,
+                            Math.min(from + MAX_BATCH_SIZE, slotGroup.size()));
+                    try {
+                        futures.add(CompletableFuture.runAsync(() -> renewQuietly(commands, batch), executor));
+                    } catch (RejectedExecutionException e) {
+                        logger.warn("Renew redis lock lease rejected, retry in next period", e);
+                    }
+                }
+            }
+        }
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0]));
+    }
+
+    private void renewQuietly(RedisLockCommands commands, List<WatchedLock> batch) {
+        try {
+            renew(commands, batch);
+        } catch (Exception e) {
+            // 续期失败的锁保留到下个周期重试
+            logger.warn("Renew redis lock lease error", e);
+        }
+    }
+
+    private void renew(RedisLockCommands commands, List<WatchedLock> batch) {
+        String leaseTime = String.valueOf(leaseTimeMillis);
+        // 续期成功后的过期时刻从发出请求时开始计算
+        long leaseDeadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(leaseTimeMillis);
+        String result;
+        if (batch.size() == 1) {
+            WatchedLock watchedLock = batch.get(0);
+            result = commands.evalsha(RENEW_SCRIPT, watchedLock.key, watchedLock.identifier, leaseTime);
+        } else {
+            List<String> keys = new ArrayList<>(batch.size());
+            List<String> args = new ArrayList<>(batch.size() + 1);
+            for (WatchedLock watchedLock : batch) {
+                keys.add(watchedLock.key);
+                args.add(watchedLock.identifier);
+            }
+            args.add(leaseTime);
+            try {
+                result = commands.evalsha(RENEW_SCRIPT, keys, args);
+            } catch (UnsupportedOperationException e) {
+                // 不支持多键脚本则逐个续期
+                StringBuilder results = new StringBuilder(batch.size());
+                for (WatchedLock watchedLock : batch) {
+                    results.append(commands.evalsha(RENEW_SCRIPT, watchedLock.key, watchedLock.identifier,
+                            leaseTime));
+                }
+                result = results.toString();
+            }
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            WatchedLock watchedLock = batch.get(i);
+            if (result == null || i >= result.length() || result.charAt(i) != RENEWED) {
+                // 锁已经丢失(过期或被强制解锁), 不再续期
+                watchedLocks.remove(watchedKey(watchedLock.key, watchedLock.identifier), watchedLock);
+            } else {
+                watchedLock.extendLease(leaseDeadlineNanos);
+            }
+        }
+    }
+
+    private void startIfNecessary() {
+        if (!started) {
+            synchronized (this) {
+                if (!started) {
+                    RedisLockScheduler.scheduleAtFixedRate(this::triggerRenew, renewIntervalMillis,
+                            renewIntervalMillis, TimeUnit.MILLISECONDS);
+                    started = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * 由定时线程触发, 把各个分组的续期提交给续期执行器, 定时线程和执行器线程都不等待续期完成.
+     */
+    private void triggerRenew() {
+        if (watchedLocks.isEmpty() || !renewing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            renewAsync().whenComplete((r, e) -> renewing.set(false));
+        } catch (Throwable e) {
+            // 异常会导致周期任务停止, 这里必须捕获
+            renewing.set(false);
+            logger.error("Redis lock watchdog error", e);
+        }
+    }
+
+    private Executor getRenewExecutor() {
+        Executor executor = this.renewExecutor;
+        return executor != null ? executor : RedisLockScheduler.getRenewExecutor();
+    }
+
+    private static String watchedKey(String key, String identifier) {
+        return key + "@" + identifier;
+    }
+
+    /**
+     * 需要续期的锁信息.
+     *
+     * @author yangzexiong
+     */
+    private static class WatchedLock {
+
+        private final RedisLockCommands commands;
+
+        private final String key;
+
+        private final String identifier;
+
+        /**
+         * 锁在 redis 中的过期时刻(ns), 按发出请求的时刻计算, 不会晚于实际的过期时刻
+         */
+        private volatile long leaseDeadlineNanos;
+
+        private WatchedLock(RedisLockCommands commands, String key, String identifier, long leaseDeadlineNanos) {
+            this.commands = commands;
+            this.key = key;
+            this.identifier = identifier;
+            this.leaseDeadlineNanos = leaseDeadlineNanos;
+        }
+
+        private void extendLease(long leaseDeadlineNanos) {
+            if (leaseDeadlineNanos - this.leaseDeadlineNanos > 0) {
+                this.leaseDeadlineNanos = leaseDeadlineNanos;
+            }
+        }
+
+    }
+
+}
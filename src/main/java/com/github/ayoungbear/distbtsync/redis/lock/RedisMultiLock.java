@@ -0,0 +1,467 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同时锁定多个键的可重入分布式锁, 所有键全部加锁成功或者全部失败.
+ * 键按槽位分组, 同一槽位的键在一次脚本调用中原子性地加锁和解锁, 非集群模式下只需一次调用.
+ * 不同槽位的分组按槽位顺序依次加锁, 某个分组失败时回滚已经加锁的分组, 等待期间不持有任何键, 不会产生死锁.
+ * <p>
+ * 每个键与 {@link RedisBasedLock} 使用相同的数据结构和解锁通知频道, 与相同名称的单键锁互斥,
+ * 等待时订阅所有键的解锁通知, 任意一个键被释放都会重新尝试加锁.
+ * 暂不支持异步加锁和本地移交.
+ *
+ * @author yangzexiong
+ * @see RedisBasedLock
+ */
+public class RedisMultiLock extends AbstractRedisLock {
+
+    /**
+     * 全部键空闲或者已被自己持有时全部加锁, 否则 ARGV[3] 不为空时在阻塞的键上留下等待标记, 返回阻塞键的剩余过期时间.
+     * ARGV[1] 锁标识, ARGV[2] 过期时间, ARGV[3] 等待标记
+     */
+    private static final RedisLockScript MULTI_ACQUIRE_SCRIPT = RedisLockScript.of("multiTryAcquire",
+            "for i = 1, #KEYS do " +
+                    "if (redis.call('exists', KEYS[i]) == 1) and (redis.call('hexists', KEYS[i], ARGV[1]) == 0) then " +
+                    "if ARGV[3] ~= '' then " +
+                    "redis.call('hset', KEYS[i], ARGV[3], 1); " +
+                    "end; " +
+                    "return tostring(redis.call('pttl', KEYS[i])); " +
+                    "end; " +
+                    "end; " +
+                    "for i = 1, #KEYS do " +
+                    "redis.call('hincrby', KEYS[i], ARGV[1], 1); " +
+                    "if (tonumber(ARGV[2]) > 0) then " +
+                    "redis.call('pexpire', KEYS[i], ARGV[2]); " +
+                    "end; " +
+                    "end; " +
+                    "return 'OK'; ");
+
+    /**
+     * 解锁所有持有的键, 完全解锁的键有等待标记时发布解锁消息, 有未持有的键时返回 -1, 否则返回剩余的加锁次数.
+     * ARGV[1] 锁标识, ARGV[2] 等待标记, ARGV[3] 发布命令, ARGV[3 + i] 为 KEYS[i] 的通知频道
+     */
+    private static final RedisLockScript MULTI_RELEASE_SCRIPT = RedisLockScript.of("multiTryRelease",
+            "local counter = 0; " +
+                    "local missing = false; " +
+                    "for i = 1, #KEYS do " +
+                    "if (redis.call('hexists', KEYS[i], ARGV[1]) == 0) then " +
+                    "missing = true; " +
+                    "else " +
+                    "counter = redis.call('hincrby', KEYS[i], ARGV[1], -1); " +
+                    "if (counter <= 0) then " +
+                    "local waiting = redis.call('hexists', KEYS[i], ARGV[2]); " +
+                    "redis.call('del', KEYS[i]); " +
+                    "if (waiting == 1) then " +
+                    "redis.call(ARGV[3], ARGV[3 + i], KEYS[i]); " +
+                    "end; " +
+                    "end; " +
+                    "end; " +
+                    "end; " +
+                    "if missing then " +
+                    "return '-1'; " +
+                    "end; " +
+                    "return tostring(counter); ");
+
+    /**
+     * 全部键都被持有时返回最小的加锁次数, 否则返回 0.
+     */
+    private static final RedisLockScript MULTI_HOLD_COUNT_SCRIPT = RedisLockScript.of("multiHoldCount",
+            "local count = nil; " +
+                    "for i = 1, #KEYS do " +
+                    "local c = redis.call('hget', KEYS[i], ARGV[1]); " +
+                    "if c == false then " +
+                    "return '0'; " +
+                    "end; " +
+                    "if count == nil or tonumber(c) < count then " +
+                    "count = tonumber(c); " +
+                    "end; " +
+                    "end; " +
+                    "return tostring(count); ");
+
+    private static final RedisLockScript MULTI_EXISTS_SCRIPT = RedisLockScript.of("multiExists",
+            "for i = 1, #KEYS do " +
+                    "if (redis.call('exists', KEYS[i]) == 1) then " +
+                    "return '1'; " +
+                    "end; " +
+                    "end; " +
+                    "return '0'; ");
+
+    private static final RedisLockScript MULTI_DELETE_SCRIPT = RedisLockScript.of("multiDelete",
+            "return tostring(redis.call('del', unpack(KEYS))); ");
+
+    /**
+     * 全部键都被持有时重新设置过期时间.
+     * ARGV[1] 锁标识, ARGV[2] 过期时间
+     */
+    private static final RedisLockScript MULTI_EXPIRED_SCRIPT = RedisLockScript.of("multiExpired",
+            "for i = 1, #KEYS do " +
+                    "if (redis.call('hexists', KEYS[i], ARGV[1]) == 0) then " +
+                    "return '0'; " +
+                    "end; " +
+                    "end; " +
+                    "for i = 1, #KEYS do " +
+                    "if (tonumber(ARGV[2]) > 0) then " +
+                    "redis.call('pexpire', KEYS[i], ARGV[2]); " +
+                    "else " +
+                    "redis.call('persist', KEYS[i]); " +
+                    "end; " +
+                    "end; " +
+                    "return '1'; ");
+
+    /**
+     * 排序后的所有键
+     */
+    private final List<String> keys;
+
+    /**
+     * 按槽位分组的键, 分组按槽位排序
+     */
+    private final List<List<String>> groups;
+
+    /**
+     * 各分组中的键对应的解锁通知频道
+     */
+    private final List<List<String>> groupChannels;
+
+    private final RedisLockWaiter waiter;
+
+    /**
+     * 看门狗(如果有), 未指定过期时间的加锁会使用看门狗的过期时间并在持有期间自动续期
+     */
+    private volatile RedisLockWatchdog watchdog;
+
+    public RedisMultiLock(Collection<String> keys, RedisLockCommands commands) {
+        this(new ArrayList<>(sortKeys(keys)), commands);
+    }
+
+    private RedisMultiLock(List<String> keys, RedisLockCommands commands) {
+        super(getLockName(keys), commands);
+        this.keys = Collections.unmodifiableList(keys);
+        Map<Integer, List<String>> slots = new TreeMap<>();
+        for (String key : keys) {
+            slots.computeIfAbsent(commands.keySlot(key), (slot) -> new ArrayList<>()).add(key);
+        }
+        this.groups = new ArrayList<>(slots.values());
+        this.groupChannels = new ArrayList<>(groups.size());
+        List<String> channels = new ArrayList<>(keys.size());
+        for (List<String> group : groups) {
+            List<String> groupChannel = new ArrayList<>(group.size());
+            for (String key : group) {
+                groupChannel.add(getChannel(key));
+            }
+            groupChannels.add(groupChannel);
+            channels.addAll(groupChannel);
+        }
+        this.waiter = new RedisLockWaiter(getLockName(), commands, channels);
+    }
+
+    /**
+     * 返回给定的多个键对应的锁名称, 与键的顺序和重复无关.
+     * @param keys
+     * @return
+     */
+    public static String getLockName(Collection<String> keys) {
+        return sortKeys(keys).toString();
+    }
+
+    @Override
+    public void lock() {
+        try {
+            acquire(UNLIMIT_LEASE_TIME, false, -1);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        acquire(UNLIMIT_LEASE_TIME, true, -1);
+    }
+
+    @Override
+    public boolean tryLock() {
+        try {
+            return acquire(UNLIMIT_LEASE_TIME, false, 0);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (time <= 0L) {
+            return tryLock();
+        }
+        return acquire(UNLIMIT_LEASE_TIME, true, unit.toNanos(time));
+    }
+
+    @Override
+    public void unlock() throws IllegalMonitorStateException {
+        if (!releaseLock()) {
+            throw new IllegalMonitorStateException("Not locked by current thread");
+        }
+    }
+
+    @Override
+    public void lockTimed(long leaseTime, TimeUnit unit) {
+        validateLeaseTime(leaseTime);
+        try {
+            acquire(unit.toMillis(leaseTime), false, -1);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean tryLockTimed(long leaseTime, TimeUnit unit) {
+        validateLeaseTime(leaseTime);
+        try {
+            return acquire(unit.toMillis(leaseTime), false, 0);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean tryLockTimed(long time, long leaseTime, TimeUnit unit) throws InterruptedException {
+        validateLeaseTime(leaseTime);
+        return acquire(unit.toMillis(leaseTime), true, time <= 0L ? 0 : unit.toNanos(time));
+    }
+
+    @Override
+    public boolean renewLeaseTime(long leaseTime, TimeUnit unit) {
+        validateLeaseTime(leaseTime);
+        if (!onceLocked()) {
+            return false;
+        }
+        String identifier = getSourceIdentifier();
+        List<String> args = Arrays.asList(identifier, String.valueOf(unit.toMillis(leaseTime)));
+        boolean result = true;
+        for (List<String> group : groups) {
+            result &= SUCCESS.equals(eval(MULTI_EXPIRED_SCRIPT, group, args));
+        }
+        return result;
+    }
+
+    @Override
+    public boolean releaseLock() {
+        String identifier = getSourceIdentifier();
+        if (identifier == null) {
+            return false;
+        }
+        int holdCount = release(identifier, groups.size());
+        if (holdCount <= 0) {
+            removeIdentifier();
+            RedisLockWatchdog watchdog = this.watchdog;
+            if (watchdog != null) {
+                for (String key : keys) {
+                    watchdog.unregister(key, identifier);
+                }
+            }
+        }
+        return holdCount >= 0;
+    }
+
+    /**
+     * 强制删除所有的键.
+     */
+    @Override
+    public boolean forceUnlock() {
+        boolean result = false;
+        for (List<String> group : groups) {
+            result |= !FAIL.equals(eval(MULTI_DELETE_SCRIPT, group, Collections.emptyList()));
+        }
+        return result;
+    }
+
+    /**
+     * 任意一个键被锁定时返回 {@code true}.
+     */
+    @Override
+    public boolean isLocked() {
+        for (List<String> group : groups) {
+            if (SUCCESS.equals(eval(MULTI_EXISTS_SCRIPT, group, Collections.emptyList()))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean isHeldLock() {
+        boolean result = onceLocked() && getHoldCount() > 0;
+        if (!result) {
+            removeIdentifier();
+        }
+        return result;
+    }
+
+    @Override
+    public int getHoldCount() {
+        String identifier = getSourceIdentifier();
+        if (identifier == null) {
+            return 0;
+        }
+        List<String> args = Collections.singletonList(identifier);
+        int holdCount = Integer.MAX_VALUE;
+        for (List<String> group : groups) {
+            holdCount = Math.min(holdCount, Integer.parseInt(eval(MULTI_HOLD_COUNT_SCRIPT, group, args)));
+            if (holdCount == 0) {
+                break;
+            }
+        }
+        return holdCount;
+    }
+
+    /**
+     * 设置看门狗, 设置后未指定过期时间的加锁操作会使用看门狗的过期时间,
+     * 并在锁被完全释放前由看门狗在后台自动续期.
+     * @param watchdog
+     * @return
+     */
+    public RedisMultiLock setWatchdog(RedisLockWatchdog watchdog) {
+        this.watchdog = watchdog;
+        return this;
+    }
+
+    public RedisLockWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    @Override
+    public RedisMultiLock setObserver(RedisLockObserver observer) {
+        super.setObserver(observer);
+        return this;
+    }
+
+    /**
+     * 获取排序后的所有键.
+     * @return
+     */
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    /**
+     * 获取本地正在等待的线程数.
+     * @return
+     */
+    public int getWaiterCount() {
+        return waiter.getWaiterCount();
+    }
+
+    @Override
+    public String toString() {
+        return this.key + "@" + this.commands.getClass().getSimpleName() + "@" + super.toString();
+    }
+
+    private static TreeSet<String> sortKeys(Collection<String> keys) {
+        Objects.requireNonNull(keys, "Keys must not be null");
+        TreeSet<String> sortedKeys = new TreeSet<>();
+        for (String key : keys) {
+            sortedKeys.add(Objects.requireNonNull(key, "Key must not be null"));
+        }
+        if (sortedKeys.isEmpty()) {
+            throw new IllegalArgumentException("Keys must not be empty");
+        }
+        return sortedKeys;
+    }
+
+    /**
+     * 加锁, 失败后等待任意一个键的解锁通知或者锁过期后重试, 直到成功, 或者超时/被中断.
+     * @param leaseTimeMillis 过期时间(ms)
+     * @param interruptible 是否可中断
+     * @param timeoutNanos 超时时间, 等于 0 时只尝试一次, 小于 0 表示不超时
+     * @return
+     * @throws InterruptedException
+     */
+    private boolean acquire(long leaseTimeMillis, boolean interruptible, long timeoutNanos)
+            throws InterruptedException {
+        RedisLockWatchdog watchdog = leaseTimeMillis <= 0 ? this.watchdog : null;
+        long leaseTime = watchdog != null ? watchdog.getLeaseTimeMillis() : leaseTimeMillis;
+        String identifier = getIdentifier();
+        if (!waiter.acquire((waiting) -> tryAcquire(identifier, leaseTime, waiting), observer, interruptible,
+                timeoutNanos)) {
+            return false;
+        }
+        setSourceIdentifier(identifier);
+        if (watchdog != null) {
+            for (String key : keys) {
+                watchdog.register(commands, key, identifier);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 按槽位顺序依次加锁各分组, 某个分组失败时回滚已经加锁的分组.
+     * @param identifier
+     * @param leaseTimeMillis
+     * @param waiting 加锁失败后是否会等待解锁通知
+     * @return 加锁成功返回 {@code null}, 否则返回阻塞键的剩余过期时间(ms)
+     */
+    private Long tryAcquire(String identifier, long leaseTimeMillis, boolean waiting) {
+        List<String> args = Arrays.asList(identifier, String.valueOf(leaseTimeMillis),
+                waiting ? WAITING_FIELD : NOT_WAITING);
+        for (int i = 0; i < groups.size(); i++) {
+            String result = eval(MULTI_ACQUIRE_SCRIPT, groups.get(i), args);
+            if (!TRY_ACQUIRE_SUCCESS.equals(result)) {
+                release(identifier, i);
+                return Long.valueOf(result);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 解锁前 {@code groupCount} 个分组.
+     * @param identifier
+     * @param groupCount
+     * @return 剩余的加锁次数, 有未持有的键时返回 -1
+     */
+    private int release(String identifier, int groupCount) {
+        int holdCount = 0;
+        boolean missing = false;
+        for (int i = 0; i < groupCount; i++) {
+            List<String> args = new ArrayList<>(3 + groups.get(i).size());
+            args.add(identifier);
+            args.add(WAITING_FIELD);
+            args.add(publishCommand);
+            args.addAll(groupChannels.get(i));
+            holdCount = Integer.parseInt(eval(MULTI_RELEASE_SCRIPT, groups.get(i), args));
+            missing |= holdCount < 0;
+        }
+        return missing ? -1 : holdCount;
+    }
+
+}
@@ -0,0 +1,293 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 redis 实现的分布式令牌桶限流器, 所有节点共享同一个令牌桶.
+ * 使用 GCRA 算法实现令牌桶, redis 中只保存下一个令牌的理论到达时间(us), 每次获取在一次脚本调用中完成.
+ * 令牌桶容量默认等于每个周期的令牌数, 即最多允许一个周期的突发流量.
+ * <p>
+ * 开启预取后每次向 redis 获取一批令牌保存在本地, 本地令牌用完前不再访问 redis,
+ * 本地令牌只在这批令牌对应的时间内有效, 过期未使用的令牌直接丢弃, 避免节点囤积令牌后超出限流速率.
+ * 限流依赖各节点的时钟, 节点间的时钟偏差会影响限流的精度.
+ *
+ * @author yangzexiong
+ */
+public class RedisRateLimiter {
+
+    /**
+     * 理论到达时间字段
+     */
+    private static final String TAT_FIELD = "__distbtsync_tat";
+
+    private static final String KEY_PREFIX = "__distbtsync_redis_rate_limiter:";
+
+    /**
+     * 获取 ARGV[4] 到 ARGV[5] 个令牌, 尽量多获取, 返回获取到的令牌数,
+     * 可用令牌不足 ARGV[4] 个时返回需要等待的时间(ms)的负数.
+     * ARGV[1] 当前时间(us), ARGV[2] 产生一个令牌的时间(us), ARGV[3] 令牌桶容量, ARGV[4] 最少令牌数,
+     * ARGV[5] 最多令牌数, ARGV[6] 理论到达时间字段
+     */
+    private static final RedisLockScript ACQUIRE_SCRIPT = RedisLockScript.of("rateLimiterTryAcquire",
+            "local now = tonumber(ARGV[1]); " +
+                    "local interval = tonumber(ARGV[2]); " +
+                    "local capacity = tonumber(ARGV[3]); " +
+                    "local tat = tonumber(redis.call('hget', KEYS[1], ARGV[6]) or ARGV[1]); " +
+                    "if (tat < now) then " +
+                    "tat = now; " +
+                    "end; " +
+                    "local granted = math.min(math.floor((now + interval * capacity - tat) / interval), " +
+                    "tonumber(ARGV[5])); " +
+                    "if (granted < tonumber(ARGV[4])) then " +
+                    "local wait = (tat + interval * (tonumber(ARGV[4]) - capacity) - now) / 1000; " +
+                    "return tostring(-math.max(math.ceil(wait), 1)); " +
+                    "end; " +
+                    "tat = tat + interval * granted; " +
+                    "redis.call('hset', KEYS[1], ARGV[6], string.format('%d', math.ceil(tat))); " +
+                    "redis.call('pexpire', KEYS[1], math.ceil((tat - now) / 1000) + 1); " +
+                    "return tostring(granted); ");
+
+    /**
+     * 限流器名称
+     */
+    private final String name;
+
+    /**
+     * 令牌桶在 redis 中的键, 加上前缀以免与同名的锁冲突
+     */
+    private final String key;
+
+    /**
+     * 每个周期的令牌数
+     */
+    private final long rate;
+
+    /**
+     * 产生一个令牌的时间(us)
+     */
+    private final double intervalMicros;
+
+    private final RedisLockCommands commands;
+
+    /**
+     * 令牌桶容量
+     */
+    private long capacity;
+
+    /**
+     * 每次预取的令牌数, 小于等于 1 表示不预取
+     */
+    private int prefetch = 0;
+
+    /**
+     * 本地预取的令牌数
+     */
+    private int localTokens = 0;
+
+    /**
+     * 本地令牌的失效时间(ns)
+     */
+    private long localExpireAtNanos;
+
+    /**
+     * 创建限流器, 每个周期产生给定数量的令牌.
+     * @param name 名称
+     * @param rate 每个周期的令牌数
+     * @param period 周期
+     * @param unit 周期的时间单位
+     * @param commands
+     */
+    public RedisRateLimiter(String name, long rate, long period, TimeUnit unit, RedisLockCommands commands) {
+        if (rate <= 0 || period <= 0) {
+            throw new IllegalArgumentException("Invalid rate '" + rate + "/" + period + " " + unit + "'");
+        }
+        this.name = Objects.requireNonNull(name, "Name must not be null");
+        this.key = KEY_PREFIX + name;
+        this.commands = Objects.requireNonNull(commands, "RedisLockCommands must not be null");
+        this.rate = rate;
+        this.intervalMicros = (double) unit.toMicros(period) / rate;
+        this.capacity = rate;
+    }
+
+    /**
+     * 设置令牌桶容量, 即允许的最大突发数量, 默认等于每个周期的令牌数.
+     * 需要在使用前设置.
+     * @param capacity
+     * @return
+     */
+    public RedisRateLimiter setCapacity(long capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Invalid capacity '" + capacity + "'");
+        }
+        this.capacity = capacity;
+        return this;
+    }
+
+    /**
+     * 设置每次向 redis 预取的令牌数, 大于 1 时开启本地预取.
+     * 需要在使用前设置.
+     * @param prefetch
+     * @return
+     */
+    public RedisRateLimiter setPrefetch(int prefetch) {
+        this.prefetch = prefetch;
+        return this;
+    }
+
+    /**
+     * 获取一个令牌, 阻塞直到成功或者被中断.
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    /**
+     * 获取给定数量的令牌, 阻塞直到成功或者被中断.
+     * @param permits
+     * @throws InterruptedException
+     */
+    public void acquire(int permits) throws InterruptedException {
+        validatePermits(permits);
+        for (long waitMillis; (waitMillis = tryAcquireOnce(permits)) > 0; ) {
+            TimeUnit.MILLISECONDS.sleep(waitMillis);
+        }
+    }
+
+    /**
+     * 尝试获取一个令牌, 只尝试一次.
+     * @return
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 尝试获取给定数量的令牌, 只尝试一次.
+     * @param permits
+     * @return
+     */
+    public boolean tryAcquire(int permits) {
+        validatePermits(permits);
+        return tryAcquireOnce(permits) == 0;
+    }
+
+    /**
+     * 尝试获取给定数量的令牌, 最多等待给定的时间, 预计超时前无法获取到时直接返回 {@code false}.
+     * @param permits
+     * @param timeout 等待时间, 小于等于 0 时只尝试一次
+     * @param unit
+     * @return
+     * @throws InterruptedException
+     */
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        validatePermits(permits);
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (; ; ) {
+            long waitMillis = tryAcquireOnce(permits);
+            if (waitMillis == 0) {
+                return true;
+            }
+            if (TimeUnit.MILLISECONDS.toNanos(waitMillis) > deadline - System.nanoTime()) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(waitMillis);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public int getPrefetch() {
+        return prefetch;
+    }
+
+    @Override
+    public String toString() {
+        return this.name + "@" + this.commands.getClass().getSimpleName() + "@" + super.toString();
+    }
+
+    /**
+     * 尝试获取一次令牌, 开启预取时优先使用本地令牌.
+     * @param permits
+     * @return 成功返回 0, 否则返回需要等待的时间(ms)
+     */
+    private long tryAcquireOnce(int permits) {
+        int prefetch = this.prefetch;
+        if (prefetch <= 1) {
+            long result = eval(permits, permits);
+            return result > 0 ? 0 : -result;
+        }
+        synchronized (this) {
+            if (localTokens >= permits && System.nanoTime() - localExpireAtNanos < 0) {
+                localTokens -= permits;
+                return 0;
+            }
+        }
+        int batch = Math.max(prefetch, permits);
+        long result = eval(permits, (int) Math.min(batch, capacity));
+        if (result <= 0) {
+            return -result;
+        }
+        int rest = (int) result - permits;
+        if (rest > 0) {
+            // 本地令牌只在这批令牌对应的时间内有效
+            long now = System.nanoTime();
+            synchronized (this) {
+                if (now - localExpireAtNanos >= 0) {
+                    localTokens = 0;
+                }
+                localTokens += rest;
+                localExpireAtNanos = now + (long) (intervalMicros * result * 1000);
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 执行获取令牌的脚本.
+     * @param min 最少令牌数
+     * @param max 最多令牌数
+     * @return 获取到的令牌数, 小于等于 0 时为需要等待的时间(ms)的负数
+     */
+    private long eval(int min, int max) {
+        long now = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        return Long.parseLong(commands.evalsha(ACQUIRE_SCRIPT, key, String.valueOf(now),
+                String.valueOf(intervalMicros), String.valueOf(capacity), String.valueOf(min), String.valueOf(max),
+                TAT_FIELD));
+    }
+
+    private void validatePermits(int permits) {
+        if (permits <= 0 || permits > capacity) {
+            throw new IllegalArgumentException("Invalid permits '" + permits + "', capacity " + capacity);
+        }
+    }
+
+}
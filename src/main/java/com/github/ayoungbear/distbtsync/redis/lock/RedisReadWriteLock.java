@@ -0,0 +1,488 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import java.util.Collections;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * 基于 redis 实现的可重入读写锁, 读锁可以被多个持有者同时持有, 写锁是独占的.
+ * 读写锁使用同一个 hash 保存状态, 模式字段记录当前是读模式还是写模式, 每个持有者的加锁次数分别记录,
+ * 与 {@link RedisBasedLock} 使用相同的键时, 后者相当于不支持写优先的写锁.
+ * <p>
+ * 写锁等待期间会在锁中留下写等待标记, 此时新的读者不能再加锁(已经持有读锁的除外), 避免写者饿死.
+ * 持有写锁时可以再获取读锁(锁降级), 持有读锁时获取写锁会一直等待.
+ * 读锁的过期时间作用于整个锁, 取所有读者中最长的过期时间.
+ * 解锁通知会唤醒本节点所有等待的读者和写者.
+ * 暂不支持异步加锁和本地移交.
+ *
+ * @author yangzexiong
+ * @see RedisBasedLock
+ */
+public class RedisReadWriteLock implements ReadWriteLock {
+
+    /**
+     * 模式字段, 1 表示读模式, 2 表示写模式
+     */
+    private static final String MODE_FIELD = "__distbtsync_mode";
+
+    /**
+     * 写等待标记, 值为标记失效的时间戳(ms)
+     */
+    private static final String WRITE_WAITING_FIELD = "__distbtsync_write_waiting";
+
+    /**
+     * 写等待标记的有效时间(ms), 等待中的写者会在一半时间内刷新
+     */
+    private static final long WRITE_WAITING_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final String READ_SUFFIX = ":read";
+
+    private static final String WRITE_SUFFIX = ":write";
+
+    /**
+     * 锁不存在, 或者已经持有读锁, 或者读模式下没有有效的写等待标记, 或者同一线程持有写锁时加读锁,
+     * 否则 ARGV[3] 不为空时留下等待标记, 返回剩余过期时间.
+     * ARGV[1] 读锁标识, ARGV[2] 过期时间, ARGV[3] 等待标记, ARGV[4] 同一线程的写锁标识, ARGV[5] 当前时间戳,
+     * ARGV[6] 模式字段, ARGV[7] 写等待标记
+     */
+    private static final RedisLockScript READ_ACQUIRE_SCRIPT = RedisLockScript.of("rwReadTryAcquire",
+            "local mode = redis.call('hget', KEYS[1], ARGV[6]); " +
+                    "local ttl = redis.call('pttl', KEYS[1]); " +
+                    "local acquirable = (redis.call('exists', KEYS[1]) == 0) " +
+                    "or (redis.call('hexists', KEYS[1], ARGV[1]) == 1); " +
+                    "if (not acquirable) and (mode == '1') then " +
+                    "local deadline = redis.call('hget', KEYS[1], ARGV[7]); " +
+                    "if (deadline == false) or (tonumber(deadline) <= tonumber(ARGV[5])) then " +
+                    "redis.call('hdel', KEYS[1], ARGV[7]); " +
+                    "acquirable = true; " +
+                    "else " +
+                    "local remaining = tonumber(deadline) - tonumber(ARGV[5]); " +
+                    "if (ttl < 0) or (remaining < ttl) then " +
+                    "ttl = remaining; " +
+                    "end; " +
+                    "end; " +
+                    "elseif (not acquirable) and (mode == '2') then " +
+                    "acquirable = (redis.call('hexists', KEYS[1], ARGV[4]) == 1); " +
+                    "end; " +
+                    "if acquirable then " +
+                    "if (mode == false) then " +
+                    "redis.call('hset', KEYS[1], ARGV[6], 1); " +
+                    "end; " +
+                    "redis.call('hincrby', KEYS[1], ARGV[1], 1); " +
+                    "local lease = tonumber(ARGV[2]); " +
+                    "if (lease <= 0) then " +
+                    "redis.call('persist', KEYS[1]); " +
+                    "elseif (mode == false) or ((ttl > 0) and (ttl < lease)) then " +
+                    "redis.call('pexpire', KEYS[1], lease); " +
+                    "end; " +
+                    "return 'OK'; " +
+                    "end; " +
+                    "if ARGV[3] ~= '' then " +
+                    "redis.call('hset', KEYS[1], ARGV[3], 1); " +
+                    "end; " +
+                    "return tostring(ttl); ");
+
+    /**
+     * 锁不存在或者已经持有写锁时加写锁, 否则 ARGV[3] 不为空时留下等待标记和写等待标记, 返回剩余过期时间.
+     * ARGV[1] 写锁标识, ARGV[2] 过期时间, ARGV[3] 等待标记, ARGV[4] 模式字段, ARGV[5] 写等待标记,
+     * ARGV[6] 写等待标记失效的时间戳
+     */
+    private static final RedisLockScript WRITE_ACQUIRE_SCRIPT = RedisLockScript.of("rwWriteTryAcquire",
+            "local mode = redis.call('hget', KEYS[1], ARGV[4]); " +
+                    "if (redis.call('exists', KEYS[1]) == 0) " +
+                    "or ((mode == '2') and (redis.call('hexists', KEYS[1], ARGV[1]) == 1)) then " +
+                    "if (mode == false) then " +
+                    "redis.call('hset', KEYS[1], ARGV[4], 2); " +
+                    "end; " +
+                    "redis.call('hincrby', KEYS[1], ARGV[1], 1); " +
+                    "if (tonumber(ARGV[2]) > 0) then " +
+                    "redis.call('pexpire', KEYS[1], ARGV[2]); " +
+                    "end; " +
+                    "return 'OK'; " +
+                    "end; " +
+                    "if ARGV[3] ~= '' then " +
+                    "redis.call('hset', KEYS[1], ARGV[3], 1); " +
+                    "if (mode ~= false) then " +
+                    "redis.call('hset', KEYS[1], ARGV[5], ARGV[6]); " +
+                    "end; " +
+                    "end; " +
+                    "return tostring(redis.call('pttl', KEYS[1])); ");
+
+    /**
+     * 解锁, 没有持有者时删除锁并在有等待标记时发布解锁消息, 写锁释放后只剩下降级的读锁时切换为读模式并通知等待者.
+     * ARGV[1] 锁标识, ARGV[2] 等待标记, ARGV[3] 发布命令, ARGV[4] 通知频道, ARGV[5] 模式字段, ARGV[6] 写等待标记,
+     * ARGV[7] 是否是写锁
+     */
+    private static final RedisLockScript RELEASE_SCRIPT = RedisLockScript.of("rwRelease",
+            "if (redis.call('hexists', KEYS[1], ARGV[1]) == 0) then " +
+                    "return '-1'; " +
+                    "end; " +
+                    "local counter = redis.call('hincrby', KEYS[1], ARGV[1], -1); " +
+                    "if (counter > 0) then " +
+                    "return tostring(counter); " +
+                    "end; " +
+                    "redis.call('hdel', KEYS[1], ARGV[1]); " +
+                    "local holders = redis.call('hlen', KEYS[1]) - redis.call('hexists', KEYS[1], ARGV[5]) " +
+                    "- redis.call('hexists', KEYS[1], ARGV[2]) - redis.call('hexists', KEYS[1], ARGV[6]); " +
+                    "if (holders <= 0) then " +
+                    "local waiting = redis.call('hexists', KEYS[1], ARGV[2]); " +
+                    "redis.call('del', KEYS[1]); " +
+                    "if (waiting == 1) then " +
+                    "redis.call(ARGV[3], ARGV[4], KEYS[1]); " +
+                    "end; " +
+                    "elseif (ARGV[7] == '1') then " +
+                    "redis.call('hset', KEYS[1], ARGV[5], 1); " +
+                    "if (redis.call('hdel', KEYS[1], ARGV[2]) == 1) then " +
+                    "redis.call(ARGV[3], ARGV[4], KEYS[1]); " +
+                    "end; " +
+                    "end; " +
+                    "return '0'; ");
+
+    private static final RedisLockScript MODE_SCRIPT = RedisLockScript.of("rwMode",
+            "local mode = redis.call('hget', KEYS[1], ARGV[1]); " +
+                    "if (mode == false) then " +
+                    "return '0'; " +
+                    "end; " +
+                    "return mode; ");
+
+    private static final RedisLockScript HOLD_COUNT_SCRIPT = RedisLockScript.of("rwHoldCount",
+            "local count = redis.call('hget', KEYS[1], ARGV[1]); " +
+                    "if (count == false) then " +
+                    "return '0'; " +
+                    "end; " +
+                    "return count; ");
+
+    private static final String READ_MODE = "1";
+
+    private static final String WRITE_MODE = "2";
+
+    /**
+     * 锁名称
+     */
+    private final String name;
+
+    private final RedisLockCommands commands;
+
+    private final ReadLock readLock;
+
+    private final WriteLock writeLock;
+
+    /**
+     * 读锁和写锁共享的等待器
+     */
+    private final RedisLockWaiter waiter;
+
+    /**
+     * 看门狗(如果有), 未指定过期时间的加锁会使用看门狗的过期时间并在持有期间自动续期
+     */
+    private volatile RedisLockWatchdog watchdog;
+
+    public RedisReadWriteLock(String name, RedisLockCommands commands) {
+        this.name = Objects.requireNonNull(name, "Name must not be null");
+        this.commands = Objects.requireNonNull(commands, "RedisLockCommands must not be null");
+        this.readLock = new ReadLock();
+        this.writeLock = new WriteLock();
+        this.waiter = new RedisLockWaiter(name, commands, Collections.singletonList(readLock.getChannel(name)));
+    }
+
+    @Override
+    public RedisLock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public RedisLock writeLock() {
+        return writeLock;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 设置看门狗, 设置后未指定过期时间的加锁操作会使用看门狗的过期时间,
+     * 并在锁被完全释放前由看门狗在后台自动续期.
+     * @param watchdog
+     * @return
+     */
+    public RedisReadWriteLock setWatchdog(RedisLockWatchdog watchdog) {
+        this.watchdog = watchdog;
+        return this;
+    }
+
+    public RedisLockWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    /**
+     * 设置读锁和写锁的观察者.
+     * @param observer
+     * @return
+     */
+    public RedisReadWriteLock setObserver(RedisLockObserver observer) {
+        readLock.setObserver(observer);
+        writeLock.setObserver(observer);
+        return this;
+    }
+
+    /**
+     * 获取本地正在等待的线程数, 包括读者和写者.
+     * @return
+     */
+    public int getWaiterCount() {
+        return waiter.getWaiterCount();
+    }
+
+    @Override
+    public String toString() {
+        return this.name + "@" + this.commands.getClass().getSimpleName() + "@" + super.toString();
+    }
+
+    /**
+     * 读锁或者写锁, 锁名称带有后缀以便分别记录锁标识, 实际操作的键是读写锁的名称.
+     *
+     * @author yangzexiong
+     */
+    private abstract class LockView extends AbstractRedisLock {
+
+        private final String mode;
+
+        private LockView(String suffix, String mode) {
+            super(name + suffix, RedisReadWriteLock.this.commands);
+            this.mode = mode;
+        }
+
+        /**
+         * 尝试加锁一次.
+         * @param identifier
+         * @param leaseTimeMillis
+         * @param waiting 加锁失败后是否会等待解锁通知
+         * @return 加锁成功返回 {@code null}, 否则返回剩余过期时间(ms)
+         */
+        protected abstract Long tryAcquire(String identifier, long leaseTimeMillis, boolean waiting);
+
+        @Override
+        public void lock() {
+            try {
+                acquire(UNLIMIT_LEASE_TIME, false, -1);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            acquire(UNLIMIT_LEASE_TIME, true, -1);
+        }
+
+        @Override
+        public boolean tryLock() {
+            try {
+                return acquire(UNLIMIT_LEASE_TIME, false, 0);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            if (time <= 0L) {
+                return tryLock();
+            }
+            return acquire(UNLIMIT_LEASE_TIME, true, unit.toNanos(time));
+        }
+
+        @Override
+        public void unlock() throws IllegalMonitorStateException {
+            if (!releaseLock()) {
+                throw new IllegalMonitorStateException("Not locked by current thread");
+            }
+        }
+
+        @Override
+        public void lockTimed(long leaseTime, TimeUnit unit) {
+            validateLeaseTime(leaseTime);
+            try {
+                acquire(unit.toMillis(leaseTime), false, -1);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean tryLockTimed(long leaseTime, TimeUnit unit) {
+            validateLeaseTime(leaseTime);
+            try {
+                return acquire(unit.toMillis(leaseTime), false, 0);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean tryLockTimed(long time, long leaseTime, TimeUnit unit) throws InterruptedException {
+            validateLeaseTime(leaseTime);
+            return acquire(unit.toMillis(leaseTime), true, time <= 0L ? 0 : unit.toNanos(time));
+        }
+
+        @Override
+        public boolean renewLeaseTime(long leaseTime, TimeUnit unit) {
+            validateLeaseTime(leaseTime);
+            String identifier = getSourceIdentifier();
+            return identifier != null && SUCCESS.equals(
+                    eval(EXPIRED_SCRIPT, name, identifier, String.valueOf(unit.toMillis(leaseTime))));
+        }
+
+        @Override
+        public boolean releaseLock() {
+            String identifier = getSourceIdentifier();
+            if (identifier == null) {
+                return false;
+            }
+            int holdCount = Integer.parseInt(eval(RELEASE_SCRIPT, name, identifier, WAITING_FIELD, publishCommand,
+                    getChannel(name), MODE_FIELD, WRITE_WAITING_FIELD, WRITE_MODE.equals(mode) ? "1" : "0"));
+            if (holdCount <= 0) {
+                removeIdentifier();
+                RedisLockWatchdog watchdog = RedisReadWriteLock.this.watchdog;
+                if (watchdog != null) {
+                    watchdog.unregister(name, identifier);
+                }
+            }
+            return holdCount >= 0;
+        }
+
+        /**
+         * 强制删除整个读写锁.
+         */
+        @Override
+        public boolean forceUnlock() {
+            return SUCCESS.equals(eval(DELETE_SCRIPT, name));
+        }
+
+        /**
+         * 读写锁当前处于该模式时返回 {@code true}.
+         */
+        @Override
+        public boolean isLocked() {
+            return mode.equals(eval(MODE_SCRIPT, name, MODE_FIELD));
+        }
+
+        @Override
+        public boolean isHeldLock() {
+            boolean result = onceLocked() && getHoldCount() > 0;
+            if (!result) {
+                removeIdentifier();
+            }
+            return result;
+        }
+
+        @Override
+        public int getHoldCount() {
+            String identifier = getSourceIdentifier();
+            if (identifier == null) {
+                return 0;
+            }
+            return Integer.parseInt(eval(HOLD_COUNT_SCRIPT, name, identifier));
+        }
+
+        @Override
+        public String toString() {
+            return this.key + "@" + this.commands.getClass().getSimpleName() + "@" + super.toString();
+        }
+
+        /**
+         * 加锁, 失败后等待解锁通知或者锁过期后重试, 直到成功, 或者超时/被中断.
+         * @param leaseTimeMillis 过期时间(ms)
+         * @param interruptible 是否可中断
+         * @param timeoutNanos 超时时间, 等于 0 时只尝试一次, 小于 0 表示不超时
+         * @return
+         * @throws InterruptedException
+         */
+        private boolean acquire(long leaseTimeMillis, boolean interruptible, long timeoutNanos)
+                throws InterruptedException {
+            RedisLockWatchdog watchdog = leaseTimeMillis <= 0 ? RedisReadWriteLock.this.watchdog : null;
+            long leaseTime = watchdog != null ? watchdog.getLeaseTimeMillis() : leaseTimeMillis;
+            String identifier = getIdentifier();
+            if (!waiter.acquire((waiting) -> tryAcquire(identifier, leaseTime, waiting), observer, interruptible,
+                    timeoutNanos)) {
+                return false;
+            }
+            setSourceIdentifier(identifier);
+            if (watchdog != null) {
+                watchdog.register(commands, name, identifier);
+            }
+            return true;
+        }
+
+    }
+
+    /**
+     * 读锁, 可以被多个持有者同时持有.
+     *
+     * @author yangzexiong
+     */
+    private final class ReadLock extends LockView {
+
+        private ReadLock() {
+            super(READ_SUFFIX, READ_MODE);
+        }
+
+        @Override
+        protected Long tryAcquire(String identifier, long leaseTimeMillis, boolean waiting) {
+            String result = eval(READ_ACQUIRE_SCRIPT, name, identifier, String.valueOf(leaseTimeMillis),
+                    waiting ? WAITING_FIELD : NOT_WAITING, writeLock.getIdentifier(),
+                    String.valueOf(System.currentTimeMillis()), MODE_FIELD, WRITE_WAITING_FIELD);
+            return TRY_ACQUIRE_SUCCESS.equals(result) ? null : Long.valueOf(result);
+        }
+
+    }
+
+    /**
+     * 写锁, 独占的.
+     *
+     * @author yangzexiong
+     */
+    private final class WriteLock extends LockView {
+
+        private WriteLock() {
+            super(WRITE_SUFFIX, WRITE_MODE);
+        }
+
+        @Override
+        protected Long tryAcquire(String identifier, long leaseTimeMillis, boolean waiting) {
+            String deadline = waiting ? String.valueOf(System.currentTimeMillis() + WRITE_WAITING_MILLIS) : "";
+            String result = eval(WRITE_ACQUIRE_SCRIPT, name, identifier, String.valueOf(leaseTimeMillis),
+                    waiting ? WAITING_FIELD : NOT_WAITING, MODE_FIELD, WRITE_WAITING_FIELD, deadline);
+            if (TRY_ACQUIRE_SUCCESS.equals(result)) {
+                return null;
+            }
+            // 写等待标记需要在失效前刷新
+            long ttl = Long.parseLong(result);
+            long refreshMillis = WRITE_WAITING_MILLIS / 2;
+            return ttl < 0 || ttl > refreshMillis ? refreshMillis : ttl;
+        }
+
+    }
+
+}
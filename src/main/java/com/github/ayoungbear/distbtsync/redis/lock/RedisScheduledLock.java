@@ -0,0 +1,218 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 用于定时任务的非阻塞分布式锁, 每次调度只允许一个节点执行, 其他节点加锁失败后直接跳过.
+ * 加锁只尝试一次, 不会阻塞等待也不会订阅解锁通知, 不可重入.
+ * 解锁时如果距加锁不足最短持有时间, 不会立即删除键, 而是保留到最短持有时间结束后自动过期,
+ * 避免执行很快的任务在时钟有偏差的节点上被重复执行.
+ * <p>
+ * 与 {@link RedisBasedLock} 使用相同的数据结构, 与相同名称的锁互斥.
+ * 不使用看门狗续期, 应该通过过期时间限制任务的最长持有时间.
+ *
+ * @author yangzexiong
+ * @see RedisBasedLock
+ */
+public class RedisScheduledLock extends AbstractRedisLock {
+
+    /**
+     * 解锁后保留键期间使用的占位字段, 保证删除持有者字段后键仍然存在
+     */
+    private static final String RETAINED_FIELD = "__distbtsync_retained";
+
+    /**
+     * 键不存在时加锁, 否则返回键的剩余过期时间.
+     * ARGV[1] 锁标识, ARGV[2] 过期时间
+     */
+    private static final RedisLockScript SCHEDULED_ACQUIRE_SCRIPT = RedisLockScript.of("scheduledTryAcquire",
+            "if (redis.call('exists', KEYS[1]) == 1) then " +
+                    "return tostring(redis.call('pttl', KEYS[1])); " +
+                    "end; " +
+                    "redis.call('hset', KEYS[1], ARGV[1], 1); " +
+                    "if (tonumber(ARGV[2]) > 0) then " +
+                    "redis.call('pexpire', KEYS[1], ARGV[2]); " +
+                    "end; " +
+                    "return 'OK'; ");
+
+    /**
+     * 解锁, ARGV[2] 大于 0 时移除持有者并把键保留该时间, 否则删除键并在有等待者时发布解锁消息.
+     * ARGV[1] 锁标识, ARGV[2] 保留时间(ms), ARGV[3] 占位字段, ARGV[4] 等待标记, ARGV[5] 发布命令, ARGV[6] 频道
+     */
+    private static final RedisLockScript SCHEDULED_RELEASE_SCRIPT = RedisLockScript.of("scheduledRelease",
+            "if (redis.call('hexists', KEYS[1], ARGV[1]) == 0) then " +
+                    "return '0'; " +
+                    "end; " +
+                    "if (tonumber(ARGV[2]) > 0) then " +
+                    "redis.call('hset', KEYS[1], ARGV[3], 1); " +
+                    "redis.call('hdel', KEYS[1], ARGV[1]); " +
+                    "redis.call('pexpire', KEYS[1], ARGV[2]); " +
+                    "return '1'; " +
+                    "end; " +
+                    "local waiting = redis.call('hexists', KEYS[1], ARGV[4]); " +
+                    "redis.call('del', KEYS[1]); " +
+                    "if (waiting == 1) then " +
+                    "redis.call(ARGV[5], ARGV[6], KEYS[1]); " +
+                    "end; " +
+                    "return '1'; ");
+
+    /**
+     * 最短持有时间(ms)
+     */
+    private final long lockAtLeastForMillis;
+
+    /**
+     * 各持有者的加锁时间(ns)
+     */
+    private final Map<String, Long> acquireTimes = new ConcurrentHashMap<>();
+
+    public RedisScheduledLock(String key, long lockAtLeastFor, TimeUnit unit, RedisLockCommands commands) {
+        super(key, commands);
+        this.lockAtLeastForMillis = Math.max(unit.toMillis(lockAtLeastFor), 0);
+    }
+
+    /**
+     * 不支持阻塞加锁.
+     */
+    @Override
+    public void lock() {
+        throw new UnsupportedOperationException("RedisScheduledLock does not support blocking lock");
+    }
+
+    /**
+     * 不支持阻塞加锁.
+     */
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        throw new UnsupportedOperationException("RedisScheduledLock does not support blocking lock");
+    }
+
+    @Override
+    public boolean tryLock() {
+        return doTryAcquireOnce(UNLIMIT_LEASE_TIME);
+    }
+
+    /**
+     * 只尝试加锁一次, 不会等待.
+     */
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return tryLock();
+    }
+
+    @Override
+    public void unlock() throws IllegalMonitorStateException {
+        if (!releaseLock()) {
+            throw new IllegalMonitorStateException(
+                    "Attempt to unlock lock, not locked by current thread, lock name '" + key + "'");
+        }
+    }
+
+    /**
+     * 不支持阻塞加锁.
+     */
+    @Override
+    public void lockTimed(long leaseTime, TimeUnit unit) {
+        throw new UnsupportedOperationException("RedisScheduledLock does not support blocking lock");
+    }
+
+    @Override
+    public boolean tryLockTimed(long leaseTime, TimeUnit unit) {
+        validateLeaseTime(leaseTime);
+        return doTryAcquireOnce(unit.toMillis(leaseTime));
+    }
+
+    /**
+     * 只尝试加锁一次, 不会等待.
+     */
+    @Override
+    public boolean tryLockTimed(long time, long leaseTime, TimeUnit unit) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        return tryLockTimed(leaseTime, unit);
+    }
+
+    @Override
+    public boolean renewLeaseTime(long leaseTime, TimeUnit unit) {
+        validateLeaseTime(leaseTime);
+        return doExpired(getHolder(), unit.toMillis(leaseTime));
+    }
+
+    /**
+     * 解锁, 距加锁不足最短持有时间时键会保留到最短持有时间结束, 期间任何节点都无法加锁.
+     */
+    @Override
+    public boolean releaseLock() {
+        String holder = getHolder();
+        Long acquireTime = acquireTimes.remove(holder);
+        long retainMillis = 0;
+        if (acquireTime != null) {
+            retainMillis = lockAtLeastForMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - acquireTime);
+        }
+        return SUCCESS.equals(eval(SCHEDULED_RELEASE_SCRIPT, key, holder, String.valueOf(Math.max(retainMillis, 0)),
+                RETAINED_FIELD, WAITING_FIELD, publishCommand, channel));
+    }
+
+    @Override
+    public boolean isHeldLock() {
+        return isAcquired(getHolder());
+    }
+
+    /**
+     * 不可重入, 持有时返回 1.
+     */
+    @Override
+    public int getHoldCount() {
+        return isHeldLock() ? 1 : 0;
+    }
+
+    public long getLockAtLeastForMillis() {
+        return lockAtLeastForMillis;
+    }
+
+    @Override
+    public String toString() {
+        return this.key + "@" + this.commands.getClass().getSimpleName() + "@" + super.toString();
+    }
+
+    private boolean doTryAcquireOnce(long leaseTimeMillis) {
+        String holder = getHolder();
+        long now = System.nanoTime();
+        if (!TRY_ACQUIRE_SUCCESS.equals(eval(SCHEDULED_ACQUIRE_SCRIPT, key, holder, String.valueOf(leaseTimeMillis)))) {
+            return false;
+        }
+        acquireTimes.put(holder, now);
+        return true;
+    }
+
+    /**
+     * 获取当前线程的持有者标识.
+     * @return
+     */
+    private String getHolder() {
+        return id + Thread.currentThread().getId();
+    }
+
+}
@@ -0,0 +1,595 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 基于 redis 实现的分布式计数信号量, 所有节点共享给定数量的许可, 用于限制跨节点的并发数.
+ * 许可按持有者(节点上的线程)记录在 hash 中, 同时记录已占用的许可总数, 许可总数由各节点在创建时指定, 需要保持一致.
+ * <p>
+ * 获取许可时可以指定过期时间, 过期时间作用于持有者当前持有的全部许可, 取最长的过期时间,
+ * 记录在与信号量同一槽位的有序集合中, 持有者宕机后许可会在过期后被回收; 未指定过期时间的许可只能显式释放.
+ * 获取失败后与 {@link RedisBasedLock} 一样留下等待标记, 等待释放通知或者最早的许可过期后重试,
+ * 本节点所有等待线程共享订阅.
+ * 暂不支持异步获取和看门狗续期.
+ *
+ * @author yangzexiong
+ * @see RedisBasedLock
+ */
+public class RedisSemaphore {
+
+    /**
+     * 已占用的许可总数字段
+     */
+    private static final String USED_FIELD = "__distbtsync_used";
+
+    /**
+     * 不过期
+     */
+    private static final long UNLIMIT_LEASE_TIME = 0;
+
+    private static final String SEMAPHORE_PREFIX = "__distbtsync_redis_semaphore:";
+
+    private static final String LEASES_PREFIX = "__distbtsync_redis_semaphore_leases:";
+
+    /**
+     * 回收过期持有者的许可, 有回收时通知等待者, 没有占用的许可时删除信号量.
+     * 所有脚本的 KEYS[1] 信号量, KEYS[2] 过期时间集合, ARGV[1] 当前时间戳, ARGV[2] 占用总数字段, ARGV[3] 等待标记,
+     * ARGV[4] 发布命令, ARGV[5] 通知频道
+     */
+    private static final String PURGE_EXPIRED =
+            "local expired = redis.call('zrangebyscore', KEYS[2], '-inf', ARGV[1]); " +
+                    "if (#expired > 0) then " +
+                    "for i = 1, #expired do " +
+                    "local count = redis.call('hget', KEYS[1], expired[i]); " +
+                    "if count then " +
+                    "redis.call('hincrby', KEYS[1], ARGV[2], -tonumber(count)); " +
+                    "redis.call('hdel', KEYS[1], expired[i]); " +
+                    "end; " +
+                    "redis.call('zrem', KEYS[2], expired[i]); " +
+                    "end; " +
+                    "if (redis.call('hdel', KEYS[1], ARGV[3]) == 1) then " +
+                    "redis.call(ARGV[4], ARGV[5], KEYS[1]); " +
+                    "end; " +
+                    "if (tonumber(redis.call('hget', KEYS[1], ARGV[2]) or '0') <= 0) then " +
+                    "redis.call('del', KEYS[1]); " +
+                    "end; " +
+                    "end; ";
+
+    /**
+     * 剩余许可足够时获取许可并更新过期时间, 否则 ARGV[10] 不为空时留下等待标记, 返回距最早的许可过期的时间.
+     * ARGV[6] 持有者标识, ARGV[7] 获取的许可数, ARGV[8] 许可总数, ARGV[9] 过期时间戳, 为空表示不过期,
+     * ARGV[10] 是否等待
+     */
+    private static final RedisLockScript ACQUIRE_SCRIPT = RedisLockScript.of("semaphoreTryAcquire",
+            PURGE_EXPIRED +
+                    "local permits = tonumber(ARGV[7]); " +
+                    "local used = tonumber(redis.call('hget', KEYS[1], ARGV[2]) or '0'); " +
+                    "if (used + permits <= tonumber(ARGV[8])) then " +
+                    "local held = redis.call('hincrby', KEYS[1], ARGV[6], permits); " +
+                    "redis.call('hincrby', KEYS[1], ARGV[2], permits); " +
+                    "if (ARGV[9] == '') then " +
+                    "redis.call('zrem', KEYS[2], ARGV[6]); " +
+                    "elseif (held == permits) then " +
+                    "redis.call('zadd', KEYS[2], ARGV[9], ARGV[6]); " +
+                    "else " +
+                    "local score = redis.call('zscore', KEYS[2], ARGV[6]); " +
+                    "if score and (tonumber(ARGV[9]) > tonumber(score)) then " +
+                    "redis.call('zadd', KEYS[2], ARGV[9], ARGV[6]); " +
+                    "end; " +
+                    "end; " +
+                    "return 'OK'; " +
+                    "end; " +
+                    "if (ARGV[10] ~= '') then " +
+                    "redis.call('hset', KEYS[1], ARGV[3], 1); " +
+                    "end; " +
+                    "local first = redis.call('zrange', KEYS[2], 0, 0, 'WITHSCORES'); " +
+                    "if (#first == 0) then " +
+                    "return '-1'; " +
+                    "end; " +
+                    "return tostring(math.max(tonumber(first[2]) - tonumber(ARGV[1]), 1)); ");
+
+    /**
+     * 释放持有者的许可, 有等待标记时发布释放消息, 返回持有者剩余的许可数, 持有的许可不足时返回 -1.
+     * ARGV[6] 持有者标识, ARGV[7] 释放的许可数
+     */
+    private static final RedisLockScript RELEASE_SCRIPT = RedisLockScript.of("semaphoreRelease",
+            "local held = tonumber(redis.call('hget', KEYS[1], ARGV[6]) or '0'); " +
+                    "local permits = tonumber(ARGV[7]); " +
+                    "if (held < permits) then " +
+                    "return '-1'; " +
+                    "end; " +
+                    "if (held > permits) then " +
+                    "redis.call('hincrby', KEYS[1], ARGV[6], -permits); " +
+                    "else " +
+                    "redis.call('hdel', KEYS[1], ARGV[6]); " +
+                    "redis.call('zrem', KEYS[2], ARGV[6]); " +
+                    "end; " +
+                    "local used = redis.call('hincrby', KEYS[1], ARGV[2], -permits); " +
+                    "if (redis.call('hdel', KEYS[1], ARGV[3]) == 1) then " +
+                    "redis.call(ARGV[4], ARGV[5], KEYS[1]); " +
+                    "end; " +
+                    "if (used <= 0) then " +
+                    "redis.call('del', KEYS[1]); " +
+                    "end; " +
+                    "return tostring(held - permits); ");
+
+    /**
+     * 重新设置持有者许可的过期时间, 不是持有者时返回 0.
+     * ARGV[6] 持有者标识, ARGV[7] 过期时间戳, 为空表示不过期
+     */
+    private static final RedisLockScript RENEW_SCRIPT = RedisLockScript.of("semaphoreRenew",
+            PURGE_EXPIRED +
+                    "if (redis.call('hexists', KEYS[1], ARGV[6]) == 0) then " +
+                    "return '0'; " +
+                    "end; " +
+                    "if (ARGV[7] == '') then " +
+                    "redis.call('zrem', KEYS[2], ARGV[6]); " +
+                    "else " +
+                    "redis.call('zadd', KEYS[2], ARGV[7], ARGV[6]); " +
+                    "end; " +
+                    "return '1'; ");
+
+    /**
+     * 获取剩余的许可数.
+     * ARGV[6] 许可总数
+     */
+    private static final RedisLockScript AVAILABLE_SCRIPT = RedisLockScript.of("semaphoreAvailable",
+            PURGE_EXPIRED +
+                    "local used = tonumber(redis.call('hget', KEYS[1], ARGV[2]) or '0'); " +
+                    "return tostring(math.max(tonumber(ARGV[6]) - used, 0)); ");
+
+    /**
+     * 获取持有者持有的许可数.
+     * ARGV[6] 持有者标识
+     */
+    private static final RedisLockScript HELD_SCRIPT = RedisLockScript.of("semaphoreHeld",
+            PURGE_EXPIRED +
+                    "return tostring(redis.call('hget', KEYS[1], ARGV[6]) or '0'); ");
+
+    /**
+     * 强制删除信号量, 释放所有许可, 有等待标记时发布释放消息.
+     */
+    private static final RedisLockScript FORCE_RELEASE_SCRIPT = RedisLockScript.of("semaphoreDelete",
+            "local waiting = redis.call('hexists', KEYS[1], ARGV[3]); " +
+                    "local deleted = redis.call('del', KEYS[1]); " +
+                    "redis.call('del', KEYS[2]); " +
+                    "if (waiting == 1) then " +
+                    "redis.call(ARGV[4], ARGV[5], KEYS[1]); " +
+                    "end; " +
+                    "return tostring(deleted); ");
+
+    /**
+     * 信号量名称
+     */
+    private final String name;
+
+    /**
+     * 许可总数
+     */
+    private final int permits;
+
+    private final RedisLockCommands commands;
+
+    /**
+     * 信号量和过期时间集合
+     */
+    private final List<String> keys;
+
+    private final PermitLock lock;
+
+    private final RedisLockWaiter waiter;
+
+    public RedisSemaphore(String name, int permits, RedisLockCommands commands) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Invalid permits '" + permits + "'");
+        }
+        this.name = Objects.requireNonNull(name, "Name must not be null");
+        this.permits = permits;
+        this.commands = Objects.requireNonNull(commands, "RedisLockCommands must not be null");
+        // 信号量的键加上前缀以免与同名的锁冲突, 解锁通知频道也随之区分
+        String taggedName = AbstractRedisLock.getHashTagged(name);
+        this.lock = new PermitLock(SEMAPHORE_PREFIX + taggedName, commands);
+        this.keys = Collections.unmodifiableList(
+                Arrays.asList(SEMAPHORE_PREFIX + taggedName, LEASES_PREFIX + taggedName));
+        this.waiter = new RedisLockWaiter(name, commands, Collections.singletonList(lock.channel));
+    }
+
+    /**
+     * 获取一个许可, 阻塞直到成功或者被中断.
+     * @throws InterruptedException
+     */
+    public void acquire() throws InterruptedException {
+        acquire(1);
+    }
+
+    /**
+     * 获取给定数量的许可, 阻塞直到成功或者被中断.
+     * @param permits
+     * @throws InterruptedException
+     */
+    public void acquire(int permits) throws InterruptedException {
+        doAcquire(permits, UNLIMIT_LEASE_TIME, true, -1);
+    }
+
+    /**
+     * 获取给定数量的许可并指定过期时间, 阻塞直到成功或者被中断.
+     * @param permits
+     * @param leaseTime
+     * @param unit
+     * @throws InterruptedException
+     */
+    public void acquire(int permits, long leaseTime, TimeUnit unit) throws InterruptedException {
+        lock.validateLeaseTime(leaseTime);
+        doAcquire(permits, unit.toMillis(leaseTime), true, -1);
+    }
+
+    /**
+     * 获取给定数量的许可, 阻塞直到成功, 不响应中断.
+     * @param permits
+     */
+    public void acquireUninterruptibly(int permits) {
+        try {
+            doAcquire(permits, UNLIMIT_LEASE_TIME, false, -1);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 尝试获取一个许可, 只尝试一次.
+     * @return
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * 尝试获取给定数量的许可, 只尝试一次.
+     * @param permits
+     * @return
+     */
+    public boolean tryAcquire(int permits) {
+        try {
+            return doAcquire(permits, UNLIMIT_LEASE_TIME, false, 0);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 尝试获取给定数量的许可, 最多等待给定的时间.
+     * @param permits
+     * @param waitTime 等待时间, 小于等于 0 时只尝试一次
+     * @param unit
+     * @return
+     * @throws InterruptedException
+     */
+    public boolean tryAcquire(int permits, long waitTime, TimeUnit unit) throws InterruptedException {
+        return doAcquire(permits, UNLIMIT_LEASE_TIME, true, waitTime <= 0L ? 0 : unit.toNanos(waitTime));
+    }
+
+    /**
+     * 尝试获取给定数量的许可并指定过期时间, 最多等待给定的时间.
+     * @param permits
+     * @param waitTime 等待时间, 小于等于 0 时只尝试一次
+     * @param leaseTime 过期时间
+     * @param unit
+     * @return
+     * @throws InterruptedException
+     */
+    public boolean tryAcquire(int permits, long waitTime, long leaseTime, TimeUnit unit)
+            throws InterruptedException {
+        lock.validateLeaseTime(leaseTime);
+        return doAcquire(permits, unit.toMillis(leaseTime), true, waitTime <= 0L ? 0 : unit.toNanos(waitTime));
+    }
+
+    /**
+     * 释放当前线程持有的一个许可.
+     * @throws IllegalMonitorStateException 当前线程没有持有许可
+     */
+    public void release() throws IllegalMonitorStateException {
+        release(1);
+    }
+
+    /**
+     * 释放当前线程持有的给定数量的许可.
+     * @param permits
+     * @throws IllegalMonitorStateException 当前线程持有的许可不足
+     */
+    public void release(int permits) throws IllegalMonitorStateException {
+        if (!tryRelease(permits)) {
+            throw new IllegalMonitorStateException("Not enough permits held by current thread");
+        }
+    }
+
+    /**
+     * 尝试释放当前线程持有的给定数量的许可.
+     * @param permits
+     * @return 当前线程持有的许可不足(比如已经过期被回收)时返回 {@code false}
+     */
+    public boolean tryRelease(int permits) {
+        validatePermits(permits);
+        return lock.releasePermits(String.valueOf(permits)) >= 0;
+    }
+
+    /**
+     * 延长当前线程持有的许可的过期时间, 过期时间小于等于 0 时不再过期.
+     * @param leaseTime
+     * @param unit
+     * @return 当前线程没有持有许可时返回 {@code false}
+     */
+    public boolean renewLeaseTime(long leaseTime, TimeUnit unit) {
+        return lock.renew(unit.toMillis(leaseTime));
+    }
+
+    /**
+     * 获取剩余的许可数, 会先回收已经过期的许可.
+     * @return
+     */
+    public int availablePermits() {
+        return Integer.parseInt(lock.evalSemaphore(AVAILABLE_SCRIPT, String.valueOf(permits)));
+    }
+
+    /**
+     * 获取当前线程持有的许可数.
+     * @return
+     */
+    public int getHeldPermits() {
+        return lock.getHoldCount();
+    }
+
+    /**
+     * 强制删除信号量, 释放所有持有者的许可.
+     * @return
+     */
+    public boolean forceRelease() {
+        return lock.forceUnlock();
+    }
+
+    /**
+     * 返回以信号量实现的锁, 每次加锁获取一个许可, 解锁释放一个许可, 最多允许许可总数个持有者同时加锁.
+     * 同一线程重复加锁会再占用一个许可.
+     * @return
+     */
+    public RedisLock asLock() {
+        return lock;
+    }
+
+    /**
+     * 设置观察者.
+     * @param observer
+     * @return
+     */
+    public RedisSemaphore setObserver(RedisLockObserver observer) {
+        lock.setObserver(observer);
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 获取许可总数.
+     * @return
+     */
+    public int getPermits() {
+        return permits;
+    }
+
+    /**
+     * 获取本地正在等待许可的线程数.
+     * @return
+     */
+    public int getWaiterCount() {
+        return waiter.getWaiterCount();
+    }
+
+    @Override
+    public String toString() {
+        return this.name + "@" + this.commands.getClass().getSimpleName() + "@" + super.toString();
+    }
+
+    /**
+     * 获取许可, 失败后等待释放通知或者最早的许可过期后重试, 直到成功, 或者超时/被中断.
+     * @param permits 许可数
+     * @param leaseTimeMillis 过期时间(ms), 小于等于 0 表示不过期
+     * @param interruptible 是否可中断
+     * @param timeoutNanos 超时时间, 等于 0 时只尝试一次, 小于 0 表示不超时
+     * @return
+     * @throws InterruptedException
+     */
+    private boolean doAcquire(int permits, long leaseTimeMillis, boolean interruptible, long timeoutNanos)
+            throws InterruptedException {
+        validatePermits(permits);
+        String holder = lock.getHolder();
+        String count = String.valueOf(permits);
+        return waiter.acquire((waiting) -> lock.tryAcquireOnce(holder, count, leaseTimeMillis, waiting),
+                lock.getObserver(), interruptible, timeoutNanos);
+    }
+
+    private void validatePermits(int permits) {
+        if (permits <= 0 || permits > this.permits) {
+            throw new IllegalArgumentException("Invalid permits '" + permits + "', total permits " + this.permits);
+        }
+    }
+
+    /**
+     * 以信号量实现的锁, 同时负责执行信号量的脚本.
+     *
+     * @author yangzexiong
+     */
+    private final class PermitLock extends AbstractRedisLock {
+
+        private PermitLock(String name, RedisLockCommands commands) {
+            super(name, commands);
+        }
+
+        @Override
+        public void lock() {
+            acquireUninterruptibly(1);
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            acquire(1);
+        }
+
+        @Override
+        public boolean tryLock() {
+            return tryAcquire(1);
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            return tryAcquire(1, time, unit);
+        }
+
+        @Override
+        public void unlock() throws IllegalMonitorStateException {
+            release(1);
+        }
+
+        @Override
+        public void lockTimed(long leaseTime, TimeUnit unit) {
+            validateLeaseTime(leaseTime);
+            try {
+                doAcquire(1, unit.toMillis(leaseTime), false, -1);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean tryLockTimed(long leaseTime, TimeUnit unit) {
+            validateLeaseTime(leaseTime);
+            try {
+                return doAcquire(1, unit.toMillis(leaseTime), false, 0);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        @Override
+        public boolean tryLockTimed(long time, long leaseTime, TimeUnit unit) throws InterruptedException {
+            return tryAcquire(1, time, leaseTime, unit);
+        }
+
+        @Override
+        public boolean renewLeaseTime(long leaseTime, TimeUnit unit) {
+            validateLeaseTime(leaseTime);
+            return renew(unit.toMillis(leaseTime));
+        }
+
+        @Override
+        public boolean releaseLock() {
+            return tryRelease(1);
+        }
+
+        @Override
+        public boolean forceUnlock() {
+            return SUCCESS.equals(evalSemaphore(FORCE_RELEASE_SCRIPT));
+        }
+
+        /**
+         * 没有剩余许可时返回 {@code true}.
+         */
+        @Override
+        public boolean isLocked() {
+            return availablePermits() == 0;
+        }
+
+        @Override
+        public boolean isHeldLock() {
+            return getHoldCount() > 0;
+        }
+
+        @Override
+        public int getHoldCount() {
+            return Integer.parseInt(evalSemaphore(HELD_SCRIPT, getHolder()));
+        }
+
+        @Override
+        public String toString() {
+            return RedisSemaphore.this.toString();
+        }
+
+        /**
+         * 获取当前线程的持有者标识.
+         * @return
+         */
+        private String getHolder() {
+            return id + Thread.currentThread().getId();
+        }
+
+        /**
+         * 尝试获取一次许可.
+         * @return 成功返回 {@code null}, 否则返回距最早的许可过期的时间(ms), 小于 0 表示没有会过期的许可
+         */
+        private Long tryAcquireOnce(String holder, String count, long leaseTimeMillis, boolean waiting) {
+            long now = System.currentTimeMillis();
+            String result = evalSemaphore(now, ACQUIRE_SCRIPT, holder, count, String.valueOf(permits),
+                    leaseTimeMillis > 0 ? String.valueOf(now + leaseTimeMillis) : "", waiting ? "1" : "");
+            return TRY_ACQUIRE_SUCCESS.equals(result) ? null : Long.valueOf(result);
+        }
+
+        /**
+         * 释放当前线程持有的许可.
+         * @return 剩余持有的许可数, 持有的许可不足时返回 -1
+         */
+        private int releasePermits(String count) {
+            return Integer.parseInt(evalSemaphore(RELEASE_SCRIPT, getHolder(), count));
+        }
+
+        private boolean renew(long leaseTimeMillis) {
+            long now = System.currentTimeMillis();
+            return SUCCESS.equals(evalSemaphore(now, RENEW_SCRIPT, getHolder(),
+                    leaseTimeMillis > 0 ? String.valueOf(now + leaseTimeMillis) : ""));
+        }
+
+        private String evalSemaphore(RedisLockScript script, String... args) {
+            return evalSemaphore(System.currentTimeMillis(), script, args);
+        }
+
+        /**
+         * 执行信号量脚本, 追加所有脚本共用的参数.
+         */
+        private String evalSemaphore(long now, RedisLockScript script, String... args) {
+            List<String> argv = new ArrayList<>(5 + args.length);
+            argv.add(String.valueOf(now));
+            argv.add(USED_FIELD);
+            argv.add(WAITING_FIELD);
+            argv.add(publishCommand);
+            argv.add(channel);
+            Collections.addAll(argv, args);
+            return eval(script, keys, argv);
+        }
+
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * 基于 {@link redis.clients.jedis.JedisPubSub} 实现的多频道复用订阅者基类.
+ * 使用一个守护线程持有阻塞的订阅连接, 连接先订阅 {@link #KEEPALIVE_CHANNEL} 保持订阅状态,
+ * 其他频道在该连接上动态地订阅和取消订阅, 连接中断后会自动重连并重新订阅所有频道.
+ *
+ * @author yangzexiong
+ */
+public abstract class AbstractJedisMultiplexSubscription extends AbstractMultiplexSubscription {
+
+    private static final AtomicInteger WORKER_NUMBER = new AtomicInteger(0);
+
+    /**
+     * 当前订阅连接对应的订阅者
+     */
+    private volatile MultiplexJedisPubSub jedisPubSub;
+
+    /**
+     * 订阅工作线程
+     */
+    private Thread worker;
+
+    /**
+     * 用于重连等待, 关闭时提前唤醒
+     */
+    private final Semaphore sleeper = new Semaphore(0);
+
+    @Override
+    protected boolean doSubscribe(String channel) {
+        startWorkerIfNecessary();
+        MultiplexJedisPubSub jedisPubSub = this.jedisPubSub;
+        if (jedisPubSub != null && jedisPubSub.ready) {
+            try {
+                jedisPubSub.subscribe(channel);
+                return true;
+            } catch (Exception e) {
+                logger.warn("Subscribe channel '{}' error", channel, e);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void doUnsubscribe(String channel) {
+        MultiplexJedisPubSub jedisPubSub = this.jedisPubSub;
+        if (jedisPubSub != null && jedisPubSub.ready) {
+            try {
+                jedisPubSub.unsubscribe(channel);
+            } catch (Exception e) {
+                logger.warn("Unsubscribe channel '{}' error", channel, e);
+            }
+        }
+    }
+
+    @Override
+    protected void doClose() {
+        MultiplexJedisPubSub jedisPubSub = this.jedisPubSub;
+        if (jedisPubSub != null && jedisPubSub.ready) {
+            try {
+                jedisPubSub.unsubscribe();
+            } catch (Exception e) {
+                logger.warn("Close redis subscription error", e);
+            }
+        }
+        sleeper.release();
+    }
+
+    /**
+     * 使用给定的订阅者订阅频道并阻塞线程, 直到取消订阅或连接中断.
+     * @param jedisPubSub
+     * @param channel
+     */
+    protected abstract void doBlockingSubscribe(JedisPubSub jedisPubSub, String channel);
+
+    private void startWorkerIfNecessary() {
+        if (worker == null) {
+            Thread worker = new Thread(this::work, "RedisLockMultiplexSubscription-" + WORKER_NUMBER.incrementAndGet());
+            worker.setDaemon(true);
+            worker.start();
+            this.worker = worker;
+        }
+    }
+
+    private void work() {
+        while (!isClosed()) {
+            MultiplexJedisPubSub jedisPubSub = new MultiplexJedisPubSub();
+            this.jedisPubSub = jedisPubSub;
+            try {
+                doBlockingSubscribe(jedisPubSub, KEEPALIVE_CHANNEL);
+            } catch (Exception e) {
+                if (!isClosed()) {
+                    logger.warn("Redis subscription connection lost, reconnect after {} ms", RECONNECT_INTERVAL_MILLIS,
+                            e);
+                }
+            } finally {
+                jedisPubSub.ready = false;
+            }
+            onDisconnected();
+            if (!isClosed()) {
+                try {
+                    sleeper.tryAcquire(RECONNECT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * 复用连接的订阅者, 将消息转发给对应频道的消费者.
+     *
+     * @author yangzexiong
+     */
+    private class MultiplexJedisPubSub extends JedisPubSub {
+
+        /**
+         * 订阅连接是否已就绪, 就绪后才能动态地订阅其他频道
+         */
+        private volatile boolean ready = false;
+
+        @Override
+        public void onSubscribe(String channel, int subscribedChannels) {
+            if (KEEPALIVE_CHANNEL.equals(channel)) {
+                if (isClosed()) {
+                    unsubscribe();
+                    return;
+                }
+                ready = true;
+                resubscribeAll();
+            } else {
+                onSubscribed(channel);
+            }
+        }
+
+        @Override
+        public void onMessage(String channel, String message) {
+            AbstractJedisMultiplexSubscription.this.onMessage(channel, message);
+        }
+
+    }
+
+}
@@ -0,0 +1,119 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+import io.lettuce.core.AbstractRedisClient;
+import io.lettuce.core.RedisChannelHandler;
+import io.lettuce.core.RedisConnectionStateListener;
+import io.lettuce.core.pubsub.RedisPubSubAdapter;
+import io.lettuce.core.pubsub.StatefulRedisPubSubConnection;
+import java.util.Objects;
+
+/**
+ * 基于 {@link io.lettuce.core.pubsub.StatefulRedisPubSubConnection} 实现的多频道复用订阅者基类.
+ * lettuce 的订阅是异步的, 因此不需要额外的工作线程, 连接断开重连后 lettuce 会自动恢复已订阅的频道.
+ *
+ * @author yangzexiong
+ */
+public abstract class AbstractLettuceMultiplexSubscription extends AbstractMultiplexSubscription {
+
+    private final AbstractRedisClient client;
+
+    private final MultiplexListener listener = new MultiplexListener();
+
+    private volatile StatefulRedisPubSubConnection<String, String> pubSubConnection;
+
+    protected AbstractLettuceMultiplexSubscription(AbstractRedisClient client) {
+        this.client = Objects.requireNonNull(client, "RedisClient must not be null");
+    }
+
+    @Override
+    protected boolean doSubscribe(String channel) {
+        try {
+            getPubSubConnection().async().subscribe(channel);
+            return true;
+        } catch (Exception e) {
+            logger.warn("Subscribe channel '{}' error", channel, e);
+            return false;
+        }
+    }
+
+    @Override
+    protected void doUnsubscribe(String channel) {
+        StatefulRedisPubSubConnection<String, String> pubSubConnection = this.pubSubConnection;
+        if (pubSubConnection != null) {
+            pubSubConnection.async().unsubscribe(channel);
+        }
+    }
+
+    @Override
+    protected void doClose() {
+        StatefulRedisPubSubConnection<String, String> pubSubConnection = this.pubSubConnection;
+        if (pubSubConnection != null) {
+            this.pubSubConnection = null;
+            client.removeListener(listener);
+            pubSubConnection.close();
+        }
+    }
+
+    /**
+     * 提供 {@link io.lettuce.core.pubsub.StatefulRedisPubSubConnection} 连接.
+     * @return
+     */
+    protected abstract StatefulRedisPubSubConnection<String, String> providePubSubConnection();
+
+    private StatefulRedisPubSubConnection<String, String> getPubSubConnection() {
+        if (pubSubConnection == null) {
+            StatefulRedisPubSubConnection<String, String> pubSubConnection = providePubSubConnection();
+            pubSubConnection.addListener(listener);
+            client.addListener(listener);
+            this.pubSubConnection = pubSubConnection;
+        }
+        return pubSubConnection;
+    }
+
+    /**
+     * 复用连接的监听者, 将消息转发给对应频道的消费者, 并在连接断开时通知所有消费者.
+     *
+     * @author yangzexiong
+     */
+    private class MultiplexListener extends RedisPubSubAdapter<String, String>
+            implements RedisConnectionStateListener {
+
+        @Override
+        public void subscribed(String channel, long count) {
+            onSubscribed(channel);
+        }
+
+        @Override
+        public void message(String channel, String message) {
+            onMessage(channel, message);
+        }
+
+        @Override
+        public void onRedisDisconnected(RedisChannelHandler<?, ?> connection) {
+            if (connection == pubSubConnection) {
+                onDisconnected();
+            }
+        }
+
+        @Override
+        public void onRedisExceptionCaught(RedisChannelHandler<?, ?> connection, Throwable cause) {
+        }
+
+    }
+
+}
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 多频道复用订阅者基类, 负责维护频道与消息消费者的对应关系以及各频道的订阅状态,
+ * 子类只需要实现在复用连接上订阅和取消订阅单个频道的操作,
+ * 并在订阅生效、收到消息或者连接中断时回调相应方法.
+ *
+ * @author yangzexiong
+ * @see RedisMultiplexSubscription
+ */
+public abstract class AbstractMultiplexSubscription implements RedisMultiplexSubscription {
+
+    /**
+     * 保持订阅连接的频道, 没有其他频道时订阅连接也不会退出订阅状态
+     */
+    protected static final String KEEPALIVE_CHANNEL = "__distbtsync_redis_lock_sub_keepalive";
+
+    /**
+     * 订阅连接中断后重连的间隔时间(ms)
+     */
+    protected static final long RECONNECT_INTERVAL_MILLIS = 1000;
+
+    protected final Logger logger = LoggerFactory.getLogger(getClass());
+
+    /**
+     * 频道订阅信息
+     */
+    private final Map<String, ChannelSubscription> channels = new ConcurrentHashMap<>(64);
+
+    /**
+     * 频道订阅与取消订阅操作的互斥锁
+     */
+    protected final Object monitor = new Object();
+
+    private volatile boolean closed = false;
+
+    @Override
+    public boolean subscribe(String channel, MessageConsumer<String> messageConsumer) {
+        Objects.requireNonNull(channel, "Channel must not be null");
+        Objects.requireNonNull(messageConsumer, "MessageConsumer must not be null");
+        if (closed) {
+            throw new IllegalStateException("Subscription already closed");
+        }
+        synchronized (monitor) {
+            ChannelSubscription subscription = channels.get(channel);
+            if (subscription == null) {
+                subscription = new ChannelSubscription();
+                channels.put(channel, subscription);
+            }
+            subscription.consumers.add(messageConsumer);
+            if (!subscription.subscribed && !subscription.requested) {
+                subscription.requested = doSubscribe(channel);
+            }
+            return subscription.subscribed;
+        }
+    }
+
+    @Override
+    public void unsubscribe(String channel, MessageConsumer<String> messageConsumer) {
+        synchronized (monitor) {
+            ChannelSubscription subscription = channels.get(channel);
+            if (subscription != null && subscription.consumers.remove(messageConsumer)
+                    && subscription.consumers.isEmpty()) {
+                channels.remove(channel);
+                if (!closed && (subscription.subscribed || subscription.requested)) {
+                    doUnsubscribe(channel);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isSubscribed(String channel) {
+        ChannelSubscription subscription = channels.get(channel);
+        return subscription != null && subscription.subscribed;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channels.size();
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            synchronized (monitor) {
+                if (!closed) {
+                    closed = true;
+                    doClose();
+                }
+            }
+            onDisconnected();
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 在复用连接上订阅频道, 连接未就绪时返回 {@code false}, 待连接就绪后会通过
+     * {@link #resubscribeAll()} 或者下次调用 {@link #subscribe(String, MessageConsumer)} 时重新订阅.
+     * 调用时已持有 {@link #monitor} 锁.
+     * @param channel
+     * @return 订阅命令是否已发出
+     */
+    protected abstract boolean doSubscribe(String channel);
+
+    /**
+     * 在复用连接上取消订阅频道, 调用时已持有 {@link #monitor} 锁.
+     * @param channel
+     */
+    protected abstract void doUnsubscribe(String channel);
+
+    /**
+     * 关闭复用连接, 调用时已持有 {@link #monitor} 锁.
+     */
+    protected abstract void doClose();
+
+    /**
+     * 频道订阅生效后回调.
+     * @param channel
+     */
+    protected void onSubscribed(String channel) {
+        ChannelSubscription subscription = channels.get(channel);
+        if (subscription != null) {
+            subscription.subscribed = true;
+        }
+    }
+
+    /**
+     * 收到频道消息后分发给该频道的所有消费者.
+     * @param channel
+     * @param message
+     */
+    protected void onMessage(String channel, String message) {
+        ChannelSubscription subscription = channels.get(channel);
+        if (subscription != null) {
+            dispatch(subscription, message);
+        }
+    }
+
+    /**
+     * 订阅连接中断后回调, 重置所有频道的订阅状态,
+     * 并以 {@code null} 消息通知所有消费者, 因为连接中断期间的消息可能已经丢失.
+     */
+    protected void onDisconnected() {
+        List<ChannelSubscription> subscriptions;
+        synchronized (monitor) {
+            subscriptions = new ArrayList<>(channels.values());
+            for (ChannelSubscription subscription : subscriptions) {
+                subscription.subscribed = false;
+                subscription.requested = false;
+            }
+        }
+        for (ChannelSubscription subscription : subscriptions) {
+            dispatch(subscription, null);
+        }
+    }
+
+    /**
+     * 单个频道的订阅被服务端取消或者所在连接中断后回调, 重置该频道的订阅状态,
+     * 并以 {@code null} 消息通知该频道的消费者.
+     * @param channel
+     */
+    protected void onUnsubscribed(String channel) {
+        ChannelSubscription subscription;
+        synchronized (monitor) {
+            subscription = channels.get(channel);
+            if (subscription == null) {
+                return;
+            }
+            subscription.subscribed = false;
+            subscription.requested = false;
+        }
+        dispatch(subscription, null);
+    }
+
+    /**
+     * 重新订阅所有尚未订阅的频道, 一般在复用连接就绪后调用.
+     */
+    protected void resubscribeAll() {
+        synchronized (monitor) {
+            if (closed) {
+                return;
+            }
+            for (Map.Entry<String, ChannelSubscription> entry : channels.entrySet()) {
+                ChannelSubscription subscription = entry.getValue();
+                if (!subscription.subscribed && !subscription.requested) {
+                    subscription.requested = doSubscribe(entry.getKey());
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取当前注册的所有频道.
+     * @return
+     */
+    protected Set<String> getChannels() {
+        return channels.keySet();
+    }
+
+    private void dispatch(ChannelSubscription subscription, String message) {
+        for (MessageConsumer<String> consumer : subscription.consumers) {
+            try {
+                consumer.consume(message);
+            } catch (Exception e) {
+                logger.warn("Consume message from redis subscription error", e);
+            }
+        }
+    }
+
+    /**
+     * 单个频道的订阅信息.
+     *
+     * @author yangzexiong
+     */
+    private static class ChannelSubscription {
+
+        private final Set<MessageConsumer<String>> consumers = new CopyOnWriteArraySet<>();
+
+        /**
+         * 订阅是否已生效
+         */
+        private volatile boolean subscribed = false;
+
+        /**
+         * 订阅命令是否已发出
+         */
+        private volatile boolean requested = false;
+
+    }
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基于 {@link InMemoryPubSub} 实现的多频道复用订阅者, 订阅立即生效, 不需要工作线程和连接.
+ *
+ * @author yangzexiong
+ * @see RedisMultiplexSubscription
+ */
+public class InMemoryMultiplexSubscription extends AbstractMultiplexSubscription {
+
+    private final InMemoryPubSub pubSub;
+
+    private final Map<String, MessageConsumer<String>> listeners = new ConcurrentHashMap<>(64);
+
+    public InMemoryMultiplexSubscription(InMemoryPubSub pubSub) {
+        this.pubSub = Objects.requireNonNull(pubSub, "InMemoryPubSub must not be null");
+    }
+
+    @Override
+    protected boolean doSubscribe(String channel) {
+        MessageConsumer<String> listener = (message) -> onMessage(channel, message);
+        MessageConsumer<String> previous = listeners.put(channel, listener);
+        if (previous != null) {
+            pubSub.unsubscribe(channel, previous);
+        }
+        pubSub.subscribe(channel, listener);
+        onSubscribed(channel);
+        return true;
+    }
+
+    @Override
+    protected void doUnsubscribe(String channel) {
+        MessageConsumer<String> listener = listeners.remove(channel);
+        if (listener != null) {
+            pubSub.unsubscribe(channel, listener);
+        }
+    }
+
+    @Override
+    protected void doClose() {
+        listeners.forEach(pubSub::unsubscribe);
+        listeners.clear();
+    }
+
+}
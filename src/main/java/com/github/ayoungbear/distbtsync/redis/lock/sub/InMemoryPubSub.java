@@ -0,0 +1,96 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 进程内的发布/订阅频道, 发布的消息在发布线程中直接分发给该频道的所有消费者,
+ * 消费者不应在消费消息时执行阻塞操作.
+ *
+ * @author yangzexiong
+ * @see InMemorySubscription
+ * @see InMemoryMultiplexSubscription
+ */
+public class InMemoryPubSub {
+
+    private static final Logger logger = LoggerFactory.getLogger(InMemoryPubSub.class);
+
+    private final Map<String, Set<MessageConsumer<String>>> channels = new ConcurrentHashMap<>(64);
+
+    /**
+     * 为给定频道注册消息消费者.
+     * @param channel
+     * @param messageConsumer
+     */
+    public void subscribe(String channel, MessageConsumer<String> messageConsumer) {
+        Objects.requireNonNull(channel, "Channel must not be null");
+        Objects.requireNonNull(messageConsumer, "MessageConsumer must not be null");
+        channels.computeIfAbsent(channel, (c) -> new CopyOnWriteArraySet<>()).add(messageConsumer);
+    }
+
+    /**
+     * 注销给定频道的消息消费者.
+     * @param channel
+     * @param messageConsumer
+     */
+    public void unsubscribe(String channel, MessageConsumer<String> messageConsumer) {
+        channels.computeIfPresent(channel, (c, consumers) -> {
+            consumers.remove(messageConsumer);
+            return consumers.isEmpty() ? null : consumers;
+        });
+    }
+
+    /**
+     * 获取给定频道的消费者数量.
+     * @param channel
+     * @return
+     */
+    public int getSubscriberCount(String channel) {
+        Set<MessageConsumer<String>> consumers = channels.get(channel);
+        return consumers == null ? 0 : consumers.size();
+    }
+
+    /**
+     * 发布消息, 返回收到消息的消费者数量.
+     * @param channel
+     * @param message
+     * @return
+     */
+    public int publish(String channel, String message) {
+        Set<MessageConsumer<String>> consumers = channels.get(channel);
+        if (consumers == null) {
+            return 0;
+        }
+        int count = 0;
+        for (MessageConsumer<String> consumer : consumers) {
+            try {
+                consumer.consume(message);
+            } catch (Exception e) {
+                logger.warn("Consume message from in-memory channel '{}' error", channel, e);
+            }
+            count++;
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 基于 {@link InMemoryPubSub} 实现的单频道订阅者, 与 redis 客户端的订阅一样,
+ * {@link #subscribe()} 会阻塞直到取消订阅.
+ *
+ * @author yangzexiong
+ */
+public class InMemorySubscription implements RedisSubscription {
+
+    private final InMemoryPubSub pubSub;
+
+    private final String channel;
+
+    private final MessageConsumer<String> messageConsumer;
+
+    private final CountDownLatch unsubscribed = new CountDownLatch(1);
+
+    private volatile boolean subscribed = false;
+
+    public InMemorySubscription(InMemoryPubSub pubSub, String channel, MessageConsumer<String> messageConsumer) {
+        this.pubSub = Objects.requireNonNull(pubSub, "InMemoryPubSub must not be null");
+        this.channel = Objects.requireNonNull(channel, "Channel must not be null");
+        this.messageConsumer = Objects.requireNonNull(messageConsumer, "MessageConsumer must not be null");
+    }
+
+    @Override
+    public void subscribe() {
+        synchronized (this) {
+            if (unsubscribed.getCount() == 0) {
+                return;
+            }
+            pubSub.subscribe(channel, messageConsumer);
+            subscribed = true;
+        }
+        try {
+            unsubscribed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (this) {
+                subscribed = false;
+                pubSub.unsubscribe(channel, messageConsumer);
+            }
+        }
+    }
+
+    @Override
+    public void unsubscribe() {
+        unsubscribed.countDown();
+    }
+
+    @Override
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    @Override
+    public String getChannel() {
+        return channel;
+    }
+
+}
@@ -0,0 +1,42 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+import java.util.Objects;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * 基于 {@link redis.clients.jedis.JedisCluster} 实现的多频道复用订阅者.
+ * 集群模式下发布的消息会广播到所有节点, 所以只需在任意一个节点上订阅即可.
+ *
+ * @author yangzexiong
+ * @see RedisMultiplexSubscription
+ */
+public class JedisClusterMultiplexSubscription extends AbstractJedisMultiplexSubscription {
+
+    private JedisCluster jedisCluster;
+
+    public JedisClusterMultiplexSubscription(JedisCluster jedisCluster) {
+        this.jedisCluster = Objects.requireNonNull(jedisCluster, "JedisCluster must not be null");
+    }
+
+    @Override
+    protected void doBlockingSubscribe(JedisPubSub jedisPubSub, String channel) {
+        jedisCluster.subscribe(jedisPubSub, channel);
+    }
+
+}
@@ -0,0 +1,259 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.JedisClusterInfoCache;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * 基于 {@link redis.clients.jedis.JedisCluster} 实现的分片复用订阅者(SSUBSCRIBE), 需要 redis 7.0 以上.
+ * 分片发布(SPUBLISH)的消息只会发送到频道所在的分片, 所以每个分片主节点各使用一个订阅连接和一个工作线程,
+ * 频道在所在节点的连接上动态地订阅和取消订阅, 节点上没有频道后连接退出订阅状态并归还连接池.
+ * 槽位迁移或者连接中断导致频道被取消订阅时, 会以 {@code null} 消息通知该频道的消费者并重新订阅.
+ *
+ * @author yangzexiong
+ * @see RedisMultiplexSubscription
+ * @see JedisClusterShardedSubscription
+ */
+public class JedisClusterShardedMultiplexSubscription extends AbstractMultiplexSubscription {
+
+    private static final ProtocolCommand SSUBSCRIBE = () -> SafeEncoder.encode("SSUBSCRIBE");
+
+    private static final ProtocolCommand SUNSUBSCRIBE = () -> SafeEncoder.encode("SUNSUBSCRIBE");
+
+    private static final String SSUBSCRIBE_REPLY = "ssubscribe";
+
+    private static final String SMESSAGE_REPLY = "smessage";
+
+    private static final String SUNSUBSCRIBE_REPLY = "sunsubscribe";
+
+    private static final AtomicInteger WORKER_NUMBER = new AtomicInteger(0);
+
+    private final JedisCluster jedisCluster;
+
+    /**
+     * 各分片节点的订阅连接, 以节点地址为键, 由 {@link #monitor} 保护
+     */
+    private final Map<String, ShardWorker> shards = new HashMap<>();
+
+    public JedisClusterShardedMultiplexSubscription(JedisCluster jedisCluster) {
+        this.jedisCluster = Objects.requireNonNull(jedisCluster, "JedisCluster must not be null");
+    }
+
+    @Override
+    protected boolean doSubscribe(String channel) {
+        try {
+            Jedis jedis = jedisCluster.getConnectionFromSlot(JedisClusterCRC16.getSlot(channel));
+            String node = JedisClusterInfoCache.getNodeKey(jedis);
+            ShardWorker worker = shards.get(node);
+            if (worker != null) {
+                jedis.close();
+                worker.subscribe(channel);
+            } else {
+                worker = new ShardWorker(node, jedis);
+                try {
+                    worker.subscribe(channel);
+                } catch (RuntimeException e) {
+                    worker.discard();
+                    throw e;
+                }
+                shards.put(node, worker);
+                worker.start();
+            }
+            return true;
+        } catch (Exception e) {
+            logger.warn("Subscribe channel '{}' error", channel, e);
+        }
+        return false;
+    }
+
+    @Override
+    protected void doUnsubscribe(String channel) {
+        for (ShardWorker worker : shards.values()) {
+            if (worker.channels.remove(channel)) {
+                try {
+                    worker.unsubscribe(channel);
+                } catch (Exception e) {
+                    logger.warn("Unsubscribe channel '{}' error", channel, e);
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    protected void doClose() {
+        // 直接断开连接, 工作线程读取失败后退出, 断开的连接不会带着未读的回复归还连接池
+        for (ShardWorker worker : shards.values()) {
+            worker.discard();
+        }
+    }
+
+    /**
+     * 单个分片节点的订阅连接及其工作线程.
+     *
+     * @author yangzexiong
+     */
+    private class ShardWorker implements Runnable {
+
+        private final String node;
+
+        private final Jedis jedis;
+
+        private final Client client;
+
+        /**
+         * 在该连接上订阅的频道, 由 {@link #monitor} 保护
+         */
+        private final Set<String> channels = new HashSet<>();
+
+        /**
+         * 已发出但尚未收到回复的取消订阅命令数, 用于区分服务端主动取消的订阅, 由 {@link #monitor} 保护
+         */
+        private final Map<String, Integer> pendingUnsubscribes = new HashMap<>();
+
+        private ShardWorker(String node, Jedis jedis) {
+            this.node = node;
+            this.jedis = jedis;
+            this.client = jedis.getClient();
+            client.setTimeoutInfinite();
+        }
+
+        private void start() {
+            Thread thread = new Thread(this, "RedisLockShardedSubscription-" + WORKER_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void subscribe(String channel) {
+            channels.add(channel);
+            send(SSUBSCRIBE, channel);
+        }
+
+        private void unsubscribe(String channel) {
+            pendingUnsubscribes.merge(channel, 1, Integer::sum);
+            send(SUNSUBSCRIBE, channel);
+        }
+
+        private void discard() {
+            client.disconnect();
+            jedis.close();
+        }
+
+        @Override
+        public void run() {
+            boolean completed = false;
+            try {
+                completed = process();
+            } catch (Exception e) {
+                if (!isClosed()) {
+                    logger.warn("Redis sharded subscription connection to '{}' lost", node, e);
+                }
+            }
+            List<String> lostChannels;
+            synchronized (monitor) {
+                shards.remove(node, this);
+                lostChannels = new ArrayList<>(channels);
+                channels.clear();
+            }
+            if (completed) {
+                client.rollbackTimeout();
+                jedis.close();
+            } else {
+                // 连接可能仍处于订阅状态, 断开后再归还
+                discard();
+            }
+            if (!lostChannels.isEmpty() && !isClosed()) {
+                for (String channel : lostChannels) {
+                    onUnsubscribed(channel);
+                }
+                try {
+                    Thread.sleep(RECONNECT_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                resubscribeAll();
+            }
+        }
+
+        /**
+         * 读取订阅连接上的消息, 直到该连接上没有订阅的频道.
+         * @return
+         */
+        private boolean process() {
+            for (; ; ) {
+                List<Object> reply = client.getUnflushedObjectMultiBulkReply();
+                String type = SafeEncoder.encode((byte[]) reply.get(0));
+                if (SMESSAGE_REPLY.equalsIgnoreCase(type)) {
+                    onMessage(SafeEncoder.encode((byte[]) reply.get(1)), SafeEncoder.encode((byte[]) reply.get(2)));
+                } else if (SSUBSCRIBE_REPLY.equalsIgnoreCase(type)) {
+                    onSubscribed(SafeEncoder.encode((byte[]) reply.get(1)));
+                } else if (SUNSUBSCRIBE_REPLY.equalsIgnoreCase(type)) {
+                    String channel = reply.get(1) == null ? null : SafeEncoder.encode((byte[]) reply.get(1));
+                    boolean lost = false;
+                    boolean exit = false;
+                    synchronized (monitor) {
+                        Integer pending = channel == null ? null : pendingUnsubscribes.get(channel);
+                        if (pending != null) {
+                            if (pending > 1) {
+                                pendingUnsubscribes.put(channel, pending - 1);
+                            } else {
+                                pendingUnsubscribes.remove(channel);
+                            }
+                        } else if (channel != null) {
+                            // 不是由取消订阅命令产生的回复, 说明服务端主动取消了订阅(例如槽位迁移)
+                            lost = channels.remove(channel);
+                        }
+                        if ((Long) reply.get(2) == 0L && channels.isEmpty() && pendingUnsubscribes.isEmpty()) {
+                            shards.remove(node, this);
+                            exit = true;
+                        }
+                    }
+                    if (lost) {
+                        onUnsubscribed(channel);
+                        resubscribeAll();
+                    }
+                    if (exit) {
+                        return true;
+                    }
+                }
+            }
+        }
+
+        private void send(ProtocolCommand command, String channel) {
+            client.sendCommand(command, channel);
+            // 只刷新输出缓冲, 回复由工作线程读取
+            client.getMany(0);
+        }
+
+    }
+
+}
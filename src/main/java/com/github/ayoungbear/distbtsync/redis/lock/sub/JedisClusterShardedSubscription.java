@@ -0,0 +1,143 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+import java.util.List;
+import java.util.Objects;
+import redis.clients.jedis.Client;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.commands.ProtocolCommand;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import redis.clients.jedis.util.SafeEncoder;
+
+/**
+ * 基于 {@link redis.clients.jedis.JedisCluster} 实现的分片订阅者(SSUBSCRIBE), 需要 redis 7.0 以上.
+ * 只连接频道所在槽位的主节点订阅, 分片发布(SPUBLISH)的消息不会在整个集群中广播.
+ * 槽位迁移后服务端会取消订阅, 此时订阅方法返回, 由调用方重新订阅.
+ *
+ * @author yangzexiong
+ * @see RedisSubscription
+ */
+public class JedisClusterShardedSubscription implements RedisSubscription {
+
+    private static final ProtocolCommand SSUBSCRIBE = () -> SafeEncoder.encode("SSUBSCRIBE");
+
+    private static final ProtocolCommand SUNSUBSCRIBE = () -> SafeEncoder.encode("SUNSUBSCRIBE");
+
+    private static final String SSUBSCRIBE_REPLY = "ssubscribe";
+
+    private static final String SMESSAGE_REPLY = "smessage";
+
+    private static final String SUNSUBSCRIBE_REPLY = "sunsubscribe";
+
+    private final JedisCluster jedisCluster;
+
+    private final String channel;
+
+    private final MessageConsumer<String> messageConsumer;
+
+    /**
+     * 当前的订阅连接
+     */
+    private Jedis jedis;
+
+    private volatile boolean subscribed = false;
+
+    public JedisClusterShardedSubscription(JedisCluster jedisCluster, String channel,
+            MessageConsumer<String> messageConsumer) {
+        this.jedisCluster = Objects.requireNonNull(jedisCluster, "JedisCluster must not be null");
+        this.channel = Objects.requireNonNull(channel, "Channel must not be null");
+        this.messageConsumer = messageConsumer;
+    }
+
+    @Override
+    public void subscribe() {
+        Client client;
+        synchronized (this) {
+            if (jedis != null) {
+                throw new IllegalMonitorStateException("Already in a subscription");
+            }
+            jedis = jedisCluster.getConnectionFromSlot(JedisClusterCRC16.getSlot(channel));
+            client = jedis.getClient();
+            client.setTimeoutInfinite();
+            send(client, SSUBSCRIBE);
+        }
+        boolean completed = false;
+        try {
+            process(client);
+            completed = true;
+        } finally {
+            synchronized (this) {
+                subscribed = false;
+                if (completed) {
+                    client.rollbackTimeout();
+                } else {
+                    // 连接可能仍处于订阅状态, 断开后再归还
+                    client.disconnect();
+                }
+                jedis.close();
+                jedis = null;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void unsubscribe() {
+        if (jedis != null) {
+            send(jedis.getClient(), SUNSUBSCRIBE);
+        }
+    }
+
+    @Override
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    @Override
+    public String getChannel() {
+        return channel;
+    }
+
+    /**
+     * 读取订阅连接上的消息, 直到取消订阅.
+     * @param client
+     */
+    private void process(Client client) {
+        for (; ; ) {
+            List<Object> reply = client.getUnflushedObjectMultiBulkReply();
+            String type = SafeEncoder.encode((byte[]) reply.get(0));
+            if (SMESSAGE_REPLY.equalsIgnoreCase(type)) {
+                if (messageConsumer != null) {
+                    messageConsumer.consume(SafeEncoder.encode((byte[]) reply.get(2)));
+                }
+            } else if (SSUBSCRIBE_REPLY.equalsIgnoreCase(type)) {
+                subscribed = true;
+            } else if (SUNSUBSCRIBE_REPLY.equalsIgnoreCase(type)) {
+                return;
+            }
+        }
+    }
+
+    private void send(Client client, ProtocolCommand command) {
+        client.sendCommand(command, channel);
+        // 只刷新输出缓冲, 回复由订阅线程读取
+        client.getMany(0);
+    }
+
+}
@@ -0,0 +1,47 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+import java.util.Objects;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * 基于 {@link redis.clients.jedis.JedisPool} 实现的多频道复用订阅者.
+ *
+ * @author yangzexiong
+ * @see RedisMultiplexSubscription
+ */
+public class JedisPoolMultiplexSubscription extends AbstractJedisMultiplexSubscription {
+
+    private JedisPool jedisPool;
+
+    public JedisPoolMultiplexSubscription(JedisPool jedisPool) {
+        this.jedisPool = Objects.requireNonNull(jedisPool, "JedisPool must not be null");
+    }
+
+    @Override
+    protected void doBlockingSubscribe(JedisPubSub jedisPubSub, String channel) {
+        Jedis jedis = jedisPool.getResource();
+        try {
+            jedis.subscribe(jedisPubSub, channel);
+        } finally {
+            jedis.close();
+        }
+    }
+
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+import java.util.Objects;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.connection.Subscription;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+
+/**
+ * 基于 {@link org.springframework.data.redis.connection.RedisConnection} 实现的多频道复用订阅者.
+ * 使用一个守护线程持有订阅连接, {@link RedisConnection#subscribe} 根据实现类不同可能是阻塞的,
+ * 比如 JedisConnection, 也可能是异步的, 比如 LettuceConnection, 此时工作线程会等待直到关闭.
+ *
+ * @author yangzexiong
+ * @see RedisMultiplexSubscription
+ */
+public class RedisConnectionMultiplexSubscription extends AbstractMultiplexSubscription implements MessageListener {
+
+    private static final AtomicInteger WORKER_NUMBER = new AtomicInteger(0);
+
+    private Supplier<RedisConnection> redisConnectionSupplier;
+
+    private volatile RedisConnection subRedisConnection;
+
+    private Thread worker;
+
+    private final Semaphore latch = new Semaphore(0);
+
+    private StringRedisSerializer serializer = new StringRedisSerializer();
+
+    public RedisConnectionMultiplexSubscription(Supplier<RedisConnection> redisConnectionSupplier) {
+        this.redisConnectionSupplier = Objects.requireNonNull(redisConnectionSupplier,
+                "RedisConnectionSupplier must not be null");
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        onMessage(serializer.deserialize(message.getChannel()), serializer.deserialize(message.getBody()));
+    }
+
+    @Override
+    protected boolean doSubscribe(String channel) {
+        startWorkerIfNecessary();
+        Subscription subscription = getSubscription();
+        if (subscription != null) {
+            try {
+                subscription.subscribe(serializer.serialize(channel));
+                // 没有订阅确认回调, 命令发出即认为订阅生效
+                onSubscribed(channel);
+                return true;
+            } catch (Exception e) {
+                // 阻塞式订阅的连接可能尚未就绪, 下次订阅时重试
+                logger.debug("Subscribe channel '{}' error", channel, e);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void doUnsubscribe(String channel) {
+        Subscription subscription = getSubscription();
+        if (subscription != null) {
+            try {
+                subscription.unsubscribe(serializer.serialize(channel));
+            } catch (Exception e) {
+                logger.warn("Unsubscribe channel '{}' error", channel, e);
+            }
+        }
+    }
+
+    @Override
+    protected void doClose() {
+        Subscription subscription = getSubscription();
+        if (subscription != null) {
+            try {
+                subscription.close();
+            } catch (Exception e) {
+                logger.warn("Close redis subscription error", e);
+            }
+        }
+        latch.release();
+    }
+
+    private Subscription getSubscription() {
+        RedisConnection subRedisConnection = this.subRedisConnection;
+        if (subRedisConnection != null) {
+            Subscription subscription = subRedisConnection.getSubscription();
+            if (subscription != null && subscription.isAlive()) {
+                return subscription;
+            }
+        }
+        return null;
+    }
+
+    private void startWorkerIfNecessary() {
+        if (worker == null) {
+            Thread worker = new Thread(this::work, "RedisLockMultiplexSubscription-" + WORKER_NUMBER.incrementAndGet());
+            worker.setDaemon(true);
+            worker.start();
+            this.worker = worker;
+        }
+    }
+
+    private void work() {
+        while (!isClosed()) {
+            RedisConnection redisConnection = null;
+            try {
+                redisConnection = Objects.requireNonNull(redisConnectionSupplier.get());
+                this.subRedisConnection = redisConnection;
+                redisConnection.subscribe(this, serializer.serialize(KEEPALIVE_CHANNEL));
+                // 异步订阅在此等待, 直到关闭或订阅失效
+                if (redisConnection.isSubscribed()) {
+                    resubscribeAll();
+                    while (!isClosed() && redisConnection.isSubscribed()) {
+                        latch.tryAcquire(RECONNECT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                if (!isClosed()) {
+                    logger.warn("Redis subscription connection lost, reconnect after {} ms", RECONNECT_INTERVAL_MILLIS,
+                            e);
+                }
+            } finally {
+                this.subRedisConnection = null;
+                closeQuietly(redisConnection);
+            }
+            onDisconnected();
+            if (!isClosed()) {
+                try {
+                    latch.tryAcquire(RECONNECT_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void closeQuietly(RedisConnection redisConnection) {
+        if (redisConnection != null) {
+            try {
+                redisConnection.close();
+            } catch (Exception e) {
+                logger.debug("Close redis connection error", e);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+/**
+ * 定义 Redis 多频道复用订阅功能操作接口.
+ * 所有频道共用同一个订阅连接(以及最多一个工作线程), 频道的订阅与取消订阅都在该连接上完成,
+ * 收到消息后分发给相应频道的消息消费者, 所以无论有多少频道被订阅, 线程数和连接数都是固定的.
+ * 当订阅连接中断时, 会以 {@code null} 消息通知所有消费者, 以免消费者错过消息而一直等待.
+ *
+ * @author yangzexiong
+ * @see RedisSubscription
+ */
+public interface RedisMultiplexSubscription {
+
+    /**
+     * 为给定频道注册消息消费者, 如果频道未订阅则在复用连接上订阅该频道,
+     * 该方法不会阻塞等待订阅完成.
+     * 对已注册的消费者重复调用是安全的, 若订阅尚未生效则会尝试重新订阅.
+     * @param channel 频道
+     * @param messageConsumer 消息消费者
+     * @return 频道的订阅是否已经生效
+     */
+    boolean subscribe(String channel, MessageConsumer<String> messageConsumer);
+
+    /**
+     * 注销给定频道的消息消费者, 频道上没有消费者时取消订阅该频道.
+     * @param channel 频道
+     * @param messageConsumer 消息消费者
+     */
+    void unsubscribe(String channel, MessageConsumer<String> messageConsumer);
+
+    /**
+     * 给定频道的订阅是否已经生效.
+     * @param channel
+     * @return
+     */
+    boolean isSubscribed(String channel);
+
+    /**
+     * 获取当前注册的频道数量.
+     * @return
+     */
+    int getChannelCount();
+
+    /**
+     * 关闭订阅连接并释放资源.
+     */
+    void close();
+
+}
@@ -0,0 +1,1106 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock.support;
+
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockCommands;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockScript;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.InMemoryMultiplexSubscription;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.InMemoryPubSub;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.InMemorySubscription;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.MessageConsumer;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisMultiplexSubscription;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisSubscription;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 不依赖 redis 服务的进程内分布式锁操作接口实现, 使用 java 代码按脚本名称实现锁脚本的语义
+ * (基于 hash 的可重入锁、pttl、pexpire、publish 等), 解锁消息通过 {@link InMemoryPubSub} 在进程内传递.
+ * 适用于单实例部署以及离线测试, 同一个实例内的锁才是互斥的.
+ * <p>
+ * 与 redis 单线程执行脚本一样, 所有脚本串行执行, 所以脚本是原子的;
+ * 过期的键在下次访问时删除. 自定义的锁脚本需要通过 {@link #registerScript(String, ScriptHandler)} 注册对应的实现.
+ *
+ * @author yangzexiong
+ */
+public class InMemoryRedisLockCommands implements RedisLockCommands {
+
+    private static final String SUCCESS = "1";
+    private static final String FAIL = "0";
+
+    /**
+     * 内置锁脚本的实现, 以脚本名称区分
+     */
+    private static final Map<String, ScriptHandler> DEFAULT_SCRIPTS = new HashMap<>();
+
+    static {
+        DEFAULT_SCRIPTS.put("tryAcquire", (keyspace, keys, args) -> {
+            String key = keys.get(0);
+            if (!keyspace.exists(key) || keyspace.hexists(key, args.get(0))) {
+                keyspace.hincrby(key, args.get(0), 1);
+                long leaseTimeMillis = Long.parseLong(args.get(1));
+                if (leaseTimeMillis > 0) {
+                    keyspace.pexpire(key, leaseTimeMillis);
+                }
+                return "OK";
+            }
+            if (!args.get(2).isEmpty()) {
+                keyspace.hset(key, args.get(2), 1);
+            }
+            return String.valueOf(keyspace.pttl(key));
+        });
+        DEFAULT_SCRIPTS.put("tryRelease", (keyspace, keys, args) -> {
+            String key = keys.get(0);
+            if (!keyspace.hexists(key, args.get(0))) {
+                return "-1";
+            }
+            long counter = keyspace.hincrby(key, args.get(0), -1);
+            if (counter > 0) {
+                return String.valueOf(counter);
+            }
+            boolean waiting = keyspace.hexists(key, args.get(2));
+            keyspace.del(key);
+            if (waiting) {
+                keyspace.publish(args.get(1), key);
+            }
+            return "0";
+        });
+        DEFAULT_SCRIPTS.put("delete", (keyspace, keys, args) -> toFlag(keyspace.del(keys.get(0))));
+        DEFAULT_SCRIPTS.put("isAcquired", (keyspace, keys, args) -> toFlag(keyspace.hexists(keys.get(0), args.get(0))));
+        DEFAULT_SCRIPTS.put("exists", (keyspace, keys, args) -> toFlag(keyspace.exists(keys.get(0))));
+        DEFAULT_SCRIPTS.put("holdCount", (keyspace, keys, args) -> keyspace.hget(keys.get(0), args.get(0)));
+        DEFAULT_SCRIPTS.put("expired", (keyspace, keys, args) -> {
+            String key = keys.get(0);
+            if (!keyspace.hexists(key, args.get(0))) {
+                return FAIL;
+            }
+            long leaseTimeMillis = Long.parseLong(args.get(1));
+            if (leaseTimeMillis > 0) {
+                return toFlag(keyspace.pexpire(key, leaseTimeMillis));
+            }
+            keyspace.persist(key);
+            return SUCCESS;
+        });
+        DEFAULT_SCRIPTS.put("renew", (keyspace, keys, args) -> {
+            String leaseTime = args.get(keys.size());
+            StringBuilder result = new StringBuilder(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                if (keyspace.hexists(keys.get(i), args.get(i))) {
+                    keyspace.pexpire(keys.get(i), Long.parseLong(leaseTime));
+                    result.append(SUCCESS);
+                } else {
+                    result.append(FAIL);
+                }
+            }
+            return result.toString();
+        });
+        DEFAULT_SCRIPTS.put("fairTryAcquire", (keyspace, keys, args) -> {
+            String key = keys.get(0);
+            String identifier = args.get(0);
+            long leaseTimeMillis = Long.parseLong(args.get(1));
+            long now = Long.parseLong(args.get(2));
+            for (String first; (first = keyspace.lindex(keys.get(1), 0)) != null; ) {
+                Double timeout = keyspace.zscore(keys.get(2), first);
+                if (timeout != null && timeout > now) {
+                    break;
+                }
+                keyspace.lpop(keys.get(1));
+                keyspace.zrem(keys.get(2), first);
+            }
+            String count = keyspace.hget(key, identifier);
+            if (count != null) {
+                keyspace.hincrby(key, identifier, 1);
+                if (leaseTimeMillis > 0) {
+                    keyspace.pexpire(key, leaseTimeMillis);
+                } else if ("0".equals(count)) {
+                    keyspace.persist(key);
+                }
+                return "OK";
+            }
+            if (!keyspace.exists(key)) {
+                String first = keyspace.lindex(keys.get(1), 0);
+                if (first == null || first.equals(identifier)) {
+                    if (first != null) {
+                        keyspace.lpop(keys.get(1));
+                        keyspace.zrem(keys.get(2), identifier);
+                    }
+                    keyspace.hset(key, identifier, 1);
+                    if (leaseTimeMillis > 0) {
+                        keyspace.pexpire(key, leaseTimeMillis);
+                    }
+                    return "OK";
+                }
+            }
+            if ("1".equals(args.get(4))) {
+                if (keyspace.zscore(keys.get(2), identifier) == null) {
+                    keyspace.rpush(keys.get(1), identifier);
+                }
+                keyspace.zadd(keys.get(2), now + Long.parseLong(args.get(3)), identifier);
+            }
+            return String.valueOf(keyspace.pttl(key));
+        });
+        DEFAULT_SCRIPTS.put("fairRelease", (keyspace, keys, args) -> {
+            String key = keys.get(0);
+            if (!keyspace.hexists(key, args.get(0))) {
+                return "-1";
+            }
+            long counter = keyspace.hincrby(key, args.get(0), -1);
+            if (counter > 0) {
+                return String.valueOf(counter);
+            }
+            keyspace.del(key);
+            grantNextWaiter(keyspace, keys, args);
+            return "0";
+        });
+        DEFAULT_SCRIPTS.put("fairCancel", (keyspace, keys, args) -> {
+            keyspace.lrem(keys.get(1), args.get(0));
+            keyspace.zrem(keys.get(2), args.get(0));
+            if ("0".equals(keyspace.hget(keys.get(0), args.get(0)))) {
+                keyspace.del(keys.get(0));
+                grantNextWaiter(keyspace, keys, args);
+                return SUCCESS;
+            }
+            return FAIL;
+        });
+        DEFAULT_SCRIPTS.put("fairForceUnlock", (keyspace, keys, args) -> {
+            boolean deleted = keyspace.del(keys.get(0));
+            grantNextWaiter(keyspace, keys, args);
+            return toFlag(deleted);
+        });
+        DEFAULT_SCRIPTS.put("rwReadTryAcquire", (keyspace, keys, args) -> {
+            String key = keys.get(0);
+            String mode = keyspace.hget(key, args.get(5));
+            long ttl = keyspace.pttl(key);
+            long now = Long.parseLong(args.get(4));
+            boolean acquirable = !keyspace.exists(key) || keyspace.hexists(key, args.get(0));
+            if (!acquirable && "1".equals(mode)) {
+                String deadline = keyspace.hget(key, args.get(6));
+                if (deadline == null || Long.parseLong(deadline) <= now) {
+                    keyspace.hdel(key, args.get(6));
+                    acquirable = true;
+                } else {
+                    long remaining = Long.parseLong(deadline) - now;
+                    if (ttl < 0 || remaining < ttl) {
+                        ttl = remaining;
+                    }
+                }
+            } else if (!acquirable && "2".equals(mode)) {
+                acquirable = keyspace.hexists(key, args.get(3));
+            }
+            if (acquirable) {
+                if (mode == null) {
+                    keyspace.hset(key, args.get(5), 1);
+                }
+                keyspace.hincrby(key, args.get(0), 1);
+                long leaseTimeMillis = Long.parseLong(args.get(1));
+                if (leaseTimeMillis <= 0) {
+                    keyspace.persist(key);
+                } else if (mode == null || (ttl > 0 && ttl < leaseTimeMillis)) {
+                    keyspace.pexpire(key, leaseTimeMillis);
+                }
+                return "OK";
+            }
+            if (!args.get(2).isEmpty()) {
+                keyspace.hset(key, args.get(2), 1);
+            }
+            return String.valueOf(ttl);
+        });
+        DEFAULT_SCRIPTS.put("rwWriteTryAcquire", (keyspace, keys, args) -> {
+            String key = keys.get(0);
+            String mode = keyspace.hget(key, args.get(3));
+            if (!keyspace.exists(key) || ("2".equals(mode) && keyspace.hexists(key, args.get(0)))) {
+                if (mode == null) {
+                    keyspace.hset(key, args.get(3), 2);
+                }
+                keyspace.hincrby(key, args.get(0), 1);
+                long leaseTimeMillis = Long.parseLong(args.get(1));
+                if (leaseTimeMillis > 0) {
+                    keyspace.pexpire(key, leaseTimeMillis);
+                }
+                return "OK";
+            }
+            if (!args.get(2).isEmpty()) {
+                keyspace.hset(key, args.get(2), 1);
+                if (mode != null) {
+                    keyspace.hset(key, args.get(4), Long.parseLong(args.get(5)));
+                }
+            }
+            return String.valueOf(keyspace.pttl(key));
+        });
+        DEFAULT_SCRIPTS.put("rwRelease", (keyspace, keys, args) -> {
+            String key = keys.get(0);
+            if (!keyspace.hexists(key, args.get(0))) {
+                return "-1";
+            }
+            long counter = keyspace.hincrby(key, args.get(0), -1);
+            if (counter > 0) {
+                return String.valueOf(counter);
+            }
+            keyspace.hdel(key, args.get(0));
+            long holders = keyspace.hlen(key);
+            for (int i : new int[]{4, 1, 5}) {
+                holders -= keyspace.hexists(key, args.get(i)) ? 1 : 0;
+            }
+            if (holders <= 0) {
+                boolean waiting = keyspace.hexists(key, args.get(1));
+                keyspace.del(key);
+                if (waiting) {
+                    keyspace.publish(args.get(3), key);
+                }
+            } else if ("1".equals(args.get(6))) {
+                keyspace.hset(key, args.get(4), 1);
+                if (keyspace.hdel(key, args.get(1))) {
+                    keyspace.publish(args.get(3), key);
+                }
+            }
+            return "0";
+        });
+        DEFAULT_SCRIPTS.put("rwMode", (keyspace, keys, args) -> {
+            String mode = keyspace.hget(keys.get(0), args.get(0));
+            return mode == null ? FAIL : mode;
+        });
+        DEFAULT_SCRIPTS.put("rwHoldCount", (keyspace, keys, args) -> {
+            String count = keyspace.hget(keys.get(0), args.get(0));
+            return count == null ? FAIL : count;
+        });
+        DEFAULT_SCRIPTS.put("multiTryAcquire", (keyspace, keys, args) -> {
+            for (String key : keys) {
+                if (keyspace.exists(key) && !keyspace.hexists(key, args.get(0))) {
+                    if (!args.get(2).isEmpty()) {
+                        keyspace.hset(key, args.get(2), 1);
+                    }
+                    return String.valueOf(keyspace.pttl(key));
+                }
+            }
+            long leaseTimeMillis = Long.parseLong(args.get(1));
+            for (String key : keys) {
+                keyspace.hincrby(key, args.get(0), 1);
+                if (leaseTimeMillis > 0) {
+                    keyspace.pexpire(key, leaseTimeMillis);
+                }
+            }
+            return "OK";
+        });
+        DEFAULT_SCRIPTS.put("multiTryRelease", (keyspace, keys, args) -> {
+            long counter = 0;
+            boolean missing = false;
+            for (int i = 0; i < keys.size(); i++) {
+                String key = keys.get(i);
+                if (!keyspace.hexists(key, args.get(0))) {
+                    missing = true;
+                    continue;
+                }
+                counter = keyspace.hincrby(key, args.get(0), -1);
+                if (counter <= 0) {
+                    boolean waiting = keyspace.hexists(key, args.get(1));
+                    keyspace.del(key);
+                    if (waiting) {
+                        keyspace.publish(args.get(3 + i), key);
+                    }
+                }
+            }
+            return missing ? "-1" : String.valueOf(counter);
+        });
+        DEFAULT_SCRIPTS.put("multiHoldCount", (keyspace, keys, args) -> {
+            long count = Long.MAX_VALUE;
+            for (String key : keys) {
+                String value = keyspace.hget(key, args.get(0));
+                if (value == null) {
+                    return FAIL;
+                }
+                count = Math.min(count, Long.parseLong(value));
+            }
+            return String.valueOf(count);
+        });
+        DEFAULT_SCRIPTS.put("multiExists", (keyspace, keys, args) -> {
+            for (String key : keys) {
+                if (keyspace.exists(key)) {
+                    return SUCCESS;
+                }
+            }
+            return FAIL;
+        });
+        DEFAULT_SCRIPTS.put("multiDelete", (keyspace, keys, args) -> {
+            int deleted = 0;
+            for (String key : keys) {
+                deleted += keyspace.del(key) ? 1 : 0;
+            }
+            return String.valueOf(deleted);
+        });
+        DEFAULT_SCRIPTS.put("multiExpired", (keyspace, keys, args) -> {
+            for (String key : keys) {
+                if (!keyspace.hexists(key, args.get(0))) {
+                    return FAIL;
+                }
+            }
+            long leaseTimeMillis = Long.parseLong(args.get(1));
+            for (String key : keys) {
+                if (leaseTimeMillis > 0) {
+                    keyspace.pexpire(key, leaseTimeMillis);
+                } else {
+                    keyspace.persist(key);
+                }
+            }
+            return SUCCESS;
+        });
+        DEFAULT_SCRIPTS.put("semaphoreTryAcquire", (keyspace, keys, args) -> {
+            purgeExpiredPermits(keyspace, keys, args);
+            long permits = Long.parseLong(args.get(6));
+            String used = keyspace.hget(keys.get(0), args.get(1));
+            if ((used == null ? 0 : Long.parseLong(used)) + permits <= Long.parseLong(args.get(7))) {
+                long held = keyspace.hincrby(keys.get(0), args.get(5), permits);
+                keyspace.hincrby(keys.get(0), args.get(1), permits);
+                if (args.get(8).isEmpty()) {
+                    keyspace.zrem(keys.get(1), args.get(5));
+                } else {
+                    Double score = keyspace.zscore(keys.get(1), args.get(5));
+                    double deadline = Double.parseDouble(args.get(8));
+                    if (held == permits || (score != null && deadline > score)) {
+                        keyspace.zadd(keys.get(1), deadline, args.get(5));
+                    }
+                }
+                return "OK";
+            }
+            if (!args.get(9).isEmpty()) {
+                keyspace.hset(keys.get(0), args.get(2), 1);
+            }
+            List<String> holders = keyspace.zrangebyscore(keys.get(1), Double.NEGATIVE_INFINITY,
+                    Double.POSITIVE_INFINITY);
+            if (holders.isEmpty()) {
+                return "-1";
+            }
+            double first = keyspace.zscore(keys.get(1), holders.get(0));
+            return String.valueOf(Math.max((long) first - Long.parseLong(args.get(0)), 1));
+        });
+        DEFAULT_SCRIPTS.put("semaphoreRelease", (keyspace, keys, args) -> {
+            String value = keyspace.hget(keys.get(0), args.get(5));
+            long held = value == null ? 0 : Long.parseLong(value);
+            long permits = Long.parseLong(args.get(6));
+            if (held < permits) {
+                return "-1";
+            }
+            if (held > permits) {
+                keyspace.hincrby(keys.get(0), args.get(5), -permits);
+            } else {
+                keyspace.hdel(keys.get(0), args.get(5));
+                keyspace.zrem(keys.get(1), args.get(5));
+            }
+            long used = keyspace.hincrby(keys.get(0), args.get(1), -permits);
+            if (keyspace.hdel(keys.get(0), args.get(2))) {
+                keyspace.publish(args.get(4), keys.get(0));
+            }
+            if (used <= 0) {
+                keyspace.del(keys.get(0));
+            }
+            return String.valueOf(held - permits);
+        });
+        DEFAULT_SCRIPTS.put("semaphoreRenew", (keyspace, keys, args) -> {
+            purgeExpiredPermits(keyspace, keys, args);
+            if (!keyspace.hexists(keys.get(0), args.get(5))) {
+                return FAIL;
+            }
+            if (args.get(6).isEmpty()) {
+                keyspace.zrem(keys.get(1), args.get(5));
+            } else {
+                keyspace.zadd(keys.get(1), Double.parseDouble(args.get(6)), args.get(5));
+            }
+            return SUCCESS;
+        });
+        DEFAULT_SCRIPTS.put("semaphoreAvailable", (keyspace, keys, args) -> {
+            purgeExpiredPermits(keyspace, keys, args);
+            String used = keyspace.hget(keys.get(0), args.get(1));
+            return String.valueOf(Math.max(Long.parseLong(args.get(5)) - (used == null ? 0 : Long.parseLong(used)), 0));
+        });
+        DEFAULT_SCRIPTS.put("semaphoreHeld", (keyspace, keys, args) -> {
+            purgeExpiredPermits(keyspace, keys, args);
+            String held = keyspace.hget(keys.get(0), args.get(5));
+            return held == null ? FAIL : held;
+        });
+        DEFAULT_SCRIPTS.put("semaphoreDelete", (keyspace, keys, args) -> {
+            boolean waiting = keyspace.hexists(keys.get(0), args.get(2));
+            boolean deleted = keyspace.del(keys.get(0));
+            keyspace.del(keys.get(1));
+            if (waiting) {
+                keyspace.publish(args.get(4), keys.get(0));
+            }
+            return toFlag(deleted);
+        });
+        DEFAULT_SCRIPTS.put("rateLimiterTryAcquire", (keyspace, keys, args) -> {
+            double now = Double.parseDouble(args.get(0));
+            double interval = Double.parseDouble(args.get(1));
+            double capacity = Double.parseDouble(args.get(2));
+            long min = Long.parseLong(args.get(3));
+            String value = keyspace.hget(keys.get(0), args.get(5));
+            double tat = Math.max(value == null ? now : Double.parseDouble(value), now);
+            long granted = Math.min((long) Math.floor((now + interval * capacity - tat) / interval),
+                    Long.parseLong(args.get(4)));
+            if (granted < min) {
+                double wait = (tat + interval * (min - capacity) - now) / 1000;
+                return String.valueOf(-Math.max((long) Math.ceil(wait), 1));
+            }
+            tat += interval * granted;
+            keyspace.hset(keys.get(0), args.get(5), (long) Math.ceil(tat));
+            keyspace.pexpire(keys.get(0), (long) Math.ceil((tat - now) / 1000) + 1);
+            return String.valueOf(granted);
+        });
+        DEFAULT_SCRIPTS.put("scheduledTryAcquire", (keyspace, keys, args) -> {
+            String key = keys.get(0);
+            if (keyspace.exists(key)) {
+                return String.valueOf(keyspace.pttl(key));
+            }
+            keyspace.hset(key, args.get(0), 1);
+            long leaseTime = Long.parseLong(args.get(1));
+            if (leaseTime > 0) {
+                keyspace.pexpire(key, leaseTime);
+            }
+            return "OK";
+        });
+        DEFAULT_SCRIPTS.put("scheduledRelease", (keyspace, keys, args) -> {
+            String key = keys.get(0);
+            if (!keyspace.hexists(key, args.get(0))) {
+                return "0";
+            }
+            long retainTime = Long.parseLong(args.get(1));
+            if (retainTime > 0) {
+                keyspace.hset(key, args.get(2), 1);
+                keyspace.hdel(key, args.get(0));
+                keyspace.pexpire(key, retainTime);
+                return "1";
+            }
+            boolean waiting = keyspace.hexists(key, args.get(3));
+            keyspace.del(key);
+            if (waiting) {
+                keyspace.publish(args.get(5), key);
+            }
+            return "1";
+        });
+        DEFAULT_SCRIPTS.put("coalesceStore", (keyspace, keys, args) -> {
+            String value = keyspace.get(keys.get(0));
+            long generation = value == null ? 1 : Long.parseLong(value.substring(0, value.indexOf(':'))) + 1;
+            keyspace.set(keys.get(0), generation + ":" + args.get(0));
+            keyspace.pexpire(keys.get(0), Long.parseLong(args.get(1)));
+            return String.valueOf(generation);
+        });
+        DEFAULT_SCRIPTS.put("coalesceMark", (keyspace, keys, args) -> {
+            String value = keyspace.get(keys.get(0));
+            return value == null ? "0" : value.substring(0, value.indexOf(':'));
+        });
+        DEFAULT_SCRIPTS.put("coalesceGet", (keyspace, keys, args) -> {
+            String value = keyspace.get(keys.get(0));
+            return value == null ? "" : value;
+        });
+    }
+
+    private final InMemoryPubSub pubSub;
+
+    private final Keyspace keyspace;
+
+    private final Map<String, ScriptHandler> scripts = new ConcurrentHashMap<>(DEFAULT_SCRIPTS);
+
+    /**
+     * 已执行过的脚本内容与名称的对应关系, 用于按脚本内容执行
+     */
+    private final Map<String, String> scriptNames = new ConcurrentHashMap<>();
+
+    private volatile RedisMultiplexSubscription multiplexSubscription;
+
+    public InMemoryRedisLockCommands() {
+        this(new InMemoryPubSub());
+    }
+
+    public InMemoryRedisLockCommands(InMemoryPubSub pubSub) {
+        this.pubSub = Objects.requireNonNull(pubSub, "InMemoryPubSub must not be null");
+        this.keyspace = new Keyspace(pubSub);
+    }
+
+    /**
+     * 注册给定名称的锁脚本的实现, 会覆盖同名的已有实现.
+     * @param name 脚本名称, 参考 {@link RedisLockScript#getName()}
+     * @param handler 脚本实现
+     * @return
+     */
+    public InMemoryRedisLockCommands registerScript(String name, ScriptHandler handler) {
+        Objects.requireNonNull(name, "Name must not be null");
+        Objects.requireNonNull(handler, "ScriptHandler must not be null");
+        scripts.put(name, handler);
+        return this;
+    }
+
+    /**
+     * 只能执行已经通过 {@link #evalsha(RedisLockScript, String, String...)} 执行过的脚本内容,
+     * 否则无法确定脚本对应的实现.
+     */
+    @Override
+    public String eval(String script, String key, String... args) {
+        String name = scriptNames.get(script);
+        if (name == null) {
+            throw new UnsupportedOperationException("Unknown script for in-memory commands: " + script);
+        }
+        return execute(getHandler(name), Collections.singletonList(key), Arrays.asList(args));
+    }
+
+    @Override
+    public String evalsha(RedisLockScript script, String key, String... args) {
+        return execute(getHandler(script), Collections.singletonList(key), Arrays.asList(args));
+    }
+
+    @Override
+    public String evalsha(RedisLockScript script, List<String> keys, List<String> args) {
+        return execute(getHandler(script), keys, args);
+    }
+
+    /**
+     * 进程内执行脚本不涉及网络等待, 直接在调用线程中执行并返回已完成的结果.
+     */
+    @Override
+    public CompletionStage<String> evalAsync(RedisLockScript script, String key, String... args) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        try {
+            result.complete(evalsha(script, key, args));
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    @Override
+    public RedisSubscription getSubscription(String channel, MessageConsumer<String> messageConsumer) {
+        return new InMemorySubscription(pubSub, channel, messageConsumer);
+    }
+
+    @Override
+    public RedisMultiplexSubscription getMultiplexSubscription() {
+        if (multiplexSubscription == null) {
+            synchronized (this) {
+                if (multiplexSubscription == null) {
+                    multiplexSubscription = new InMemoryMultiplexSubscription(pubSub);
+                }
+            }
+        }
+        return multiplexSubscription;
+    }
+
+    /**
+     * 获取进程内的发布/订阅频道.
+     * @return
+     */
+    public InMemoryPubSub getPubSub() {
+        return pubSub;
+    }
+
+    /**
+     * 获取当前未过期的键数量.
+     * @return
+     */
+    public int size() {
+        synchronized (keyspace) {
+            keyspace.purgeExpired();
+            return keyspace.entries.size();
+        }
+    }
+
+    private ScriptHandler getHandler(RedisLockScript script) {
+        ScriptHandler handler = getHandler(script.getName());
+        scriptNames.putIfAbsent(script.getScript(), script.getName());
+        return handler;
+    }
+
+    private ScriptHandler getHandler(String name) {
+        ScriptHandler handler = scripts.get(name);
+        if (handler == null) {
+            throw new UnsupportedOperationException("Script '" + name + "' is not supported by in-memory commands");
+        }
+        return handler;
+    }
+
+    private String execute(ScriptHandler handler, List<String> keys, List<String> args) {
+        String result;
+        List<String> messages;
+        synchronized (keyspace) {
+            try {
+                result = handler.execute(keyspace, keys, args);
+            } finally {
+                messages = keyspace.drainMessages();
+            }
+        }
+        // 在脚本执行完成后再分发消息, 消费者不会在持有键空间锁时被调用
+        for (int i = 0; i < messages.size(); i += 2) {
+            pubSub.publish(messages.get(i), messages.get(i + 1));
+        }
+        return result;
+    }
+
+    /**
+     * 把锁授予下一个存活的等待者并只通知该等待者, 对应公平锁的授予逻辑.
+     */
+    private static void grantNextWaiter(Keyspace keyspace, List<String> keys, List<String> args) {
+        long now = Long.parseLong(args.get(2));
+        for (String next; (next = keyspace.lpop(keys.get(1))) != null; ) {
+            Double timeout = keyspace.zscore(keys.get(2), next);
+            keyspace.zrem(keys.get(2), next);
+            if (timeout != null && timeout > now) {
+                keyspace.hset(keys.get(0), next, 0);
+                keyspace.pexpire(keys.get(0), Long.parseLong(args.get(3)));
+                keyspace.publish(args.get(1), next);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 回收过期持有者的许可, 有回收时通知等待者, 对应信号量脚本的过期回收逻辑.
+     */
+    private static void purgeExpiredPermits(Keyspace keyspace, List<String> keys, List<String> args) {
+        List<String> expired = keyspace.zrangebyscore(keys.get(1), Double.NEGATIVE_INFINITY,
+                Double.parseDouble(args.get(0)));
+        if (expired.isEmpty()) {
+            return;
+        }
+        for (String holder : expired) {
+            String count = keyspace.hget(keys.get(0), holder);
+            if (count != null) {
+                keyspace.hincrby(keys.get(0), args.get(1), -Long.parseLong(count));
+                keyspace.hdel(keys.get(0), holder);
+            }
+            keyspace.zrem(keys.get(1), holder);
+        }
+        if (keyspace.hdel(keys.get(0), args.get(2))) {
+            keyspace.publish(args.get(4), keys.get(0));
+        }
+        String used = keyspace.hget(keys.get(0), args.get(1));
+        if (used == null || Long.parseLong(used) <= 0) {
+            keyspace.del(keys.get(0));
+        }
+    }
+
+    private static String toFlag(boolean value) {
+        return value ? SUCCESS : FAIL;
+    }
+
+    /**
+     * 锁脚本的 java 实现.
+     *
+     * @author yangzexiong
+     */
+    @FunctionalInterface
+    public interface ScriptHandler {
+
+        /**
+         * 执行脚本, 执行期间独占键空间.
+         * @param keyspace 键空间
+         * @param keys 对应脚本的 KEYS
+         * @param args 对应脚本的 ARGV
+         * @return 脚本结果
+         */
+        String execute(Keyspace keyspace, List<String> keys, List<String> args);
+
+    }
+
+    /**
+     * 进程内的键空间, 提供锁脚本用到的 redis 命令, 只能在脚本执行期间使用.
+     *
+     * @author yangzexiong
+     */
+    public static final class Keyspace {
+
+        /**
+         * 每创建多少个键清理一次过期的键
+         */
+        private static final int PURGE_INTERVAL = 1024;
+
+        private final InMemoryPubSub pubSub;
+
+        private final Map<String, Entry> entries = new HashMap<>(256);
+
+        /**
+         * 待发布的消息, 依次为频道和消息内容
+         */
+        private List<String> messages = Collections.emptyList();
+
+        private int creations = 0;
+
+        private Keyspace(InMemoryPubSub pubSub) {
+            this.pubSub = pubSub;
+        }
+
+        public boolean exists(String key) {
+            return getEntry(key) != null;
+        }
+
+        public boolean del(String key) {
+            return getEntry(key) != null && entries.remove(key) != null;
+        }
+
+        /**
+         * 设置键的过期时间, 键不存在时返回 {@code false}.
+         * @param key
+         * @param millis
+         * @return
+         */
+        public boolean pexpire(String key, long millis) {
+            Entry entry = getEntry(key);
+            if (entry == null) {
+                return false;
+            }
+            if (millis <= 0) {
+                entries.remove(key);
+            } else {
+                entry.expireAtNanos = System.nanoTime() + millis * 1000000L;
+                entry.expires = true;
+            }
+            return true;
+        }
+
+        public boolean persist(String key) {
+            Entry entry = getEntry(key);
+            if (entry == null || !entry.expires) {
+                return false;
+            }
+            entry.expires = false;
+            return true;
+        }
+
+        /**
+         * 获取键的剩余过期时间(ms), 键不存在时返回 -2, 没有过期时间时返回 -1.
+         * @param key
+         * @return
+         */
+        public long pttl(String key) {
+            Entry entry = getEntry(key);
+            if (entry == null) {
+                return -2;
+            }
+            if (!entry.expires) {
+                return -1;
+            }
+            return Math.max(0, (entry.expireAtNanos - System.nanoTime()) / 1000000L);
+        }
+
+        /**
+         * 获取字符串类型的值, 不存在时返回 {@code null}.
+         * @param key
+         * @return
+         */
+        public String get(String key) {
+            return getValue(key, String.class);
+        }
+
+        public void set(String key, String value) {
+            setValue(key, value);
+        }
+
+        public boolean hexists(String key, String field) {
+            Map<String, Long> hash = getHash(key, false);
+            return hash != null && hash.containsKey(field);
+        }
+
+        /**
+         * 获取 hash 中字段的值, 不存在时返回 {@code null}.
+         * @param key
+         * @param field
+         * @return
+         */
+        public String hget(String key, String field) {
+            Map<String, Long> hash = getHash(key, false);
+            Long value = hash == null ? null : hash.get(field);
+            return value == null ? null : value.toString();
+        }
+
+        public long hincrby(String key, String field, long increment) {
+            Map<String, Long> hash = getHash(key, true);
+            Long value = hash.get(field);
+            long result = (value == null ? 0 : value) + increment;
+            hash.put(field, result);
+            return result;
+        }
+
+        public long hlen(String key) {
+            Map<String, Long> hash = getHash(key, false);
+            return hash == null ? 0 : hash.size();
+        }
+
+        public void hset(String key, String field, long value) {
+            getHash(key, true).put(field, value);
+        }
+
+        /**
+         * 删除 hash 中的字段, 删除后 hash 为空时删除键.
+         * @param key
+         * @param field
+         * @return
+         */
+        public boolean hdel(String key, String field) {
+            Map<String, Long> hash = getHash(key, false);
+            if (hash == null || hash.remove(field) == null) {
+                return false;
+            }
+            if (hash.isEmpty()) {
+                entries.remove(key);
+            }
+            return true;
+        }
+
+        /**
+         * 获取列表中给定位置的元素, 不存在时返回 {@code null}.
+         * @param key
+         * @param index
+         * @return
+         */
+        public String lindex(String key, int index) {
+            LinkedList<String> list = getList(key, false);
+            return list == null || index >= list.size() ? null : list.get(index);
+        }
+
+        public String lpop(String key) {
+            LinkedList<String> list = getList(key, false);
+            if (list == null) {
+                return null;
+            }
+            String value = list.pollFirst();
+            if (list.isEmpty()) {
+                entries.remove(key);
+            }
+            return value;
+        }
+
+        public long rpush(String key, String value) {
+            LinkedList<String> list = getList(key, true);
+            list.addLast(value);
+            return list.size();
+        }
+
+        /**
+         * 移除列表中所有与给定值相同的元素.
+         * @param key
+         * @param value
+         * @return 移除的元素数量
+         */
+        public long lrem(String key, String value) {
+            LinkedList<String> list = getList(key, false);
+            if (list == null) {
+                return 0;
+            }
+            long count = 0;
+            while (list.remove(value)) {
+                count++;
+            }
+            if (list.isEmpty()) {
+                entries.remove(key);
+            }
+            return count;
+        }
+
+        public long llen(String key) {
+            LinkedList<String> list = getList(key, false);
+            return list == null ? 0 : list.size();
+        }
+
+        /**
+         * 获取有序集合中成员的分数, 不存在时返回 {@code null}.
+         * @param key
+         * @param member
+         * @return
+         */
+        public Double zscore(String key, String member) {
+            Map<String, Double> zset = getZset(key, false);
+            return zset == null ? null : zset.get(member);
+        }
+
+        public boolean zadd(String key, double score, String member) {
+            return getZset(key, true).put(member, score) == null;
+        }
+
+        public boolean zrem(String key, String member) {
+            Map<String, Double> zset = getZset(key, false);
+            if (zset == null || zset.remove(member) == null) {
+                return false;
+            }
+            if (zset.isEmpty()) {
+                entries.remove(key);
+            }
+            return true;
+        }
+
+        /**
+         * 按分数从小到大获取有序集合中分数在给定范围内(包含边界)的成员.
+         * @param key
+         * @param min
+         * @param max
+         * @return
+         */
+        public List<String> zrangebyscore(String key, double min, double max) {
+            Map<String, Double> zset = getZset(key, false);
+            if (zset == null) {
+                return Collections.emptyList();
+            }
+            List<Map.Entry<String, Double>> members = new ArrayList<>(zset.entrySet());
+            members.sort(Map.Entry.comparingByValue());
+            List<String> result = new ArrayList<>(members.size());
+            for (Map.Entry<String, Double> member : members) {
+                if (member.getValue() >= min && member.getValue() <= max) {
+                    result.add(member.getKey());
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 发布消息, 消息在脚本执行完成后才会分发, 返回频道当前的订阅者数量.
+         * @param channel
+         * @param message
+         * @return
+         */
+        public int publish(String channel, String message) {
+            if (messages.isEmpty()) {
+                messages = new ArrayList<>(2);
+            }
+            messages.add(channel);
+            messages.add(message);
+            return pubSub.getSubscriberCount(channel);
+        }
+
+        /**
+         * 获取给定类型的值, 类型不匹配时抛出异常, 对应 redis 的 WRONGTYPE 错误.
+         * @param key
+         * @param type
+         * @return
+         */
+        public <T> T getValue(String key, Class<T> type) {
+            Entry entry = getEntry(key);
+            if (entry == null) {
+                return null;
+            }
+            if (!type.isInstance(entry.value)) {
+                throw new IllegalStateException(
+                        "WRONGTYPE Operation against a key holding the wrong kind of value: " + key);
+            }
+            return type.cast(entry.value);
+        }
+
+        /**
+         * 设置键的值, 会清除原有的过期时间.
+         * @param key
+         * @param value
+         */
+        public void setValue(String key, Object value) {
+            Objects.requireNonNull(value, "Value must not be null");
+            if (entries.put(key, new Entry(value)) == null && ++creations % PURGE_INTERVAL == 0) {
+                purgeExpired();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, Long> getHash(String key, boolean create) {
+            Map<String, Long> hash = getValue(key, LinkedHashMap.class);
+            if (hash == null && create) {
+                hash = new LinkedHashMap<>(4);
+                setValue(key, hash);
+            }
+            return hash;
+        }
+
+        @SuppressWarnings("unchecked")
+        private LinkedList<String> getList(String key, boolean create) {
+            LinkedList<String> list = getValue(key, LinkedList.class);
+            if (list == null && create) {
+                list = new LinkedList<>();
+                setValue(key, list);
+            }
+            return list;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Map<String, Double> getZset(String key, boolean create) {
+            ScoreMap zset = getValue(key, ScoreMap.class);
+            if (zset == null && create) {
+                zset = new ScoreMap();
+                setValue(key, zset);
+            }
+            return zset;
+        }
+
+        private Entry getEntry(String key) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.isExpired(System.nanoTime())) {
+                entries.remove(key);
+                return null;
+            }
+            return entry;
+        }
+
+        private void purgeExpired() {
+            long now = System.nanoTime();
+            for (Iterator<Entry> iterator = entries.values().iterator(); iterator.hasNext();) {
+                if (iterator.next().isExpired(now)) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        private List<String> drainMessages() {
+            List<String> messages = this.messages;
+            this.messages = Collections.emptyList();
+            return messages;
+        }
+
+    }
+
+    /**
+     * 有序集合的成员及分数, 与 hash 类型区分.
+     *
+     * @author yangzexiong
+     */
+    private static final class ScoreMap extends HashMap<String, Double> {
+
+        private static final long serialVersionUID = 4139547036187958416L;
+
+    }
+
+    /**
+     * 键空间中的值及其过期时间.
+     *
+     * @author yangzexiong
+     */
+    private static final class Entry {
+
+        private final Object value;
+
+        private long expireAtNanos;
+
+        private boolean expires = false;
+
+        private Entry(Object value) {
+            this.value = value;
+        }
+
+        private boolean isExpired(long now) {
+            return expires && now - expireAtNanos >= 0;
+        }
+
+    }
+
+}
@@ -17,11 +17,19 @@
 package com.github.ayoungbear.distbtsync.redis.lock.support;
 
 import com.github.ayoungbear.distbtsync.redis.lock.RedisLockCommands;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockScript;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.JedisClusterMultiplexSubscription;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.JedisClusterShardedMultiplexSubscription;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.JedisClusterShardedSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.JedisClusterSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.MessageConsumer;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisMultiplexSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisSubscription;
+import java.util.List;
 import java.util.Objects;
 import redis.clients.jedis.JedisCluster;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.util.JedisClusterCRC16;
 
 /**
  * 用 {@link redis.clients.jedis.JedisCluster} 实现的 redis 分布式锁操作接口的适配器.
@@ -33,6 +41,15 @@ public class JedisClusterCommandsAdapter implements RedisLockCommands {
 
     private JedisCluster jedisCluster;
 
+    private volatile RedisMultiplexSubscription multiplexSubscription;
+
+    private volatile RedisMultiplexSubscription shardedMultiplexSubscription;
+
+    /**
+     * 是否使用分片发布订阅
+     */
+    private volatile boolean shardedPubSub = false;
+
     public JedisClusterCommandsAdapter(JedisCluster jedisCluster) {
         this.jedisCluster = Objects.requireNonNull(jedisCluster, "JedisCluster must not be null");
     }
@@ -43,11 +60,81 @@ public class JedisClusterCommandsAdapter implements RedisLockCommands {
         return result == null ? null : String.valueOf(result);
     }
 
+    @Override
+    public String evalsha(RedisLockScript script, String key, String... args) {
+        String[] params = mergeParams(key, args);
+        Object result;
+        try {
+            result = jedisCluster.evalsha(script.getSha1(), 1, params);
+        } catch (JedisNoScriptException e) {
+            // 脚本未在键所在节点上缓存, 使用完整脚本执行的同时会缓存该脚本
+            result = jedisCluster.eval(script.getScript(), 1, params);
+        }
+        return result == null ? null : String.valueOf(result);
+    }
+
+    @Override
+    public String evalsha(RedisLockScript script, List<String> keys, List<String> args) {
+        Object result;
+        try {
+            result = jedisCluster.evalsha(script.getSha1(), keys, args);
+        } catch (JedisNoScriptException e) {
+            result = jedisCluster.eval(script.getScript(), keys, args);
+        }
+        return result == null ? null : String.valueOf(result);
+    }
+
+    @Override
+    public int keySlot(String key) {
+        return JedisClusterCRC16.getSlot(key);
+    }
+
+    @Override
+    public boolean isShardedPubSub() {
+        return shardedPubSub;
+    }
+
+    /**
+     * 设置是否使用分片发布订阅(SPUBLISH/SSUBSCRIBE), 需要 redis 7.0 以上, 只对之后创建的锁生效.
+     * 开启后复用订阅者为每个分片节点各使用一个订阅连接, 频道在其所在分片的连接上订阅.
+     * @param shardedPubSub
+     * @return
+     */
+    public JedisClusterCommandsAdapter setShardedPubSub(boolean shardedPubSub) {
+        this.shardedPubSub = shardedPubSub;
+        return this;
+    }
+
     @Override
     public RedisSubscription getSubscription(String channel, MessageConsumer<String> messageConsumer) {
+        if (shardedPubSub) {
+            return new JedisClusterShardedSubscription(jedisCluster, channel, messageConsumer);
+        }
         return new JedisClusterSubscription(jedisCluster, channel, messageConsumer);
     }
 
+    @Override
+    public RedisMultiplexSubscription getMultiplexSubscription() {
+        if (shardedPubSub) {
+            if (shardedMultiplexSubscription == null) {
+                synchronized (this) {
+                    if (shardedMultiplexSubscription == null) {
+                        shardedMultiplexSubscription = new JedisClusterShardedMultiplexSubscription(jedisCluster);
+                    }
+                }
+            }
+            return shardedMultiplexSubscription;
+        }
+        if (multiplexSubscription == null) {
+            synchronized (this) {
+                if (multiplexSubscription == null) {
+                    multiplexSubscription = new JedisClusterMultiplexSubscription(jedisCluster);
+                }
+            }
+        }
+        return multiplexSubscription;
+    }
+
     protected String[] mergeParams(String key, String... args) {
         String[] newArgs = new String[args.length + 1];
         newArgs[0] = key;
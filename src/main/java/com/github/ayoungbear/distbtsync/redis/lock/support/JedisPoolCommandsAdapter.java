@@ -17,12 +17,17 @@
 package com.github.ayoungbear.distbtsync.redis.lock.support;
 
 import com.github.ayoungbear.distbtsync.redis.lock.RedisLockCommands;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockScript;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.JedisPoolMultiplexSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.JedisPoolSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.MessageConsumer;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisMultiplexSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisSubscription;
+import java.util.List;
 import java.util.Objects;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
 
 /**
  * 用 {@link redis.clients.jedis.JedisPool} 实现的 redis 分布式锁操作接口的适配器.
@@ -34,6 +39,8 @@ public class JedisPoolCommandsAdapter implements RedisLockCommands {
 
     private JedisPool jedisPool;
 
+    private volatile RedisMultiplexSubscription multiplexSubscription;
+
     public JedisPoolCommandsAdapter(JedisPool jedisPool) {
         this.jedisPool = Objects.requireNonNull(jedisPool, "JedisPool must not be null");
     }
@@ -48,11 +55,53 @@ public class JedisPoolCommandsAdapter implements RedisLockCommands {
         }
     }
 
+    @Override
+    public String evalsha(RedisLockScript script, String key, String... args) {
+        Jedis jedis = jedisPool.getResource();
+        try {
+            String[] params = mergeParams(key, args);
+            try {
+                return String.valueOf(jedis.evalsha(script.getSha1(), 1, params));
+            } catch (JedisNoScriptException e) {
+                // 脚本未缓存, 使用完整脚本执行的同时会缓存该脚本
+                return String.valueOf(jedis.eval(script.getScript(), 1, params));
+            }
+        } finally {
+            jedis.close();
+        }
+    }
+
+    @Override
+    public String evalsha(RedisLockScript script, List<String> keys, List<String> args) {
+        Jedis jedis = jedisPool.getResource();
+        try {
+            try {
+                return String.valueOf(jedis.evalsha(script.getSha1(), keys, args));
+            } catch (JedisNoScriptException e) {
+                return String.valueOf(jedis.eval(script.getScript(), keys, args));
+            }
+        } finally {
+            jedis.close();
+        }
+    }
+
     @Override
     public RedisSubscription getSubscription(String channel, MessageConsumer<String> messageConsumer) {
         return new JedisPoolSubscription(jedisPool, channel, messageConsumer);
     }
 
+    @Override
+    public RedisMultiplexSubscription getMultiplexSubscription() {
+        if (multiplexSubscription == null) {
+            synchronized (this) {
+                if (multiplexSubscription == null) {
+                    multiplexSubscription = new JedisPoolMultiplexSubscription(jedisPool);
+                }
+            }
+        }
+        return multiplexSubscription;
+    }
+
     protected String[] mergeParams(String key, String... args) {
         String[] newArgs = new String[args.length + 1];
         newArgs[0] = key;
@@ -17,16 +17,23 @@
 package com.github.ayoungbear.distbtsync.redis.lock.support;
 
 import com.github.ayoungbear.distbtsync.redis.lock.RedisLockCommands;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockScript;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.LettuceClientMultiplexSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.LettuceClientSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.MessageConsumer;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisMultiplexSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisSubscription;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisNoScriptException;
 import io.lettuce.core.ScriptOutputType;
 import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.CompletionStage;
 
 /**
  * 用 {@link io.lettuce.core.RedisClient} 实现的 redis 分布式锁操作接口的适配器.
@@ -40,6 +47,8 @@ public class LettuceClientCommandsAdapter implements RedisLockCommands, Closeabl
 
     private volatile StatefulRedisConnection<String, String> connection;
 
+    private volatile RedisMultiplexSubscription multiplexSubscription;
+
     public LettuceClientCommandsAdapter(RedisClient client) {
         this.client = Objects.requireNonNull(client, "RedisClient must not be null");
     }
@@ -52,13 +61,62 @@ public class LettuceClientCommandsAdapter implements RedisLockCommands, Closeabl
         return result;
     }
 
+    @Override
+    public String evalsha(RedisLockScript script, String key, String... args) {
+        RedisCommands<String, String> commands = getConnection().sync();
+        String[] keys = new String[]{key};
+        try {
+            return commands.evalsha(script.getSha1(), ScriptOutputType.VALUE, keys, args);
+        } catch (RedisNoScriptException e) {
+            // 脚本未缓存, 使用完整脚本执行的同时会缓存该脚本
+            return commands.eval(script.getScript(), ScriptOutputType.VALUE, keys, args);
+        }
+    }
+
+    @Override
+    public CompletionStage<String> evalAsync(RedisLockScript script, String key, String... args) {
+        RedisAsyncCommands<String, String> commands = getConnection().async();
+        String[] keys = new String[]{key};
+        return RedisLockScript.fallbackOnNoScript(
+                commands.<String>evalsha(script.getSha1(), ScriptOutputType.VALUE, keys, args),
+                () -> commands.<String>eval(script.getScript(), ScriptOutputType.VALUE, keys, args));
+    }
+
+    @Override
+    public String evalsha(RedisLockScript script, List<String> keys, List<String> args) {
+        RedisCommands<String, String> commands = getConnection().sync();
+        String[] keyArray = keys.toArray(new String[0]);
+        String[] argArray = args.toArray(new String[0]);
+        try {
+            return commands.evalsha(script.getSha1(), ScriptOutputType.VALUE, keyArray, argArray);
+        } catch (RedisNoScriptException e) {
+            return commands.eval(script.getScript(), ScriptOutputType.VALUE, keyArray, argArray);
+        }
+    }
+
     @Override
     public RedisSubscription getSubscription(String channel, MessageConsumer<String> messageConsumer) {
         return new LettuceClientSubscription(client, channel, messageConsumer);
     }
 
+    @Override
+    public RedisMultiplexSubscription getMultiplexSubscription() {
+        if (multiplexSubscription == null) {
+            synchronized (this) {
+                if (multiplexSubscription == null) {
+                    multiplexSubscription = new LettuceClientMultiplexSubscription(client);
+                }
+            }
+        }
+        return multiplexSubscription;
+    }
+
     @Override
     public void close() throws IOException {
+        if (multiplexSubscription != null) {
+            multiplexSubscription.close();
+            multiplexSubscription = null;
+        }
         if (connection != null) {
             connection.close();
             connection = null;
@@ -0,0 +1,240 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.redis.lock.support;
+
+import com.github.ayoungbear.distbtsync.redis.lock.RedisBasedLock;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockObserver;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 基于 Micrometer 的分布式锁观察者, 将锁的运行情况记录为以下指标:
+ * <ul>
+ * <li>{@code distbtsync.lock.acquire}: 加锁耗时, 按结果 {@code result} 区分成功, 超时和异常</li>
+ * <li>{@code distbtsync.lock.acquire.attempts}: 每次加锁成功在 redis 中尝试的次数</li>
+ * <li>{@code distbtsync.lock.park}: 加锁失败后阻塞等待解锁通知的时间</li>
+ * <li>{@code distbtsync.lock.hold}: 锁在 redis 中的持有时间</li>
+ * <li>{@code distbtsync.lock.commands}: redis 命令耗时, 按命令 {@code command} 和结果 {@code result} 区分</li>
+ * <li>{@code distbtsync.lock.waiters}: 正在等待加锁的线程和异步请求数</li>
+ * <li>{@code distbtsync.lock.subscriptions}: 正在订阅解锁消息的阻塞队列数</li>
+ * </ul>
+ * 除订阅数外的指标都以锁名称模式 {@code name} 作为标签, 默认把锁名称中含有数字的片段替换为 {@code *},
+ * 模式数量超过上限后归入 {@value #OTHER_KEY_PATTERN}, 以控制标签的基数.
+ *
+ * @author yangzexiong
+ * @see RedisLockObserver
+ */
+public class MicrometerRedisLockObserver implements RedisLockObserver {
+
+    public static final String METRIC_PREFIX = "distbtsync.lock";
+
+    public static final int DEFAULT_MAX_KEY_PATTERNS = 100;
+
+    public static final String OTHER_KEY_PATTERN = "other";
+
+    /**
+     * 锁名称到指标的缓存上限, 超过后清空重建
+     */
+    private static final int MAX_CACHED_KEYS = 10000;
+
+    private final MeterRegistry registry;
+
+    private final Function<String, String> keyPatternResolver;
+
+    private final int maxKeyPatterns;
+
+    private final Map<String, LockMeters> patternMeters = new ConcurrentHashMap<>(64);
+
+    private final Map<String, LockMeters> keyMeters = new ConcurrentHashMap<>(256);
+
+    public MicrometerRedisLockObserver(MeterRegistry registry) {
+        this(registry, MicrometerRedisLockObserver::getDefaultKeyPattern, DEFAULT_MAX_KEY_PATTERNS);
+    }
+
+    public MicrometerRedisLockObserver(MeterRegistry registry, Function<String, String> keyPatternResolver,
+            int maxKeyPatterns) {
+        this.registry = Objects.requireNonNull(registry, "MeterRegistry must not be null");
+        this.keyPatternResolver = Objects.requireNonNull(keyPatternResolver, "KeyPatternResolver must not be null");
+        this.maxKeyPatterns = maxKeyPatterns;
+        Gauge.builder(METRIC_PREFIX + ".subscriptions", RedisBasedLock.class,
+                (type) -> RedisBasedLock.getActiveSubscriptionCount())
+                .description("Number of lock queues subscribed to release messages").register(registry);
+    }
+
+    @Override
+    public void onWaitStart(String key) {
+        getMeters(key).waiters.incrementAndGet();
+    }
+
+    @Override
+    public void onWaitEnd(String key) {
+        getMeters(key).waiters.decrementAndGet();
+    }
+
+    @Override
+    public void onAcquired(String key, long latencyNanos, int attempts) {
+        LockMeters meters = getMeters(key);
+        meters.acquired.record(latencyNanos, TimeUnit.NANOSECONDS);
+        meters.attempts.record(attempts);
+    }
+
+    @Override
+    public void onTimeout(String key, long latencyNanos, int attempts) {
+        getMeters(key).timeout.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onFailure(String key, long latencyNanos, int attempts, Throwable error) {
+        getMeters(key).failure.record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onParked(String key, long parkedNanos) {
+        getMeters(key).park.record(parkedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onReleased(String key, long holdNanos) {
+        getMeters(key).hold.record(holdNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void onCommand(String key, String command, long latencyNanos, Throwable error) {
+        getMeters(key).getCommandTimer(command, error == null).record(latencyNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * 默认的锁名称模式, 以 {@code : _ - . /} 分隔, 把含有数字的片段替换为 {@code *}.
+     * 例如 {@code order:pay_10086} 的模式为 {@code order:pay_*}.
+     * @param key 锁名称
+     * @return 锁名称模式
+     */
+    public static String getDefaultKeyPattern(String key) {
+        StringBuilder pattern = null;
+        int length = key.length();
+        int segmentStart = 0;
+        boolean hasDigit = false;
+        for (int i = 0; i <= length; i++) {
+            char c = i < length ? key.charAt(i) : ':';
+            if (c == ':' || c == '_' || c == '-' || c == '.' || c == '/') {
+                if (hasDigit && pattern == null) {
+                    pattern = new StringBuilder(length).append(key, 0, segmentStart);
+                }
+                if (pattern != null) {
+                    if (hasDigit) {
+                        pattern.append('*');
+                    } else {
+                        pattern.append(key, segmentStart, i);
+                    }
+                    if (i < length) {
+                        pattern.append(c);
+                    }
+                }
+                segmentStart = i + 1;
+                hasDigit = false;
+            } else if (c >= '0' && c <= '9') {
+                hasDigit = true;
+            }
+        }
+        return pattern == null ? key : pattern.toString();
+    }
+
+    private LockMeters getMeters(String key) {
+        LockMeters meters = keyMeters.get(key);
+        if (meters == null) {
+            if (keyMeters.size() >= MAX_CACHED_KEYS) {
+                keyMeters.clear();
+            }
+            meters = keyMeters.computeIfAbsent(key, (k) -> getPatternMeters(keyPatternResolver.apply(k)));
+        }
+        return meters;
+    }
+
+    private LockMeters getPatternMeters(String pattern) {
+        LockMeters meters = patternMeters.get(pattern);
+        if (meters == null) {
+            if (patternMeters.size() >= maxKeyPatterns) {
+                pattern = OTHER_KEY_PATTERN;
+            }
+            meters = patternMeters.computeIfAbsent(pattern, (p) -> new LockMeters(registry, p));
+        }
+        return meters;
+    }
+
+    /**
+     * 同一锁名称模式的指标.
+     *
+     * @author yangzexiong
+     */
+    private static final class LockMeters {
+
+        private final MeterRegistry registry;
+        private final String pattern;
+        private final Timer acquired;
+        private final Timer timeout;
+        private final Timer failure;
+        private final DistributionSummary attempts;
+        private final Timer park;
+        private final Timer hold;
+        private final AtomicInteger waiters = new AtomicInteger(0);
+        private final Map<String, Timer> commandTimers = new ConcurrentHashMap<>(16);
+        private final Map<String, Timer> commandErrorTimers = new ConcurrentHashMap<>(16);
+
+        private LockMeters(MeterRegistry registry, String pattern) {
+            this.registry = registry;
+            this.pattern = pattern;
+            this.acquired = acquireTimer("acquired");
+            this.timeout = acquireTimer("timeout");
+            this.failure = acquireTimer("failure");
+            this.attempts = DistributionSummary.builder(METRIC_PREFIX + ".acquire.attempts").tag("name", pattern)
+                    .description("Redis attempts per successful lock acquisition").register(registry);
+            this.park = Timer.builder(METRIC_PREFIX + ".park").tag("name", pattern)
+                    .description("Time spent parked waiting for release messages").register(registry);
+            this.hold = Timer.builder(METRIC_PREFIX + ".hold").tag("name", pattern)
+                    .description("Time the lock is held in redis").register(registry);
+            Gauge.builder(METRIC_PREFIX + ".waiters", waiters, AtomicInteger::get).tag("name", pattern)
+                    .description("Number of threads and async requests waiting for the lock").register(registry);
+        }
+
+        private Timer acquireTimer(String result) {
+            return Timer.builder(METRIC_PREFIX + ".acquire").tag("name", pattern).tag("result", result)
+                    .description("Lock acquisition latency").register(registry);
+        }
+
+        private Timer getCommandTimer(String command, boolean success) {
+            Map<String, Timer> timers = success ? commandTimers : commandErrorTimers;
+            Timer timer = timers.get(command);
+            if (timer == null) {
+                timer = timers.computeIfAbsent(command,
+                        (c) -> Timer.builder(METRIC_PREFIX + ".commands").tag("name", pattern).tag("command", c)
+                                .tag("result", success ? "success" : "error")
+                                .description("Redis round trip latency of lock commands").register(registry));
+            }
+            return timer;
+        }
+
+    }
+
+}
@@ -17,10 +17,16 @@
 package com.github.ayoungbear.distbtsync.redis.lock.support;
 
 import com.github.ayoungbear.distbtsync.redis.lock.RedisLockCommands;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockScript;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.MessageConsumer;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisConnectionMultiplexSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisConnectionSubscription;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisMultiplexSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisSubscription;
+import java.util.List;
 import java.util.function.Supplier;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
 import org.springframework.data.redis.connection.RedisConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.connection.ReturnType;
@@ -40,6 +46,13 @@ public class RedisConnectionCommandsAdapter implements RedisLockCommands {
 
     private StringRedisSerializer serializer = new StringRedisSerializer();
 
+    /**
+     * 是否集群连接, 首次计算槽位时确定
+     */
+    private volatile Boolean clusterMode;
+
+    private volatile RedisMultiplexSubscription multiplexSubscription;
+
     public RedisConnectionCommandsAdapter(RedisConnection redisConnection) {
         Assert.notNull(redisConnection, "RedisConnection must not be null");
         this.connectionSupplier = () -> redisConnection;
@@ -62,11 +75,64 @@ public class RedisConnectionCommandsAdapter implements RedisLockCommands {
         return deserializeResult(result);
     }
 
+    @Override
+    public String evalsha(RedisLockScript script, String key, String... args) {
+        RedisConnection connection = connectionSupplier.get();
+        byte[][] keyAndArgs = keyAndArgs(key, args);
+        Object result;
+        try {
+            result = connection.evalSha(script.getSha1(), ReturnType.VALUE, 1, keyAndArgs);
+        } catch (RuntimeException e) {
+            if (!RedisLockScript.isNoScriptError(e)) {
+                throw e;
+            }
+            // 脚本未缓存, 使用完整脚本执行的同时会缓存该脚本
+            result = connection.eval(serialize(script.getScript()), ReturnType.VALUE, 1, keyAndArgs);
+        }
+        return deserializeResult(result);
+    }
+
+    @Override
+    public String evalsha(RedisLockScript script, List<String> keys, List<String> args) {
+        RedisConnection connection = connectionSupplier.get();
+        byte[][] keysAndArgs = keysAndArgs(keys, args);
+        Object result;
+        try {
+            result = connection.evalSha(script.getSha1(), ReturnType.VALUE, keys.size(), keysAndArgs);
+        } catch (RuntimeException e) {
+            if (!RedisLockScript.isNoScriptError(e)) {
+                throw e;
+            }
+            result = connection.eval(serialize(script.getScript()), ReturnType.VALUE, keys.size(), keysAndArgs);
+        }
+        return deserializeResult(result);
+    }
+
+    @Override
+    public int keySlot(String key) {
+        if (clusterMode == null) {
+            clusterMode = connectionSupplier.get() instanceof RedisClusterConnection;
+        }
+        return clusterMode ? ClusterSlotHashUtil.calculateSlot(key) : 0;
+    }
+
     @Override
     public RedisSubscription getSubscription(String channel, MessageConsumer<String> messageConsumer) {
         return new RedisConnectionSubscription(connectionSupplier, channel, messageConsumer);
     }
 
+    @Override
+    public RedisMultiplexSubscription getMultiplexSubscription() {
+        if (multiplexSubscription == null) {
+            synchronized (this) {
+                if (multiplexSubscription == null) {
+                    multiplexSubscription = new RedisConnectionMultiplexSubscription(connectionSupplier);
+                }
+            }
+        }
+        return multiplexSubscription;
+    }
+
     protected byte[] serialize(String script) {
         return getRedisSerializer().serialize(script);
     }
@@ -91,6 +157,18 @@ public class RedisConnectionCommandsAdapter implements RedisLockCommands {
         return keyAndArgs;
     }
 
+    protected byte[][] keysAndArgs(List<String> keys, List<String> args) {
+        byte[][] keysAndArgs = new byte[keys.size() + args.size()][];
+        int i = 0;
+        for (String key : keys) {
+            keysAndArgs[i++] = getRedisSerializer().serialize(key);
+        }
+        for (String arg : args) {
+            keysAndArgs[i++] = getRedisSerializer().serialize(arg);
+        }
+        return keysAndArgs;
+    }
+
     private RedisSerializer<String> getRedisSerializer() {
         return serializer;
     }
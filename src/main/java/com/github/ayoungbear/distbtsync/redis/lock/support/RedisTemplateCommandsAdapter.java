@@ -17,12 +17,21 @@
 package com.github.ayoungbear.distbtsync.redis.lock.support;
 
 import com.github.ayoungbear.distbtsync.redis.lock.RedisLockCommands;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockScript;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.MessageConsumer;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisConnectionMultiplexSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisConnectionSubscription;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisMultiplexSubscription;
 import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisSubscription;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.data.redis.connection.ClusterSlotHashUtil;
+import org.springframework.data.redis.connection.RedisClusterConnection;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.data.redis.core.script.RedisScript;
@@ -42,6 +51,18 @@ public class RedisTemplateCommandsAdapter implements RedisLockCommands {
 
     private StringRedisSerializer serializer = new StringRedisSerializer();
 
+    /**
+     * 脚本缓存, 避免每次执行都重新创建脚本并计算摘要
+     */
+    private final Map<String, RedisScript<String>> scriptCache = new ConcurrentHashMap<>(16);
+
+    /**
+     * 是否集群连接, 首次计算槽位时确定
+     */
+    private volatile Boolean clusterMode;
+
+    private volatile RedisMultiplexSubscription multiplexSubscription;
+
     public RedisTemplateCommandsAdapter(StringRedisTemplate redisTemplate) {
         this.redisTemplate = Objects.requireNonNull(redisTemplate, "RedisTemplate must not be null");
         this.connectionFactory = Objects.requireNonNull(redisTemplate.getConnectionFactory(),
@@ -57,9 +78,52 @@ public class RedisTemplateCommandsAdapter implements RedisLockCommands {
         return result;
     }
 
+    /**
+     * {@link org.springframework.data.redis.core.script.DefaultScriptExecutor} 会先使用 EVALSHA 执行,
+     * 脚本未缓存时自动回退为 EVAL, 所以这里只需缓存脚本对象即可.
+     */
+    @Override
+    public String evalsha(RedisLockScript script, String key, String... args) {
+        Object[] argsObj = args;
+        String result = redisTemplate.execute(getRedisScript(script), serializer, serializer,
+                Collections.singletonList(key), argsObj);
+        return result;
+    }
+
+    @Override
+    public String evalsha(RedisLockScript script, List<String> keys, List<String> args) {
+        return redisTemplate.execute(getRedisScript(script), serializer, serializer, keys, args.toArray());
+    }
+
+    @Override
+    public int keySlot(String key) {
+        if (clusterMode == null) {
+            clusterMode = redisTemplate
+                    .execute((RedisCallback<Boolean>) (connection) -> connection instanceof RedisClusterConnection);
+        }
+        return Boolean.TRUE.equals(clusterMode) ? ClusterSlotHashUtil.calculateSlot(key) : 0;
+    }
+
+    private RedisScript<String> getRedisScript(RedisLockScript script) {
+        return scriptCache.computeIfAbsent(script.getSha1(),
+                (sha1) -> new DefaultRedisScript<String>(script.getScript(), String.class));
+    }
+
     @Override
     public RedisSubscription getSubscription(String channel, MessageConsumer<String> messageConsumer) {
         return new RedisConnectionSubscription(() -> connectionFactory.getConnection(), channel, messageConsumer);
     }
 
+    @Override
+    public RedisMultiplexSubscription getMultiplexSubscription() {
+        if (multiplexSubscription == null) {
+            synchronized (this) {
+                if (multiplexSubscription == null) {
+                    multiplexSubscription = new RedisConnectionMultiplexSubscription(() -> connectionFactory.getConnection());
+                }
+            }
+        }
+        return multiplexSubscription;
+    }
+
 }
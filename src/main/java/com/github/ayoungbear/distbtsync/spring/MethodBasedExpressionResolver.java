@@ -17,6 +17,8 @@
 package com.github.ayoungbear.distbtsync.spring;
 
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * 基于特定方法上下文的表达式解析器.
@@ -35,4 +37,36 @@ public interface MethodBasedExpressionResolver<T> {
      */
     T evaluate(String expr, Method method, Object target, Object[] arguments);
 
+    /**
+     * 基于方法相关信息, 对给定的表达式进行解析, 解析结果是集合或者数组时返回其中的每个元素.
+     * 默认返回 {@link #evaluate(String, Method, Object, Object[])} 的单个结果.
+     * @param expr 表达式
+     * @param method 方法
+     * @param target 对象
+     * @param arguments 参数
+     * @return 表达式解析结果列表
+     */
+    default List<T> evaluateAll(String expr, Method method, Object target, Object[] arguments) {
+        return Collections.singletonList(evaluate(expr, method, target, arguments));
+    }
+
+    /**
+     * 判断给定的表达式是否是字面量(不依赖方法调用上下文), 字面量的解析结果可以预先计算并复用.
+     * 默认返回 {@code false}.
+     * @param expr 表达式
+     * @return
+     */
+    default boolean isLiteral(String expr) {
+        return false;
+    }
+
+    /**
+     * 预先处理给定方法上的表达式(例如预编译), 以加快之后基于该方法的解析.
+     * 默认不做任何处理.
+     * @param expr 表达式
+     * @param method 方法
+     */
+    default void prepare(String expr, Method method) {
+    }
+
 }
@@ -16,6 +16,9 @@
 
 package com.github.ayoungbear.distbtsync.spring;
 
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
 /**
  * 定义同步执行器接口.
  *
@@ -36,9 +39,76 @@ public interface Synchronizer {
     boolean release();
 
     /**
-     * 当前线程是否持有资源.
+     * 当前线程是否持有资源, 实现类可以只根据本地记录判断, 由 {@link #release()} 的结果确认.
      * @return
      */
     boolean isHeld();
 
+    /**
+     * 获取资源失败时是否直接跳过方法调用, 跳过时不会交给失败处理器处理, 方法返回空值.
+     * @return
+     */
+    default boolean isSkipOnAcquireFailure() {
+        return false;
+    }
+
+    /**
+     * 是否支持异步获取和释放资源.
+     * @return
+     */
+    default boolean isAsyncSupported() {
+        return false;
+    }
+
+    /**
+     * 异步获取资源, 资源的持有者由 {@code ownerId} 标识而不是线程.
+     * @param ownerId 持有者标识
+     * @return 是否获取成功
+     */
+    default CompletionStage<Boolean> acquireAsync(long ownerId) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 异步释放 {@code ownerId} 持有的资源.
+     * @param ownerId 持有者标识
+     * @return 是否释放成功, {@code ownerId} 未持有资源时返回 {@code false}
+     */
+    default CompletionStage<Boolean> releaseAsync(long ownerId) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * 是否支持共享执行结果, 支持时持有资源的调用者执行后共享结果,
+     * 等待期间有其他调用者完成执行的, 获取资源后直接使用共享的结果而不再执行.
+     * @return
+     */
+    default boolean isResultSharingSupported() {
+        return false;
+    }
+
+    /**
+     * 获取共享结果当前的标记, 在开始获取资源之前调用, 之后完成的执行所共享的结果会有更大的标记.
+     * @return 共享结果的标记
+     */
+    default long getSharedResultMark() {
+        return 0;
+    }
+
+    /**
+     * 获取在标记 {@code mark} 之后完成的执行所共享的结果, 只在持有资源时调用.
+     * @param mark 开始获取资源之前通过 {@link #getSharedResultMark()} 获取的标记
+     * @return 共享结果的提供者, 没有可用的结果时返回 {@code null}
+     */
+    default Supplier<Object> getSharedResult(long mark) {
+        return null;
+    }
+
+    /**
+     * 共享本次执行的结果, 只在持有资源时调用.
+     * @param result 执行结果, 可以为 {@code null}
+     */
+    default void shareResult(Object result) {
+    }
+
 }
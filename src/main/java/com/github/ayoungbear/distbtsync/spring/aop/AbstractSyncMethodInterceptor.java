@@ -21,9 +21,12 @@ import com.github.ayoungbear.distbtsync.spring.SyncMethodFailureHandler;
 import com.github.ayoungbear.distbtsync.spring.Synchronizer;
 import com.github.ayoungbear.distbtsync.spring.support.CachedMethodInvoker;
 import com.github.ayoungbear.distbtsync.spring.support.DefaultSyncFailureHandler;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
 import java.util.function.Supplier;
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.support.AopUtils;
 import org.springframework.core.Ordered;
 import org.springframework.lang.Nullable;
 import org.springframework.util.function.SingletonSupplier;
@@ -32,6 +35,10 @@ import org.springframework.util.function.SingletonSupplier;
  * 方法同步调用拦截器基础类. 通过 {@linkplain Synchronizer acquire} 在方法调用前同步获取资源,
  * 获取成功后才会调用方法, 并在方法调用结束后 通过 {@linkplain Synchronizer release} 释放资源.
  * 如果同步操作执行失败, 会通过 {@link SyncMethodFailureHandler} 来进行相应处理.
+ * 返回 {@link java.util.concurrent.CompletionStage} 或者 Reactor {@code Mono}/{@code Flux} 的方法,
+ * 如果同步器支持异步操作, 会异步获取资源并在返回结果结束后才释放资源, 不阻塞线程.
+ * 如果同步器在获取失败时跳过调用, 资源被占用时方法不会执行, 直接返回空值.
+ * 如果同步器支持共享执行结果, 等待期间已有其他调用者执行完成时直接返回共享的结果.
  *
  * @author yangzexiong
  * @see CachedMethodInvoker
@@ -57,54 +64,94 @@ public abstract class AbstractSyncMethodInterceptor implements MethodInterceptor
 
     @Override
     public Object invoke(MethodInvocation invocation) throws Throwable {
-        MethodInvoker methodInvoker = getMethodInvoker(invocation);
-        return syncInvoke(methodInvoker);
+        Object target = invocation.getThis();
+        Method method = CachedMethodInvoker.getSpecificMethod(invocation.getMethod(),
+                target != null ? AopUtils.getTargetClass(target) : null);
+        return syncInvoke(invocation, method, target, invocation.getArguments());
     }
 
     /**
      * 同步方法调用, 在调用前根据指定的 {@link Synchronizer} 同步器进行同步操作,
      * 如果同步失败则由指定的  {@link SyncMethodFailureHandler} 处理器进行相应处理.
-     * @param methodInvoker
+     * 同步调用时只在失败后才创建 {@link MethodInvoker} 和获取处理器, 正常调用不产生额外的对象.
+     * @param invocation
+     * @param method
+     * @param target
+     * @param arguments
      * @return
      * @throws Throwable
      */
-    private final Object syncInvoke(MethodInvoker methodInvoker) throws Throwable {
-        Synchronizer sync = determineSynchronizer(methodInvoker);
+    private final Object syncInvoke(MethodInvocation invocation, Method method, Object target, Object[] arguments)
+            throws Throwable {
+        if (!isSyncRequired(method, target, arguments)) {
+            // 不满足同步条件, 直接调用方法
+            return invocation.proceed();
+        }
+
+        Synchronizer sync = determineSynchronizer(method, target, arguments);
         if (sync == null) {
             throw new IllegalStateException("Synchronizer must be specified");
         }
 
-        SingletonSupplier<SyncMethodFailureHandler> handlerSupplier = SingletonSupplier
-                .of(() -> getSyncFailureHandler(methodInvoker));
+        if (sync.isAsyncSupported() && AsyncSyncInvocation.isAsyncReturnType(method.getReturnType())) {
+            // 返回异步结果的方法, 在异步结果结束后才释放资源
+            MethodInvoker methodInvoker = getMethodInvoker(invocation);
+            return AsyncSyncInvocation.invoke(sync, methodInvoker,
+                    SingletonSupplier.of(() -> getSyncFailureHandler(methodInvoker)));
+        }
 
+        MethodInvoker methodInvoker = null;
+        Object result = null;
+        boolean completed = false;
         try {
+            // 共享执行结果时, 只接受开始等待之后完成的执行结果
+            boolean resultSharing = sync.isResultSharingSupported();
+            long resultMark = resultSharing ? sync.getSharedResultMark() : 0;
+
             // 方法调用前执行同步
-            if (!acquire(sync)) {
+            boolean acquired = acquire(sync);
+            if (!acquired) {
+                if (sync.isSkipOnAcquireFailure()) {
+                    // 资源已被占用时跳过本次调用
+                    return getSkippedResult(method);
+                }
                 // 同步执行失败后续处理
-                handlerSupplier.obtain().handleAcquireFailure(sync, methodInvoker);
+                methodInvoker = getMethodInvoker(invocation);
+                getSyncFailureHandler(methodInvoker).handleAcquireFailure(sync, methodInvoker);
             }
 
             try {
-                // 执行调用, 如果同步失败时处理器没有抛异常终止, 那么将会直接执行方法调用
-                return methodInvoker.invoke();
+                if (acquired && resultSharing) {
+                    result = invokeOrShare(sync, invocation, resultMark);
+                } else {
+                    // 执行调用, 如果同步失败时处理器没有抛异常终止, 那么将会直接执行方法调用
+                    result = methodInvoker != null ? methodInvoker.invoke() : invocation.proceed();
+                }
+                completed = true;
+                return result;
 
             } finally {
                 if (sync.isHeld()) {
                     // 方法调用后执行释放操作
                     if (!release(sync)) {
-                        handlerSupplier.obtain().handleReleaseFailure(sync, methodInvoker);
+                        methodInvoker = obtainMethodInvoker(methodInvoker, invocation, completed, result);
+                        if (sync.isHeld()) {
+                            getSyncFailureHandler(methodInvoker).handleReleaseFailure(sync, methodInvoker);
+                        } else {
+                            // 释放时才确认已经不持有互斥资源(例如被强制释放)
+                            getSyncFailureHandler(methodInvoker).handleHeldFailure(sync, methodInvoker);
+                        }
                     }
                 } else {
                     // 方法调用结束后发现未持有互斥资源
-                    handlerSupplier.obtain().handleHeldFailure(sync, methodInvoker);
+                    methodInvoker = obtainMethodInvoker(methodInvoker, invocation, completed, result);
+                    getSyncFailureHandler(methodInvoker).handleHeldFailure(sync, methodInvoker);
                 }
             }
 
         } catch (Throwable t) {
-            SyncMethodFailureHandler handler = handlerSupplier.get();
-            if (handler != null) {
-                handler.handleError(t, methodInvoker);
-            }
+            methodInvoker = obtainMethodInvoker(methodInvoker, invocation, completed, result);
+            getSyncFailureHandler(methodInvoker).handleError(t, methodInvoker);
             throw t;
         }
     }
@@ -123,6 +170,16 @@ public abstract class AbstractSyncMethodInterceptor implements MethodInterceptor
         return new CachedMethodInvoker(invocation);
     }
 
+    /**
+     * 获取已经调用完成的方法调用执行者, 再次调用会直接返回给定的结果.
+     * @param invocation
+     * @param result
+     * @return
+     */
+    protected MethodInvoker getMethodInvoker(MethodInvocation invocation, @Nullable Object result) {
+        return new CachedMethodInvoker(invocation, result);
+    }
+
     /**
      * 根据方法调用的相关信息获取特定的同步方法调用异常处理器, 如果没有则使用默认的处理器.
      * @param methodInvoker
@@ -145,12 +202,75 @@ public abstract class AbstractSyncMethodInterceptor implements MethodInterceptor
         return null;
     }
 
+    /**
+     * 根据方法调用的相关信息判断本次调用是否需要同步, 不需要时直接调用方法, 不会获取同步器.
+     * 默认所有调用都需要同步.
+     * @param method 目标类型上的具体方法
+     * @param target
+     * @param arguments
+     * @return
+     */
+    protected boolean isSyncRequired(Method method, Object target, Object[] arguments) {
+        return true;
+    }
+
     /**
      * 根据方法调用的相关信息决定特定的同步器.
+     * @param method 目标类型上的具体方法
+     * @param target
+     * @param arguments
+     * @return
+     */
+    protected abstract Synchronizer determineSynchronizer(Method method, Object target, Object[] arguments);
+
+    /**
+     * 获取方法调用执行者, 还没有创建时才创建, 方法已经调用完成时再次调用会直接返回结果.
      * @param methodInvoker
+     * @param invocation
+     * @param completed
+     * @param result
+     * @return
+     */
+    private final MethodInvoker obtainMethodInvoker(@Nullable MethodInvoker methodInvoker,
+            MethodInvocation invocation, boolean completed, Object result) {
+        if (methodInvoker != null) {
+            return methodInvoker;
+        }
+        return completed ? getMethodInvoker(invocation, result) : getMethodInvoker(invocation);
+    }
+
+    /**
+     * 持有资源时, 如果等待期间已经有其他调用者执行完成则直接返回共享的结果,
+     * 否则执行调用并共享本次的结果.
+     * @param synchronizer
+     * @param invocation
+     * @param resultMark
      * @return
+     * @throws Throwable
      */
-    protected abstract Synchronizer determineSynchronizer(MethodInvoker methodInvoker);
+    private final Object invokeOrShare(Synchronizer synchronizer, MethodInvocation invocation, long resultMark)
+            throws Throwable {
+        Supplier<Object> sharedResult = synchronizer.getSharedResult(resultMark);
+        if (sharedResult != null) {
+            return sharedResult.get();
+        }
+        Object result = invocation.proceed();
+        synchronizer.shareResult(result);
+        return result;
+    }
+
+    /**
+     * 跳过方法调用时的返回值, 基本类型返回其默认值, 其他类型返回 {@code null}.
+     * @param method
+     * @return
+     */
+    private final Object getSkippedResult(Method method) {
+        Class<?> returnType = method.getReturnType();
+        if (returnType.isPrimitive() && returnType != void.class) {
+            return Array.get(Array.newInstance(returnType, 1), 0);
+        }
+        return null;
+    }
 
     /**
      * 在方法调用之前获取同步资源.
@@ -0,0 +1,228 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.spring.aop;
+
+import com.github.ayoungbear.distbtsync.spring.MethodInvoker;
+import com.github.ayoungbear.distbtsync.spring.SyncMethodFailureHandler;
+import com.github.ayoungbear.distbtsync.spring.Synchronizer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.reactivestreams.Publisher;
+import org.springframework.util.ClassUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * 返回异步结果的方法的同步调用, 支持 {@link CompletionStage} 以及 Reactor 的 {@code Mono} 和 {@code Flux}.
+ * 通过 {@linkplain Synchronizer#acquireAsync(long) acquireAsync} 异步获取资源后才调用方法,
+ * 并在返回的异步结果结束后通过 {@linkplain Synchronizer#releaseAsync(long) releaseAsync} 释放资源, 整个过程不阻塞线程.
+ * 每次调用(对于 {@code Mono} 和 {@code Flux} 是每次订阅)使用单独的持有者标识.
+ * 注意获取资源后的方法调用和后续处理在完成异步获取的线程中执行.
+ *
+ * @author yangzexiong
+ */
+final class AsyncSyncInvocation {
+
+    private static final boolean REACTOR_PRESENT = ClassUtils.isPresent("reactor.core.publisher.Mono",
+            AsyncSyncInvocation.class.getClassLoader());
+
+    /**
+     * 异步调用的持有者标识序列
+     */
+    private static final AtomicLong OWNER_SEQUENCE = new AtomicLong(0);
+
+    private AsyncSyncInvocation() {
+    }
+
+    /**
+     * 判断方法的返回类型是否是支持的异步结果类型.
+     * @param returnType
+     * @return
+     */
+    static boolean isAsyncReturnType(Class<?> returnType) {
+        return returnType == CompletionStage.class || returnType == CompletableFuture.class
+                || (REACTOR_PRESENT && ReactorSupport.isReactiveType(returnType));
+    }
+
+    /**
+     * 同步调用返回异步结果的方法.
+     * @param sync
+     * @param methodInvoker
+     * @param handlerSupplier
+     * @return
+     */
+    static Object invoke(Synchronizer sync, MethodInvoker methodInvoker,
+            Supplier<SyncMethodFailureHandler> handlerSupplier) {
+        Class<?> returnType = methodInvoker.getMethod().getReturnType();
+        if (REACTOR_PRESENT && ReactorSupport.isReactiveType(returnType)) {
+            return ReactorSupport.invoke(sync, methodInvoker, handlerSupplier, returnType);
+        }
+        return invokeCompletionStage(sync, methodInvoker, handlerSupplier);
+    }
+
+    private static CompletableFuture<Object> invokeCompletionStage(Synchronizer sync, MethodInvoker methodInvoker,
+            Supplier<SyncMethodFailureHandler> handlerSupplier) {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        long ownerId = OWNER_SEQUENCE.incrementAndGet();
+        CompletionStage<Boolean> acquiring;
+        try {
+            acquiring = sync.acquireAsync(ownerId);
+        } catch (Throwable t) {
+            result.completeExceptionally(handleError(t, methodInvoker, handlerSupplier));
+            return result;
+        }
+        acquiring.whenComplete((acquired, e) -> {
+            if (e != null) {
+                result.completeExceptionally(handleError(e, methodInvoker, handlerSupplier));
+                return;
+            }
+            CompletionStage<?> stage;
+            try {
+                if (!acquired) {
+                    // 同步执行失败后续处理
+                    handlerSupplier.get().handleAcquireFailure(sync, methodInvoker);
+                }
+                // 执行调用, 如果同步失败时处理器没有抛异常终止, 那么将会直接执行方法调用
+                stage = (CompletionStage<?>) methodInvoker.invoke();
+                if (stage == null) {
+                    stage = CompletableFuture.completedFuture(null);
+                }
+            } catch (Throwable t) {
+                stage = failedStage(t);
+            }
+            stage.whenComplete((value, ex) -> release(sync, methodInvoker, handlerSupplier, ownerId)
+                    .whenComplete((released, rex) -> {
+                        Throwable error = ex != null ? ex : rex;
+                        if (error != null) {
+                            result.completeExceptionally(handleError(error, methodInvoker, handlerSupplier));
+                        } else {
+                            result.complete(value);
+                        }
+                    }));
+        });
+        return result;
+    }
+
+    /**
+     * 在异步结果结束后释放资源, 如果 {@code ownerId} 已不持有资源则由处理器进行相应处理.
+     * @param sync
+     * @param methodInvoker
+     * @param handlerSupplier
+     * @param ownerId
+     * @return
+     */
+    private static CompletionStage<Boolean> release(Synchronizer sync, MethodInvoker methodInvoker,
+            Supplier<SyncMethodFailureHandler> handlerSupplier, long ownerId) {
+        CompletionStage<Boolean> releasing;
+        try {
+            releasing = sync.releaseAsync(ownerId);
+        } catch (Throwable t) {
+            return failedStage(t);
+        }
+        return releasing.thenApply((released) -> {
+            if (!released) {
+                // 异步结果结束后发现未持有互斥资源
+                handlerSupplier.get().handleHeldFailure(sync, methodInvoker);
+            }
+            return released;
+        });
+    }
+
+    /**
+     * 由处理器处理异常, 返回最终的异常.
+     * @param t
+     * @param methodInvoker
+     * @param handlerSupplier
+     * @return
+     */
+    private static Throwable handleError(Throwable t, MethodInvoker methodInvoker,
+            Supplier<SyncMethodFailureHandler> handlerSupplier) {
+        Throwable error = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+        try {
+            SyncMethodFailureHandler handler = handlerSupplier.get();
+            if (handler != null) {
+                handler.handleError(error, methodInvoker);
+            }
+        } catch (Throwable ht) {
+            return ht;
+        }
+        return error;
+    }
+
+    private static <T> CompletableFuture<T> failedStage(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+
+    /**
+     * Reactor 支持, 只有在 Reactor 存在时才会加载.
+     *
+     * @author yangzexiong
+     */
+    private static class ReactorSupport {
+
+        static boolean isReactiveType(Class<?> returnType) {
+            return returnType == Mono.class || returnType == Flux.class;
+        }
+
+        static Object invoke(Synchronizer sync, MethodInvoker methodInvoker,
+                Supplier<SyncMethodFailureHandler> handlerSupplier, Class<?> returnType) {
+            Mono<Long> acquire = Mono.defer(() -> acquire(sync, methodInvoker, handlerSupplier));
+            if (returnType == Mono.class) {
+                return Mono.usingWhen(acquire, (ownerId) -> Mono.from(invokePublisher(methodInvoker)),
+                        (ownerId) -> Mono.fromCompletionStage(release(sync, methodInvoker, handlerSupplier, ownerId)))
+                        .onErrorMap((t) -> handleError(t, methodInvoker, handlerSupplier));
+            }
+            return Flux.usingWhen(acquire, (ownerId) -> Flux.from(invokePublisher(methodInvoker)),
+                    (ownerId) -> Mono.fromCompletionStage(release(sync, methodInvoker, handlerSupplier, ownerId)))
+                    .onErrorMap((t) -> handleError(t, methodInvoker, handlerSupplier));
+        }
+
+        private static Mono<Long> acquire(Synchronizer sync, MethodInvoker methodInvoker,
+                Supplier<SyncMethodFailureHandler> handlerSupplier) {
+            long ownerId = OWNER_SEQUENCE.incrementAndGet();
+            CompletionStage<Boolean> acquiring = sync.acquireAsync(ownerId);
+            return Mono.fromCompletionStage(acquiring.thenApply((acquired) -> {
+                if (!acquired) {
+                    // 同步执行失败后续处理, 处理器没有抛异常终止则直接执行方法调用
+                    handlerSupplier.get().handleAcquireFailure(sync, methodInvoker);
+                }
+                return ownerId;
+            })).doOnCancel(() -> acquiring.thenAccept((acquired) -> {
+                // 获取成功前已取消订阅, 释放获取到的资源
+                if (acquired) {
+                    sync.releaseAsync(ownerId);
+                }
+            }));
+        }
+
+        private static Publisher<?> invokePublisher(MethodInvoker methodInvoker) {
+            try {
+                Object result = methodInvoker.invoke();
+                return result == null ? Mono.empty() : (Publisher<?>) result;
+            } catch (Throwable t) {
+                return Mono.error(t);
+            }
+        }
+
+    }
+
+}
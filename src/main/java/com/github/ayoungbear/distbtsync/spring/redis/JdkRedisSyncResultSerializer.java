@@ -0,0 +1,167 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.spring.redis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import org.springframework.lang.Nullable;
+
+/**
+ * 使用 JDK 序列化并以 Base64 编码的执行结果序列化器, 执行结果需要实现 {@link java.io.Serializable}.
+ * 反序列化时只允许白名单中的类型, 避免 redis 中被篡改的数据触发反序列化漏洞.
+ * 默认只允许字符串, 基本类型的包装类, {@code java.math}, {@code java.time}, 日期以及常用集合类型,
+ * 同步方法声明的返回值类型也总是允许, 返回值中引用的其他自定义类型需要通过构造方法指定允许的包或者类名.
+ *
+ * @author yangzexiong
+ */
+public class JdkRedisSyncResultSerializer implements RedisSyncResultSerializer {
+
+    /**
+     * 默认允许反序列化的类名, 以 '.' 或 '$' 结尾的表示前缀
+     */
+    private static final List<String> DEFAULT_ALLOWED_CLASSES = Collections.unmodifiableList(Arrays.asList(
+            "java.lang.String", "java.lang.Boolean", "java.lang.Byte", "java.lang.Character", "java.lang.Short",
+            "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double", "java.lang.Number",
+            "java.lang.Enum", "java.math.", "java.time.", "java.util.Date", "java.util.ArrayList",
+            "java.util.LinkedList", "java.util.HashMap", "java.util.LinkedHashMap", "java.util.TreeMap",
+            "java.util.HashSet", "java.util.LinkedHashSet", "java.util.TreeSet", "java.util.Arrays$ArrayList",
+            "java.util.Collections$", "java.util.CollSer"));
+
+    private final List<String> allowedClasses;
+
+    public JdkRedisSyncResultSerializer() {
+        this(Collections.emptyList());
+    }
+
+    /**
+     * 在默认的白名单基础上增加允许反序列化的类型.
+     * @param allowedClasses 允许的类名或者包名, 以 '.' 结尾的表示包名前缀, 比如 {@code "com.example.dto."}
+     */
+    public JdkRedisSyncResultSerializer(List<String> allowedClasses) {
+        List<String> allowed = new ArrayList<>(DEFAULT_ALLOWED_CLASSES);
+        if (allowedClasses != null) {
+            allowed.addAll(allowedClasses);
+        }
+        this.allowedClasses = Collections.unmodifiableList(allowed);
+    }
+
+    @Override
+    public String serialize(Object result) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(result);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to serialize result of type " + result.getClass().getName(), e);
+        }
+        return Base64.getEncoder().encodeToString(bytes.toByteArray());
+    }
+
+    @Override
+    public Object deserialize(String value) {
+        return deserialize(value, null);
+    }
+
+    @Override
+    public Object deserialize(String value, @Nullable Class<?> resultType) {
+        byte[] bytes = Base64.getDecoder().decode(value);
+        try (ObjectInputStream in = new AllowListObjectInputStream(new ByteArrayInputStream(bytes), resultType)) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalArgumentException("Failed to deserialize result", e);
+        }
+    }
+
+    /**
+     * 判断给定的类是否允许反序列化.
+     * @param className 类名, 数组为其元素的类名
+     * @param resultType 同步方法声明的返回值类型
+     * @return
+     */
+    protected boolean isAllowed(String className, @Nullable Class<?> resultType) {
+        if (resultType != null && className.equals(resultType.getName())) {
+            return true;
+        }
+        for (String allowed : allowedClasses) {
+            boolean prefix = allowed.endsWith(".") || allowed.endsWith("$");
+            if (prefix ? className.startsWith(allowed) : className.equals(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 获取允许反序列化的类名和包名.
+     * @return
+     */
+    public List<String> getAllowedClasses() {
+        return allowedClasses;
+    }
+
+    /**
+     * 按白名单校验类型的对象输入流.
+     *
+     * @author yangzexiong
+     */
+    private class AllowListObjectInputStream extends ObjectInputStream {
+
+        private final Class<?> resultType;
+
+        private AllowListObjectInputStream(InputStream in, Class<?> resultType) throws IOException {
+            super(in);
+            this.resultType = resultType != null && resultType.isArray() ? resultType.getComponentType()
+                    : resultType;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            String className = desc.getName();
+            int dimensions = 0;
+            while (dimensions < className.length() && className.charAt(dimensions) == '[') {
+                dimensions++;
+            }
+            // 数组校验其元素类型, 基本类型的数组总是允许
+            if (dimensions > 0) {
+                className = className.charAt(dimensions) == 'L'
+                        ? className.substring(dimensions + 1, className.length() - 1) : null;
+            }
+            if (className != null && !isAllowed(className, resultType)) {
+                throw new InvalidClassException(desc.getName(), "Class is not allowed to deserialize");
+            }
+            return super.resolveClass(desc);
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException, ClassNotFoundException {
+            throw new InvalidClassException("Proxy class is not allowed to deserialize");
+        }
+
+    }
+
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.spring.redis;
+
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLock;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockCommands;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockOperation;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockScript;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.lang.Nullable;
+import org.springframework.util.Assert;
+
+/**
+ * 合并执行的同步器实现类, 在互斥同步的基础上共享执行结果.
+ * 持有锁的调用者执行完成后把结果连同递增的版本号保存在 redis 中, 调用者在加锁前读取当前版本号,
+ * 获取到锁后版本号已经增加的, 说明等待期间有其他调用者完成执行, 直接读取共享的结果并释放锁, 不再重复执行,
+ * 多个节点同时调用时只会执行一次. 版本号只在 redis 中比较, 不依赖各个节点的本地时钟.
+ *
+ * @author yangzexiong
+ * @see RedisSyncResultSerializer
+ */
+public class RedisCoalescingSynchronizer extends RedisLockSynchronizer {
+
+    private static final Logger logger = LoggerFactory.getLogger(RedisCoalescingSynchronizer.class);
+
+    /**
+     * 共享结果的键值后缀
+     */
+    private static final String RESULT_SUFFIX = ":result";
+
+    /**
+     * 递增版本号并保存共享结果, 设置过期时间, 保存的值为 "版本号:结果".
+     * ARGV[1] 序列化后的结果, ARGV[2] 过期时间(ms)
+     */
+    private static final RedisLockScript STORE_SCRIPT = RedisLockScript.of("coalesceStore",
+            "local value = redis.call('get', KEYS[1]); " +
+                    "local generation = 1; " +
+                    "if (value) then " +
+                    "generation = tonumber(string.match(value, '^(%d+):')) + 1; " +
+                    "end; " +
+                    "redis.call('set', KEYS[1], generation .. ':' .. ARGV[1], 'px', ARGV[2]); " +
+                    "return tostring(generation); ");
+
+    /**
+     * 获取共享结果当前的版本号, 不存在时返回 '0'
+     */
+    private static final RedisLockScript MARK_SCRIPT = RedisLockScript.of("coalesceMark",
+            "local value = redis.call('get', KEYS[1]); " +
+                    "if (value) then " +
+                    "return string.match(value, '^(%d+):'); " +
+                    "end; " +
+                    "return '0'; ");
+
+    /**
+     * 获取共享结果和版本号, 不存在时返回空字符串
+     */
+    private static final RedisLockScript GET_SCRIPT = RedisLockScript.of("coalesceGet",
+            "return redis.call('get', KEYS[1]) or ''; ");
+
+    private final RedisLockCommands commands;
+
+    private final RedisSyncResultSerializer serializer;
+
+    private final long resultTtlMillis;
+
+    private final String resultKey;
+
+    /**
+     * 同步方法声明的返回值类型, 未知时为 {@code null}
+     */
+    private final Class<?> resultType;
+
+    public RedisCoalescingSynchronizer(RedisLock lock, RedisLockOperation lockOperation, RedisLockCommands commands,
+            RedisSyncResultSerializer serializer, long resultTtlMillis) {
+        this(lock, lockOperation, commands, serializer, resultTtlMillis, null);
+    }
+
+    public RedisCoalescingSynchronizer(RedisLock lock, RedisLockOperation lockOperation, RedisLockCommands commands,
+            RedisSyncResultSerializer serializer, long resultTtlMillis, @Nullable Class<?> resultType) {
+        super(lock, lockOperation);
+        Assert.notNull(commands, () -> "RedisLockCommands must not be null");
+        Assert.notNull(serializer, () -> "RedisSyncResultSerializer must not be null");
+        Assert.isTrue(resultTtlMillis > 0, () -> "Result ttl must be greater than 0");
+        this.commands = commands;
+        this.serializer = serializer;
+        this.resultTtlMillis = resultTtlMillis;
+        this.resultKey = lock.getLockName() + RESULT_SUFFIX;
+        this.resultType = resultType;
+    }
+
+    @Override
+    public boolean isResultSharingSupported() {
+        return true;
+    }
+
+    @Override
+    public long getSharedResultMark() {
+        try {
+            return Long.parseLong(commands.evalsha(MARK_SCRIPT, resultKey));
+        } catch (RuntimeException e) {
+            // 无法读取版本号时不采用任何共享结果
+            logger.warn("Failed to read shared result generation of '{}', method will be invoked", resultKey, e);
+            return Long.MAX_VALUE;
+        }
+    }
+
+    @Override
+    public Supplier<Object> getSharedResult(long mark) {
+        String value = commands.evalsha(GET_SCRIPT, resultKey);
+        int separator = value.indexOf(':');
+        if (separator <= 0 || Long.parseLong(value.substring(0, separator)) <= mark) {
+            return null;
+        }
+        Object result;
+        try {
+            result = serializer.deserialize(value.substring(separator + 1), resultType);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to read shared result of '{}', method will be invoked", resultKey, e);
+            return null;
+        }
+        return () -> result;
+    }
+
+    @Override
+    public void shareResult(Object result) {
+        try {
+            commands.evalsha(STORE_SCRIPT, resultKey, serializer.serialize(result), String.valueOf(resultTtlMillis));
+        } catch (RuntimeException e) {
+            // 共享失败不影响本次调用, 其他调用者会重新执行
+            logger.warn("Failed to share result of '{}'", resultKey, e);
+        }
+    }
+
+    public long getResultTtlMillis() {
+        return resultTtlMillis;
+    }
+
+    public Class<?> getResultType() {
+        return resultType;
+    }
+
+}
@@ -17,12 +17,16 @@
 package com.github.ayoungbear.distbtsync.spring.redis;
 
 import com.github.ayoungbear.distbtsync.redis.lock.RedisLock;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockAsyncOperation;
 import com.github.ayoungbear.distbtsync.redis.lock.RedisLockOperation;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
 import org.springframework.util.Assert;
 
 /**
  * 基于 Redis 的同步器实现类, 使用分布式锁 {@link RedisLock} 和
  * 相应的加锁操作 {@link RedisLockOperation} 来实现互斥同步.
+ * 如果提供了异步加锁操作 {@link RedisLockAsyncOperation}, 则同时支持异步获取和释放.
  *
  * @author yangzexiong
  * @see RedisLock
@@ -34,11 +38,19 @@ public class RedisLockSynchronizer implements RedisSynchronizer {
 
     private RedisLockOperation lockOperation;
 
+    private RedisLockAsyncOperation asyncLockOperation;
+
     public RedisLockSynchronizer(RedisLock lock, RedisLockOperation lockOperation) {
+        this(lock, lockOperation, null);
+    }
+
+    public RedisLockSynchronizer(RedisLock lock, RedisLockOperation lockOperation,
+            RedisLockAsyncOperation asyncLockOperation) {
         Assert.notNull(lock, () -> "RedisLock must not be null");
         Assert.notNull(lockOperation, () -> "RedisLockOperation must not be null");
         this.lock = lock;
         this.lockOperation = lockOperation;
+        this.asyncLockOperation = asyncLockOperation;
     }
 
     @Override
@@ -53,7 +65,34 @@ public class RedisLockSynchronizer implements RedisSynchronizer {
 
     @Override
     public boolean isHeld() {
-        return lock.isHeldLock();
+        return lock.isHeldLockLocally();
+    }
+
+    @Override
+    public boolean isAsyncSupported() {
+        return asyncLockOperation != null;
+    }
+
+    @Override
+    public CompletionStage<Boolean> acquireAsync(long ownerId) {
+        if (asyncLockOperation == null) {
+            throw new UnsupportedOperationException("RedisLockAsyncOperation is not provided");
+        }
+        return asyncLockOperation.doLock(lock, ownerId);
+    }
+
+    @Override
+    public CompletionStage<Boolean> releaseAsync(long ownerId) {
+        return lock.unlockAsync(ownerId).handle((v, e) -> {
+            if (e == null) {
+                return true;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof IllegalMonitorStateException) {
+                return false;
+            }
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+        });
     }
 
     @Override
@@ -17,17 +17,36 @@
 package com.github.ayoungbear.distbtsync.spring.redis;
 
 import com.github.ayoungbear.distbtsync.redis.lock.RedisBasedLock;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisFairLock;
 import com.github.ayoungbear.distbtsync.redis.lock.RedisLock;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockAsyncOperation;
 import com.github.ayoungbear.distbtsync.redis.lock.RedisLockCommands;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockObserver;
 import com.github.ayoungbear.distbtsync.redis.lock.RedisLockOperation;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockWatchdog;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisMultiLock;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisRateLimiter;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisReadWriteLock;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisScheduledLock;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisSemaphore;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
 import org.springframework.util.function.SingletonSupplier;
 
 /**
  * 基于 {@link RedisLock} 分布式锁实现的
  * 同步器提供者实现类.
+ * 分布式锁和同步器对象会按锁名称缓存复用, 缓存的数量超过上限时会清除长时间未使用的锁.
  *
  * @author yangzexiong
  */
@@ -35,8 +54,81 @@ public class RedisLockSynchronizerProvider implements RedisSynchronizerProvider
 
     private static final TimeUnit TIME_UNIT = TimeUnit.MILLISECONDS;
 
+    /**
+     * 默认的锁缓存数量上限
+     */
+    public static final int DEFAULT_LOCK_CACHE_MAX_SIZE = 4096;
+
+    /**
+     * 默认的锁缓存空闲时间(ms), 超过该时间未使用的锁在缓存数量超过上限时会被清除
+     */
+    public static final long DEFAULT_LOCK_CACHE_IDLE_TIME = TimeUnit.MINUTES.toMillis(10);
+
+    /**
+     * 默认本节点通过本地移交连续持有锁的最长时间(ms)
+     */
+    public static final long DEFAULT_LOCAL_HANDOFF_MAX_HOLD_TIME = TimeUnit.SECONDS.toMillis(1);
+
+    /**
+     * 默认合并执行时共享结果的有效时间(ms)
+     */
+    public static final long DEFAULT_COALESCE_RESULT_TTL = TimeUnit.SECONDS.toMillis(5);
+
+    /**
+     * 访问时间的更新精度(ms), 避免热点锁每次访问都写入共享变量
+     */
+    private static final long ACCESS_TIME_PRECISION = 1000;
+
     private Supplier<RedisLockCommands> commandsSupplier;
 
+    /**
+     * 分布式锁和同步器缓存, 按锁名称缓存, 同一名称下不同类型的锁和限流器保存在同一个缓存项中
+     */
+    private final Map<String, LockCacheEntry> lockCache = new ConcurrentHashMap<>(256);
+
+    /**
+     * 子类是否重写了 {@link #getSynchronizer(RedisSyncAttributes)}, 重写时调用时解析的属性也要交给它处理
+     */
+    private final boolean synchronizerOverridden = ReflectionUtils
+            .findMethod(getClass(), "getSynchronizer", RedisSyncAttributes.class)
+            .getDeclaringClass() != RedisLockSynchronizerProvider.class;
+
+    /**
+     * 是否正在清理缓存
+     */
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+    private int lockCacheMaxSize = DEFAULT_LOCK_CACHE_MAX_SIZE;
+
+    private long lockCacheIdleTimeMillis = DEFAULT_LOCK_CACHE_IDLE_TIME;
+
+    private RedisLockWatchdog watchdog;
+    /**
+     * 本地移交的最大连续次数, 小于等于 0 表示不开启
+     */
+    private int localHandoffMaxCount = 0;
+    /**
+     * 本节点通过本地移交连续持有锁的最长时间(ms)
+     */
+    private long localHandoffMaxHoldTimeMillis = DEFAULT_LOCAL_HANDOFF_MAX_HOLD_TIME;
+    /**
+     * 锁运行情况的观察者, 创建锁时获取
+     */
+    private Supplier<RedisLockObserver> observerSupplier;
+    /**
+     * 是否使用全局公平锁
+     */
+    private boolean fairLock = false;
+    /**
+     * 合并执行时共享结果的序列化器
+     */
+    private Supplier<RedisSyncResultSerializer> resultSerializerSupplier = SingletonSupplier
+            .of(JdkRedisSyncResultSerializer::new);
+    /**
+     * 合并执行时共享结果的有效时间(ms)
+     */
+    private long coalesceResultTtlMillis = DEFAULT_COALESCE_RESULT_TTL;
+
     public RedisLockSynchronizerProvider(RedisLockCommands commands) {
         Assert.notNull(commands, () -> "RedisLockCommands must not be null");
         this.commandsSupplier = SingletonSupplier.of(commands);
@@ -49,22 +141,217 @@ public class RedisLockSynchronizerProvider implements RedisSynchronizerProvider
 
     @Override
     public RedisSynchronizer getSynchronizer(RedisSyncAttributes attributes) {
-        RedisLock lock = getRedisLock(attributes.getKey());
-        RedisLockOperation lockOperation = determineLockOperation(attributes);
-        return new RedisLockSynchronizer(lock, lockOperation);
+        return doGetSynchronizer(attributes, attributes.getKey(), attributes.getKeys(), attributes.getLeaseTimeMillis(),
+                attributes.getWaitTimeMillis());
     }
 
     /**
-     * 根据给定的 {@code key} 键值, 返回相应的分布式锁对象.
+     * {@inheritDoc}
+     * 子类重写了 {@link #getSynchronizer(RedisSyncAttributes)} 时, 会生成完整的同步属性后委托给它.
+     */
+    @Override
+    public RedisSynchronizer getSynchronizer(RedisSyncAttributes attributes, String key, List<String> keys,
+            long leaseTimeMillis, long waitTimeMillis) {
+        if (synchronizerOverridden) {
+            return RedisSynchronizerProvider.super.getSynchronizer(attributes, key, keys, leaseTimeMillis,
+                    waitTimeMillis);
+        }
+        return doGetSynchronizer(attributes, key, keys, leaseTimeMillis, waitTimeMillis);
+    }
+
+    /**
+     * 根据同步属性和本次调用解析出的键值和时间获取同步器, 锁和同步器优先从缓存中获取.
+     * @param attributes
+     * @param key
+     * @param keys
+     * @param leaseTimeMillis
+     * @param waitTimeMillis
+     * @return
+     */
+    private RedisSynchronizer doGetSynchronizer(RedisSyncAttributes attributes, String key, List<String> keys,
+            long leaseTimeMillis, long waitTimeMillis) {
+        if (attributes.getRate() > 0 && !attributes.isMultiKey()) {
+            return getRateLimiterSynchronizer(attributes, key, waitTimeMillis);
+        }
+        if (isSkipIfLocked(attributes)) {
+            return getSkipIfLockedSynchronizer(attributes, key, leaseTimeMillis, waitTimeMillis);
+        }
+        CachedLock entry;
+        if (attributes.isMultiKey()) {
+            entry = getCachedLock(key, keys, LockMode.MULTI, 0);
+        } else if (attributes.getPermits() > 0) {
+            entry = getCachedLock(key, null, LockMode.SEMAPHORE, attributes.getPermits());
+        } else if (isShared(attributes)) {
+            entry = getCachedLock(key, null, LockMode.SHARED, 0);
+        } else {
+            entry = getCachedLock(key, null, LockMode.EXCLUSIVE, 0);
+        }
+        Class<?> resultType = attributes.isCoalesce() ? attributes.getResultType() : null;
+        RedisLockSynchronizer synchronizer = entry.getSynchronizer(leaseTimeMillis, waitTimeMillis,
+                attributes.isCoalesce(), resultType);
+        if (synchronizer == null) {
+            // 只在缓存未命中时才生成完整的同步属性
+            RedisSyncAttributes resolved = resolveAttributes(attributes, key, keys, leaseTimeMillis, waitTimeMillis);
+            RedisLockOperation lockOperation = resolved.getLockOperation();
+            if (lockOperation == null) {
+                lockOperation = determineLockOperation(resolved);
+            }
+            if (isCoalesce(resolved)) {
+                synchronizer = new RedisCoalescingSynchronizer(entry.lock, lockOperation, commandsSupplier.get(),
+                        resultSerializerSupplier.get(), coalesceResultTtlMillis, resultType);
+            } else {
+                RedisLockAsyncOperation asyncLockOperation = determineAsyncLockOperation(resolved);
+                synchronizer = new RedisLockSynchronizer(entry.lock, lockOperation, asyncLockOperation);
+            }
+            entry.setSynchronizer(leaseTimeMillis, waitTimeMillis, resolved.isCoalesce(), resultType, synchronizer);
+        }
+        return synchronizer;
+    }
+
+    /**
+     * 根据给定的 {@code key} 键值, 返回相应的分布式锁对象, 优先从缓存中获取.
      * @param key
      * @return
      */
     protected RedisLock getRedisLock(String key) {
+        return getCachedLock(key, null, LockMode.EXCLUSIVE, 0).lock;
+    }
+
+    /**
+     * 根据给定的多个键值, 返回同时锁定这些键的分布式锁对象, 优先从缓存中获取.
+     * @param keys
+     * @return
+     */
+    protected RedisLock getRedisMultiLock(List<String> keys) {
+        return getCachedLock(RedisMultiLock.getLockName(keys), keys, LockMode.MULTI, 0).lock;
+    }
+
+    /**
+     * 根据给定的 {@code key} 键值, 创建相应的分布式锁对象.
+     * @param key
+     * @return
+     */
+    protected RedisLock createRedisLock(String key) {
+        RedisLockCommands commands = commandsSupplier.get();
+        if (commands == null) {
+            throw new IllegalStateException("RedisLockCommands is required to create RedisLock");
+        }
+        if (fairLock) {
+            RedisFairLock lock = new RedisFairLock(key, commands).setWatchdog(watchdog);
+            if (observerSupplier != null) {
+                lock.setObserver(observerSupplier.get());
+            }
+            return lock;
+        }
+        RedisBasedLock lock = RedisBasedLock.newSharedLock(key, commands).setWatchdog(watchdog);
+        if (localHandoffMaxCount > 0) {
+            lock.setLocalHandoff(localHandoffMaxCount, localHandoffMaxHoldTimeMillis, TimeUnit.MILLISECONDS);
+        }
+        if (observerSupplier != null) {
+            lock.setObserver(observerSupplier.get());
+        }
+        return lock;
+    }
+
+    /**
+     * 根据给定的多个键值, 创建同时锁定这些键的分布式锁对象.
+     * @param keys
+     * @return
+     */
+    protected RedisLock createRedisMultiLock(List<String> keys) {
+        RedisLockCommands commands = commandsSupplier.get();
+        if (commands == null) {
+            throw new IllegalStateException("RedisLockCommands is required to create RedisLock");
+        }
+        RedisMultiLock lock = new RedisMultiLock(keys, commands).setWatchdog(watchdog);
+        if (observerSupplier != null) {
+            lock.setObserver(observerSupplier.get());
+        }
+        return lock;
+    }
+
+    /**
+     * 根据给定的 {@code key} 键值, 创建读写锁并返回其中的读锁, 用于共享同步.
+     * @param key
+     * @return
+     */
+    protected RedisLock createRedisReadLock(String key) {
         RedisLockCommands commands = commandsSupplier.get();
         if (commands == null) {
             throw new IllegalStateException("RedisLockCommands is required to create RedisLock");
         }
-        return RedisBasedLock.newSharedLock(key, commands);
+        RedisReadWriteLock lock = new RedisReadWriteLock(key, commands).setWatchdog(watchdog);
+        if (observerSupplier != null) {
+            lock.setObserver(observerSupplier.get());
+        }
+        return lock.readLock();
+    }
+
+    /**
+     * 根据给定的 {@code key} 键值和许可数, 创建信号量并返回以信号量实现的锁, 用于信号量同步.
+     * 信号量不使用看门狗续期.
+     * @param key
+     * @param permits
+     * @return
+     */
+    protected RedisLock createRedisSemaphoreLock(String key, int permits) {
+        RedisLockCommands commands = commandsSupplier.get();
+        if (commands == null) {
+            throw new IllegalStateException("RedisLockCommands is required to create RedisLock");
+        }
+        RedisSemaphore semaphore = new RedisSemaphore(key, permits, commands);
+        if (observerSupplier != null) {
+            semaphore.setObserver(observerSupplier.get());
+        }
+        return semaphore.asLock();
+    }
+
+    /**
+     * 根据给定的 {@code key} 键值和最短持有时间, 创建用于定时任务的非阻塞锁.
+     * @param key
+     * @param lockAtLeastForMillis 最短持有时间(ms)
+     * @return
+     */
+    protected RedisScheduledLock createRedisScheduledLock(String key, long lockAtLeastForMillis) {
+        RedisLockCommands commands = commandsSupplier.get();
+        if (commands == null) {
+            throw new IllegalStateException("RedisLockCommands is required to create RedisLock");
+        }
+        RedisScheduledLock lock = new RedisScheduledLock(key, lockAtLeastForMillis, TimeUnit.MILLISECONDS, commands);
+        if (observerSupplier != null) {
+            lock.setObserver(observerSupplier.get());
+        }
+        return lock;
+    }
+
+    /**
+     * 根据给定的 {@code key} 键值, 创建每秒产生给定数量令牌的限流器.
+     * @param key
+     * @param rate 每秒的令牌数
+     * @param prefetch 每次预取的令牌数
+     * @return
+     */
+    protected RedisRateLimiter createRedisRateLimiter(String key, long rate, int prefetch) {
+        RedisLockCommands commands = commandsSupplier.get();
+        if (commands == null) {
+            throw new IllegalStateException("RedisLockCommands is required to create RedisRateLimiter");
+        }
+        return new RedisRateLimiter(key, rate, 1, TimeUnit.SECONDS, commands).setPrefetch(prefetch);
+    }
+
+    /**
+     * 根据同步设置的相关信息决定异步加锁的操作, 用于返回异步结果的同步方法.
+     * 公平锁, 多键锁, 读锁和信号量不支持异步加锁, 返回 {@code null} 时同步方法会阻塞加锁.
+     * @param attribute
+     * @return
+     */
+    protected RedisLockAsyncOperation determineAsyncLockOperation(RedisSyncAttributes attribute) {
+        if (fairLock || attribute.isMultiKey() || attribute.getPermits() > 0 || isShared(attribute)) {
+            return null;
+        }
+        long leaseTime = attribute.getLeaseTimeMillis();
+        long waitTime = attribute.getWaitTimeMillis();
+        return (lock, ownerId) -> lock.tryLockAsync(waitTime, leaseTime, TIME_UNIT, ownerId);
     }
 
     /**
@@ -130,4 +417,436 @@ public class RedisLockSynchronizerProvider implements RedisSynchronizerProvider
         }
     }
 
+    /**
+     * 设置锁缓存数量上限.
+     * @param lockCacheMaxSize
+     */
+    public void setLockCacheMaxSize(int lockCacheMaxSize) {
+        Assert.isTrue(lockCacheMaxSize > 0, () -> "Lock cache max size must be greater than 0");
+        this.lockCacheMaxSize = lockCacheMaxSize;
+    }
+
+    /**
+     * 设置锁缓存的空闲时间(ms).
+     * @param lockCacheIdleTimeMillis
+     */
+    public void setLockCacheIdleTimeMillis(long lockCacheIdleTimeMillis) {
+        this.lockCacheIdleTimeMillis = lockCacheIdleTimeMillis;
+    }
+
+    /**
+     * 设置看门狗, 未指定过期时间的锁会使用看门狗的过期时间并在持有期间自动续期.
+     * 只对之后创建的锁生效.
+     * @param watchdog
+     */
+    public void setWatchdog(RedisLockWatchdog watchdog) {
+        this.watchdog = watchdog;
+    }
+
+    /**
+     * 设置本地移交, 锁完全释放时如果本节点有其他线程在等待, 直接把锁移交给等待线程.
+     * 只对之后创建的锁生效.
+     * @param maxCount 最大连续移交次数, 小于等于 0 表示不开启
+     * @param maxHoldTimeMillis 本节点连续持有锁的最长时间(ms)
+     */
+    public void setLocalHandoff(int maxCount, long maxHoldTimeMillis) {
+        this.localHandoffMaxCount = maxCount;
+        this.localHandoffMaxHoldTimeMillis = maxHoldTimeMillis;
+    }
+
+    /**
+     * 设置是否使用全局公平锁, 开启后等待者按先后顺序在 redis 中排队, 解锁时直接把锁授予队首的等待者.
+     * 公平锁不支持异步加锁和本地移交. 只对之后创建的锁生效.
+     * @param fairLock
+     * @see RedisFairLock
+     */
+    public void setFairLock(boolean fairLock) {
+        this.fairLock = fairLock;
+    }
+
+    /**
+     * 设置锁运行情况的观察者.
+     * 只对之后创建的锁生效.
+     * @param observer
+     */
+    public void setObserver(RedisLockObserver observer) {
+        this.observerSupplier = observer == null ? null : SingletonSupplier.of(observer);
+    }
+
+    /**
+     * 设置锁运行情况的观察者提供者, 在首次创建锁时才获取观察者, 返回 {@code null} 表示不观察.
+     * 只对之后创建的锁生效.
+     * @param observerSupplier
+     */
+    public void setObserverSupplier(Supplier<RedisLockObserver> observerSupplier) {
+        this.observerSupplier = observerSupplier;
+    }
+
+    /**
+     * 设置合并执行时共享结果的序列化器, 默认使用只允许白名单类型的 JDK 序列化.
+     * @param resultSerializer
+     */
+    public void setResultSerializer(RedisSyncResultSerializer resultSerializer) {
+        Assert.notNull(resultSerializer, () -> "RedisSyncResultSerializer must not be null");
+        this.resultSerializerSupplier = SingletonSupplier.of(resultSerializer);
+    }
+
+    /**
+     * 设置合并执行时共享结果的序列化器提供者, 在首次创建合并执行的同步器时才获取, 返回 {@code null} 时使用 JDK 序列化.
+     * @param resultSerializerSupplier
+     */
+    public void setResultSerializerSupplier(Supplier<RedisSyncResultSerializer> resultSerializerSupplier) {
+        Assert.notNull(resultSerializerSupplier, () -> "RedisSyncResultSerializer supplier must not be null");
+        this.resultSerializerSupplier = new SingletonSupplier<>(resultSerializerSupplier,
+                JdkRedisSyncResultSerializer::new);
+    }
+
+    /**
+     * 设置合并执行时共享结果的有效时间(ms), 超过该时间的结果不再被其他调用者使用.
+     * @param coalesceResultTtlMillis
+     */
+    public void setCoalesceResultTtlMillis(long coalesceResultTtlMillis) {
+        Assert.isTrue(coalesceResultTtlMillis > 0, () -> "Coalesce result ttl must be greater than 0");
+        this.coalesceResultTtlMillis = coalesceResultTtlMillis;
+    }
+
+    /**
+     * 获取当前缓存的锁数量.
+     * @return
+     */
+    public int getLockCacheSize() {
+        return lockCache.size();
+    }
+
+    /**
+     * 是否使用读锁共享同步, 多键同步, 信号量同步和公平锁不支持共享.
+     * @param attributes
+     * @return
+     */
+    private boolean isShared(RedisSyncAttributes attributes) {
+        return attributes.isShared() && !attributes.isMultiKey() && attributes.getPermits() <= 0 && !fairLock;
+    }
+
+    /**
+     * 是否在锁被占用时跳过方法调用, 多键同步不支持.
+     * @param attributes
+     * @return
+     */
+    private boolean isSkipIfLocked(RedisSyncAttributes attributes) {
+        return attributes.isSkipIfLocked() && !attributes.isMultiKey();
+    }
+
+    /**
+     * 获取跳过模式的同步器, 只尝试加锁一次, 优先从缓存中获取.
+     * @param attributes
+     * @return
+     */
+    private RedisLockSynchronizer getSkipIfLockedSynchronizer(RedisSyncAttributes attributes, String key,
+            long leaseTimeMillis, long waitTimeMillis) {
+        if (leaseTimeMillis <= 0) {
+            // 跳过模式不使用看门狗续期, 没有过期时间的锁在持有节点崩溃后永远不会释放
+            throw new IllegalStateException("SkipIfLocked requires a positive leaseTime for key '" + key + "'");
+        }
+        CachedLock entry = getCachedLock(key, null, LockMode.SKIP_IF_LOCKED, attributes.getLockAtLeastForMillis());
+        RedisLockSynchronizer synchronizer = entry.getSynchronizer(leaseTimeMillis, waitTimeMillis, false, null);
+        if (synchronizer == null) {
+            RedisLockOperation lockOperation = (lock) -> lock.tryLockTimed(leaseTimeMillis, TIME_UNIT);
+            synchronizer = new RedisSkipIfLockedSynchronizer((RedisScheduledLock) entry.lock, lockOperation);
+            entry.setSynchronizer(leaseTimeMillis, waitTimeMillis, false, null, synchronizer);
+        }
+        return synchronizer;
+    }
+
+    /**
+     * 根据同步属性和本次调用解析出的键值和时间生成完整的同步属性, 值都相同时直接返回原属性.
+     * @param attributes
+     * @param key
+     * @param keys
+     * @param leaseTimeMillis
+     * @param waitTimeMillis
+     * @return
+     */
+    private RedisSyncAttributes resolveAttributes(RedisSyncAttributes attributes, String key, List<String> keys,
+            long leaseTimeMillis, long waitTimeMillis) {
+        if (Objects.equals(attributes.getKey(), key) && Objects.equals(attributes.getKeys(), keys)
+                && attributes.getLeaseTimeMillis() == leaseTimeMillis
+                && attributes.getWaitTimeMillis() == waitTimeMillis) {
+            return attributes;
+        }
+        return attributes.copy().setName(key).setKeys(keys).setLeaseTimeMillis(leaseTimeMillis)
+                .setWaitTimeMillis(waitTimeMillis);
+    }
+
+    /**
+     * 是否合并执行并共享执行结果, 只对互斥同步生效.
+     * @param attributes
+     * @return
+     */
+    private boolean isCoalesce(RedisSyncAttributes attributes) {
+        return attributes.isCoalesce() && attributes.getPermits() <= 0 && !isShared(attributes);
+    }
+
+    /**
+     * 获取限流同步器, 限流器和同步器优先从缓存中获取.
+     * @param attributes
+     * @param key
+     * @param waitTimeMillis
+     * @return
+     */
+    private RedisRateLimiterSynchronizer getRateLimiterSynchronizer(RedisSyncAttributes attributes, String key,
+            long waitTimeMillis) {
+        long rate = attributes.getRate();
+        int prefetch = attributes.getRatePrefetch();
+        LockCacheEntry entry = getLockCacheEntry(key);
+        CachedRateLimiter cached = entry.getRateLimiter(rate, prefetch);
+        if (cached == null) {
+            synchronized (entry) {
+                cached = entry.getRateLimiter(rate, prefetch);
+                if (cached == null) {
+                    cached = new CachedRateLimiter(rate, prefetch, createRedisRateLimiter(key, rate, prefetch));
+                    entry.rateLimiters = append(entry.rateLimiters, cached);
+                }
+            }
+        }
+        RedisRateLimiterSynchronizer synchronizer = cached.synchronizer;
+        if (synchronizer == null || synchronizer.getWaitTimeMillis() != waitTimeMillis) {
+            synchronizer = new RedisRateLimiterSynchronizer(cached.rateLimiter, waitTimeMillis);
+            cached.synchronizer = synchronizer;
+        }
+        return synchronizer;
+    }
+
+    /**
+     * 获取缓存的锁, 没有则创建.
+     * @param key 锁名称
+     * @param keys 多键锁的全部键值, 其它类型的锁为 {@code null}
+     * @param mode 锁的类型
+     * @param param 锁的参数, 信号量为许可数, 跳过模式为最短持有时间
+     * @return
+     */
+    private CachedLock getCachedLock(String key, List<String> keys, LockMode mode, long param) {
+        LockCacheEntry entry = getLockCacheEntry(key);
+        CachedLock cached = entry.getLock(mode, param);
+        if (cached == null) {
+            synchronized (entry) {
+                cached = entry.getLock(mode, param);
+                if (cached == null) {
+                    cached = new CachedLock(mode, param, createRedisLock(mode, key, keys, param));
+                    entry.locks = append(entry.locks, cached);
+                }
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * 根据锁的类型创建相应的分布式锁.
+     * @param mode
+     * @param key
+     * @param keys
+     * @param param
+     * @return
+     */
+    private RedisLock createRedisLock(LockMode mode, String key, List<String> keys, long param) {
+        switch (mode) {
+            case MULTI:
+                return createRedisMultiLock(keys);
+            case SHARED:
+                return createRedisReadLock(key);
+            case SEMAPHORE:
+                return createRedisSemaphoreLock(key, (int) param);
+            case SKIP_IF_LOCKED:
+                return createRedisScheduledLock(key, param);
+            default:
+                return createRedisLock(key);
+        }
+    }
+
+    /**
+     * 获取锁缓存项, 没有则创建.
+     * @param key 锁名称
+     * @return
+     */
+    private LockCacheEntry getLockCacheEntry(String key) {
+        long now = System.currentTimeMillis();
+        LockCacheEntry entry = lockCache.get(key);
+        if (entry == null) {
+            entry = lockCache.computeIfAbsent(key, (k) -> new LockCacheEntry(now));
+            if (lockCache.size() > lockCacheMaxSize) {
+                evictIfNecessary(now);
+            }
+        } else if (now - entry.accessTime > ACCESS_TIME_PRECISION) {
+            entry.accessTime = now;
+        }
+        return entry;
+    }
+
+    private static <T> T[] append(T[] array, T element) {
+        T[] result = Arrays.copyOf(array, array.length + 1);
+        result[array.length] = element;
+        return result;
+    }
+
+    /**
+     * 清除空闲时间超过限制的锁, 如果仍超过上限则按最近访问时间清除到上限的四分之三.
+     * 同一时间只有一个线程执行清理, 其他线程直接返回.
+     * 被清除的锁如果仍在使用也不影响其状态, 因为锁标识和共享阻塞队列都是按锁名称关联的.
+     * @param now
+     */
+    private void evictIfNecessary(long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            lockCache.values().removeIf((entry) -> now - entry.accessTime > lockCacheIdleTimeMillis);
+            if (lockCache.size() > lockCacheMaxSize) {
+                int overflow = lockCache.size() - (lockCacheMaxSize - (lockCacheMaxSize >> 2));
+                List<Map.Entry<String, LockCacheEntry>> entries = new ArrayList<>(lockCache.entrySet());
+                entries.sort(Comparator.comparingLong((e) -> e.getValue().accessTime));
+                for (int i = 0; i < overflow && i < entries.size(); i++) {
+                    Map.Entry<String, LockCacheEntry> e = entries.get(i);
+                    lockCache.remove(e.getKey(), e.getValue());
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * 锁的类型, 同一名称下不同类型的锁分别缓存.
+     */
+    private enum LockMode {
+        EXCLUSIVE, MULTI, SHARED, SEMAPHORE, SKIP_IF_LOCKED
+    }
+
+    /**
+     * 锁缓存项, 包含同一名称下各类型的分布式锁和限流器.
+     * 同一名称通常只会有一两种类型, 使用写时复制的数组保存, 读取时不需要加锁.
+     *
+     * @author yangzexiong
+     */
+    private static class LockCacheEntry {
+
+        private static final CachedLock[] EMPTY_LOCKS = new CachedLock[0];
+
+        private static final CachedRateLimiter[] EMPTY_RATE_LIMITERS = new CachedRateLimiter[0];
+
+        private volatile CachedLock[] locks = EMPTY_LOCKS;
+
+        private volatile CachedRateLimiter[] rateLimiters = EMPTY_RATE_LIMITERS;
+
+        private volatile long accessTime;
+
+        private LockCacheEntry(long accessTime) {
+            this.accessTime = accessTime;
+        }
+
+        private CachedLock getLock(LockMode mode, long param) {
+            for (CachedLock cached : locks) {
+                if (cached.mode == mode && cached.param == param) {
+                    return cached;
+                }
+            }
+            return null;
+        }
+
+        private CachedRateLimiter getRateLimiter(long rate, int prefetch) {
+            for (CachedRateLimiter cached : rateLimiters) {
+                if (cached.rate == rate && cached.prefetch == prefetch) {
+                    return cached;
+                }
+            }
+            return null;
+        }
+
+    }
+
+    /**
+     * 缓存的分布式锁以及最近一次使用的同步器.
+     * 同步器与加锁的过期时间, 等待时间以及是否合并执行相关, 相同设置时直接复用.
+     *
+     * @author yangzexiong
+     */
+    private static class CachedLock {
+
+        private final LockMode mode;
+
+        private final long param;
+
+        private final RedisLock lock;
+
+        private volatile CachedSynchronizer cachedSynchronizer;
+
+        private CachedLock(LockMode mode, long param, RedisLock lock) {
+            this.mode = mode;
+            this.param = param;
+            this.lock = lock;
+        }
+
+        private RedisLockSynchronizer getSynchronizer(long leaseTimeMillis, long waitTimeMillis, boolean coalesce,
+                Class<?> resultType) {
+            CachedSynchronizer cached = this.cachedSynchronizer;
+            if (cached != null && cached.leaseTimeMillis == leaseTimeMillis
+                    && cached.waitTimeMillis == waitTimeMillis && cached.coalesce == coalesce
+                    && cached.resultType == resultType) {
+                return cached.synchronizer;
+            }
+            return null;
+        }
+
+        private void setSynchronizer(long leaseTimeMillis, long waitTimeMillis, boolean coalesce,
+                Class<?> resultType, RedisLockSynchronizer synchronizer) {
+            this.cachedSynchronizer = new CachedSynchronizer(leaseTimeMillis, waitTimeMillis, coalesce,
+                    resultType, synchronizer);
+        }
+
+    }
+
+    /**
+     * 缓存的限流器以及最近一次使用的同步器.
+     *
+     * @author yangzexiong
+     */
+    private static class CachedRateLimiter {
+
+        private final long rate;
+
+        private final int prefetch;
+
+        private final RedisRateLimiter rateLimiter;
+
+        private volatile RedisRateLimiterSynchronizer synchronizer;
+
+        private CachedRateLimiter(long rate, int prefetch, RedisRateLimiter rateLimiter) {
+            this.rate = rate;
+            this.prefetch = prefetch;
+            this.rateLimiter = rateLimiter;
+        }
+
+    }
+
+    private static class CachedSynchronizer {
+
+        private final long leaseTimeMillis;
+
+        private final long waitTimeMillis;
+
+        private final boolean coalesce;
+
+        private final Class<?> resultType;
+
+        private final RedisLockSynchronizer synchronizer;
+
+        private CachedSynchronizer(long leaseTimeMillis, long waitTimeMillis, boolean coalesce,
+                Class<?> resultType, RedisLockSynchronizer synchronizer) {
+            this.leaseTimeMillis = leaseTimeMillis;
+            this.waitTimeMillis = waitTimeMillis;
+            this.coalesce = coalesce;
+            this.resultType = resultType;
+            this.synchronizer = synchronizer;
+        }
+
+    }
+
 }
@@ -0,0 +1,92 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.spring.redis;
+
+import com.github.ayoungbear.distbtsync.redis.lock.RedisRateLimiter;
+import java.util.concurrent.TimeUnit;
+import org.springframework.util.Assert;
+
+/**
+ * 基于 {@link RedisRateLimiter} 限流器实现的同步器, 获取资源即获取一个令牌,
+ * 令牌获取后即被消耗, 不需要释放.
+ *
+ * @author yangzexiong
+ * @see RedisRateLimiter
+ */
+public class RedisRateLimiterSynchronizer implements RedisSynchronizer {
+
+    private final RedisRateLimiter rateLimiter;
+
+    /**
+     * 等待令牌的最长时间(ms), 等于 0 时只尝试一次, 小于 0 时一直等待
+     */
+    private final long waitTimeMillis;
+
+    public RedisRateLimiterSynchronizer(RedisRateLimiter rateLimiter, long waitTimeMillis) {
+        Assert.notNull(rateLimiter, () -> "RedisRateLimiter must not be null");
+        this.rateLimiter = rateLimiter;
+        this.waitTimeMillis = waitTimeMillis;
+    }
+
+    @Override
+    public boolean acquire() {
+        if (waitTimeMillis == 0) {
+            return rateLimiter.tryAcquire();
+        }
+        try {
+            if (waitTimeMillis < 0) {
+                rateLimiter.acquire();
+                return true;
+            }
+            return rateLimiter.tryAcquire(1, waitTimeMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 令牌不需要归还, 总是返回 {@code true}.
+     */
+    @Override
+    public boolean release() {
+        return true;
+    }
+
+    /**
+     * 令牌不需要归还, 总是返回 {@code true}.
+     */
+    @Override
+    public boolean isHeld() {
+        return true;
+    }
+
+    @Override
+    public String getKey() {
+        return rateLimiter.getName();
+    }
+
+    public RedisRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public long getWaitTimeMillis() {
+        return waitTimeMillis;
+    }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.spring.redis;
+
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockOperation;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisScheduledLock;
+
+/**
+ * 锁被占用时跳过方法调用的同步器实现类, 用于定时任务, 每次调度只有一个节点执行.
+ * 只尝试加锁一次, 不阻塞也不订阅解锁通知, 加锁失败时方法直接返回空值.
+ *
+ * @author yangzexiong
+ * @see RedisScheduledLock
+ */
+public class RedisSkipIfLockedSynchronizer extends RedisLockSynchronizer {
+
+    public RedisSkipIfLockedSynchronizer(RedisScheduledLock lock, RedisLockOperation lockOperation) {
+        super(lock, lockOperation);
+    }
+
+    @Override
+    public boolean isSkipOnAcquireFailure() {
+        return true;
+    }
+
+}
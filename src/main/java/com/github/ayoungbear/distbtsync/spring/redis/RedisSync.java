@@ -57,6 +57,13 @@ public @interface RedisSync {
     @AliasFor("value")
     String name() default "";
 
+    /**
+     * 同步条件, 解析结果为 {@code false} 时本次调用不进行同步, 直接调用方法, 结果必须是 {@code true} 或者 {@code false}.
+     * 值的设置可以是直接的字符串, 属性占位符, 或者是 SpEL 表达式, 例如 {@code "#{#amount > 0}"}.
+     * 不设置表示总是同步.
+     */
+    String condition() default "";
+
     /**
      * 租约时间, 表示获取到锁后的最大持有时间, 也就是键值的过期时间, 值解析后的结果必须是数字.
      * 值的设置可以是直接的字符串, 属性占位符, 或者是 SpEL 表达式.
@@ -86,4 +93,68 @@ public @interface RedisSync {
      */
     String handlerQualifier() default "";
 
+    /**
+     * 是否同时锁定多个键, 所有键全部加锁成功才执行方法.
+     * 开启后 {@link #name()} 表达式的解析结果可以是集合或者数组, 每个元素作为一个键, 字面量使用逗号分隔多个键.
+     * 多键同步不支持公平锁和异步加锁.
+     * @see com.github.ayoungbear.distbtsync.redis.lock.RedisMultiLock
+     */
+    boolean multiKey() default false;
+
+    /**
+     * 是否共享同步, 开启后使用读写锁中的读锁, 多个共享同步的方法可以同时执行,
+     * 与使用相同键值的非共享同步互斥.
+     * 多键同步或者开启公平锁时忽略该属性.
+     * @see com.github.ayoungbear.distbtsync.redis.lock.RedisReadWriteLock
+     */
+    boolean shared() default false;
+
+    /**
+     * 许可数, 大于 0 时使用许可数为该值的分布式信号量代替互斥锁, 最多允许该数量的调用同时执行,
+     * 所有使用相同键值的同步需要设置相同的许可数.
+     * 多键同步时忽略该属性, 信号量同步不受公平锁和共享同步设置的影响, 也不支持异步加锁.
+     * @see com.github.ayoungbear.distbtsync.redis.lock.RedisSemaphore
+     */
+    int permits() default 0;
+
+    /**
+     * 限流速率, 大于 0 时不再互斥同步, 而是使用令牌桶限流, 所有节点每秒最多允许该数量的调用.
+     * 等待时间表示等待令牌的最长时间, 过期时间不起作用. 所有使用相同键值的限流需要设置相同的速率.
+     * 多键同步时忽略该属性, 限流优先于其他同步方式, 不支持异步获取.
+     * @see com.github.ayoungbear.distbtsync.redis.lock.RedisRateLimiter
+     */
+    long rate() default 0;
+
+    /**
+     * 限流时每个节点每次向 redis 预取的令牌数, 大于 1 时开启本地预取, 本地令牌用完前不再访问 redis.
+     * 适用于高频调用的限流, 只在 {@link #rate()} 大于 0 时生效.
+     */
+    int ratePrefetch() default 0;
+
+    /**
+     * 是否合并执行, 开启后持有锁的调用者把执行结果共享到 redis 中, 在锁等待期间有其他调用者执行完成的,
+     * 获取到锁后直接返回共享的结果而不再执行方法, 适用于缓存重建这类相同键值的结果相同的方法.
+     * 执行结果使用 {@link RedisSyncResultSerializer} 序列化, 共享的有效时间由配置决定.
+     * 只对互斥同步生效, 限流, 信号量和共享同步时忽略该属性, 也不支持异步加锁.
+     * @see RedisCoalescingSynchronizer
+     */
+    boolean coalesce() default false;
+
+    /**
+     * 锁被占用时是否跳过方法调用, 用于定时任务, 每次调度只有一个节点执行, 其他节点直接跳过.
+     * 开启后只尝试加锁一次, 不阻塞也不订阅解锁通知, 跳过时方法返回空值(基本类型为默认值), 不会交给失败处理器处理.
+     * 等待时间不起作用, 不使用看门狗续期, 必须设置大于 0 的过期时间作为任务的最长持有时间, 否则启动时抛出异常.
+     * 多键同步时忽略该属性, 开启后不受信号量, 共享同步和合并执行设置的影响.
+     * @see #lockAtLeastFor()
+     * @see com.github.ayoungbear.distbtsync.redis.lock.RedisScheduledLock
+     */
+    boolean skipIfLocked() default false;
+
+    /**
+     * 最短持有时间, 只在 {@link #skipIfLocked()} 开启时生效, 方法执行完成后锁会保留到距加锁该时间后才释放,
+     * 避免执行很快的任务在时钟有偏差的其他节点上被重复执行, 值解析后的结果必须是数字.
+     * 值的设置可以是直接的字符串或者属性占位符, 在启动时解析, 不能依赖方法参数.
+     */
+    String lockAtLeastFor() default "";
+
 }
@@ -20,6 +20,7 @@ import com.github.ayoungbear.distbtsync.spring.MethodBasedExpressionResolver;
 import com.github.ayoungbear.distbtsync.spring.SyncMethodFailureHandler;
 import com.github.ayoungbear.distbtsync.spring.aop.AbstractAnnotationPointcutAdvisor;
 import com.github.ayoungbear.distbtsync.spring.support.StringMethodExpressionResolver;
+import java.lang.reflect.Method;
 import java.util.function.Supplier;
 import org.aopalliance.aop.Advice;
 import org.springframework.beans.BeansException;
@@ -79,4 +80,13 @@ public class RedisSyncAnnotationAdvisor extends AbstractAnnotationPointcutAdviso
         advice.setDefaultWaitTimeMillis(defaultWaitTimeMillis);
     }
 
+    /**
+     * 获取方法的同步预处理信息, 没有则生成.
+     * @param method
+     * @return
+     */
+    public RedisSyncMethodDescriptor getMethodDescriptor(Method method) {
+        return advice.getMethodDescriptor(method);
+    }
+
 }
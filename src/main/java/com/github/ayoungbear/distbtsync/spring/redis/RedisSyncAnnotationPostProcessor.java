@@ -19,6 +19,7 @@ package com.github.ayoungbear.distbtsync.spring.redis;
 import com.github.ayoungbear.distbtsync.spring.MethodBasedExpressionResolver;
 import com.github.ayoungbear.distbtsync.spring.SyncMethodFailureHandler;
 import java.lang.reflect.AnnotatedElement;
+import java.lang.reflect.Method;
 import java.util.function.Supplier;
 import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.aop.framework.autoproxy.AbstractBeanFactoryAwareAdvisingPostProcessor;
@@ -38,6 +39,7 @@ import org.springframework.util.StringUtils;
  * 自动将同步调用行为应用到任何在类级或方法级携带注解 @{@link RedisSync} 的 bean 上.
  * 这个后置处理器还会在初始化后验证符合条件的 bean 实例中的标记注解, 包括注解属性中所必须配置的占位符,
  * 如果有指定的 {@link SyncMethodFailureHandler} 处理器限定符还会验证上下文中是否存在该实例.
+ * 校验通过的方法会预先生成同步预处理信息 {@link RedisSyncMethodDescriptor}, 减少调用时的解析工作.
  *
  * @author yangzexiong
  * @see EnableRedisSync
@@ -140,6 +142,11 @@ public class RedisSyncAnnotationPostProcessor extends AbstractBeanFactoryAwareAd
                     // 校验上下文中是否有配置相应的处理器
                     RedisSyncUtils.getQualifierBean(beanFactory, qualifier, SyncMethodFailureHandler.class);
                 }
+
+                if (element instanceof Method && advisor instanceof RedisSyncAnnotationAdvisor) {
+                    // 预先生成方法的同步预处理信息
+                    ((RedisSyncAnnotationAdvisor) advisor).getMethodDescriptor((Method) element);
+                }
             }
 
         } catch (Exception ex) {
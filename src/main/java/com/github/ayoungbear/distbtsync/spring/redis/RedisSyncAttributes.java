@@ -16,6 +16,8 @@
 
 package com.github.ayoungbear.distbtsync.spring.redis;
 
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockOperation;
+import java.util.List;
 import java.util.function.Supplier;
 
 /**
@@ -30,6 +32,42 @@ public class RedisSyncAttributes {
      * 同步所用键值
      */
     private String name;
+    /**
+     * 多键同步时所用的全部键值, 此时 {@link #name} 为多键锁的名称
+     */
+    private List<String> keys;
+    /**
+     * 是否同时锁定多个键, 用于键值尚未解析时标记多键同步
+     */
+    private boolean multiKey;
+    /**
+     * 是否共享同步
+     */
+    private boolean shared;
+    /**
+     * 信号量许可数, 小于等于 0 表示使用互斥锁
+     */
+    private int permits;
+    /**
+     * 限流速率(每秒), 小于等于 0 表示不限流
+     */
+    private long rate;
+    /**
+     * 限流时每次预取的令牌数
+     */
+    private int ratePrefetch;
+    /**
+     * 是否合并执行并共享执行结果
+     */
+    private boolean coalesce;
+    /**
+     * 锁被占用时是否跳过方法调用
+     */
+    private boolean skipIfLocked;
+    /**
+     * 跳过模式下的最短持有时间(ms)
+     */
+    private long lockAtLeastForMillis;
     /**
      * 过期时间(ms)
      */
@@ -44,6 +82,14 @@ public class RedisSyncAttributes {
     private String handlerQualifier;
 
     private Supplier<String> handlerQualifierSupplier;
+    /**
+     * 预先选定的加锁操作(如果有)
+     */
+    private RedisLockOperation lockOperation;
+    /**
+     * 同步方法声明的返回值类型, 合并执行时用于反序列化共享的结果
+     */
+    private Class<?> resultType;
 
     public static RedisSyncAttributes create() {
         return new RedisSyncAttributes();
@@ -62,6 +108,91 @@ public class RedisSyncAttributes {
         return name;
     }
 
+    public List<String> getKeys() {
+        return keys;
+    }
+
+    public RedisSyncAttributes setKeys(List<String> keys) {
+        this.keys = keys;
+        return this;
+    }
+
+    /**
+     * 是否同时锁定多个键.
+     * @return
+     */
+    public boolean isMultiKey() {
+        return multiKey || keys != null;
+    }
+
+    public RedisSyncAttributes setMultiKey(boolean multiKey) {
+        this.multiKey = multiKey;
+        return this;
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    public RedisSyncAttributes setShared(boolean shared) {
+        this.shared = shared;
+        return this;
+    }
+
+    public int getPermits() {
+        return permits;
+    }
+
+    public RedisSyncAttributes setPermits(int permits) {
+        this.permits = permits;
+        return this;
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+    public RedisSyncAttributes setRate(long rate) {
+        this.rate = rate;
+        return this;
+    }
+
+    public int getRatePrefetch() {
+        return ratePrefetch;
+    }
+
+    public RedisSyncAttributes setRatePrefetch(int ratePrefetch) {
+        this.ratePrefetch = ratePrefetch;
+        return this;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    public RedisSyncAttributes setCoalesce(boolean coalesce) {
+        this.coalesce = coalesce;
+        return this;
+    }
+
+    public boolean isSkipIfLocked() {
+        return skipIfLocked;
+    }
+
+    public RedisSyncAttributes setSkipIfLocked(boolean skipIfLocked) {
+        this.skipIfLocked = skipIfLocked;
+        return this;
+    }
+
+    public long getLockAtLeastForMillis() {
+        return lockAtLeastForMillis;
+    }
+
+    public RedisSyncAttributes setLockAtLeastForMillis(long lockAtLeastForMillis) {
+        this.lockAtLeastForMillis = lockAtLeastForMillis;
+        return this;
+    }
+
     public long getLeaseTimeMillis() {
         return leaseTimeMillis;
     }
@@ -97,4 +228,35 @@ public class RedisSyncAttributes {
         return this;
     }
 
+    public RedisLockOperation getLockOperation() {
+        return lockOperation;
+    }
+
+    public RedisSyncAttributes setLockOperation(RedisLockOperation lockOperation) {
+        this.lockOperation = lockOperation;
+        return this;
+    }
+
+    public Class<?> getResultType() {
+        return resultType;
+    }
+
+    public RedisSyncAttributes setResultType(Class<?> resultType) {
+        this.resultType = resultType;
+        return this;
+    }
+
+    /**
+     * 复制一份同步属性.
+     * @return
+     */
+    public RedisSyncAttributes copy() {
+        return create().setName(name).setKeys(keys).setMultiKey(multiKey).setShared(shared).setPermits(permits)
+                .setRate(rate).setRatePrefetch(ratePrefetch).setCoalesce(coalesce).setSkipIfLocked(skipIfLocked)
+                .setLockAtLeastForMillis(lockAtLeastForMillis).setLeaseTimeMillis(leaseTimeMillis)
+                .setWaitTimeMillis(waitTimeMillis).setHandlerQualifier(handlerQualifier)
+                .setHandlerQualifier(handlerQualifierSupplier).setLockOperation(lockOperation)
+                .setResultType(resultType);
+    }
+
 }
@@ -17,15 +17,23 @@
 package com.github.ayoungbear.distbtsync.spring.redis;
 
 import com.github.ayoungbear.distbtsync.redis.lock.RedisLockCommands;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockObserver;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockWatchdog;
+import com.github.ayoungbear.distbtsync.redis.lock.support.InMemoryRedisLockCommands;
 import com.github.ayoungbear.distbtsync.redis.lock.support.JedisClusterCommandsAdapter;
+import com.github.ayoungbear.distbtsync.redis.lock.support.MicrometerRedisLockObserver;
 import com.github.ayoungbear.distbtsync.redis.lock.support.RedisConnectionCommandsAdapter;
 import com.github.ayoungbear.distbtsync.spring.AbstractImportAnnotationConfiguration;
 import com.github.ayoungbear.distbtsync.spring.MethodBasedExpressionResolver;
 import com.github.ayoungbear.distbtsync.spring.SyncMethodFailureHandler;
+import io.micrometer.core.instrument.MeterRegistry;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -59,6 +67,10 @@ public class RedisSyncConfiguration extends AbstractImportAnnotationConfiguratio
     private Supplier<MethodBasedExpressionResolver<String>> resolverSupplier;
     @Nullable
     private Supplier<SyncMethodFailureHandler> defaultHandlerSupplier;
+    @Nullable
+    private ObjectProvider<RedisLockObserver> observerProvider;
+    @Nullable
+    private ObjectProvider<RedisSyncResultSerializer> resultSerializerProvider;
 
     public RedisSyncConfiguration(RedisSyncProperties properties) {
         this.properties = properties;
@@ -109,6 +121,16 @@ public class RedisSyncConfiguration extends AbstractImportAnnotationConfiguratio
         this.defaultHandlerSupplier = configurer::getSyncMethodFailureHandler;
     }
 
+    @Autowired(required = false)
+    void setResultSerializerProvider(ObjectProvider<RedisSyncResultSerializer> resultSerializerProvider) {
+        this.resultSerializerProvider = resultSerializerProvider;
+    }
+
+    @Autowired(required = false)
+    void setObserverProvider(ObjectProvider<RedisLockObserver> observerProvider) {
+        this.observerProvider = observerProvider;
+    }
+
     @Autowired(required = false)
     void setRedisConnectionFactory(RedisConnectionFactory redisConnectionFactory) {
         this.redisConnectionFactory = redisConnectionFactory;
@@ -116,11 +138,50 @@ public class RedisSyncConfiguration extends AbstractImportAnnotationConfiguratio
 
     protected RedisSynchronizerProvider defaultRedisSynchronizerProvider(
             RedisConnectionFactory redisConnectionFactory) {
-        if (redisConnectionFactory == null) {
+        RedisLockCommands commands;
+        if (Boolean.TRUE.equals(properties.getInMemory())) {
+            commands = new InMemoryRedisLockCommands();
+        } else if (redisConnectionFactory == null) {
             return null;
+        } else {
+            commands = determineRedisLockCommands(redisConnectionFactory);
+        }
+        RedisLockSynchronizerProvider synchronizerProvider = new RedisLockSynchronizerProvider(commands);
+        if (properties.getLockCacheMaxSize() != null) {
+            synchronizerProvider.setLockCacheMaxSize(properties.getLockCacheMaxSize());
+        }
+        if (properties.getLockCacheIdleTime() != null) {
+            synchronizerProvider.setLockCacheIdleTimeMillis(properties.getLockCacheIdleTime());
+        }
+        if (properties.getWatchdogLeaseTime() != null && properties.getWatchdogLeaseTime() > 0) {
+            synchronizerProvider
+                    .setWatchdog(new RedisLockWatchdog(properties.getWatchdogLeaseTime(), TimeUnit.MILLISECONDS));
         }
-        RedisLockCommands commands = determineRedisLockCommands(redisConnectionFactory);
-        return new RedisLockSynchronizerProvider(commands);
+        if (properties.getLocalHandoffMaxCount() != null && properties.getLocalHandoffMaxCount() > 0) {
+            long maxHoldTime = properties.getLocalHandoffMaxHoldTime() != null
+                    ? properties.getLocalHandoffMaxHoldTime() : RedisLockSynchronizerProvider.DEFAULT_LOCAL_HANDOFF_MAX_HOLD_TIME;
+            synchronizerProvider.setLocalHandoff(properties.getLocalHandoffMaxCount(), maxHoldTime);
+        }
+        if (properties.getFairLock() != null) {
+            synchronizerProvider.setFairLock(properties.getFairLock());
+        }
+        if (properties.getCoalesceResultTtl() != null) {
+            synchronizerProvider.setCoalesceResultTtlMillis(properties.getCoalesceResultTtl());
+        }
+        RedisSyncResultSerializer defaultResultSerializer = new JdkRedisSyncResultSerializer(
+                properties.getCoalesceResultAllowedClasses());
+        synchronizerProvider.setResultSerializer(defaultResultSerializer);
+        if (resultSerializerProvider != null) {
+            ObjectProvider<RedisSyncResultSerializer> resultSerializerProvider = this.resultSerializerProvider;
+            synchronizerProvider.setResultSerializerSupplier(
+                    () -> resultSerializerProvider.getIfUnique(() -> defaultResultSerializer));
+        }
+        if (observerProvider != null) {
+            // 创建锁时才获取观察者, 避免在后置处理器创建阶段提前初始化 MeterRegistry
+            ObjectProvider<RedisLockObserver> observerProvider = this.observerProvider;
+            synchronizerProvider.setObserverSupplier(SingletonSupplier.of(observerProvider::getIfUnique));
+        }
+        return synchronizerProvider;
     }
 
     protected RedisLockCommands determineRedisLockCommands(RedisConnectionFactory redisConnectionFactory) {
@@ -129,7 +190,8 @@ public class RedisSyncConfiguration extends AbstractImportAnnotationConfiguratio
                 RedisClusterConnection clusterConnection = redisConnectionFactory.getClusterConnection();
                 if (clusterConnection instanceof JedisClusterConnection) {
                     JedisCluster jedisCluster = ((JedisClusterConnection) clusterConnection).getNativeConnection();
-                    return new JedisClusterCommandsAdapter(jedisCluster);
+                    return new JedisClusterCommandsAdapter(jedisCluster)
+                            .setShardedPubSub(Boolean.TRUE.equals(properties.getShardedPubSub()));
                 }
             } catch (Exception e) {
                 // ignore and use RedisConnection adapter
@@ -138,4 +200,28 @@ public class RedisSyncConfiguration extends AbstractImportAnnotationConfiguratio
         return new RedisConnectionCommandsAdapter(redisConnectionFactory);
     }
 
+    /**
+     * 存在 Micrometer 时注册分布式锁指标的观察者, 在首次创建锁时才会创建, 没有 {@link MeterRegistry} 时不做观察.
+     *
+     * @author yangzexiong
+     */
+    @Configuration
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.MeterRegistry")
+    static class RedisSyncMetricsConfiguration {
+
+        @Bean
+        public RedisLockObserver redisLockMetricsObserver(RedisSyncProperties properties,
+                ObjectProvider<MeterRegistry> registryProvider) {
+            MeterRegistry registry = registryProvider.getIfUnique();
+            if (registry == null || Boolean.FALSE.equals(properties.getMetricsEnabled())) {
+                return RedisLockObserver.NONE;
+            }
+            int maxKeyPatterns = properties.getMetricsMaxKeyPatterns() != null
+                    ? properties.getMetricsMaxKeyPatterns() : MicrometerRedisLockObserver.DEFAULT_MAX_KEY_PATTERNS;
+            return new MicrometerRedisLockObserver(registry, MicrometerRedisLockObserver::getDefaultKeyPattern,
+                    maxKeyPatterns);
+        }
+
+    }
+
 }
@@ -0,0 +1,277 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.spring.redis;
+
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockOperation;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 同步方法的预处理信息, 在启动时根据 @{@link RedisSync} 注解生成, 生成后不可变.
+ * 不依赖方法调用上下文的属性(字面量或者属性占位符)会预先解析, 调用时只需要解析依赖于方法参数的表达式.
+ * 同时会预先生成共享的 {@link RedisSyncAttributes} 模板, 所有属性都是静态的时候可以直接使用.
+ *
+ * @author yangzexiong
+ * @see RedisSyncMethodInterceptor
+ */
+public final class RedisSyncMethodDescriptor {
+
+    private final Method method;
+    /**
+     * 键值表达式, 静态键值时为 {@code null}
+     */
+    private final String keyExpression;
+    /**
+     * 预先解析的静态键值
+     */
+    private final String staticKey;
+    /**
+     * 是否同时锁定多个键
+     */
+    private final boolean multiKey;
+    /**
+     * 预先解析的静态多个键值, 非多键同步时为 {@code null}
+     */
+    private final List<String> staticKeys;
+    /**
+     * 是否共享同步
+     */
+    private final boolean shared;
+    /**
+     * 信号量许可数, 小于等于 0 表示使用互斥锁
+     */
+    private final int permits;
+    /**
+     * 限流速率(每秒), 小于等于 0 表示不限流
+     */
+    private final long rate;
+    /**
+     * 限流时每次预取的令牌数
+     */
+    private final int ratePrefetch;
+    /**
+     * 是否合并执行并共享执行结果
+     */
+    private final boolean coalesce;
+    /**
+     * 锁被占用时是否跳过方法调用
+     */
+    private final boolean skipIfLocked;
+    /**
+     * 跳过模式下的最短持有时间(ms)
+     */
+    private final long lockAtLeastForMillis;
+    private final TimeUnit timeUnit;
+    /**
+     * 过期时间表达式, 静态过期时间时为 {@code null}
+     */
+    private final String leaseTimeExpression;
+    private final long leaseTimeMillis;
+    /**
+     * 等待时间表达式, 静态等待时间时为 {@code null}
+     */
+    private final String waitTimeExpression;
+    private final long waitTimeMillis;
+    private final String handlerQualifier;
+    /**
+     * 同步条件表达式, 静态条件时为 {@code null}
+     */
+    private final String conditionExpression;
+    /**
+     * 预先解析的静态同步条件
+     */
+    private final boolean staticCondition;
+    /**
+     * 预先选定的加锁操作, 过期时间或者等待时间是动态的则为 {@code null}
+     */
+    private final RedisLockOperation lockOperation;
+    /**
+     * 预先生成的同步属性模板, 动态的键值和时间在调用时解析
+     */
+    private final RedisSyncAttributes attributes;
+
+    RedisSyncMethodDescriptor(Method method, String keyExpression, String staticKey, boolean multiKey,
+            List<String> staticKeys, boolean shared, int permits, long rate, int ratePrefetch, boolean coalesce,
+            boolean skipIfLocked, long lockAtLeastForMillis, TimeUnit timeUnit, String leaseTimeExpression,
+            long leaseTimeMillis, String waitTimeExpression, long waitTimeMillis, String handlerQualifier,
+            String conditionExpression, boolean staticCondition, RedisLockOperation lockOperation) {
+        this.method = method;
+        this.keyExpression = keyExpression;
+        this.staticKey = staticKey;
+        this.multiKey = multiKey;
+        this.staticKeys = staticKeys == null ? null : Collections.unmodifiableList(staticKeys);
+        this.shared = shared;
+        this.permits = permits;
+        this.rate = rate;
+        this.ratePrefetch = ratePrefetch;
+        this.coalesce = coalesce;
+        this.skipIfLocked = skipIfLocked;
+        this.lockAtLeastForMillis = lockAtLeastForMillis;
+        this.timeUnit = timeUnit;
+        this.leaseTimeExpression = leaseTimeExpression;
+        this.leaseTimeMillis = leaseTimeMillis;
+        this.waitTimeExpression = waitTimeExpression;
+        this.waitTimeMillis = waitTimeMillis;
+        this.handlerQualifier = handlerQualifier;
+        this.conditionExpression = conditionExpression;
+        this.staticCondition = staticCondition;
+        this.lockOperation = lockOperation;
+        this.attributes = RedisSyncAttributes.create().setName(staticKey).setKeys(this.staticKeys)
+                .setMultiKey(multiKey).setShared(shared).setPermits(permits).setRate(rate)
+                .setRatePrefetch(ratePrefetch).setCoalesce(coalesce).setSkipIfLocked(skipIfLocked)
+                .setLockAtLeastForMillis(lockAtLeastForMillis).setLeaseTimeMillis(leaseTimeMillis)
+                .setWaitTimeMillis(waitTimeMillis).setHandlerQualifier(handlerQualifier)
+                .setLockOperation(lockOperation).setResultType(method.getReturnType());
+    }
+
+    public Method getMethod() {
+        return method;
+    }
+
+    /**
+     * 键值是否是静态的, 与方法调用上下文无关.
+     * @return
+     */
+    public boolean isStaticKey() {
+        return keyExpression == null;
+    }
+
+    public String getKeyExpression() {
+        return keyExpression;
+    }
+
+    public String getStaticKey() {
+        return staticKey;
+    }
+
+    public boolean isMultiKey() {
+        return multiKey;
+    }
+
+    /**
+     * 获取预先解析的静态多个键值.
+     * @return 非多键同步或者键值是动态的时候返回 {@code null}
+     */
+    public List<String> getStaticKeys() {
+        return staticKeys;
+    }
+
+    public boolean isShared() {
+        return shared;
+    }
+
+    public int getPermits() {
+        return permits;
+    }
+
+    public long getRate() {
+        return rate;
+    }
+
+    public int getRatePrefetch() {
+        return ratePrefetch;
+    }
+
+    public boolean isCoalesce() {
+        return coalesce;
+    }
+
+    public boolean isSkipIfLocked() {
+        return skipIfLocked;
+    }
+
+    public long getLockAtLeastForMillis() {
+        return lockAtLeastForMillis;
+    }
+
+    public TimeUnit getTimeUnit() {
+        return timeUnit;
+    }
+
+    public boolean isStaticLeaseTime() {
+        return leaseTimeExpression == null;
+    }
+
+    public String getLeaseTimeExpression() {
+        return leaseTimeExpression;
+    }
+
+    public long getLeaseTimeMillis() {
+        return leaseTimeMillis;
+    }
+
+    public boolean isStaticWaitTime() {
+        return waitTimeExpression == null;
+    }
+
+    public String getWaitTimeExpression() {
+        return waitTimeExpression;
+    }
+
+    public long getWaitTimeMillis() {
+        return waitTimeMillis;
+    }
+
+    public String getHandlerQualifier() {
+        return handlerQualifier;
+    }
+
+    /**
+     * 同步条件是否是静态的, 与方法调用上下文无关.
+     * @return
+     */
+    public boolean isStaticCondition() {
+        return conditionExpression == null;
+    }
+
+    public String getConditionExpression() {
+        return conditionExpression;
+    }
+
+    public boolean getStaticCondition() {
+        return staticCondition;
+    }
+
+    public RedisLockOperation getLockOperation() {
+        return lockOperation;
+    }
+
+    /**
+     * 获取共享的同步属性模板, 调用方不能修改.
+     * 键值或者时间是动态的时候, 模板中对应的值未解析.
+     * @return
+     */
+    public RedisSyncAttributes getAttributes() {
+        return attributes;
+    }
+
+    /**
+     * 获取全部属性都是静态时共享的同步属性, 调用方不能修改.
+     * @return 有动态属性时返回 {@code null}
+     */
+    public RedisSyncAttributes getStaticAttributes() {
+        return isStaticKey() && isStaticLeaseTime() && isStaticWaitTime() ? attributes : null;
+    }
+
+    @Override
+    public String toString() {
+        return "RedisSyncMethodDescriptor[" + method + "]";
+    }
+
+}
@@ -16,12 +16,16 @@
 
 package com.github.ayoungbear.distbtsync.spring.redis;
 
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockOperation;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisMultiLock;
 import com.github.ayoungbear.distbtsync.spring.MethodBasedExpressionResolver;
 import com.github.ayoungbear.distbtsync.spring.MethodInvoker;
 import com.github.ayoungbear.distbtsync.spring.SyncMethodFailureHandler;
 import com.github.ayoungbear.distbtsync.spring.Synchronizer;
 import com.github.ayoungbear.distbtsync.spring.aop.AbstractSyncInvocationSupport;
 import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
@@ -45,6 +49,8 @@ public class RedisSyncMethodInterceptor extends AbstractSyncInvocationSupport
 
     private Map<Method, RedisSync> redisSyncCache = new ConcurrentHashMap<>(256);
 
+    private Map<Method, RedisSyncMethodDescriptor> descriptorCache = new ConcurrentHashMap<>(256);
+
     private MethodBasedExpressionResolver<String> exprResolver;
 
     private RedisSynchronizerProvider synchronizerProvider;
@@ -69,21 +75,43 @@ public class RedisSyncMethodInterceptor extends AbstractSyncInvocationSupport
     }
 
     @Override
-    public Synchronizer determineSynchronizer(MethodInvoker methodInvoker) {
-        RedisSyncAttributes redisSyncAttributes = resolveRedisSyncAttributes(methodInvoker);
+    public Synchronizer determineSynchronizer(Method method, Object target, Object[] arguments) {
+        RedisSyncMethodDescriptor descriptor = getMethodDescriptor(method);
+        RedisSyncAttributes attributes = descriptor.getStaticAttributes();
+        RedisSynchronizer redisSynchronizer;
         // 提供同步相关的属性, 将获取同步器的实际操作委托给提供者实现
-        RedisSynchronizer redisSynchronizer = synchronizerProvider.getSynchronizer(redisSyncAttributes);
+        if (attributes != null) {
+            // 全部属性都是静态的
+            redisSynchronizer = synchronizerProvider.getSynchronizer(attributes);
+        } else {
+            // 只解析依赖于方法调用上下文的键值和时间, 其它属性使用共享的模板
+            List<String> keys = resolveKeys(descriptor, method, target, arguments);
+            String key = resolveKey(descriptor, keys, method, target, arguments);
+            long leaseTimeMillis = resolveLeaseTimeMillis(descriptor, method, target, arguments);
+            long waitTimeMillis = resolveWaitTimeMillis(descriptor, method, target, arguments);
+            redisSynchronizer = synchronizerProvider.getSynchronizer(descriptor.getAttributes(), key, keys,
+                    leaseTimeMillis, waitTimeMillis);
+        }
         if (redisSynchronizer == null) {
             throw new IllegalStateException(
-                    "Synchronizer is required for method '" + methodInvoker.getMethodDescription() + "'");
+                    "Synchronizer is required for method '" + method + "'");
         }
         return redisSynchronizer;
     }
 
+    @Override
+    protected boolean isSyncRequired(Method method, Object target, Object[] arguments) {
+        RedisSyncMethodDescriptor descriptor = getMethodDescriptor(method);
+        if (descriptor.isStaticCondition()) {
+            return descriptor.getStaticCondition();
+        }
+        String condition = evaluate(descriptor.getConditionExpression(), method, target, arguments);
+        return convertConditionStrValue(condition);
+    }
+
     @Override
     public String getHandlerQualifier(Method method) {
-        RedisSync redisSync = getRedisSyncAnnotation(method);
-        return redisSync.handlerQualifier();
+        return getMethodDescriptor(method).getHandlerQualifier();
     }
 
     @Override
@@ -95,6 +123,32 @@ public class RedisSyncMethodInterceptor extends AbstractSyncInvocationSupport
         return expr;
     }
 
+    @Override
+    public List<String> evaluateAll(String expr, Method method, Object target, Object[] arguments) {
+        MethodBasedExpressionResolver<String> resolver = this.exprResolver;
+        if (resolver != null) {
+            return resolver.evaluateAll(expr, method, target, arguments);
+        }
+        return Collections.singletonList(expr);
+    }
+
+    @Override
+    public boolean isLiteral(String expr) {
+        MethodBasedExpressionResolver<String> resolver = this.exprResolver;
+        if (resolver != null) {
+            return resolver.isLiteral(expr);
+        }
+        return true;
+    }
+
+    @Override
+    public void prepare(String expr, Method method) {
+        MethodBasedExpressionResolver<String> resolver = this.exprResolver;
+        if (resolver != null) {
+            resolver.prepare(expr, method);
+        }
+    }
+
     @Override
     public void setBeanFactory(BeanFactory beanFactory) {
         super.setBeanFactory(beanFactory);
@@ -112,6 +166,7 @@ public class RedisSyncMethodInterceptor extends AbstractSyncInvocationSupport
      */
     public void setDefaultLeaseTimeMillis(long defaultLeaseTimeMillis) {
         this.defaultLeaseTimeMillis = defaultLeaseTimeMillis;
+        descriptorCache.clear();
     }
 
     /**
@@ -120,60 +175,215 @@ public class RedisSyncMethodInterceptor extends AbstractSyncInvocationSupport
      */
     public void setDefaultWaitTimeMillis(long defaultWaitTimeMillis) {
         this.defaultWaitTimeMillis = defaultWaitTimeMillis;
+        descriptorCache.clear();
     }
 
     /**
-     * 根据方法执行上下文解析出同步所需相关属性.
-     * @param methodInvoker
+     * 根据方法执行上下文解析出同步所需相关属性, 只解析依赖于方法调用上下文的属性.
+     * @param method
+     * @param target
+     * @param arguments
      * @return
      */
-    protected RedisSyncAttributes resolveRedisSyncAttributes(MethodInvoker methodInvoker) {
-        // 解析所需相关信息
-        Method method = methodInvoker.getMethod();
-        Object target = methodInvoker.getTarget();
-        Object[] arguments = methodInvoker.getArguments();
+    protected RedisSyncAttributes resolveRedisSyncAttributes(Method method, Object target, Object[] arguments) {
+        RedisSyncMethodDescriptor descriptor = getMethodDescriptor(method);
+        RedisSyncAttributes attributes = descriptor.getStaticAttributes();
+        if (attributes != null) {
+            // 全部属性都是静态的
+            return attributes;
+        }
+        List<String> keys = resolveKeys(descriptor, method, target, arguments);
+        return descriptor.getAttributes().copy().setName(resolveKey(descriptor, keys, method, target, arguments))
+                .setKeys(keys).setLeaseTimeMillis(resolveLeaseTimeMillis(descriptor, method, target, arguments))
+                .setWaitTimeMillis(resolveWaitTimeMillis(descriptor, method, target, arguments));
+    }
+
+    /**
+     * 解析多键同步时所用的全部键值.
+     * @return 非多键同步时返回 {@code null}
+     */
+    private List<String> resolveKeys(RedisSyncMethodDescriptor descriptor, Method method, Object target,
+            Object[] arguments) {
+        if (descriptor.isStaticKey() || !descriptor.isMultiKey()) {
+            return descriptor.getStaticKeys();
+        }
+        return evaluateAll(descriptor.getKeyExpression(), method, target, arguments);
+    }
+
+    /**
+     * 解析同步所用键值, 多键同步时为多键锁的名称.
+     */
+    private String resolveKey(RedisSyncMethodDescriptor descriptor, List<String> keys, Method method,
+            Object target, Object[] arguments) {
+        if (descriptor.isStaticKey()) {
+            return descriptor.getStaticKey();
+        }
+        if (descriptor.isMultiKey()) {
+            return RedisMultiLock.getLockName(keys);
+        }
+        return evaluate(descriptor.getKeyExpression(), method, target, arguments);
+    }
+
+    private long resolveLeaseTimeMillis(RedisSyncMethodDescriptor descriptor, Method method, Object target,
+            Object[] arguments) {
+        if (descriptor.isStaticLeaseTime()) {
+            return descriptor.getLeaseTimeMillis();
+        }
+        return resolveTimeMillis(descriptor.getLeaseTimeExpression(), descriptor.getTimeUnit(), method, target,
+                arguments);
+    }
+
+    private long resolveWaitTimeMillis(RedisSyncMethodDescriptor descriptor, Method method, Object target,
+            Object[] arguments) {
+        if (descriptor.isStaticWaitTime()) {
+            return descriptor.getWaitTimeMillis();
+        }
+        return resolveTimeMillis(descriptor.getWaitTimeExpression(), descriptor.getTimeUnit(), method, target,
+                arguments);
+    }
+
+    /**
+     * 获取方法的同步预处理信息, 没有则生成并缓存.
+     * @param method
+     * @return
+     */
+    public RedisSyncMethodDescriptor getMethodDescriptor(Method method) {
+        RedisSyncMethodDescriptor descriptor = descriptorCache.get(method);
+        if (descriptor == null) {
+            descriptor = descriptorCache.computeIfAbsent(method, this::createMethodDescriptor);
+        }
+        return descriptor;
+    }
+
+    /**
+     * 根据方法上的 @{@link RedisSync} 注解生成同步预处理信息, 字面量属性会在这里预先解析.
+     * @param method
+     * @return
+     */
+    protected RedisSyncMethodDescriptor createMethodDescriptor(Method method) {
         RedisSync redisSync = getRedisSyncAnnotation(method);
+        TimeUnit timeUnit = redisSync.timeUnit();
 
-        // 解析同步所用键值
-        String key = redisSync.name();
-        if (StringUtils.hasText(key)) {
-            key = evaluate(key, method, target, arguments);
-        } else {
+        // 键值
+        String keyExpression = redisSync.name();
+        String staticKey = null;
+        List<String> staticKeys = null;
+        if (!StringUtils.hasText(keyExpression)) {
             // 不指定则获取默认值
-            key = getDefaultSyncKey(methodInvoker);
+            staticKey = getDefaultSyncKey(method);
+            keyExpression = null;
+            if (redisSync.multiKey()) {
+                staticKeys = Collections.singletonList(staticKey);
+            }
+        } else if (isLiteral(keyExpression)) {
+            if (redisSync.multiKey()) {
+                staticKeys = evaluateAll(keyExpression, method, null, null);
+                staticKey = RedisMultiLock.getLockName(staticKeys);
+            } else {
+                staticKey = evaluate(keyExpression, method, null, null);
+            }
+            keyExpression = null;
         }
 
-        // 时间单位
-        TimeUnit timeUnit = redisSync.timeUnit();
-        // 解析过期时间
+        // 过期时间
+        String leaseTimeExpression = redisSync.leaseTime();
         long leaseTimeMillis = this.defaultLeaseTimeMillis;
-        String leaseTimeString = redisSync.leaseTime();
-        if (StringUtils.hasText(leaseTimeString)) {
-            leaseTimeString = evaluate(leaseTimeString, method, target, arguments);
-            Long leaseTime = convertTimeStrValue(leaseTimeString);
-            leaseTimeMillis = timeUnit.toMillis(leaseTime);
+        if (!StringUtils.hasText(leaseTimeExpression)) {
+            leaseTimeExpression = null;
+        } else if (isLiteral(leaseTimeExpression)) {
+            leaseTimeMillis = resolveTimeMillis(leaseTimeExpression, timeUnit, method, null, null);
+            leaseTimeExpression = null;
         }
-        // 解析等待超时时间
+
+        // 等待超时时间
+        String waitTimeExpression = redisSync.waitTime();
         long waitTimeMillis = this.defaultWaitTimeMillis;
-        String waitTimeString = redisSync.waitTime();
-        if (StringUtils.hasText(waitTimeString)) {
-            waitTimeString = evaluate(waitTimeString, method, target, arguments);
-            Long waitTime = convertTimeStrValue(waitTimeString);
-            waitTimeMillis = timeUnit.toMillis(waitTime);
+        if (!StringUtils.hasText(waitTimeExpression)) {
+            waitTimeExpression = null;
+        } else if (isLiteral(waitTimeExpression)) {
+            waitTimeMillis = resolveTimeMillis(waitTimeExpression, timeUnit, method, null, null);
+            waitTimeExpression = null;
+        }
+
+        // 同步条件
+        String conditionExpression = redisSync.condition();
+        boolean staticCondition = true;
+        if (!StringUtils.hasText(conditionExpression)) {
+            conditionExpression = null;
+        } else if (isLiteral(conditionExpression)) {
+            staticCondition = convertConditionStrValue(evaluate(conditionExpression, method, null, null));
+            conditionExpression = null;
+        }
+
+        // 跳过模式不使用看门狗续期, 必须有过期时间, 否则持有节点崩溃后锁永远不会释放
+        if (redisSync.skipIfLocked() && !redisSync.multiKey() && leaseTimeExpression == null
+                && leaseTimeMillis <= 0) {
+            throw new IllegalStateException(
+                    "SkipIfLocked requires a positive leaseTime for method '" + method + "'");
+        }
+
+        // 最短持有时间, 启动时解析
+        long lockAtLeastForMillis = 0;
+        if (StringUtils.hasText(redisSync.lockAtLeastFor())) {
+            lockAtLeastForMillis = resolveTimeMillis(redisSync.lockAtLeastFor(), timeUnit, method, null, null);
+        }
+
+        // 预先处理需要在调用时解析的表达式
+        for (String expression : new String[]{keyExpression, leaseTimeExpression, waitTimeExpression,
+                conditionExpression}) {
+            if (expression != null) {
+                prepare(expression, method);
+            }
         }
 
-        return RedisSyncAttributes.create().setName(key).setLeaseTimeMillis(leaseTimeMillis)
-                .setWaitTimeMillis(waitTimeMillis).setHandlerQualifier(() -> getHandlerQualifier(method));
+        // 过期时间和等待时间都是静态的则预先选定加锁操作
+        RedisLockOperation lockOperation = null;
+        if (leaseTimeExpression == null && waitTimeExpression == null
+                && synchronizerProvider instanceof RedisLockSynchronizerProvider) {
+            lockOperation = ((RedisLockSynchronizerProvider) synchronizerProvider).determineLockOperation(
+                    RedisSyncAttributes.create().setLeaseTimeMillis(leaseTimeMillis).setWaitTimeMillis(waitTimeMillis));
+        }
+
+        return new RedisSyncMethodDescriptor(method, keyExpression, staticKey, redisSync.multiKey(), staticKeys,
+                redisSync.shared(), redisSync.permits(), redisSync.rate(), redisSync.ratePrefetch(),
+                redisSync.coalesce(), redisSync.skipIfLocked(), lockAtLeastForMillis, timeUnit, leaseTimeExpression,
+                leaseTimeMillis, waitTimeExpression, waitTimeMillis, redisSync.handlerQualifier(),
+                conditionExpression, staticCondition, lockOperation);
     }
 
     /**
      * 根据方法执行上下文获取默认的同步用键值, 默认为方法全限定名.
      * @param methodInvoker
      * @return
-     * @see java.lang.reflect.Method#toGenericString()
+     * @see #getDefaultSyncKey(Method)
      */
     protected String getDefaultSyncKey(MethodInvoker methodInvoker) {
-        return methodInvoker.getMethod().toGenericString();
+        return getDefaultSyncKey(methodInvoker.getMethod());
+    }
+
+    /**
+     * 获取方法默认的同步用键值, 默认为方法全限定名.
+     * @param method
+     * @return
+     * @see java.lang.reflect.Method#toGenericString()
+     */
+    protected String getDefaultSyncKey(Method method) {
+        return method.toGenericString();
+    }
+
+    /**
+     * 解析时间表达式并转换为毫秒.
+     * @param timeExpression
+     * @param timeUnit
+     * @param method
+     * @param target
+     * @param arguments
+     * @return
+     */
+    private long resolveTimeMillis(String timeExpression, TimeUnit timeUnit, Method method, Object target,
+            Object[] arguments) {
+        String timeString = evaluate(timeExpression, method, target, arguments);
+        return timeUnit.toMillis(convertTimeStrValue(timeString));
     }
 
     /**
@@ -189,6 +399,21 @@ public class RedisSyncMethodInterceptor extends AbstractSyncInvocationSupport
         }
     }
 
+    /**
+     * 将解析后的同步条件字符串值转换为布尔类型.
+     * @param conditionString
+     * @return
+     */
+    protected boolean convertConditionStrValue(String conditionString) {
+        if ("true".equalsIgnoreCase(conditionString)) {
+            return true;
+        }
+        if ("false".equalsIgnoreCase(conditionString)) {
+            return false;
+        }
+        throw new IllegalStateException("Invalid condition string value '" + conditionString + "'");
+    }
+
     /**
      * 获取给定方法所标记的 @{@link RedisSync} 注解, 如果方法未被标记则从类上获取.
      * @param method
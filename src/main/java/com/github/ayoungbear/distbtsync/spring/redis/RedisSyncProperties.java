@@ -16,6 +16,7 @@
 
 package com.github.ayoungbear.distbtsync.spring.redis;
 
+import java.util.List;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -34,6 +35,55 @@ public class RedisSyncProperties {
      * 默认的阻塞等待超时时间(ms)
      */
     private Long defaultWaitTime;
+    /**
+     * 分布式锁缓存数量上限
+     */
+    private Integer lockCacheMaxSize;
+    /**
+     * 分布式锁缓存的空闲时间(ms), 缓存数量超过上限时清除空闲超时的锁
+     */
+    private Long lockCacheIdleTime;
+    /**
+     * 看门狗的过期时间(ms), 大于 0 时启用看门狗, 未指定过期时间的锁会使用该过期时间并在持有期间自动续期
+     */
+    private Long watchdogLeaseTime;
+    /**
+     * 本地移交的最大连续次数, 大于 0 时开启本地移交, 锁释放时直接移交给本节点的等待线程
+     */
+    private Integer localHandoffMaxCount;
+    /**
+     * 本节点通过本地移交连续持有锁的最长时间(ms), 超过后在 redis 中释放锁, 默认 1000ms
+     */
+    private Long localHandoffMaxHoldTime;
+    /**
+     * 存在 MeterRegistry 时是否记录锁的 Micrometer 指标, 默认开启
+     */
+    private Boolean metricsEnabled;
+    /**
+     * 锁指标中锁名称模式标签的数量上限, 超过后归入 other
+     */
+    private Integer metricsMaxKeyPatterns;
+    /**
+     * 是否使用进程内的锁实现代替 redis, 适用于单实例部署, 默认关闭
+     */
+    private Boolean inMemory;
+    /**
+     * 是否使用全局公平锁, 等待者在 redis 中按先后顺序排队, 默认关闭
+     */
+    private Boolean fairLock;
+    /**
+     * 集群模式下是否使用分片发布订阅(需要 redis 7.0 以上), 目前只支持 Jedis 集群, 默认关闭.
+     * 开启后复用订阅为每个分片节点各使用一个订阅连接和一个线程
+     */
+    private Boolean shardedPubSub;
+    /**
+     * 合并执行时共享结果的有效时间(ms), 默认 5 秒
+     */
+    private Long coalesceResultTtl;
+    /**
+     * 合并执行时共享结果额外允许反序列化的类名或者包名(以 '.' 结尾), 返回值中引用了自定义类型时需要配置
+     */
+    private List<String> coalesceResultAllowedClasses;
 
     /**
      * @return the defaultLeaseTime
@@ -63,4 +113,172 @@ public class RedisSyncProperties {
         this.defaultWaitTime = defaultWaitTime;
     }
 
+    /**
+     * @return the lockCacheMaxSize
+     */
+    public Integer getLockCacheMaxSize() {
+        return lockCacheMaxSize;
+    }
+
+    /**
+     * @param lockCacheMaxSize the lockCacheMaxSize to set
+     */
+    public void setLockCacheMaxSize(Integer lockCacheMaxSize) {
+        this.lockCacheMaxSize = lockCacheMaxSize;
+    }
+
+    /**
+     * @return the lockCacheIdleTime
+     */
+    public Long getLockCacheIdleTime() {
+        return lockCacheIdleTime;
+    }
+
+    /**
+     * @param lockCacheIdleTime the lockCacheIdleTime to set
+     */
+    public void setLockCacheIdleTime(Long lockCacheIdleTime) {
+        this.lockCacheIdleTime = lockCacheIdleTime;
+    }
+
+    /**
+     * @return the watchdogLeaseTime
+     */
+    public Long getWatchdogLeaseTime() {
+        return watchdogLeaseTime;
+    }
+
+    /**
+     * @param watchdogLeaseTime the watchdogLeaseTime to set
+     */
+    public void setWatchdogLeaseTime(Long watchdogLeaseTime) {
+        this.watchdogLeaseTime = watchdogLeaseTime;
+    }
+
+    /**
+     * @return the localHandoffMaxCount
+     */
+    public Integer getLocalHandoffMaxCount() {
+        return localHandoffMaxCount;
+    }
+
+    /**
+     * @param localHandoffMaxCount the localHandoffMaxCount to set
+     */
+    public void setLocalHandoffMaxCount(Integer localHandoffMaxCount) {
+        this.localHandoffMaxCount = localHandoffMaxCount;
+    }
+
+    /**
+     * @return the localHandoffMaxHoldTime
+     */
+    public Long getLocalHandoffMaxHoldTime() {
+        return localHandoffMaxHoldTime;
+    }
+
+    /**
+     * @param localHandoffMaxHoldTime the localHandoffMaxHoldTime to set
+     */
+    public void setLocalHandoffMaxHoldTime(Long localHandoffMaxHoldTime) {
+        this.localHandoffMaxHoldTime = localHandoffMaxHoldTime;
+    }
+
+    /**
+     * @return the metricsEnabled
+     */
+    public Boolean getMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    /**
+     * @param metricsEnabled the metricsEnabled to set
+     */
+    public void setMetricsEnabled(Boolean metricsEnabled) {
+        this.metricsEnabled = metricsEnabled;
+    }
+
+    /**
+     * @return the metricsMaxKeyPatterns
+     */
+    public Integer getMetricsMaxKeyPatterns() {
+        return metricsMaxKeyPatterns;
+    }
+
+    /**
+     * @param metricsMaxKeyPatterns the metricsMaxKeyPatterns to set
+     */
+    public void setMetricsMaxKeyPatterns(Integer metricsMaxKeyPatterns) {
+        this.metricsMaxKeyPatterns = metricsMaxKeyPatterns;
+    }
+
+    /**
+     * @return the inMemory
+     */
+    public Boolean getInMemory() {
+        return inMemory;
+    }
+
+    /**
+     * @param inMemory the inMemory to set
+     */
+    public void setInMemory(Boolean inMemory) {
+        this.inMemory = inMemory;
+    }
+
+    /**
+     * @return the fairLock
+     */
+    public Boolean getFairLock() {
+        return fairLock;
+    }
+
+    /**
+     * @param fairLock the fairLock to set
+     */
+    public void setFairLock(Boolean fairLock) {
+        this.fairLock = fairLock;
+    }
+
+    /**
+     * @return the shardedPubSub
+     */
+    public Boolean getShardedPubSub() {
+        return shardedPubSub;
+    }
+
+    /**
+     * @param shardedPubSub the shardedPubSub to set
+     */
+    public void setShardedPubSub(Boolean shardedPubSub) {
+        this.shardedPubSub = shardedPubSub;
+    }
+
+    /**
+     * @return the coalesceResultTtl
+     */
+    public Long getCoalesceResultTtl() {
+        return coalesceResultTtl;
+    }
+
+    /**
+     * @param coalesceResultTtl the coalesceResultTtl to set
+     */
+    public void setCoalesceResultTtl(Long coalesceResultTtl) {
+        this.coalesceResultTtl = coalesceResultTtl;
+    }
+
+    /**
+     * @return the coalesceResultAllowedClasses
+     */
+    public List<String> getCoalesceResultAllowedClasses() {
+        return coalesceResultAllowedClasses;
+    }
+
+    /**
+     * @param coalesceResultAllowedClasses the coalesceResultAllowedClasses to set
+     */
+    public void setCoalesceResultAllowedClasses(List<String> coalesceResultAllowedClasses) {
+        this.coalesceResultAllowedClasses = coalesceResultAllowedClasses;
+    }
+
 }
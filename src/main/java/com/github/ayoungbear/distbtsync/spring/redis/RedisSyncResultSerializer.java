@@ -0,0 +1,53 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.spring.redis;
+
+import org.springframework.lang.Nullable;
+
+/**
+ * 同步方法执行结果的序列化器, 用于合并执行时在 redis 中共享执行结果.
+ *
+ * @author yangzexiong
+ * @see RedisCoalescingSynchronizer
+ */
+public interface RedisSyncResultSerializer {
+
+    /**
+     * 将执行结果序列化为字符串.
+     * @param result 执行结果, 可以为 {@code null}
+     * @return
+     */
+    String serialize(Object result);
+
+    /**
+     * 将字符串反序列化为执行结果.
+     * @param value
+     * @return
+     */
+    Object deserialize(String value);
+
+    /**
+     * 根据同步方法声明的返回值类型将字符串反序列化为执行结果, 默认忽略返回值类型.
+     * @param value
+     * @param resultType 同步方法声明的返回值类型, 未知时为 {@code null}
+     * @return
+     */
+    default Object deserialize(String value, @Nullable Class<?> resultType) {
+        return deserialize(value);
+    }
+
+}
@@ -16,6 +16,9 @@
 
 package com.github.ayoungbear.distbtsync.spring.redis;
 
+import java.util.List;
+import org.springframework.lang.Nullable;
+
 /**
  * 定义基于 Redis 的同步器提供接口.
  *
@@ -31,4 +34,21 @@ public interface RedisSynchronizerProvider {
      */
     RedisSynchronizer getSynchronizer(RedisSyncAttributes attributes);
 
+    /**
+     * 根据同步属性模板 {@code attributes} 和本次调用解析出的键值和时间, 返回相应的同步器实现类.
+     * 模板中的键值和时间可能尚未解析, 以参数为准, 模板是共享的, 实现类不能修改它.
+     * 默认复制模板并填充参数后委托给 {@link #getSynchronizer(RedisSyncAttributes)}.
+     * @param attributes 同步属性模板
+     * @param key 同步所用键值
+     * @param keys 多键同步时所用的全部键值
+     * @param leaseTimeMillis 过期时间(ms)
+     * @param waitTimeMillis 阻塞等待的最大超时时间(ms)
+     * @return
+     */
+    default RedisSynchronizer getSynchronizer(RedisSyncAttributes attributes, String key,
+            @Nullable List<String> keys, long leaseTimeMillis, long waitTimeMillis) {
+        return getSynchronizer(attributes.copy().setName(key).setKeys(keys).setLeaseTimeMillis(leaseTimeMillis)
+                .setWaitTimeMillis(waitTimeMillis));
+    }
+
 }
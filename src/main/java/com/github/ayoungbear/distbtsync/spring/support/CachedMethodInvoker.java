@@ -18,15 +18,19 @@ package com.github.ayoungbear.distbtsync.spring.support;
 
 import com.github.ayoungbear.distbtsync.spring.MethodInvoker;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.aopalliance.intercept.MethodInvocation;
 import org.springframework.aop.support.AopUtils;
 import org.springframework.core.BridgeMethodResolver;
+import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
 
 /**
  * 依赖于 {@link org.aopalliance.intercept.MethodInvocation} 来实现, 会缓存方法的执行结果, 
  * 重复调用会返回之前执行的结果.
+ * 与 {@link MethodInvocation} 一样只在一次方法调用的过程中使用, 不支持多个线程同时调用.
  *
  * @author yangzexiong
  * @see org.aopalliance.intercept.MethodInvocation
@@ -35,6 +39,11 @@ public class CachedMethodInvoker implements MethodInvoker {
 
     private static final Object NULL = new Object();
 
+    /**
+     * 方法与目标类型上具体方法的对应关系缓存, 避免每次调用都通过反射查找
+     */
+    private static final Map<Method, SpecificMethod> SPECIFIC_METHOD_CACHE = new ConcurrentHashMap<>(256);
+
     private MethodInvocation invocation;
 
     private Method specificMethod;
@@ -46,6 +55,16 @@ public class CachedMethodInvoker implements MethodInvoker {
         this.invocation = invocation;
     }
 
+    /**
+     * 根据已经调用完成的方法调用创建, 再次调用会直接返回给定的结果.
+     * @param invocation
+     * @param result
+     */
+    public CachedMethodInvoker(MethodInvocation invocation, @Nullable Object result) {
+        this(invocation);
+        this.result = result == null ? NULL : result;
+    }
+
     @Override
     public Object getTarget() {
         return invocation.getThis();
@@ -75,12 +94,8 @@ public class CachedMethodInvoker implements MethodInvoker {
     @Override
     public Object invoke() throws Throwable {
         if (result == null) {
-            synchronized (this) {
-                if (result == null) {
-                    Object resultTemp = invocation.proceed();
-                    result = resultTemp == null ? NULL : resultTemp;
-                }
-            }
+            Object resultTemp = invocation.proceed();
+            result = resultTemp == null ? NULL : resultTemp;
         }
         return getResult();
     }
@@ -95,10 +110,39 @@ public class CachedMethodInvoker implements MethodInvoker {
 
     protected Method getSpecificMethod() {
         if (specificMethod == null) {
-            specificMethod = BridgeMethodResolver
-                    .findBridgedMethod(ClassUtils.getMostSpecificMethod(invocation.getMethod(), getTargetClass()));
+            specificMethod = getSpecificMethod(invocation.getMethod(), getTargetClass());
         }
         return specificMethod;
     }
 
+    /**
+     * 获取方法在目标类型上的具体方法, 结果会被缓存.
+     * @param method
+     * @param targetClass
+     * @return
+     */
+    public static Method getSpecificMethod(Method method, @Nullable Class<?> targetClass) {
+        SpecificMethod cached = SPECIFIC_METHOD_CACHE.get(method);
+        if (cached == null || cached.targetClass != targetClass) {
+            // 同一个方法通常只对应一个目标类型, 只缓存最近一次的结果
+            cached = new SpecificMethod(targetClass,
+                    BridgeMethodResolver.findBridgedMethod(ClassUtils.getMostSpecificMethod(method, targetClass)));
+            SPECIFIC_METHOD_CACHE.put(method, cached);
+        }
+        return cached.method;
+    }
+
+    private static final class SpecificMethod {
+
+        private final Class<?> targetClass;
+
+        private final Method method;
+
+        private SpecificMethod(Class<?> targetClass, Method method) {
+            this.targetClass = targetClass;
+            this.method = method;
+        }
+
+    }
+
 }
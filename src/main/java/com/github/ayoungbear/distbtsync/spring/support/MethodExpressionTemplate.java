@@ -0,0 +1,414 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.spring.support;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+import org.springframework.beans.BeanUtils;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.support.DefaultConversionService;
+import org.springframework.expression.Expression;
+import org.springframework.expression.common.CompositeStringExpression;
+import org.springframework.expression.common.LiteralExpression;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.CompoundExpression;
+import org.springframework.expression.spel.ast.PropertyOrFieldReference;
+import org.springframework.expression.spel.ast.VariableReference;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.util.ReflectionUtils;
+
+/**
+ * 方法表达式的快速解析模板.
+ * 只由字面量, {@code #methodName}, 方法参数({@code #pN}/{@code #aN}/参数名)及其简单属性路径组成的模板表达式,
+ * 会被预先编译为直接拼接字符串的模板, 解析时不再经过 SpEL; 其他表达式以及运行时无法直接求值的情况仍然交由 SpEL 处理.
+ *
+ * @author yangzexiong
+ * @see MethodInvocationEvaluationContext
+ */
+final class MethodExpressionTemplate {
+
+    /**
+     * 表示模板无法直接求值, 需要回退到 SpEL 解析
+     */
+    static final Object UNRESOLVED = new Object();
+
+    private static final String PLACEHOLDER_PREFIX = "${";
+
+    private static final Object[] NO_ARGUMENTS = new Object[0];
+
+    private static final ConversionService CONVERSION_SERVICE = DefaultConversionService.getSharedInstance();
+
+    private final Part[] parts;
+
+    private final boolean composite;
+
+    private final int estimatedLength;
+
+    private MethodExpressionTemplate(Part[] parts, boolean composite, int estimatedLength) {
+        this.parts = parts;
+        this.composite = composite;
+        this.estimatedLength = estimatedLength;
+    }
+
+    /**
+     * 尝试将表达式编译为快速解析模板.
+     * @param expression 已解析的表达式
+     * @param method 方法
+     * @param parameterNameDiscoverer 参数名解析器
+     * @param placeholderResolver 字面量中占位符的解析器
+     * @return 快速解析模板, 表达式不满足条件时返回 {@code null}
+     */
+    static MethodExpressionTemplate compile(Expression expression, Method method,
+            ParameterNameDiscoverer parameterNameDiscoverer, UnaryOperator<String> placeholderResolver) {
+        Expression[] expressions;
+        boolean composite;
+        if (expression instanceof CompositeStringExpression) {
+            expressions = ((CompositeStringExpression) expression).getExpressions();
+            composite = true;
+        } else if (expression instanceof SpelExpression) {
+            expressions = new Expression[]{expression};
+            composite = false;
+        } else {
+            return null;
+        }
+
+        Map<String, Integer> parameterIndexes = null;
+        Part[] parts = new Part[expressions.length];
+        int estimatedLength = 0;
+        for (int i = 0; i < expressions.length; i++) {
+            Expression part = expressions[i];
+            if (part instanceof LiteralExpression) {
+                String literal = resolvePlaceholders(part.getExpressionString(), placeholderResolver);
+                if (literal == null) {
+                    return null;
+                }
+                parts[i] = new LiteralPart(literal);
+                estimatedLength += literal.length();
+                continue;
+            }
+            if (!(part instanceof SpelExpression)) {
+                return null;
+            }
+            SpelNode node = ((SpelExpression) part).getAST();
+            SpelNode variable = node;
+            int propertyCount = 0;
+            if (node instanceof CompoundExpression) {
+                variable = node.getChild(0);
+                propertyCount = node.getChildCount() - 1;
+            }
+            if (!(variable instanceof VariableReference)) {
+                return null;
+            }
+            String name = variable.toStringAST().substring(1);
+            PropertyStep[] steps = new PropertyStep[propertyCount];
+            for (int j = 0; j < propertyCount; j++) {
+                SpelNode child = node.getChild(j + 1);
+                if (!(child instanceof PropertyOrFieldReference)) {
+                    return null;
+                }
+                PropertyOrFieldReference reference = (PropertyOrFieldReference) child;
+                steps[j] = new PropertyStep(reference.getName(), reference.isNullSafe());
+            }
+
+            if ("methodName".equals(name)) {
+                if (steps.length == 0) {
+                    // 方法名是固定的, 直接作为字面量
+                    parts[i] = new LiteralPart(method.getName());
+                    estimatedLength += method.getName().length();
+                    continue;
+                }
+                parts[i] = new VariablePart(VariablePart.CONSTANT, method.getName(), steps);
+            } else if ("target".equals(name)) {
+                parts[i] = new VariablePart(VariablePart.TARGET, null, steps);
+            } else {
+                if (parameterIndexes == null) {
+                    parameterIndexes = getParameterIndexes(method, parameterNameDiscoverer);
+                }
+                Integer index = parameterIndexes.get(name);
+                if (index == null || isReservedVariable(name)) {
+                    return null;
+                }
+                parts[i] = new VariablePart(index, null, steps);
+            }
+            estimatedLength += 16;
+        }
+        return new MethodExpressionTemplate(parts, composite, estimatedLength);
+    }
+
+    /**
+     * 根据方法调用上下文求值.
+     * 组合模板返回拼接后的字符串, 单个表达式返回原始值, 无法直接求值时返回 {@link #UNRESOLVED}.
+     * @param target 对象
+     * @param arguments 参数
+     * @return 求值结果
+     */
+    Object evaluate(Object target, Object[] arguments) {
+        if (!composite) {
+            return parts[0].getValue(target, arguments);
+        }
+        StringBuilder builder = new StringBuilder(estimatedLength);
+        for (Part part : parts) {
+            Object value = part.getValue(target, arguments);
+            if (value == UNRESOLVED) {
+                return UNRESOLVED;
+            }
+            if (value != null) {
+                builder.append(toStringValue(value));
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * 判断求值结果是否还需要解析占位符, 字面量中的占位符已在编译时解析.
+     * @param result 求值结果
+     * @return
+     */
+    boolean requiresPlaceholderResolution(String result) {
+        for (Part part : parts) {
+            if (part instanceof VariablePart) {
+                return result.contains(PLACEHOLDER_PREFIX);
+            }
+        }
+        return false;
+    }
+
+    private static String toStringValue(Object value) {
+        if (value instanceof String) {
+            return (String) value;
+        }
+        if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return value.toString();
+        }
+        // 与 SpEL 模板的类型转换保持一致
+        return CONVERSION_SERVICE.convert(value, String.class);
+    }
+
+    private static String resolvePlaceholders(String literal, UnaryOperator<String> placeholderResolver) {
+        if (!literal.contains(PLACEHOLDER_PREFIX)) {
+            return literal;
+        }
+        String resolved;
+        try {
+            resolved = placeholderResolver.apply(literal);
+        } catch (RuntimeException ex) {
+            // 无法解析的占位符交由 SpEL 解析时报错
+            return null;
+        }
+        // 解析后仍有占位符的, 拼接后的结果可能不同, 不做处理
+        return resolved == null || resolved.contains(PLACEHOLDER_PREFIX) ? null : resolved;
+    }
+
+    private static boolean isReservedVariable(String name) {
+        // 与 MethodInvocationEvaluationContext 中预设的变量保持一致, 预设变量优先于参数
+        return "args".equals(name) || "method".equals(name) || "targetClass".equals(name);
+    }
+
+    private static Map<String, Integer> getParameterIndexes(Method method,
+            ParameterNameDiscoverer parameterNameDiscoverer) {
+        Map<String, Integer> parameterIndexes = new HashMap<>();
+        if (method.isVarArgs()) {
+            // 可变参数的绑定规则较为复杂, 交由 SpEL 处理
+            return parameterIndexes;
+        }
+        String[] parameterNames = parameterNameDiscoverer.getParameterNames(method);
+        int parameterCount = parameterNames != null ? parameterNames.length : method.getParameterCount();
+        // 与 MethodBasedEvaluationContext 的参数绑定顺序保持一致
+        for (int i = 0; i < parameterCount; i++) {
+            parameterIndexes.put("a" + i, i);
+            parameterIndexes.put("p" + i, i);
+            if (parameterNames != null && parameterNames[i] != null) {
+                parameterIndexes.put(parameterNames[i], i);
+            }
+        }
+        return parameterIndexes;
+    }
+
+    /**
+     * 模板片段.
+     */
+    private interface Part {
+
+        Object getValue(Object target, Object[] arguments);
+
+    }
+
+    /**
+     * 字面量片段.
+     */
+    private static final class LiteralPart implements Part {
+
+        private final String value;
+
+        LiteralPart(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public Object getValue(Object target, Object[] arguments) {
+            return value;
+        }
+
+    }
+
+    /**
+     * 变量及其属性路径片段.
+     */
+    private static final class VariablePart implements Part {
+
+        static final int CONSTANT = -1;
+
+        static final int TARGET = -2;
+
+        private final int index;
+
+        private final Object constant;
+
+        private final PropertyStep[] steps;
+
+        VariablePart(int index, Object constant, PropertyStep[] steps) {
+            this.index = index;
+            this.constant = constant;
+            this.steps = steps;
+        }
+
+        @Override
+        public Object getValue(Object target, Object[] arguments) {
+            Object value;
+            if (index == CONSTANT) {
+                value = constant;
+            } else if (index == TARGET) {
+                value = target;
+            } else {
+                value = arguments != null && index < arguments.length ? arguments[index] : null;
+            }
+            for (PropertyStep step : steps) {
+                if (value == null) {
+                    return step.nullSafe ? null : UNRESOLVED;
+                }
+                value = step.read(value);
+                if (value == UNRESOLVED) {
+                    return UNRESOLVED;
+                }
+            }
+            return value;
+        }
+
+    }
+
+    /**
+     * 属性读取, 缓存最近一次解析到的类型及其读取方法或字段.
+     */
+    private static final class PropertyStep {
+
+        private final String name;
+
+        private final boolean nullSafe;
+
+        private volatile PropertyReader reader;
+
+        PropertyStep(String name, boolean nullSafe) {
+            this.name = name;
+            this.nullSafe = nullSafe;
+        }
+
+        Object read(Object value) {
+            if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                // 与 MapAccessor 一致, 不存在的键交由 SpEL 处理
+                return map.containsKey(name) ? map.get(name) : UNRESOLVED;
+            }
+            if (value instanceof Class) {
+                return UNRESOLVED;
+            }
+            PropertyReader reader = this.reader;
+            if (reader == null || reader.type != value.getClass()) {
+                reader = PropertyReader.create(value.getClass(), name);
+                if (reader == null) {
+                    return UNRESOLVED;
+                }
+                this.reader = reader;
+            }
+            return reader.read(value);
+        }
+
+    }
+
+    /**
+     * 特定类型的属性读取器.
+     */
+    private static final class PropertyReader {
+
+        private final Class<?> type;
+
+        private final Member member;
+
+        private PropertyReader(Class<?> type, Member member) {
+            this.type = type;
+            this.member = member;
+        }
+
+        static PropertyReader create(Class<?> type, String name) {
+            Member member = null;
+            try {
+                PropertyDescriptor descriptor = BeanUtils.getPropertyDescriptor(type, name);
+                if (descriptor != null && descriptor.getReadMethod() != null) {
+                    member = descriptor.getReadMethod();
+                }
+            } catch (Exception ex) {
+                // 交由 SpEL 处理
+            }
+            if (member == null) {
+                Field field = ReflectionUtils.findField(type, name);
+                if (field != null && Modifier.isPublic(field.getModifiers())
+                        && !Modifier.isStatic(field.getModifiers())) {
+                    member = field;
+                }
+            }
+            if (member == null) {
+                return null;
+            }
+            if (member instanceof Method) {
+                ReflectionUtils.makeAccessible((Method) member);
+            } else {
+                ReflectionUtils.makeAccessible((Field) member);
+            }
+            return new PropertyReader(type, member);
+        }
+
+        Object read(Object value) {
+            try {
+                if (member instanceof Method) {
+                    return ((Method) member).invoke(value, NO_ARGUMENTS);
+                }
+                return ((Field) member).get(value);
+            } catch (Exception ex) {
+                // 异常交由 SpEL 重新求值并抛出
+                return UNRESOLVED;
+            }
+        }
+
+    }
+
+}
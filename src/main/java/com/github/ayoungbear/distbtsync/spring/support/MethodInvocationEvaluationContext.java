@@ -16,7 +16,13 @@
 
 package com.github.ayoungbear.distbtsync.spring.support;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
@@ -27,16 +33,45 @@ import org.springframework.context.expression.EnvironmentAccessor;
 import org.springframework.context.expression.MapAccessor;
 import org.springframework.context.expression.MethodBasedEvaluationContext;
 import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.spel.support.ReflectivePropertyAccessor;
+import org.springframework.util.ConcurrentReferenceHashMap;
 
 /**
  * 基于 {@link org.springframework.context.expression.MethodBasedEvaluationContext} 的扩展实现, 提供了针对方法调用的解析上下文.
  * 提供了方法相关的信息, 还可以结合 {@link org.springframework.beans.factory.BeanFactory}, 为解析提供更多样的支持.
+ * 方法参数名按方法缓存, 属性访问器列表在所有上下文间共享, 每次调用只需绑定方法参数.
  *
  * @author yangzexiong
  * @see org.springframework.context.expression.MethodBasedEvaluationContext
  */
 public class MethodInvocationEvaluationContext extends MethodBasedEvaluationContext implements BeanFactoryAware {
 
+    /**
+     * 共享的按方法缓存参数名的参数名解析器
+     */
+    static final ParameterNameDiscoverer PARAMETER_NAME_DISCOVERER = new CachedParameterNameDiscoverer(
+            new DefaultParameterNameDiscoverer());
+
+    /**
+     * 共享的默认属性访问器
+     */
+    private static final ReflectivePropertyAccessor REFLECTIVE_PROPERTY_ACCESSOR = new ReflectivePropertyAccessor();
+
+    /**
+     * 默认的属性访问器列表
+     */
+    private static final List<PropertyAccessor> DEFAULT_PROPERTY_ACCESSORS = Collections.unmodifiableList(
+            Arrays.asList(new MapAccessor(), REFLECTIVE_PROPERTY_ACCESSOR));
+
+    /**
+     * 设置了 BeanFactory 时的属性访问器列表
+     */
+    private static final List<PropertyAccessor> BEAN_FACTORY_PROPERTY_ACCESSORS = Collections.unmodifiableList(
+            Arrays.asList(new MapAccessor(), new EnvironmentAccessor(), new BeanFactoryAccessor(),
+                    new BeanExpressionContextAccessor(), REFLECTIVE_PROPERTY_ACCESSOR));
+
     private Object[] args;
     private Method method;
     private String methodName;
@@ -44,7 +79,12 @@ public class MethodInvocationEvaluationContext extends MethodBasedEvaluationCont
     private Class<?> targetClass;
 
     public MethodInvocationEvaluationContext(Method method, Object target, Object[] arguments) {
-        super(null, method, arguments, new DefaultParameterNameDiscoverer());
+        this(method, target, arguments, PARAMETER_NAME_DISCOVERER);
+    }
+
+    public MethodInvocationEvaluationContext(Method method, Object target, Object[] arguments,
+            ParameterNameDiscoverer parameterNameDiscoverer) {
+        super(null, method, arguments, parameterNameDiscoverer);
         this.method = Objects.requireNonNull(method, "Method must not be null");
         this.args = arguments;
         this.methodName = method.getName();
@@ -61,12 +101,20 @@ public class MethodInvocationEvaluationContext extends MethodBasedEvaluationCont
             // 设置根节点为beanFactory
             setRootObject(beanFactory);
             setBeanResolver(new BeanFactoryResolver(beanFactory));
-            addPropertyAccessor(new EnvironmentAccessor());
-            addPropertyAccessor(new BeanFactoryAccessor());
-            addPropertyAccessor(new BeanExpressionContextAccessor());
+            setPropertyAccessors(BEAN_FACTORY_PROPERTY_ACCESSORS);
         }
     }
 
+    @Override
+    public void addPropertyAccessor(PropertyAccessor accessor) {
+        List<PropertyAccessor> accessors = getPropertyAccessors();
+        if (accessors == DEFAULT_PROPERTY_ACCESSORS || accessors == BEAN_FACTORY_PROPERTY_ACCESSORS) {
+            // 共享列表不可修改, 添加前先复制一份
+            setPropertyAccessors(new ArrayList<>(accessors));
+        }
+        super.addPropertyAccessor(accessor);
+    }
+
     public Method getMethod() {
         return method;
     }
@@ -97,7 +145,39 @@ public class MethodInvocationEvaluationContext extends MethodBasedEvaluationCont
         setVariable("methodName", methodName);
         setVariable("target", target);
         setVariable("targetClass", targetClass);
-        addPropertyAccessor(new MapAccessor());
+        setPropertyAccessors(DEFAULT_PROPERTY_ACCESSORS);
+    }
+
+    /**
+     * 按方法缓存参数名的参数名解析器.
+     */
+    public static class CachedParameterNameDiscoverer implements ParameterNameDiscoverer {
+
+        private static final String[] NO_PARAMETER_NAMES = new String[0];
+
+        private final Map<Method, String[]> parameterNamesCache = new ConcurrentReferenceHashMap<>(256);
+
+        private final ParameterNameDiscoverer delegate;
+
+        public CachedParameterNameDiscoverer(ParameterNameDiscoverer delegate) {
+            this.delegate = Objects.requireNonNull(delegate, "ParameterNameDiscoverer must not be null");
+        }
+
+        @Override
+        public String[] getParameterNames(Method method) {
+            String[] parameterNames = parameterNamesCache.get(method);
+            if (parameterNames == null) {
+                parameterNames = delegate.getParameterNames(method);
+                parameterNamesCache.put(method, parameterNames == null ? NO_PARAMETER_NAMES : parameterNames);
+            }
+            return parameterNames == NO_PARAMETER_NAMES ? null : parameterNames;
+        }
+
+        @Override
+        public String[] getParameterNames(Constructor<?> ctor) {
+            return delegate.getParameterNames(ctor);
+        }
+
     }
 
 }
@@ -18,21 +18,30 @@ package com.github.ayoungbear.distbtsync.spring.support;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.core.SpringProperties;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
 import org.springframework.expression.ParseException;
 import org.springframework.expression.ParserContext;
+import org.springframework.expression.spel.SpelCompilerMode;
 import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 
 /**
  * 基于 SpEl 的表达式解析器.
+ * 默认以 {@link SpelCompilerMode#MIXED} 模式解析, 表达式多次解释执行后会被编译为字节码, 编译失败或运行时类型变化时自动回退为解释执行;
+ * 如果显式配置了 {@code spring.expression.compiler.mode} 则以该配置为准.
  *
  * @author yangzexiong
  * @see org.springframework.expression.spel.standard.SpelExpressionParser
  */
 public class SpelExpressionSupport implements ExpressionParser {
 
+    /**
+     * Spring 配置表达式编译模式的属性名
+     */
+    private static final String SPRING_COMPILER_MODE_PROPERTY_NAME = "spring.expression.compiler.mode";
+
     private Map<String, Expression> expressionCache = new ConcurrentHashMap<String, Expression>(256);
 
     private ParserContext parserContext;
@@ -40,22 +49,23 @@ public class SpelExpressionSupport implements ExpressionParser {
     private ExpressionParser expressionParser;
 
     public SpelExpressionSupport() {
-        this.expressionParser = new SpelExpressionParser();
-        this.parserContext = ParserContext.TEMPLATE_EXPRESSION;
+        this(ParserContext.TEMPLATE_EXPRESSION, (ClassLoader) null);
     }
 
     public SpelExpressionSupport(ParserContext parserContext) {
-        this.expressionParser = new SpelExpressionParser();
-        this.parserContext = parserContext;
+        this(parserContext, (ClassLoader) null);
     }
 
     public SpelExpressionSupport(ClassLoader beanClassLoader) {
-        this.expressionParser = new SpelExpressionParser(new SpelParserConfiguration(null, beanClassLoader));
-        this.parserContext = ParserContext.TEMPLATE_EXPRESSION;
+        this(ParserContext.TEMPLATE_EXPRESSION, beanClassLoader);
     }
 
     public SpelExpressionSupport(ParserContext parserContext, ClassLoader beanClassLoader) {
-        this.expressionParser = new SpelExpressionParser(new SpelParserConfiguration(null, beanClassLoader));
+        this(parserContext, new SpelParserConfiguration(getDefaultCompilerMode(), beanClassLoader));
+    }
+
+    public SpelExpressionSupport(ParserContext parserContext, SpelParserConfiguration configuration) {
+        this.expressionParser = new SpelExpressionParser(configuration);
         this.parserContext = parserContext;
     }
 
@@ -100,4 +110,15 @@ public class SpelExpressionSupport implements ExpressionParser {
         };
     }
 
+    /**
+     * 获取默认的表达式编译模式, 未显式配置时使用混合模式.
+     * @return 编译模式, 返回 {@code null} 时由 Spring 按配置决定
+     */
+    private static SpelCompilerMode getDefaultCompilerMode() {
+        if (SpringProperties.getProperty(SPRING_COMPILER_MODE_PROPERTY_NAME) != null) {
+            return null;
+        }
+        return SpelCompilerMode.MIXED;
+    }
+
 }
@@ -18,6 +18,12 @@ package com.github.ayoungbear.distbtsync.spring.support;
 
 import com.github.ayoungbear.distbtsync.spring.MethodBasedExpressionResolver;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.BeanFactoryAware;
@@ -27,11 +33,13 @@ import org.springframework.expression.Expression;
 import org.springframework.expression.ParserContext;
 import org.springframework.expression.common.LiteralExpression;
 import org.springframework.lang.Nullable;
+import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.util.StringValueResolver;
 
 /**
  * 基于特定方法的 SpEl 表达式解析器, 将表达式根据方法上下文解析成字符串并返回.
+ * 只由字面量, 方法名, 方法参数及其简单属性路径组成的表达式会按方法编译为快速解析模板, 不再经过 SpEL 求值.
  *
  * @author yangzexiong
  * @see MethodInvocationEvaluationContext
@@ -40,9 +48,16 @@ import org.springframework.util.StringValueResolver;
 public class StringMethodExpressionResolver extends SpelExpressionSupport
         implements MethodBasedExpressionResolver<String>, BeanFactoryAware, StringValueResolver {
 
+    /**
+     * 表示表达式无法编译为快速解析模板
+     */
+    private static final Object NO_TEMPLATE = new Object();
+
     @Nullable
     private ConfigurableBeanFactory beanFactory;
 
+    private final Map<Method, Map<String, Object>> templateCache = new ConcurrentHashMap<>(256);
+
     public StringMethodExpressionResolver() {
         super(ParserContext.TEMPLATE_EXPRESSION);
     }
@@ -60,6 +75,16 @@ public class StringMethodExpressionResolver extends SpelExpressionSupport
                 return resolveStringValue(expression.getExpressionString());
             }
 
+            MethodExpressionTemplate template = method != null ? getExpressionTemplate(expr, method) : null;
+            if (template != null) {
+                Object result = template.evaluate(target, arguments);
+                if (result != MethodExpressionTemplate.UNRESOLVED) {
+                    String stringResult = convertResult(result);
+                    return template.requiresPlaceholderResolution(stringResult) ? resolveStringValue(stringResult)
+                            : stringResult;
+                }
+            }
+
             EvaluationContext context = getEvaluationContext(method, target, arguments);
 
             Object result = expression.getValue(context);
@@ -71,10 +96,59 @@ public class StringMethodExpressionResolver extends SpelExpressionSupport
         }
     }
 
+    /**
+     * 解析结果是集合或者数组时将每个元素分别转换为字符串, 字面量按逗号分隔.
+     */
+    @Override
+    public List<String> evaluateAll(String expr, Method method, Object target, Object[] arguments) {
+        if (isLiteral(expr)) {
+            String literal = evaluate(expr, method, target, arguments);
+            List<String> values = new ArrayList<>();
+            for (String value : StringUtils.commaDelimitedListToStringArray(literal)) {
+                if (StringUtils.hasText(value)) {
+                    values.add(value.trim());
+                }
+            }
+            return values;
+        }
+        try {
+            Object result = parseExpression(expr).getValue(getEvaluationContext(method, target, arguments));
+            Collection<?> elements;
+            if (result instanceof Collection) {
+                elements = (Collection<?>) result;
+            } else if (result != null && result.getClass().isArray()) {
+                elements = CollectionUtils.arrayToList(result);
+            } else {
+                elements = Collections.singletonList(result);
+            }
+            List<String> values = new ArrayList<>(elements.size());
+            for (Object element : elements) {
+                values.add(resolveStringValue(convertResult(element)));
+            }
+            return values;
+        } catch (Exception ex) {
+            throw new IllegalStateException("Expression of expr '" + expr + "' parsing failed", ex);
+        }
+    }
+
+    @Override
+    public boolean isLiteral(String expr) {
+        return !StringUtils.hasText(expr) || parseExpression(expr) instanceof LiteralExpression;
+    }
+
+    @Override
+    public void prepare(String expr, Method method) {
+        if (StringUtils.hasText(expr) && method != null && !isLiteral(expr)) {
+            getExpressionTemplate(expr, method);
+        }
+    }
+
     @Override
     public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
         if (beanFactory instanceof ConfigurableBeanFactory) {
             this.beanFactory = (ConfigurableBeanFactory) beanFactory;
+            // 模板中的占位符依赖于 beanFactory
+            templateCache.clear();
         }
     }
 
@@ -99,6 +173,29 @@ public class StringMethodExpressionResolver extends SpelExpressionSupport
         return context;
     }
 
+    /**
+     * 获取方法上表达式的快速解析模板, 没有则编译并缓存.
+     * @param expr
+     * @param method
+     * @return 快速解析模板, 表达式无法编译为模板时返回 {@code null}
+     */
+    private MethodExpressionTemplate getExpressionTemplate(String expr, Method method) {
+        Map<String, Object> templates = templateCache.get(method);
+        if (templates == null) {
+            templates = templateCache.computeIfAbsent(method, m -> new ConcurrentHashMap<>(4));
+        }
+        Object template = templates.get(expr);
+        if (template == null) {
+            template = MethodExpressionTemplate.compile(parseExpression(expr), method,
+                    MethodInvocationEvaluationContext.PARAMETER_NAME_DISCOVERER, this::resolveStringValue);
+            if (template == null) {
+                template = NO_TEMPLATE;
+            }
+            templates.put(expr, template);
+        }
+        return template == NO_TEMPLATE ? null : (MethodExpressionTemplate) template;
+    }
+
     /**
      * 将求值结果转换为字符串值.
      * @param result
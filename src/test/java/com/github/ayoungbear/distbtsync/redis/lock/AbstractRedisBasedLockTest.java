@@ -1,9 +1,14 @@
 package com.github.ayoungbear.distbtsync.redis.lock;
 
 import com.github.ayoungbear.distbtsync.BaseSpringRedisTest;
-import com.github.ayoungbear.distbtsync.redis.lock.support.JedisClusterCommandsAdapter;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisMultiplexSubscription;
+import com.github.ayoungbear.distbtsync.redis.lock.support.MicrometerRedisLockObserver;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.ArrayList;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
 import org.junit.After;
 import org.junit.Assert;
@@ -45,6 +50,15 @@ public abstract class AbstractRedisBasedLockTest extends BaseSpringRedisTest {
         return getRedisLock(key);
     }
 
+    /**
+     * 获取共享队列与复用订阅测试使用的 redis 命令
+     *
+     * @return
+     */
+    protected RedisLockCommands getRedisLockCommands() {
+        return getJedisClusterCommandsAdapter();
+    }
+
     /**
      * 测试是否持有锁.
      */
@@ -598,7 +612,7 @@ public abstract class AbstractRedisBasedLockTest extends BaseSpringRedisTest {
     @Test
     public void testAutoCleanSharedQueue() {
         int size = RedisBasedLock.getSharedSyncCacheSize();
-        RedisBasedLock lock = RedisBasedLock.newSharedLock(key, new JedisClusterCommandsAdapter(getJedisCluster(20)));
+        RedisBasedLock lock = RedisBasedLock.newSharedLock(key, getRedisLockCommands());
         lock.lock();
         lock.unlock();
         int newSize = RedisBasedLock.getSharedSyncCacheSize();
@@ -615,4 +629,161 @@ public abstract class AbstractRedisBasedLockTest extends BaseSpringRedisTest {
         Assert.assertTrue(RedisBasedLock.getSharedSyncCacheSize() <= size);
     }
 
+    /**
+     * 测试多个锁争用时共用一个复用订阅者, 不再为每个锁创建订阅线程
+     *
+     * @throws InterruptedException
+     */
+    @Test
+    public void testMultiplexSubscription() throws InterruptedException {
+        RedisLockCommands commands = getRedisLockCommands();
+        RedisMultiplexSubscription subscription = commands.getMultiplexSubscription();
+        int keyCount = 20;
+        List<RedisLock> locks = new ArrayList<>();
+        for (int i = 0; i < keyCount; i++) {
+            RedisLock lock = new RedisBasedLock(key + i, commands);
+            lock.forceUnlock();
+            lock.lock();
+            locks.add(lock);
+        }
+        List<Thread> waiters = new ArrayList<>();
+        for (int i = 0; i < keyCount; i++) {
+            RedisLock lock = locks.get(i);
+            waiters.add(run(() -> {
+                lock.lock();
+                lock.unlock();
+            }));
+        }
+        sleep(1);
+        Assert.assertEquals(keyCount, subscription.getChannelCount());
+        Assert.assertEquals(false, Thread.getAllStackTraces().keySet().stream()
+                .anyMatch((t) -> t.getName().startsWith("RedisBasedLock$SubWorker")));
+        for (RedisLock lock : locks) {
+            lock.unlock();
+        }
+        for (Thread waiter : waiters) {
+            waiter.join();
+        }
+        Assert.assertEquals(0, subscription.getChannelCount());
+        subscription.close();
+    }
+
+    /**
+     * 测试看门狗自动续期
+     */
+    @Test
+    public void testWatchdogRenewLease() {
+        RedisLockWatchdog watchdog = new RedisLockWatchdog(1500, TimeUnit.MILLISECONDS);
+        RedisBasedLock lock = ((RedisBasedLock) getRedisLock()).setWatchdog(watchdog);
+        lock.lock();
+        Assert.assertEquals(1, watchdog.getWatchedCount());
+        sleep(4);
+        Assert.assertEquals(true, lock.isHeldLock());
+        lock.unlock();
+        Assert.assertEquals(0, watchdog.getWatchedCount());
+
+        // 持有者未解锁而锁被删除后不再续期
+        lock.lock();
+        lock.forceUnlock();
+        sleep(1);
+        Assert.assertEquals(0, watchdog.getWatchedCount());
+    }
+
+    /**
+     * 测试本地移交模式下的互斥与重入
+     */
+    @Test
+    public void testLocalHandoff() throws InterruptedException {
+        RedisBasedLock lock = ((RedisBasedLock) getRedisLock()).setLocalHandoff(16, 1, TimeUnit.SECONDS);
+        int threadCount = 8;
+        int loop = 50;
+        int[] counter = new int[1];
+        boolean[] concurrent = new boolean[1];
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            threads.add(run(() -> {
+                for (int j = 0; j < loop; j++) {
+                    lock.lock();
+                    try {
+                        // 重入
+                        lock.lock();
+                        lock.unlock();
+                        int c = counter[0];
+                        Thread.yield();
+                        if (counter[0] != c) {
+                            concurrent[0] = true;
+                        }
+                        counter[0] = c + 1;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(false, concurrent[0]);
+        Assert.assertEquals(threadCount * loop, counter[0]);
+        Assert.assertEquals(false, lock.isLocked());
+    }
+
+    /**
+     * 测试异步加锁与跨线程解锁
+     */
+    @Test
+    public void testLockAsync() throws Exception {
+        RedisLock lock = getRedisLock();
+        lock.lockAsync(1L).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(true, lock.isLocked());
+        Assert.assertEquals(false,
+                lock.tryLockAsync(0, 0, TimeUnit.MILLISECONDS, 2L).toCompletableFuture().get(5, TimeUnit.SECONDS));
+
+        // 等待期间不占用线程, 在其他线程中解锁后完成
+        CompletableFuture<Boolean> waiter = lock.tryLockAsync(5, 0, TimeUnit.SECONDS, 2L).toCompletableFuture();
+        Assert.assertEquals(false, waiter.isDone());
+        run(() -> lock.unlockAsync(1L).toCompletableFuture().join()).join();
+        Assert.assertEquals(true, waiter.get(5, TimeUnit.SECONDS));
+
+        try {
+            lock.unlockAsync(1L).toCompletableFuture().join();
+            Assert.fail();
+        } catch (CompletionException e) {
+            Assert.assertEquals(IllegalMonitorStateException.class, e.getCause().getClass());
+        }
+        lock.unlockAsync(2L).toCompletableFuture().get(5, TimeUnit.SECONDS);
+        Assert.assertEquals(false, lock.isLocked());
+    }
+
+    /**
+     * 测试锁运行情况的观察
+     */
+    @Test
+    public void testObserver() throws InterruptedException {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        RedisBasedLock lock = ((RedisBasedLock) getRedisLock())
+                .setObserver(new MicrometerRedisLockObserver(registry));
+        lock.lock();
+        Thread waiter = run(() -> Assert.assertEquals(false, tryLock(lock, 200)));
+        waiter.join();
+        lock.unlock();
+
+        Assert.assertEquals(1, registry.get("distbtsync.lock.acquire").tags("name", key, "result", "acquired")
+                .timer().count());
+        Assert.assertEquals(1, registry.get("distbtsync.lock.acquire").tags("name", key, "result", "timeout")
+                .timer().count());
+        Assert.assertEquals(1, registry.get("distbtsync.lock.hold").tag("name", key).timer().count());
+        Assert.assertEquals(0, registry.get("distbtsync.lock.waiters").tag("name", key).gauge().value(), 0);
+        Assert.assertTrue(registry.get("distbtsync.lock.commands").tags("name", key, "command", "tryAcquire")
+                .timer().count() >= 2);
+    }
+
+    private boolean tryLock(RedisLock lock, long timeoutMillis) {
+        try {
+            return lock.tryLock(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
 }
@@ -0,0 +1,25 @@
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import com.github.ayoungbear.distbtsync.redis.lock.support.InMemoryRedisLockCommands;
+
+/**
+ * 基于 redis 的可重入分布式锁单元测试
+ * 使用 InMemoryRedisLockCommands
+ *
+ * @author yangzexiong
+ */
+public class InMemoryRedisLockTest extends AbstractRedisBasedLockTest {
+
+    private final RedisLockCommands commands = new InMemoryRedisLockCommands();
+
+    @Override
+    protected RedisLock getRedisLock(String key) {
+        return new RedisBasedLock(key, commands);
+    }
+
+    @Override
+    protected RedisLockCommands getRedisLockCommands() {
+        return commands;
+    }
+
+}
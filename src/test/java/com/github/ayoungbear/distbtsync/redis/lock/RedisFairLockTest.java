@@ -0,0 +1,149 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import com.github.ayoungbear.distbtsync.redis.lock.support.InMemoryRedisLockCommands;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 全局公平锁的单元测试, 使用进程内的锁实现.
+ *
+ * @author yangzexiong
+ */
+public class RedisFairLockTest extends BaseTest {
+
+    private final InMemoryRedisLockCommands commands = new InMemoryRedisLockCommands();
+
+    @Test
+    public void testReentrantLock() {
+        RedisFairLock lock = new RedisFairLock("myLock", commands);
+        lock.lock();
+        Assert.assertTrue(lock.tryLock());
+        Assert.assertEquals(2, lock.getHoldCount());
+        lock.unlock();
+        Assert.assertTrue(lock.isHeldLock());
+        lock.unlock();
+        Assert.assertFalse(lock.isLocked());
+        Assert.assertFalse(lock.releaseLock());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testFifoOrder() throws Exception {
+        RedisFairLock lock = new RedisFairLock("myLock", commands);
+        lock.lock();
+        int threads = 5;
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            // 每个线程使用单独的锁对象模拟不同的节点
+            RedisFairLock nodeLock = new RedisFairLock("myLock", commands);
+            workers[i] = run(() -> {
+                nodeLock.lock();
+                try {
+                    order.add(index);
+                } finally {
+                    nodeLock.unlock();
+                }
+            });
+            awaitWaiters(nodeLock, 1);
+        }
+        lock.unlock();
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        Assert.assertEquals(threads, order.size());
+        for (int i = 0; i < threads; i++) {
+            Assert.assertEquals(Integer.valueOf(i), order.get(i));
+        }
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testNoBarging() throws Exception {
+        RedisFairLock lock = new RedisFairLock("myLock", commands);
+        RedisFairLock waiterLock = new RedisFairLock("myLock", commands);
+        lock.lock();
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread waiter = run(() -> {
+            waiterLock.lock();
+            acquired.set(true);
+        });
+        awaitWaiters(waiterLock, 1);
+        lock.unlock();
+        // 锁已授予队首的等待者, 其他线程不能插队
+        Thread barger = run(() -> Assert.assertFalse(lock.tryLock()));
+        barger.join();
+        waiter.join(TimeUnit.SECONDS.toMillis(5));
+        Assert.assertTrue(acquired.get());
+        Assert.assertTrue(lock.isLocked());
+        Assert.assertTrue(waiterLock.forceUnlock());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testTimeoutCancel() throws Exception {
+        RedisFairLock lock = new RedisFairLock("myLock", commands);
+        RedisFairLock nodeLock = new RedisFairLock("myLock", commands);
+        lock.lock();
+        AtomicBoolean timeout = new AtomicBoolean();
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread first = run(() -> {
+            try {
+                timeout.set(!nodeLock.tryLock(100, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        awaitWaiters(nodeLock, 1);
+        Thread second = run(() -> {
+            nodeLock.lock();
+            acquired.set(true);
+            nodeLock.unlock();
+        });
+        first.join();
+        Assert.assertTrue(timeout.get());
+        lock.unlock();
+        second.join(TimeUnit.SECONDS.toMillis(5));
+        Assert.assertTrue(acquired.get());
+        Assert.assertEquals(0, nodeLock.getWaiterCount());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testHashTagged() {
+        Assert.assertEquals("{myLock}", RedisFairLock.getHashTagged("myLock"));
+        Assert.assertEquals("order:{1}:lock", RedisFairLock.getHashTagged("order:{1}:lock"));
+    }
+
+    private static void awaitWaiters(RedisFairLock lock, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (lock.getWaiterCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(count, lock.getWaiterCount());
+    }
+
+}
@@ -0,0 +1,106 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.MessageConsumer;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisSubscription;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+
+/**
+ * 锁脚本定义单元测试.
+ *
+ * @author yangzexiong
+ */
+public class RedisLockScriptTest extends BaseTest {
+
+    @Test
+    public void testSha1() {
+        RedisLockScript script = RedisLockScript.of("test", "return 1");
+        Assert.assertEquals("e0e1f9fabfc9d4800c877a703b823ac0578ff8db", script.getSha1());
+        Assert.assertEquals("return 1", script.getScript());
+    }
+
+    @Test
+    public void testIsNoScriptError() {
+        Exception noScript = new JedisNoScriptException("NOSCRIPT No matching script. Please use EVAL.");
+        Assert.assertTrue(RedisLockScript.isNoScriptError(noScript));
+        Assert.assertTrue(RedisLockScript.isNoScriptError(new IllegalStateException("wrapped", noScript)));
+        Assert.assertFalse(RedisLockScript.isNoScriptError(new IllegalStateException("ERR unknown command")));
+        Assert.assertFalse(RedisLockScript.isNoScriptError(null));
+    }
+
+    @Test
+    public void testDefaultEvalAsync() throws Exception {
+        RedisLockCommands commands = newCommands();
+        RedisLockScript script = RedisLockScript.of("test", "return 1");
+        // 不支持异步命令时在有界线程池中执行, 不占用调用线程
+        String threadName = commands.evalAsync(script, "key").toCompletableFuture().get(1, TimeUnit.SECONDS);
+        Assert.assertTrue(threadName, threadName.startsWith("RedisLockExecutor-"));
+        try {
+            commands.evalAsync(script, "key", "error").toCompletableFuture().get(1, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertEquals("error", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testDefaultEvalAsyncRejected() throws Exception {
+        RedisLockCommands commands = newCommands();
+        RedisLockScript script = RedisLockScript.of("test", "return 1");
+        RedisLockScheduler.setBlockingExecutor((task) -> {
+            throw new RejectedExecutionException("saturated");
+        });
+        try {
+            // 执行器饱和时不在调用线程中执行, 返回异常完成的结果
+            commands.evalAsync(script, "key").toCompletableFuture().get(1, TimeUnit.SECONDS);
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof RejectedExecutionException);
+        } finally {
+            RedisLockScheduler.setBlockingExecutor(null);
+        }
+        String threadName = commands.evalAsync(script, "key").toCompletableFuture().get(1, TimeUnit.SECONDS);
+        Assert.assertTrue(threadName, threadName.startsWith("RedisLockExecutor-"));
+    }
+
+    private static RedisLockCommands newCommands() {
+        return new RedisLockCommands() {
+
+            @Override
+            public String eval(String script, String key, String... args) {
+                if (args.length > 0) {
+                    throw new IllegalStateException(args[0]);
+                }
+                return Thread.currentThread().getName();
+            }
+
+            @Override
+            public RedisSubscription getSubscription(String channel, MessageConsumer<String> messageConsumer) {
+                throw new UnsupportedOperationException();
+            }
+
+        };
+    }
+
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import com.github.ayoungbear.distbtsync.redis.lock.support.InMemoryRedisLockCommands;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 多键锁的单元测试, 使用进程内的锁实现.
+ *
+ * @author yangzexiong
+ */
+public class RedisMultiLockTest extends BaseTest {
+
+    private final InMemoryRedisLockCommands commands = new InMemoryRedisLockCommands();
+
+    @Test
+    public void testReentrantLock() {
+        RedisMultiLock lock = new RedisMultiLock(Arrays.asList("c", "a", "b", "a"), commands);
+        Assert.assertEquals(Arrays.asList("a", "b", "c"), lock.getKeys());
+        lock.lock();
+        Assert.assertTrue(lock.tryLock());
+        Assert.assertEquals(2, lock.getHoldCount());
+        Assert.assertEquals(3, commands.size());
+        lock.unlock();
+        Assert.assertTrue(lock.isHeldLock());
+        lock.unlock();
+        Assert.assertFalse(lock.isLocked());
+        Assert.assertFalse(lock.releaseLock());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testAllOrNothing() {
+        RedisBasedLock single = new RedisBasedLock("b", commands);
+        RedisMultiLock lock = new RedisMultiLock(Arrays.asList("a", "b", "c"), commands);
+        single.lock();
+        Thread other = run(() -> Assert.assertFalse(lock.tryLock()));
+        join(other);
+        Assert.assertEquals(1, commands.size());
+        single.unlock();
+        Assert.assertTrue(lock.tryLock());
+        Thread blocked = run(() -> Assert.assertFalse(single.tryLock()));
+        join(blocked);
+        lock.unlock();
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testCrossSlotRollback() {
+        // 每个键位于不同的槽位
+        InMemoryRedisLockCommands commands = new InMemoryRedisLockCommands() {
+            @Override
+            public int keySlot(String key) {
+                return key.charAt(0);
+            }
+        };
+        RedisBasedLock single = new RedisBasedLock("c", commands);
+        RedisMultiLock lock = new RedisMultiLock(Arrays.asList("a", "b", "c"), commands);
+        single.lock();
+        Thread other = run(() -> Assert.assertFalse(lock.tryLock()));
+        join(other);
+        // 已经加锁的分组被回滚
+        Assert.assertEquals(1, commands.size());
+        single.unlock();
+        Assert.assertTrue(lock.tryLock());
+        lock.unlock();
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testWakeUpOnAnyKey() throws Exception {
+        RedisBasedLock single = new RedisBasedLock("b", commands);
+        RedisMultiLock lock = new RedisMultiLock(Arrays.asList("a", "b"), commands);
+        single.lock();
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread waiter = run(() -> {
+            lock.lock();
+            acquired.set(true);
+            lock.unlock();
+        });
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (lock.getWaiterCount() < 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(1, lock.getWaiterCount());
+        single.unlock();
+        waiter.join(TimeUnit.SECONDS.toMillis(5));
+        Assert.assertTrue(acquired.get());
+        Assert.assertEquals(0, lock.getWaiterCount());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testLockName() {
+        Assert.assertEquals(RedisMultiLock.getLockName(Arrays.asList("b", "a")),
+                RedisMultiLock.getLockName(Arrays.asList("a", "b", "a")));
+    }
+
+    private static void join(Thread thread) {
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
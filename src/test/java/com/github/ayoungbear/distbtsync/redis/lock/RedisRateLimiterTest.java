@@ -0,0 +1,106 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import com.github.ayoungbear.distbtsync.redis.lock.support.InMemoryRedisLockCommands;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 分布式限流器的单元测试, 使用进程内的锁实现.
+ *
+ * @author yangzexiong
+ */
+public class RedisRateLimiterTest extends BaseTest {
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    private final InMemoryRedisLockCommands commands = new InMemoryRedisLockCommands() {
+        @Override
+        public String evalsha(RedisLockScript script, String key, String... args) {
+            calls.incrementAndGet();
+            return super.evalsha(script, key, args);
+        }
+    };
+
+    @Test
+    public void testBurstAndRefill() throws Exception {
+        // 每 100ms 产生一个令牌, 最多突发 5 个
+        RedisRateLimiter node1 = new RedisRateLimiter("myLimiter", 5, 500, TimeUnit.MILLISECONDS, commands);
+        RedisRateLimiter node2 = new RedisRateLimiter("myLimiter", 5, 500, TimeUnit.MILLISECONDS, commands);
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(node1.tryAcquire());
+        }
+        Assert.assertTrue(node2.tryAcquire(2));
+        Assert.assertFalse(node1.tryAcquire());
+        Assert.assertFalse(node2.tryAcquire());
+        Thread.sleep(120);
+        Assert.assertTrue(node2.tryAcquire());
+        Assert.assertFalse(node1.tryAcquire());
+    }
+
+    @Test
+    public void testWaitForToken() throws Exception {
+        // 每 100ms 产生一个令牌
+        RedisRateLimiter limiter = new RedisRateLimiter("myLimiter", 10, 1, TimeUnit.SECONDS, commands);
+        Assert.assertTrue(limiter.tryAcquire(10));
+        long start = System.currentTimeMillis();
+        // 预计超时前无法获取到时直接返回
+        Assert.assertFalse(limiter.tryAcquire(1, 20, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start < 20);
+        Assert.assertTrue(limiter.tryAcquire(1, 1, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start >= 50);
+        limiter.acquire();
+        Assert.assertTrue(System.currentTimeMillis() - start >= 150);
+    }
+
+    @Test
+    public void testPrefetch() throws Exception {
+        RedisRateLimiter node1 = new RedisRateLimiter("myLimiter", 10, 1, TimeUnit.SECONDS, commands).setPrefetch(5);
+        RedisRateLimiter node2 = new RedisRateLimiter("myLimiter", 10, 1, TimeUnit.SECONDS, commands).setPrefetch(5);
+        // 每个节点一次调用预取 5 个令牌, 之后使用本地令牌
+        for (int i = 0; i < 5; i++) {
+            Assert.assertTrue(node1.tryAcquire());
+            Assert.assertTrue(node2.tryAcquire());
+        }
+        Assert.assertEquals(2, calls.get());
+        Assert.assertFalse(new RedisRateLimiter("myLimiter", 10, 1, TimeUnit.SECONDS, commands).tryAcquire());
+        Assert.assertFalse(node1.tryAcquire());
+        Assert.assertEquals(4, calls.get());
+    }
+
+    @Test
+    public void testSameNameLock() throws Exception {
+        // 令牌桶与同名的锁使用不同的键, 不会改变锁的过期时间
+        RedisBasedLock lock = new RedisBasedLock("myKey", commands);
+        lock.lock();
+        Assert.assertTrue(new RedisRateLimiter("myKey", 5, 500, TimeUnit.MILLISECONDS, commands).tryAcquire());
+        Thread.sleep(200);
+        Assert.assertTrue(lock.isHeldLock());
+        lock.unlock();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAcquireTooManyPermits() {
+        new RedisRateLimiter("myLimiter", 10, 1, TimeUnit.SECONDS, commands).tryAcquire(11);
+    }
+
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import com.github.ayoungbear.distbtsync.redis.lock.support.InMemoryRedisLockCommands;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 读写锁的单元测试, 使用进程内的锁实现.
+ *
+ * @author yangzexiong
+ */
+public class RedisReadWriteLockTest extends BaseTest {
+
+    private final InMemoryRedisLockCommands commands = new InMemoryRedisLockCommands();
+
+    @Test
+    public void testSharedReaders() throws Exception {
+        // 每个读写锁对象模拟不同的节点
+        RedisReadWriteLock node1 = new RedisReadWriteLock("myLock", commands);
+        RedisReadWriteLock node2 = new RedisReadWriteLock("myLock", commands);
+        node1.readLock().lock();
+        Assert.assertTrue(node1.readLock().tryLock());
+        Assert.assertEquals(2, node1.readLock().getHoldCount());
+        run(() -> {
+            Assert.assertTrue(node2.readLock().tryLock());
+            Assert.assertFalse(node2.writeLock().tryLock());
+            node2.readLock().unlock();
+        }).join();
+        Assert.assertTrue(node1.readLock().isLocked());
+        Assert.assertFalse(node1.writeLock().isLocked());
+        node1.readLock().unlock();
+        node1.readLock().unlock();
+        Assert.assertEquals(0, commands.size());
+
+        node1.writeLock().lock();
+        Assert.assertTrue(node1.writeLock().isLocked());
+        run(() -> Assert.assertFalse(node2.readLock().tryLock())).join();
+        node1.writeLock().unlock();
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testWriterPreference() throws Exception {
+        RedisReadWriteLock reader = new RedisReadWriteLock("myLock", commands);
+        RedisReadWriteLock writer = new RedisReadWriteLock("myLock", commands);
+        reader.readLock().lock();
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread writerThread = run(() -> {
+            writer.writeLock().lock();
+            acquired.set(true);
+            writer.writeLock().unlock();
+        });
+        awaitWaiters(writer, 1);
+        // 写者等待期间新的读者不能加锁, 已经持有读锁的可以重入
+        run(() -> Assert.assertFalse(new RedisReadWriteLock("myLock", commands).readLock().tryLock())).join();
+        Assert.assertTrue(reader.readLock().tryLock());
+        reader.readLock().unlock();
+        reader.readLock().unlock();
+        writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        Assert.assertTrue(acquired.get());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testDowngrade() throws Exception {
+        RedisReadWriteLock lock = new RedisReadWriteLock("myLock", commands);
+        RedisReadWriteLock other = new RedisReadWriteLock("myLock", commands);
+        lock.writeLock().lock();
+        Assert.assertTrue(lock.readLock().tryLock());
+        run(() -> Assert.assertFalse(other.readLock().tryLock())).join();
+        lock.writeLock().unlock();
+        Assert.assertTrue(lock.readLock().isLocked());
+        run(() -> {
+            Assert.assertTrue(other.readLock().tryLock());
+            other.readLock().unlock();
+        }).join();
+        lock.readLock().unlock();
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testWakeUpAllReaders() throws Exception {
+        RedisReadWriteLock writer = new RedisReadWriteLock("myLock", commands);
+        RedisReadWriteLock reader = new RedisReadWriteLock("myLock", commands);
+        writer.writeLock().lock();
+        int threads = 3;
+        CountDownLatch holding = new CountDownLatch(threads);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread[] readers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            readers[i] = run(() -> {
+                reader.readLock().lock();
+                try {
+                    holding.countDown();
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    reader.readLock().unlock();
+                }
+            });
+        }
+        awaitWaiters(reader, threads);
+        writer.writeLock().unlock();
+        // 所有读者同时持有读锁
+        Assert.assertTrue(holding.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        for (Thread readerThread : readers) {
+            readerThread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        Assert.assertEquals(0, reader.getWaiterCount());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testExclusiveLock() throws Exception {
+        RedisBasedLock exclusive = new RedisBasedLock("myLock", commands);
+        RedisReadWriteLock lock = new RedisReadWriteLock("myLock", commands);
+        exclusive.lock();
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread readerThread = run(() -> {
+            lock.readLock().lock();
+            acquired.set(true);
+            lock.readLock().unlock();
+        });
+        awaitWaiters(lock, 1);
+        exclusive.unlock();
+        readerThread.join(TimeUnit.SECONDS.toMillis(5));
+        Assert.assertTrue(acquired.get());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    private static void awaitWaiters(RedisReadWriteLock lock, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (lock.getWaiterCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(count, lock.getWaiterCount());
+    }
+
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import com.github.ayoungbear.distbtsync.redis.lock.support.InMemoryRedisLockCommands;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 定时任务锁的单元测试, 使用进程内的锁实现.
+ *
+ * @author yangzexiong
+ */
+public class RedisScheduledLockTest extends BaseTest {
+
+    private final InMemoryRedisLockCommands commands = new InMemoryRedisLockCommands();
+
+    @Test
+    public void testRetainAfterRelease() throws Exception {
+        RedisScheduledLock lock = new RedisScheduledLock("job", 200, TimeUnit.MILLISECONDS, commands);
+        Assert.assertTrue(lock.tryLockTimed(10, TimeUnit.SECONDS));
+        Assert.assertTrue(lock.isHeldLock());
+        // 不可重入, 其他线程和节点都不会阻塞
+        Assert.assertFalse(lock.tryLock());
+        AtomicBoolean acquired = new AtomicBoolean(true);
+        run(() -> acquired.set(new RedisBasedLock("job", commands).tryLock())).join();
+        Assert.assertFalse(acquired.get());
+
+        Assert.assertTrue(lock.releaseLock());
+        Assert.assertFalse(lock.isHeldLock());
+        Assert.assertTrue(lock.isLocked());
+        Assert.assertFalse(lock.tryLock());
+        Assert.assertFalse(lock.releaseLock());
+
+        Thread.sleep(300);
+        Assert.assertFalse(lock.isLocked());
+        Assert.assertTrue(lock.tryLock());
+        lock.unlock();
+    }
+
+    @Test
+    public void testReleaseAfterLockAtLeastFor() throws Exception {
+        RedisScheduledLock lock = new RedisScheduledLock("job", 50, TimeUnit.MILLISECONDS, commands);
+        Assert.assertTrue(lock.tryLock());
+        Thread.sleep(100);
+        lock.unlock();
+        Assert.assertFalse(lock.isLocked());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void testUnlockNotHeld() {
+        new RedisScheduledLock("job", 0, TimeUnit.MILLISECONDS, commands).unlock();
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testBlockingLockNotSupported() {
+        new RedisScheduledLock("job", 0, TimeUnit.MILLISECONDS, commands).lock();
+    }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.redis.lock;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import com.github.ayoungbear.distbtsync.redis.lock.support.InMemoryRedisLockCommands;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 分布式信号量的单元测试, 使用进程内的锁实现.
+ *
+ * @author yangzexiong
+ */
+public class RedisSemaphoreTest extends BaseTest {
+
+    private final InMemoryRedisLockCommands commands = new InMemoryRedisLockCommands();
+
+    @Test
+    public void testPermits() throws Exception {
+        // 每个信号量对象模拟不同的节点
+        RedisSemaphore node1 = new RedisSemaphore("mySemaphore", 3, commands);
+        RedisSemaphore node2 = new RedisSemaphore("mySemaphore", 3, commands);
+        node1.acquire(2);
+        Assert.assertEquals(2, node1.getHeldPermits());
+        Assert.assertEquals(1, node2.availablePermits());
+        run(() -> {
+            Assert.assertTrue(node2.tryAcquire());
+            Assert.assertFalse(node2.tryAcquire());
+            Assert.assertEquals(0, node2.availablePermits());
+            node2.release();
+        }).join();
+        Assert.assertEquals(0, node2.getHeldPermits());
+        node1.release();
+        Assert.assertEquals(2, node1.availablePermits());
+        node1.release();
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testWaitForRelease() throws Exception {
+        RedisSemaphore node1 = new RedisSemaphore("mySemaphore", 2, commands);
+        RedisSemaphore node2 = new RedisSemaphore("mySemaphore", 2, commands);
+        node1.acquire(2);
+        AtomicBoolean acquired = new AtomicBoolean();
+        Thread waiterThread = run(() -> {
+            try {
+                node2.acquire(2);
+                acquired.set(true);
+                node2.release(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        awaitWaiters(node2, 1);
+        // 剩余许可不足时继续等待
+        node1.release();
+        Thread.sleep(50);
+        Assert.assertFalse(acquired.get());
+        node1.release();
+        waiterThread.join(TimeUnit.SECONDS.toMillis(5));
+        Assert.assertTrue(acquired.get());
+        Assert.assertEquals(0, node2.getWaiterCount());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testLeaseReclaimed() throws Exception {
+        RedisSemaphore crashed = new RedisSemaphore("mySemaphore", 2, commands);
+        RedisSemaphore node = new RedisSemaphore("mySemaphore", 2, commands);
+        // 持有者获取许可后不再释放, 模拟节点宕机
+        run(() -> {
+            try {
+                crashed.acquire(2, 200, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }).join();
+        Assert.assertFalse(node.tryAcquire());
+        long start = System.currentTimeMillis();
+        Assert.assertTrue(node.tryAcquire(2, 5, TimeUnit.SECONDS));
+        Assert.assertTrue(System.currentTimeMillis() - start < TimeUnit.SECONDS.toMillis(2));
+        node.release(2);
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testAsLock() throws Exception {
+        RedisSemaphore semaphore = new RedisSemaphore("mySemaphore", 2, commands);
+        RedisLock lock = semaphore.asLock();
+        CountDownLatch holding = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread[] holders = new Thread[2];
+        for (int i = 0; i < holders.length; i++) {
+            holders[i] = run(() -> {
+                lock.lock();
+                try {
+                    holding.countDown();
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    lock.unlock();
+                }
+            });
+        }
+        Assert.assertTrue(holding.await(5, TimeUnit.SECONDS));
+        Assert.assertTrue(lock.isLocked());
+        Assert.assertFalse(lock.tryLock());
+        Assert.assertFalse(lock.isHeldLock());
+        release.countDown();
+        for (Thread holder : holders) {
+            holder.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        Assert.assertFalse(lock.isLocked());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testForceRelease() {
+        RedisSemaphore semaphore = new RedisSemaphore("mySemaphore", 2, commands);
+        Assert.assertFalse(semaphore.tryRelease(1));
+        Assert.assertTrue(semaphore.tryAcquire());
+        Assert.assertFalse(semaphore.tryRelease(2));
+        Assert.assertTrue(semaphore.forceRelease());
+        Assert.assertEquals(0, semaphore.getHeldPermits());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testSameNameLock() {
+        // 信号量与同名的锁使用不同的键, 互不影响
+        RedisBasedLock lock = new RedisBasedLock("myKey", commands);
+        lock.lock();
+        RedisSemaphore semaphore = new RedisSemaphore("myKey", 1, commands);
+        Assert.assertTrue(semaphore.tryAcquire());
+        semaphore.release();
+        Assert.assertTrue(lock.isHeldLock());
+        lock.unlock();
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test(expected = IllegalMonitorStateException.class)
+    public void testReleaseWithoutPermits() {
+        new RedisSemaphore("mySemaphore", 2, commands).release();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAcquireTooManyPermits() {
+        new RedisSemaphore("mySemaphore", 2, commands).tryAcquire(3);
+    }
+
+    private static void awaitWaiters(RedisSemaphore semaphore, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (semaphore.getWaiterCount() != count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        Assert.assertEquals(count, semaphore.getWaiterCount());
+    }
+
+}
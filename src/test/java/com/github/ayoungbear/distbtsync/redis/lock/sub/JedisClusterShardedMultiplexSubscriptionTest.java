@@ -0,0 +1,331 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.redis.lock.sub;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.JedisCluster;
+
+/**
+ * 分片复用订阅者单元测试, 使用进程内模拟的单分片集群节点, 只支持分片订阅相关的命令.
+ *
+ * @author yangzexiong
+ */
+public class JedisClusterShardedMultiplexSubscriptionTest extends BaseTest {
+
+    private static final String NULL_MESSAGE = "<null>";
+
+    private ShardNode node;
+
+    private JedisCluster jedisCluster;
+
+    private JedisClusterShardedMultiplexSubscription subscription;
+
+    @Before
+    public void setUp() throws Exception {
+        node = new ShardNode();
+        jedisCluster = new JedisCluster(new HostAndPort("127.0.0.1", node.getPort()));
+        subscription = new JedisClusterShardedMultiplexSubscription(jedisCluster);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        subscription.close();
+        await(() -> getWorkerCount() == 0);
+        jedisCluster.close();
+        node.close();
+    }
+
+    /**
+     * 测试同一分片的多个频道共用一个订阅连接和工作线程
+     */
+    @Test
+    public void testOneConnectionPerShard() throws Exception {
+        List<BlockingQueue<String>> queues = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            queues.add(subscribe("channel{" + i + "}"));
+        }
+        await(() -> node.getSubscribedChannelCount() == 20);
+        Assert.assertEquals(1, getWorkerCount());
+        Assert.assertEquals(1, node.getSubscribedConnectionCount());
+        node.publish("channel{3}", "message");
+        Assert.assertEquals("message", queues.get(3).poll(2, TimeUnit.SECONDS));
+        Assert.assertTrue(queues.get(4).isEmpty());
+    }
+
+    /**
+     * 测试服务端取消订阅(槽位迁移)后通知消费者并重新订阅
+     */
+    @Test
+    public void testResubscribeAfterServerUnsubscribe() throws Exception {
+        BlockingQueue<String> queue = subscribe("channel");
+        await(() -> subscription.isSubscribed("channel"));
+        node.unsubscribe("channel");
+        Assert.assertEquals(NULL_MESSAGE, queue.poll(2, TimeUnit.SECONDS));
+        await(() -> subscription.isSubscribed("channel"));
+        node.publish("channel", "message");
+        Assert.assertEquals("message", queue.poll(2, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 测试分片上没有频道后退出订阅并归还连接, 之后重新订阅时使用新的连接
+     */
+    @Test
+    public void testReleaseIdleConnection() throws Exception {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        MessageConsumer<String> consumer = queue::add;
+        subscription.subscribe("channel", consumer);
+        // 取消订阅后立即重新订阅, 迟到的取消订阅回复不影响新的订阅
+        subscription.unsubscribe("channel", consumer);
+        subscription.subscribe("channel", consumer);
+        await(() -> subscription.isSubscribed("channel"));
+        sleep(100, TimeUnit.MILLISECONDS);
+        Assert.assertEquals(1, node.getSubscribedChannelCount());
+        subscription.unsubscribe("channel", consumer);
+        await(() -> getWorkerCount() == 0);
+        Assert.assertEquals(0, node.getSubscribedChannelCount());
+        Assert.assertEquals(0, subscription.getChannelCount());
+        Assert.assertTrue(queue.isEmpty());
+        // 归还的连接已退出订阅状态, 可以正常执行命令
+        Assert.assertEquals("PONG", jedisCluster.getConnectionFromSlot(0).ping());
+
+        queue = subscribe("channel");
+        await(() -> subscription.isSubscribed("channel"));
+        node.publish("channel", "message");
+        Assert.assertEquals("message", queue.poll(2, TimeUnit.SECONDS));
+    }
+
+    /**
+     * 测试订阅连接中断后通知消费者并重连
+     */
+    @Test
+    public void testReconnect() throws Exception {
+        BlockingQueue<String> queue = subscribe("channel");
+        await(() -> subscription.isSubscribed("channel"));
+        node.disconnectSubscribers();
+        Assert.assertEquals(NULL_MESSAGE, queue.poll(2, TimeUnit.SECONDS));
+        await(() -> subscription.isSubscribed("channel"));
+        node.publish("channel", "message");
+        Assert.assertEquals("message", queue.poll(2, TimeUnit.SECONDS));
+    }
+
+    private BlockingQueue<String> subscribe(String channel) {
+        BlockingQueue<String> queue = new LinkedBlockingQueue<>();
+        subscription.subscribe(channel, (message) -> queue.add(message == null ? NULL_MESSAGE : message));
+        return queue;
+    }
+
+    private static long getWorkerCount() {
+        return Thread.getAllStackTraces().keySet().stream()
+                .filter((t) -> t.isAlive() && t.getName().startsWith("RedisLockShardedSubscription")).count();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!condition.getAsBoolean()) {
+            Assert.assertTrue(System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 模拟的单分片集群节点, 负责全部槽位, 支持 CLUSTER SLOTS, PING, SSUBSCRIBE 和 SUNSUBSCRIBE.
+     *
+     * @author yangzexiong
+     */
+    private static class ShardNode {
+
+        private final ServerSocket serverSocket;
+
+        private final List<Connection> connections = new CopyOnWriteArrayList<>();
+
+        private ShardNode() throws IOException {
+            serverSocket = new ServerSocket(0);
+            run(this::accept, "ShardNode-accept");
+        }
+
+        private int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        private void publish(String channel, String message) {
+            for (Connection connection : connections) {
+                if (connection.channels.contains(channel)) {
+                    connection.write("*3\r\n" + bulk("smessage") + bulk(channel) + bulk(message));
+                }
+            }
+        }
+
+        /**
+         * 服务端主动取消订阅, 同槽位迁移时的行为
+         */
+        private void unsubscribe(String channel) {
+            for (Connection connection : connections) {
+                if (connection.channels.remove(channel)) {
+                    connection.write("*3\r\n" + bulk("sunsubscribe") + bulk(channel) + ":"
+                            + connection.channels.size() + "\r\n");
+                }
+            }
+        }
+
+        private void disconnectSubscribers() throws IOException {
+            for (Connection connection : connections) {
+                if (!connection.channels.isEmpty()) {
+                    connection.socket.close();
+                }
+            }
+        }
+
+        private int getSubscribedChannelCount() {
+            return connections.stream().mapToInt((c) -> c.channels.size()).sum();
+        }
+
+        private long getSubscribedConnectionCount() {
+            return connections.stream().filter((c) -> !c.channels.isEmpty()).count();
+        }
+
+        private void close() throws IOException {
+            serverSocket.close();
+            for (Connection connection : connections) {
+                connection.socket.close();
+            }
+        }
+
+        private void accept() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    Connection connection = new Connection(serverSocket.accept());
+                    connections.add(connection);
+                    run(() -> serve(connection), "ShardNode-connection");
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(Connection connection) {
+            try {
+                InputStream in = new BufferedInputStream(connection.socket.getInputStream());
+                for (; ; ) {
+                    List<String> command = readCommand(in);
+                    String name = command.get(0).toUpperCase();
+                    List<String> args = command.subList(1, command.size());
+                    if ("CLUSTER".equals(name)) {
+                        connection.write("*1\r\n*3\r\n:0\r\n:16383\r\n*2\r\n" + bulk("127.0.0.1") + ":" + getPort()
+                                + "\r\n");
+                    } else if ("PING".equals(name)) {
+                        connection.write("+PONG\r\n");
+                    } else if ("SSUBSCRIBE".equals(name)) {
+                        for (String channel : args) {
+                            connection.channels.add(channel);
+                            connection.write("*3\r\n" + bulk("ssubscribe") + bulk(channel) + ":"
+                                    + connection.channels.size() + "\r\n");
+                        }
+                    } else if ("SUNSUBSCRIBE".equals(name)) {
+                        for (String channel : args) {
+                            connection.channels.remove(channel);
+                            connection.write("*3\r\n" + bulk("sunsubscribe") + bulk(channel) + ":"
+                                    + connection.channels.size() + "\r\n");
+                        }
+                    } else {
+                        connection.write("-ERR unknown command '" + name + "'\r\n");
+                    }
+                }
+            } catch (IOException e) {
+                connections.remove(connection);
+            }
+        }
+
+        private static List<String> readCommand(InputStream in) throws IOException {
+            int count = Integer.parseInt(readLine(in).substring(1));
+            List<String> command = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                readLine(in);
+                command.add(readLine(in));
+            }
+            return command;
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            for (int b = in.read(); b != '\r'; b = in.read()) {
+                if (b < 0) {
+                    throw new EOFException();
+                }
+                line.append((char) b);
+            }
+            in.read();
+            return line.toString();
+        }
+
+        private static String bulk(String value) {
+            return "$" + value.getBytes(StandardCharsets.UTF_8).length + "\r\n" + value + "\r\n";
+        }
+
+    }
+
+    /**
+     * 模拟节点上的客户端连接.
+     *
+     * @author yangzexiong
+     */
+    private static class Connection {
+
+        private final Socket socket;
+
+        private final OutputStream out;
+
+        private final Set<String> channels = ConcurrentHashMap.newKeySet();
+
+        private Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = socket.getOutputStream();
+        }
+
+        private synchronized void write(String reply) {
+            try {
+                out.write(reply.getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (IOException e) {
+                // 连接已关闭
+            }
+        }
+
+    }
+
+}
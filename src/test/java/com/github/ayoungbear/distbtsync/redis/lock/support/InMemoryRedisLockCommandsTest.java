@@ -0,0 +1,310 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.ayoungbear.distbtsync.redis.lock.support;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisBasedLock;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockScript;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockWatchdog;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 进程内锁操作接口实现的单元测试.
+ *
+ * @author yangzexiong
+ */
+public class InMemoryRedisLockCommandsTest extends BaseTest {
+
+    private final InMemoryRedisLockCommands commands = new InMemoryRedisLockCommands();
+
+    @Test
+    public void testReentrantLock() {
+        RedisBasedLock lock = new RedisBasedLock("myLock", commands);
+        Assert.assertFalse(lock.isLocked());
+        lock.lock();
+        lock.lock();
+        Assert.assertTrue(lock.isHeldLock());
+        Assert.assertEquals(2, lock.getHoldCount());
+        lock.unlock();
+        Assert.assertEquals(1, lock.getHoldCount());
+        lock.unlock();
+        Assert.assertFalse(lock.isLocked());
+        Assert.assertEquals(0, lock.getHoldCount());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testLeaseTime() throws Exception {
+        RedisBasedLock lock = new RedisBasedLock("myLock", commands);
+        Assert.assertTrue(lock.tryLockTimed(50, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(lock.isLocked());
+        Thread.sleep(100);
+        Assert.assertFalse(lock.isLocked());
+        Assert.assertFalse(lock.releaseLock());
+
+        Assert.assertTrue(lock.tryLockTimed(50, TimeUnit.MILLISECONDS));
+        Assert.assertTrue(lock.renewLeaseTime(1, TimeUnit.SECONDS));
+        Thread.sleep(100);
+        Assert.assertTrue(lock.isHeldLock());
+        lock.unlock();
+    }
+
+    @Test
+    public void testContendedLock() throws Exception {
+        RedisBasedLock lock = RedisBasedLock.newSharedLock("myLock", commands);
+        int threads = 8;
+        int loops = 200;
+        AtomicInteger concurrent = new AtomicInteger();
+        AtomicInteger count = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            run(() -> {
+                try {
+                    for (int j = 0; j < loops; j++) {
+                        lock.lock();
+                        try {
+                            Assert.assertEquals(1, concurrent.incrementAndGet());
+                            count.incrementAndGet();
+                            concurrent.decrementAndGet();
+                        } finally {
+                            lock.unlock();
+                        }
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        Assert.assertTrue(latch.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(threads * loops, count.get());
+    }
+
+    @Test
+    public void testWaitForRelease() throws Exception {
+        RedisBasedLock lock = new RedisBasedLock("myLock", commands);
+        lock.lock();
+        // 不同实例的锁互不影响
+        AtomicInteger locked = new AtomicInteger();
+        run(() -> {
+            RedisBasedLock other = new RedisBasedLock("myLock", new InMemoryRedisLockCommands());
+            if (other.tryLock()) {
+                locked.incrementAndGet();
+                other.unlock();
+            }
+        }).join();
+        Assert.assertEquals(1, locked.get());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        run(() -> {
+            RedisBasedLock waiter = new RedisBasedLock("myLock", commands);
+            waiter.lock();
+            acquired.countDown();
+            waiter.unlock();
+        });
+        Assert.assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        lock.unlock();
+        Assert.assertTrue(acquired.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPublishOnlyWithWaiters() throws Exception {
+        AtomicInteger messages = new AtomicInteger();
+        commands.getPubSub().subscribe("__distbtsync_redis_lock_myLock", (message) -> messages.incrementAndGet());
+        RedisBasedLock lock = new RedisBasedLock("myLock", commands);
+        lock.lock();
+        // 只尝试一次的加锁失败后不会等待解锁通知
+        AtomicInteger locked = new AtomicInteger();
+        run(() -> {
+            if (lock.tryLock()) {
+                locked.incrementAndGet();
+            }
+        }).join();
+        Assert.assertEquals(0, locked.get());
+        lock.unlock();
+        Assert.assertEquals(0, messages.get());
+
+        lock.lock();
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread waiterThread = run(() -> {
+            RedisBasedLock waiter = new RedisBasedLock("myLock", commands);
+            waiter.lock();
+            acquired.countDown();
+            waiter.unlock();
+        });
+        Assert.assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        lock.unlock();
+        Assert.assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        waiterThread.join();
+        Assert.assertEquals(1, messages.get());
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testShardedChannel() throws Exception {
+        InMemoryRedisLockCommands shardedCommands = new InMemoryRedisLockCommands() {
+            @Override
+            public boolean isShardedPubSub() {
+                return true;
+            }
+        };
+        AtomicInteger messages = new AtomicInteger();
+        shardedCommands.getPubSub().subscribe("__distbtsync_redis_lock_{myLock}",
+                (message) -> messages.incrementAndGet());
+        RedisBasedLock lock = new RedisBasedLock("myLock", shardedCommands);
+        lock.lock();
+        CountDownLatch acquired = new CountDownLatch(1);
+        run(() -> {
+            RedisBasedLock waiter = new RedisBasedLock("myLock", shardedCommands);
+            waiter.lock();
+            acquired.countDown();
+            waiter.unlock();
+        });
+        Assert.assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        lock.unlock();
+        Assert.assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, messages.get());
+    }
+
+    @Test
+    public void testWatchdog() throws Exception {
+        RedisLockWatchdog watchdog = new RedisLockWatchdog(100, TimeUnit.MILLISECONDS);
+        RedisBasedLock lock = new RedisBasedLock("myLock", commands).setWatchdog(watchdog);
+        RedisBasedLock another = new RedisBasedLock("anotherLock", commands).setWatchdog(watchdog);
+        lock.lock();
+        another.lock();
+        Thread.sleep(300);
+        Assert.assertTrue(lock.isHeldLock());
+        Assert.assertTrue(another.isHeldLock());
+        another.unlock();
+        lock.unlock();
+        Assert.assertEquals(0, commands.size());
+    }
+
+    @Test
+    public void testWatchdogRenewThreads() throws Exception {
+        List<String> renewThreads = new CopyOnWriteArrayList<>();
+        CountDownLatch renewed = new CountDownLatch(2);
+        InMemoryRedisLockCommands slotCommands = new InMemoryRedisLockCommands() {
+            @Override
+            public String evalsha(RedisLockScript script, String key, String... args) {
+                if ("renew".equals(script.getName())) {
+                    renewThreads.add(Thread.currentThread().getName());
+                    renewed.countDown();
+                }
+                return super.evalsha(script, key, args);
+            }
+
+            @Override
+            public int keySlot(String key) {
+                return key.hashCode();
+            }
+        };
+        RedisLockWatchdog watchdog = new RedisLockWatchdog(90, TimeUnit.MILLISECONDS);
+        RedisBasedLock lock = new RedisBasedLock("myLock", slotCommands).setWatchdog(watchdog);
+        RedisBasedLock another = new RedisBasedLock("anotherLock", slotCommands).setWatchdog(watchdog);
+        lock.lock();
+        another.lock();
+        Assert.assertTrue(renewed.await(1, TimeUnit.SECONDS));
+        // 续期不在定时调度线程上执行, 也不与业务的异步命令共用线程池
+        for (String threadName : renewThreads) {
+            Assert.assertTrue(threadName, threadName.startsWith("RedisLockRenewal-"));
+        }
+        another.unlock();
+        lock.unlock();
+    }
+
+    @Test
+    public void testWatchdogSingleRenewThread() throws Exception {
+        InMemoryRedisLockCommands slotCommands = new InMemoryRedisLockCommands() {
+            @Override
+            public int keySlot(String key) {
+                return key.hashCode();
+            }
+        };
+        ExecutorService renewExecutor = Executors.newSingleThreadExecutor();
+        try {
+            // 多个分组只有一个续期线程时, 续期不能等待同一执行器上的其它分组
+            RedisLockWatchdog watchdog = new RedisLockWatchdog(90, TimeUnit.MILLISECONDS)
+                    .setRenewExecutor(renewExecutor);
+            RedisBasedLock lock = new RedisBasedLock("myLock", slotCommands).setWatchdog(watchdog);
+            RedisBasedLock another = new RedisBasedLock("anotherLock", slotCommands).setWatchdog(watchdog);
+            lock.lock();
+            another.lock();
+            Thread.sleep(300);
+            Assert.assertTrue(lock.isHeldLock());
+            Assert.assertTrue(another.isHeldLock());
+            another.unlock();
+            lock.unlock();
+            // 没有需要续期的锁时直接完成
+            watchdog.renew();
+        } finally {
+            renewExecutor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testLocalHeldCheck() throws Exception {
+        List<String> scripts = new ArrayList<>();
+        InMemoryRedisLockCommands countedCommands = new InMemoryRedisLockCommands() {
+            @Override
+            public String evalsha(RedisLockScript script, String key, String... args) {
+                scripts.add(script.getName());
+                return super.evalsha(script, key, args);
+            }
+        };
+        RedisBasedLock lock = new RedisBasedLock("myLock", countedCommands);
+        Assert.assertTrue(lock.tryLockTimed(1, TimeUnit.SECONDS));
+        Assert.assertTrue(lock.isHeldLockLocally());
+        Assert.assertTrue(lock.releaseLock());
+        // 只有加锁和解锁访问 redis
+        Assert.assertEquals(Arrays.asList("tryAcquire", "tryRelease"), scripts);
+        Assert.assertFalse(lock.isHeldLockLocally());
+
+        // 锁被强制解锁时本地判断由解锁的返回值确认, isHeldLock 仍以 redis 为准
+        Assert.assertTrue(lock.tryLockTimed(1, TimeUnit.SECONDS));
+        Assert.assertTrue(new RedisBasedLock("myLock", countedCommands).forceUnlock());
+        Assert.assertTrue(lock.isHeldLockLocally());
+        Assert.assertFalse(lock.isHeldLock());
+        Assert.assertFalse(lock.isHeldLockLocally());
+        Assert.assertTrue(lock.tryLockTimed(1, TimeUnit.SECONDS));
+        Assert.assertTrue(new RedisBasedLock("myLock", countedCommands).forceUnlock());
+        Assert.assertFalse(lock.releaseLock());
+        Assert.assertFalse(lock.isHeldLockLocally());
+
+        // 超过过期时间后本地判断为不再持有
+        Assert.assertTrue(lock.tryLockTimed(50, TimeUnit.MILLISECONDS));
+        Thread.sleep(100);
+        scripts.clear();
+        Assert.assertFalse(lock.isHeldLockLocally());
+        Assert.assertTrue(scripts.isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnknownScript() {
+        commands.eval("return 1", "myLock");
+    }
+
+}
@@ -0,0 +1,69 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.redis.lock.support;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 基于 Micrometer 的锁观察者单元测试.
+ *
+ * @author yangzexiong
+ */
+public class MicrometerRedisLockObserverTest extends BaseTest {
+
+    @Test
+    public void testDefaultKeyPattern() {
+        Assert.assertEquals("order:pay_*", MicrometerRedisLockObserver.getDefaultKeyPattern("order:pay_10086"));
+        Assert.assertEquals("test_transfer_*_*",
+                MicrometerRedisLockObserver.getDefaultKeyPattern("test_transfer_12_a3"));
+        Assert.assertEquals("*:user", MicrometerRedisLockObserver.getDefaultKeyPattern("1:user"));
+        Assert.assertEquals("myLock", MicrometerRedisLockObserver.getDefaultKeyPattern("myLock"));
+    }
+
+    @Test
+    public void testBoundedKeyPatterns() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MicrometerRedisLockObserver observer = new MicrometerRedisLockObserver(registry,
+                MicrometerRedisLockObserver::getDefaultKeyPattern, 2);
+        observer.onAcquired("order:1", TimeUnit.MILLISECONDS.toNanos(5), 1);
+        observer.onAcquired("order:2", TimeUnit.MILLISECONDS.toNanos(5), 3);
+        observer.onAcquired("stock", TimeUnit.MILLISECONDS.toNanos(5), 1);
+        observer.onAcquired("account", TimeUnit.MILLISECONDS.toNanos(5), 1);
+        observer.onTimeout("other_lock", TimeUnit.MILLISECONDS.toNanos(5), 2);
+
+        Assert.assertEquals(2, registry.get("distbtsync.lock.acquire").tags("name", "order:*", "result", "acquired")
+                .timer().count());
+        Assert.assertEquals(4, registry.get("distbtsync.lock.acquire.attempts").tag("name", "order:*").summary()
+                .totalAmount(), 0);
+        Assert.assertEquals(1, registry.get("distbtsync.lock.acquire").tags("name", "stock", "result", "acquired")
+                .timer().count());
+        Assert.assertEquals(1, registry.get("distbtsync.lock.acquire")
+                .tags("name", MicrometerRedisLockObserver.OTHER_KEY_PATTERN, "result", "acquired").timer().count());
+        Assert.assertEquals(1, registry.get("distbtsync.lock.acquire")
+                .tags("name", MicrometerRedisLockObserver.OTHER_KEY_PATTERN, "result", "timeout").timer().count());
+
+        observer.onWaitStart("order:3");
+        Assert.assertEquals(1, registry.get("distbtsync.lock.waiters").tag("name", "order:*").gauge().value(), 0);
+        observer.onWaitEnd("order:3");
+        Assert.assertEquals(0, registry.get("distbtsync.lock.waiters").tag("name", "order:*").gauge().value(), 0);
+    }
+
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.spring.aop;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import com.github.ayoungbear.distbtsync.spring.MethodInvoker;
+import com.github.ayoungbear.distbtsync.spring.Synchronizer;
+import com.github.ayoungbear.distbtsync.spring.support.DefaultSyncFailureHandler;
+import java.lang.reflect.Method;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Assert;
+import org.junit.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoProcessor;
+
+/**
+ * 返回异步结果的方法的同步调用单元测试.
+ *
+ * @author yangzexiong
+ */
+public class AsyncSyncInvocationTest extends BaseTest {
+
+    @Test
+    public void testIsAsyncReturnType() {
+        Assert.assertTrue(AsyncSyncInvocation.isAsyncReturnType(CompletableFuture.class));
+        Assert.assertTrue(AsyncSyncInvocation.isAsyncReturnType(CompletionStage.class));
+        Assert.assertTrue(AsyncSyncInvocation.isAsyncReturnType(Mono.class));
+        Assert.assertTrue(AsyncSyncInvocation.isAsyncReturnType(Flux.class));
+        Assert.assertFalse(AsyncSyncInvocation.isAsyncReturnType(String.class));
+    }
+
+    @Test
+    public void testCompletionStageReleaseAfterCompleted() throws Exception {
+        TestSynchronizer sync = new TestSynchronizer();
+        CompletableFuture<String> work = new CompletableFuture<>();
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Object> result = (CompletableFuture<Object>) AsyncSyncInvocation
+                .invoke(sync, new TestMethodInvoker("future", work), DefaultSyncFailureHandler::new);
+        Assert.assertTrue(sync.isLocked());
+        Assert.assertFalse(result.isDone());
+
+        work.complete("done");
+        Assert.assertEquals("done", result.get());
+        Assert.assertFalse(sync.isLocked());
+    }
+
+    @Test
+    public void testMonoReleaseAfterCompleted() {
+        TestSynchronizer sync = new TestSynchronizer();
+        MonoProcessor<String> work = MonoProcessor.create();
+        @SuppressWarnings("unchecked")
+        Mono<Object> result = (Mono<Object>) AsyncSyncInvocation.invoke(sync, new TestMethodInvoker("mono", work),
+                DefaultSyncFailureHandler::new);
+        // 订阅前不会获取资源
+        Assert.assertFalse(sync.isLocked());
+
+        CompletableFuture<Object> subscribed = result.toFuture();
+        Assert.assertTrue(sync.isLocked());
+        work.onNext("done");
+        Assert.assertEquals("done", subscribed.join());
+        Assert.assertFalse(sync.isLocked());
+    }
+
+    @Test
+    public void testAcquireFailure() {
+        TestSynchronizer sync = new TestSynchronizer();
+        sync.acquireAsync(-1L);
+        @SuppressWarnings("unchecked")
+        CompletableFuture<Object> result = (CompletableFuture<Object>) AsyncSyncInvocation.invoke(sync,
+                new TestMethodInvoker("future", CompletableFuture.completedFuture("done")),
+                DefaultSyncFailureHandler::new);
+        Assert.assertTrue(result.isCompletedExceptionally());
+        Assert.assertTrue(sync.isLocked());
+    }
+
+    /**
+     * 只尝试一次的异步同步器.
+     */
+    static class TestSynchronizer implements Synchronizer {
+
+        private final AtomicLong owner = new AtomicLong(0);
+
+        @Override
+        public boolean acquire() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean release() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isHeld() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isAsyncSupported() {
+            return true;
+        }
+
+        @Override
+        public CompletionStage<Boolean> acquireAsync(long ownerId) {
+            return CompletableFuture.completedFuture(owner.compareAndSet(0, ownerId));
+        }
+
+        @Override
+        public CompletionStage<Boolean> releaseAsync(long ownerId) {
+            return CompletableFuture.completedFuture(owner.compareAndSet(ownerId, 0));
+        }
+
+        public boolean isLocked() {
+            return owner.get() != 0;
+        }
+
+    }
+
+    static class TestMethodInvoker implements MethodInvoker {
+
+        private final Method method;
+        private final Object result;
+
+        TestMethodInvoker(String methodName, Object result) {
+            try {
+                this.method = TestService.class.getMethod(methodName);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalStateException(e);
+            }
+            this.result = result;
+        }
+
+        @Override
+        public Object invoke() throws Throwable {
+            return result;
+        }
+
+        @Override
+        public Object getTarget() {
+            return null;
+        }
+
+        @Override
+        public Object[] getArguments() {
+            return new Object[0];
+        }
+
+        @Override
+        public Class<?> getTargetClass() {
+            return TestService.class;
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+    }
+
+    public interface TestService {
+
+        CompletableFuture<String> future();
+
+        Mono<String> mono();
+
+    }
+
+}
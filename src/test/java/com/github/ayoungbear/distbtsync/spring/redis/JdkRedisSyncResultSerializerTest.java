@@ -0,0 +1,96 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.ayoungbear.distbtsync.spring.redis;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 执行结果 JDK 序列化器单元测试.
+ *
+ * @author yangzexiong
+ */
+public class JdkRedisSyncResultSerializerTest extends BaseTest {
+
+    private JdkRedisSyncResultSerializer serializer = new JdkRedisSyncResultSerializer();
+
+    @Test
+    public void testDefaultAllowedTypes() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("list", new ArrayList<>(Arrays.asList(1, 2L, "3")));
+        result.put("decimal", new BigDecimal("1.5"));
+        result.put("date", LocalDate.of(2021, 1, 1));
+        result.put("array", new int[] { 1, 2 });
+        result.put("unmodifiable", Collections.unmodifiableList(Arrays.asList("a", "b")));
+        Map<?, ?> deserialized = (Map<?, ?>) serializer.deserialize(serializer.serialize(result));
+        Assert.assertEquals(result.get("list"), deserialized.get("list"));
+        Assert.assertEquals(result.get("decimal"), deserialized.get("decimal"));
+        Assert.assertEquals(result.get("date"), deserialized.get("date"));
+        Assert.assertArrayEquals(new int[] { 1, 2 }, (int[]) deserialized.get("array"));
+        Assert.assertEquals(result.get("unmodifiable"), deserialized.get("unmodifiable"));
+        Assert.assertNull(serializer.deserialize(serializer.serialize(null)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectNotAllowedType() {
+        serializer.deserialize(serializer.serialize(new Result("value")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testRejectNestedNotAllowedType() {
+        List<Object> result = new ArrayList<>();
+        result.add(new Result("value"));
+        serializer.deserialize(serializer.serialize(result), List.class);
+    }
+
+    @Test
+    public void testAllowResultType() {
+        String value = serializer.serialize(new Result("value"));
+        Assert.assertEquals("value", ((Result) serializer.deserialize(value, Result.class)).value);
+        Result[] array = (Result[]) serializer.deserialize(serializer.serialize(new Result[] { new Result("a") }),
+                Result[].class);
+        Assert.assertEquals("a", array[0].value);
+
+        JdkRedisSyncResultSerializer allowPackage = new JdkRedisSyncResultSerializer(
+                Collections.singletonList(Result.class.getPackage().getName() + "."));
+        Assert.assertEquals("value", ((Result) allowPackage.deserialize(value)).value);
+    }
+
+    private static class Result implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String value;
+
+        Result(String value) {
+            this.value = value;
+        }
+
+    }
+
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.spring.redis;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisBasedLock;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockOperation;
+import com.github.ayoungbear.distbtsync.redis.lock.support.InMemoryRedisLockCommands;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * 合并执行同步器单元测试, 使用进程内的锁实现.
+ *
+ * @author yangzexiong
+ */
+public class RedisCoalescingSynchronizerTest extends BaseTest {
+
+    private static final RedisLockOperation LOCK = (lock) -> {
+        lock.lock();
+        return true;
+    };
+
+    private final InMemoryRedisLockCommands commands = new InMemoryRedisLockCommands();
+
+    private RedisCoalescingSynchronizer newSynchronizer(long resultTtlMillis) {
+        return new RedisCoalescingSynchronizer(new RedisBasedLock("coalesceKey", commands), LOCK, commands,
+                new JdkRedisSyncResultSerializer(), resultTtlMillis, Integer.class);
+    }
+
+    @Test
+    public void testShareResult() {
+        RedisCoalescingSynchronizer node1 = newSynchronizer(1000);
+        RedisCoalescingSynchronizer node2 = newSynchronizer(1000);
+        long mark1 = node1.getSharedResultMark();
+        long mark2 = node2.getSharedResultMark();
+        Assert.assertTrue(node1.acquire());
+        Assert.assertNull(node1.getSharedResult(mark1));
+        node1.shareResult(42);
+        Assert.assertTrue(node1.release());
+
+        // 等待期间 node1 完成了执行, node2 直接使用共享的结果
+        Assert.assertTrue(node2.acquire());
+        Assert.assertEquals(42, node2.getSharedResult(mark2).get());
+        Assert.assertTrue(node2.release());
+
+        // 开始等待之前完成的执行结果不会被采用
+        long mark3 = node2.getSharedResultMark();
+        Assert.assertTrue(mark3 > mark2);
+        Assert.assertTrue(node2.acquire());
+        Assert.assertNull(node2.getSharedResult(mark3));
+        node2.shareResult(null);
+        Assert.assertNull(node2.getSharedResult(mark3).get());
+        Assert.assertTrue(node2.release());
+    }
+
+    @Test
+    public void testResultExpired() throws Exception {
+        RedisCoalescingSynchronizer synchronizer = newSynchronizer(100);
+        long mark = synchronizer.getSharedResultMark();
+        Assert.assertTrue(synchronizer.acquire());
+        synchronizer.shareResult(42);
+        Assert.assertTrue(synchronizer.release());
+        Thread.sleep(200);
+        // 共享结果过期后不再采用, 也不会残留在 redis 中
+        Assert.assertEquals(0, commands.size());
+        Assert.assertTrue(synchronizer.acquire());
+        Assert.assertNull(synchronizer.getSharedResult(mark));
+        Assert.assertTrue(synchronizer.release());
+    }
+
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.spring.redis;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisLockCommands;
+import com.github.ayoungbear.distbtsync.redis.lock.RedisMultiLock;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.MessageConsumer;
+import com.github.ayoungbear.distbtsync.redis.lock.sub.RedisSubscription;
+import com.github.ayoungbear.distbtsync.redis.lock.support.InMemoryRedisLockCommands;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+/**
+ * 同步器提供者缓存单元测试.
+ *
+ * @author yangzexiong
+ */
+public class RedisLockSynchronizerProviderTest extends BaseTest {
+
+    private RedisLockCommands commands = new RedisLockCommands() {
+
+        @Override
+        public String eval(String script, String key, String... args) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public RedisSubscription getSubscription(String channel, MessageConsumer<String> messageConsumer) {
+            throw new UnsupportedOperationException();
+        }
+
+    };
+
+    @Test
+    public void testSynchronizerCache() {
+        RedisLockSynchronizerProvider provider = new RedisLockSynchronizerProvider(commands);
+        RedisSynchronizer synchronizer = provider.getSynchronizer(attributes("key", -1, -1));
+        Assert.assertSame(synchronizer, provider.getSynchronizer(attributes("key", -1, -1)));
+
+        RedisLockSynchronizer timed = (RedisLockSynchronizer) provider.getSynchronizer(attributes("key", 1000, -1));
+        Assert.assertNotSame(synchronizer, timed);
+        Assert.assertSame(((RedisLockSynchronizer) synchronizer).getRedisLock(), timed.getRedisLock());
+        Assert.assertEquals(1, provider.getLockCacheSize());
+
+        Assert.assertNotSame(synchronizer, provider.getSynchronizer(attributes("otherKey", -1, -1)));
+        Assert.assertEquals(2, provider.getLockCacheSize());
+    }
+
+    @Test
+    public void testSynchronizerWithTemplate() {
+        RedisLockSynchronizerProvider provider = new RedisLockSynchronizerProvider(commands);
+        RedisSyncAttributes template = attributes(null, -1, -1);
+        RedisSynchronizer synchronizer = provider.getSynchronizer(template, "key", null, -1, -1);
+        Assert.assertSame(synchronizer, provider.getSynchronizer(attributes("key", -1, -1)));
+        Assert.assertNotSame(synchronizer, provider.getSynchronizer(template, "key", null, 1000, -1));
+        Assert.assertNull(template.getKey());
+
+        // 子类重写了单参数方法时仍然交给它处理
+        List<String> keys = new ArrayList<>();
+        RedisLockSynchronizerProvider custom = new RedisLockSynchronizerProvider(commands) {
+            @Override
+            public RedisSynchronizer getSynchronizer(RedisSyncAttributes attributes) {
+                keys.add(attributes.getKey());
+                return super.getSynchronizer(attributes);
+            }
+        };
+        custom.getSynchronizer(template, "customKey", null, -1, -1);
+        Assert.assertEquals(Collections.singletonList("customKey"), keys);
+        Assert.assertNull(template.getKey());
+    }
+
+    @Test
+    public void testSynchronizerCacheAllocation() {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        RedisLockSynchronizerProvider provider = new RedisLockSynchronizerProvider(commands);
+        List<RedisSyncAttributes> attributesList = new ArrayList<>();
+        attributesList.add(attributes("key", -1, -1));
+        attributesList.add(attributes("key", -1, -1).setShared(true));
+        attributesList.add(attributes("key", -1, -1).setPermits(3));
+        attributesList.add(attributes("key", 1000, 0).setSkipIfLocked(true).setLockAtLeastForMillis(100));
+        attributesList.add(attributes("key", -1, 0).setRate(10).setRatePrefetch(1));
+        attributesList.add(attributes(null, -1, -1).setMultiKey(true));
+        List<String> keys = Arrays.asList("a", "b");
+        String multiKey = RedisMultiLock.getLockName(keys);
+
+        for (RedisSyncAttributes attributes : attributesList) {
+            String key = attributes.isMultiKey() ? multiKey : "key";
+            RedisSynchronizer synchronizer = provider.getSynchronizer(attributes, key,
+                    attributes.isMultiKey() ? keys : null, attributes.getLeaseTimeMillis(), 0);
+            int count = 100000;
+            for (int i = 0; i < count; i++) {
+                Assert.assertSame(synchronizer, provider.getSynchronizer(attributes, key,
+                        attributes.isMultiKey() ? keys : null, attributes.getLeaseTimeMillis(), 0));
+            }
+            long threadId = Thread.currentThread().getId();
+            long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+            for (int i = 0; i < count; i++) {
+                provider.getSynchronizer(attributes, key, attributes.isMultiKey() ? keys : null,
+                        attributes.getLeaseTimeMillis(), 0);
+            }
+            long bytesPerCall = (threadMXBean.getThreadAllocatedBytes(threadId) - allocated) / count;
+            // 各类同步器命中缓存时不会创建任何对象
+            Assert.assertEquals(0, bytesPerCall);
+        }
+        // 同一名称下不同类型的锁共用一个缓存项
+        Assert.assertEquals(2, provider.getLockCacheSize());
+    }
+
+    @Test
+    public void testEvictLockCache() {
+        RedisLockSynchronizerProvider provider = new RedisLockSynchronizerProvider(commands);
+        provider.setLockCacheMaxSize(8);
+        for (int i = 0; i < 100; i++) {
+            provider.getSynchronizer(attributes("key" + i, -1, -1));
+            Assert.assertTrue(provider.getLockCacheSize() <= 8);
+        }
+    }
+
+    @Test
+    public void testCoalescingSynchronizer() {
+        RedisLockSynchronizerProvider provider = new RedisLockSynchronizerProvider(new InMemoryRedisLockCommands());
+        RedisSyncAttributes attributes = attributes("coalesceKey", -1, -1).setCoalesce(true);
+        RedisSynchronizer synchronizer = provider.getSynchronizer(attributes);
+        Assert.assertTrue(synchronizer instanceof RedisCoalescingSynchronizer);
+        Assert.assertTrue(synchronizer.isResultSharingSupported());
+        Assert.assertFalse(synchronizer.isAsyncSupported());
+        Assert.assertSame(synchronizer, provider.getSynchronizer(attributes));
+        Assert.assertFalse(provider.getSynchronizer(attributes("coalesceKey", -1, -1)).isResultSharingSupported());
+        Assert.assertFalse(provider.getSynchronizer(attributes("coalesceKey", -1, -1).setCoalesce(true).setShared(true))
+                .isResultSharingSupported());
+
+        long mark = synchronizer.getSharedResultMark();
+        Assert.assertTrue(synchronizer.acquire());
+        Assert.assertNull(synchronizer.getSharedResult(mark));
+        synchronizer.shareResult("result");
+        Assert.assertTrue(synchronizer.release());
+
+        Assert.assertTrue(synchronizer.acquire());
+        Assert.assertEquals("result", synchronizer.getSharedResult(mark).get());
+        Assert.assertNull(synchronizer.getSharedResult(synchronizer.getSharedResultMark()));
+        synchronizer.shareResult(null);
+        Assert.assertNull(synchronizer.getSharedResult(mark).get());
+        Assert.assertTrue(synchronizer.release());
+    }
+
+    @Test
+    public void testSkipIfLockedSynchronizer() throws Exception {
+        RedisLockSynchronizerProvider provider = new RedisLockSynchronizerProvider(new InMemoryRedisLockCommands());
+        RedisSyncAttributes attributes = attributes("job", 1000, -1).setSkipIfLocked(true).setLockAtLeastForMillis(100);
+        RedisSynchronizer synchronizer = provider.getSynchronizer(attributes);
+        Assert.assertTrue(synchronizer instanceof RedisSkipIfLockedSynchronizer);
+        Assert.assertTrue(synchronizer.isSkipOnAcquireFailure());
+        Assert.assertSame(synchronizer, provider.getSynchronizer(attributes));
+        Assert.assertFalse(provider.getSynchronizer(attributes("job", 1000, -1)).isSkipOnAcquireFailure());
+
+        Assert.assertTrue(synchronizer.acquire());
+        Assert.assertTrue(synchronizer.isHeld());
+        Assert.assertTrue(synchronizer.release());
+        // 最短持有时间内不会被再次获取
+        Assert.assertFalse(synchronizer.acquire());
+        Thread.sleep(150);
+        Assert.assertTrue(synchronizer.acquire());
+        Assert.assertTrue(synchronizer.release());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSkipIfLockedWithoutLeaseTime() {
+        RedisLockSynchronizerProvider provider = new RedisLockSynchronizerProvider(commands);
+        provider.getSynchronizer(attributes("job", -1, -1).setSkipIfLocked(true));
+    }
+
+    private RedisSyncAttributes attributes(String key, long leaseTime, long waitTime) {
+        return RedisSyncAttributes.create().setName(key).setLeaseTimeMillis(leaseTime).setWaitTimeMillis(waitTime);
+    }
+
+}
@@ -0,0 +1,348 @@
+/**
+ * Copyright 2021 yangzexiong.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.ayoungbear.distbtsync.spring.redis;
+
+import com.github.ayoungbear.distbtsync.BaseTest;
+import com.github.ayoungbear.distbtsync.redis.lock.support.InMemoryRedisLockCommands;
+import com.github.ayoungbear.distbtsync.spring.SyncMethodFailureHandler;
+import com.github.ayoungbear.distbtsync.spring.support.StringMethodExpressionResolver;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.AccessibleObject;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.aopalliance.intercept.MethodInvocation;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.springframework.aop.framework.ProxyFactory;
+
+/**
+ * 同步方法预处理信息单元测试.
+ *
+ * @author yangzexiong
+ */
+public class RedisSyncMethodInterceptorTest extends BaseTest {
+
+    private RedisSyncMethodInterceptor interceptor = new RedisSyncMethodInterceptor((attributes) -> null,
+            new StringMethodExpressionResolver(), (SyncMethodFailureHandler) null);
+
+    @Test
+    public void testStaticDescriptor() throws Exception {
+        Method method = TestService.class.getMethod("staticSync");
+        RedisSyncMethodDescriptor descriptor = interceptor.getMethodDescriptor(method);
+        Assert.assertTrue(descriptor.isStaticKey());
+        Assert.assertEquals("static", descriptor.getStaticKey());
+        Assert.assertEquals(2000, descriptor.getLeaseTimeMillis());
+        Assert.assertEquals(0, descriptor.getWaitTimeMillis());
+        Assert.assertNotNull(descriptor.getStaticAttributes());
+        Assert.assertSame(descriptor, interceptor.getMethodDescriptor(method));
+    }
+
+    @Test
+    public void testDynamicDescriptor() throws Exception {
+        Method method = TestService.class.getMethod("dynamicSync", String.class);
+        RedisSyncMethodDescriptor descriptor = interceptor.getMethodDescriptor(method);
+        Assert.assertFalse(descriptor.isStaticKey());
+        Assert.assertEquals("dynamic_#{#p0}", descriptor.getKeyExpression());
+        Assert.assertTrue(descriptor.isStaticLeaseTime());
+        Assert.assertEquals(RedisSyncUtils.DEFAULT_LEASE_TIME, descriptor.getLeaseTimeMillis());
+        Assert.assertNull(descriptor.getStaticAttributes());
+    }
+
+    @Test
+    public void testDefaultKeyDescriptor() throws Exception {
+        Method method = TestService.class.getMethod("defaultSync");
+        RedisSyncMethodDescriptor descriptor = interceptor.getMethodDescriptor(method);
+        Assert.assertTrue(descriptor.isStaticKey());
+        Assert.assertEquals(method.toGenericString(), descriptor.getStaticKey());
+    }
+
+    @Test
+    public void testConditionDescriptor() throws Exception {
+        RedisSyncMethodDescriptor descriptor = interceptor
+                .getMethodDescriptor(TestService.class.getMethod("conditionSync", int.class));
+        Assert.assertFalse(descriptor.isStaticCondition());
+        Assert.assertEquals("#{#p0 > 0}", descriptor.getConditionExpression());
+        Assert.assertTrue(interceptor.isSyncRequired(descriptor.getMethod(), null, new Object[] { 1 }));
+        Assert.assertFalse(interceptor.isSyncRequired(descriptor.getMethod(), null, new Object[] { 0 }));
+
+        descriptor = interceptor.getMethodDescriptor(TestService.class.getMethod("disabledSync"));
+        Assert.assertTrue(descriptor.isStaticCondition());
+        Assert.assertFalse(descriptor.getStaticCondition());
+        Assert.assertTrue(interceptor.getMethodDescriptor(TestService.class.getMethod("staticSync"))
+                .getStaticCondition());
+    }
+
+    @Test
+    public void testInvokeOrShare() throws Exception {
+        AtomicInteger invoked = new AtomicInteger();
+        RedisSyncMethodInterceptor syncInterceptor = new RedisSyncMethodInterceptor(
+                new RedisLockSynchronizerProvider(new InMemoryRedisLockCommands()),
+                new StringMethodExpressionResolver(), (SyncMethodFailureHandler) null);
+        ProxyFactory proxyFactory = new ProxyFactory(new ConditionService(invoked));
+        proxyFactory.addAdvice(syncInterceptor);
+        TestService proxy = (TestService) proxyFactory.getProxy();
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> proxy.coalesceSync(300));
+        Thread.sleep(100);
+        // 等待锁期间其他调用者执行完成, 获取到锁后直接返回共享的结果
+        Assert.assertEquals("result1", proxy.coalesceSync(0));
+        Assert.assertEquals("result1", first.get(1, TimeUnit.SECONDS));
+        Assert.assertEquals(1, invoked.get());
+        // 调用开始前就已完成的结果不会被使用
+        Thread.sleep(10);
+        Assert.assertEquals("result2", proxy.coalesceSync(0));
+        Assert.assertEquals(2, invoked.get());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSkipIfLockedWithoutLeaseTime() throws Exception {
+        interceptor.getMethodDescriptor(TestService.class.getMethod("skipWithoutLease"));
+    }
+
+    @Test
+    public void testSkipSyncByCondition() {
+        AtomicInteger invoked = new AtomicInteger();
+        // 需要同步时提供者返回 null 会抛出异常, 不满足条件时不会获取同步器
+        ProxyFactory proxyFactory = new ProxyFactory(new ConditionService(invoked));
+        proxyFactory.addAdvice(interceptor);
+        TestService proxy = (TestService) proxyFactory.getProxy();
+        proxy.conditionSync(0);
+        Assert.assertEquals(1, invoked.get());
+        try {
+            proxy.conditionSync(1);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertEquals(1, invoked.get());
+        }
+    }
+
+    @Test
+    public void testSyncInvokeAllocation() throws Throwable {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory
+                .getThreadMXBean();
+        Assume.assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        AtomicInteger invoked = new AtomicInteger();
+        TestSynchronizer sync = new TestSynchronizer();
+        RedisSyncMethodInterceptor syncInterceptor = new RedisSyncMethodInterceptor((attributes) -> sync,
+                new StringMethodExpressionResolver(), (SyncMethodFailureHandler) null);
+        TestMethodInvocation invocation = new TestMethodInvocation(new ConditionService(invoked),
+                TestService.class.getMethod("staticSync"));
+
+        int count = 100000;
+        for (int i = 0; i < count; i++) {
+            syncInterceptor.invoke(invocation);
+        }
+        long threadId = Thread.currentThread().getId();
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < count; i++) {
+            syncInterceptor.invoke(invocation);
+        }
+        long bytesPerCall = (threadMXBean.getThreadAllocatedBytes(threadId) - allocated) / count;
+        logger.info("Sync invoke allocated {} bytes per call", bytesPerCall);
+        // 正常同步调用不会创建任何对象
+        Assert.assertEquals(0, bytesPerCall);
+        Assert.assertEquals(count * 2, sync.acquired);
+        Assert.assertEquals(count * 2, sync.released);
+    }
+
+    @Test
+    public void testDynamicAttributesTemplate() throws Throwable {
+        List<String> keys = new ArrayList<>();
+        List<RedisSyncAttributes> attributesList = new ArrayList<>();
+        TestSynchronizer sync = new TestSynchronizer();
+        RedisSynchronizerProvider provider = new RedisSynchronizerProvider() {
+            @Override
+            public RedisSynchronizer getSynchronizer(RedisSyncAttributes attributes) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public RedisSynchronizer getSynchronizer(RedisSyncAttributes attributes, String key, List<String> ks,
+                    long leaseTimeMillis, long waitTimeMillis) {
+                keys.add(key);
+                attributesList.add(attributes);
+                return sync;
+            }
+        };
+        RedisSyncMethodInterceptor syncInterceptor = new RedisSyncMethodInterceptor(provider,
+                new StringMethodExpressionResolver(), (SyncMethodFailureHandler) null);
+        Method method = TestService.class.getMethod("dynamicSync", String.class);
+        ConditionService target = new ConditionService(new AtomicInteger());
+        syncInterceptor.invoke(new TestMethodInvocation(target, method, "a"));
+        syncInterceptor.invoke(new TestMethodInvocation(target, method, "b"));
+        Assert.assertEquals("dynamic_a", keys.get(0));
+        Assert.assertEquals("dynamic_b", keys.get(1));
+        // 动态键值通过参数传递, 共享的属性模板不会被修改
+        RedisSyncAttributes template = attributesList.get(0);
+        Assert.assertSame(template, attributesList.get(1));
+        Assert.assertNull(template.getKey());
+        Assert.assertEquals("dynamic_b", syncInterceptor.resolveRedisSyncAttributes(method, target,
+                new Object[] { "b" }).getKey());
+        Assert.assertNull(template.getKey());
+    }
+
+    private static class TestSynchronizer implements RedisSynchronizer {
+
+        private int acquired;
+        private int released;
+        private boolean held;
+
+        @Override
+        public boolean acquire() {
+            acquired++;
+            held = true;
+            return true;
+        }
+
+        @Override
+        public boolean release() {
+            released++;
+            held = false;
+            return true;
+        }
+
+        @Override
+        public boolean isHeld() {
+            return held;
+        }
+
+        @Override
+        public String getKey() {
+            return "test";
+        }
+
+    }
+
+    private static class TestMethodInvocation implements MethodInvocation {
+
+        private final Object target;
+        private final Method method;
+        private final Object[] arguments;
+
+        TestMethodInvocation(Object target, Method method, Object... arguments) {
+            this.target = target;
+            this.method = method;
+            this.arguments = arguments;
+        }
+
+        @Override
+        public Object proceed() throws Throwable {
+            return method.invoke(target, arguments);
+        }
+
+        @Override
+        public Object getThis() {
+            return target;
+        }
+
+        @Override
+        public AccessibleObject getStaticPart() {
+            return method;
+        }
+
+        @Override
+        public Method getMethod() {
+            return method;
+        }
+
+        @Override
+        public Object[] getArguments() {
+            return arguments;
+        }
+
+    }
+
+    private static class ConditionService implements TestService {
+
+        private final AtomicInteger invoked;
+
+        ConditionService(AtomicInteger invoked) {
+            this.invoked = invoked;
+        }
+
+        @Override
+        public void staticSync() {
+        }
+
+        @Override
+        public void dynamicSync(String id) {
+        }
+
+        @Override
+        public void defaultSync() {
+        }
+
+        @Override
+        public void conditionSync(int amount) {
+            invoked.incrementAndGet();
+        }
+
+        @Override
+        public void disabledSync() {
+        }
+
+        @Override
+        public void skipWithoutLease() {
+        }
+
+        @Override
+        public String coalesceSync(long sleepMillis) {
+            int count = invoked.incrementAndGet();
+            try {
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "result" + count;
+        }
+
+    }
+
+    public interface TestService {
+
+        @RedisSync(name = "static", leaseTime = "2", waitTime = "0", timeUnit = TimeUnit.SECONDS)
+        void staticSync();
+
+        @RedisSync("dynamic_#{#p0}")
+        void dynamicSync(String id);
+
+        @RedisSync
+        void defaultSync();
+
+        @RedisSync(name = "condition", condition = "#{#p0 > 0}")
+        void conditionSync(int amount);
+
+        @RedisSync(name = "disabled", condition = "false")
+        void disabledSync();
+
+        @RedisSync(name = "job", skipIfLocked = true)
+        void skipWithoutLease();
+
+        @RedisSync(name = "coalesce", coalesce = true)
+        String coalesceSync(long sleepMillis);
+
+    }
+
+}
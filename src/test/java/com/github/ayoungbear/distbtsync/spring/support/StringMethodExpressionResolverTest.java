@@ -21,6 +21,7 @@ import com.github.ayoungbear.distbtsync.spring.support.StringMethodExpressionRes
 import com.github.ayoungbear.distbtsync.spring.support.StringMethodExpressionResolverTest.ExpressionTestConfiguration.ExpressionService;
 import java.lang.reflect.Method;
 import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import org.junit.Assert;
@@ -84,6 +85,70 @@ public class StringMethodExpressionResolverTest extends BaseSpringTest {
         Assert.assertEquals(actualKey, key);
     }
 
+    @Test
+    public void testResolveCompiledExpression() throws Exception {
+        StringMethodExpressionResolver resolver = new StringMethodExpressionResolver();
+        resolver.setBeanFactory(beanFactory);
+        String expr = "#{#methodName}:#{#map.key1}:#{#p2}";
+        // 超过解释执行阈值后表达式会被编译
+        for (int i = 0; i < 300; i++) {
+            Map<String, String> map = new HashMap<>();
+            map.put("key1", "value" + i);
+            String key = resolver.evaluate(expr, getMethod(), this, new Object[]{map, BigDecimal.ONE, i});
+            Assert.assertEquals("specificMethod:value" + i + ":" + i, key);
+        }
+        // 参数类型变化时回退为解释执行
+        Map<String, Object> map = new HashMap<>();
+        map.put("key1", 1L);
+        String key = resolver.evaluate(expr, getMethod(), this, new Object[]{map, BigDecimal.ONE, "p2"});
+        Assert.assertEquals("specificMethod:1:p2", key);
+    }
+
+    @Test
+    public void testResolveTemplateExpression() throws Exception {
+        StringMethodExpressionResolver resolver = new StringMethodExpressionResolver();
+        resolver.setBeanFactory(beanFactory);
+        Map<String, Object> map = new HashMap<>();
+        map.put("key1", Arrays.asList("a", "b"));
+        Object[] args = new Object[]{map, new BigDecimal("1.5"), null};
+
+        String expr = "${name}_#{#methodName}_#{#map.key1}_#{#p1.class.simpleName}_#{#a2?.size}"
+                + "_#{#target.class.simpleName}";
+        Assert.assertNotNull(compileTemplate(resolver, expr));
+        resolver.prepare(expr, getMethod());
+        String key = resolver.evaluate(expr, getMethod(), this, args);
+        Assert.assertEquals("bear_specificMethod_a,b_BigDecimal__StringMethodExpressionResolverTest", key);
+        Assert.assertEquals("1.5", resolver.evaluate("#{#dicimal}", getMethod(), this, args));
+
+        // 不满足条件的表达式交由 SpEL 处理
+        Assert.assertNull(compileTemplate(resolver, "#{#p1.add(#p1)}"));
+        Assert.assertNull(compileTemplate(resolver, "#{#args[0]}"));
+        Assert.assertEquals("3.0", resolver.evaluate("#{#p1.add(#p1)}", getMethod(), this, args));
+        // 运行时无法直接求值的回退到 SpEL
+        Assert.assertEquals("false", resolver.evaluate("#{#map.empty}", getMethod(), this, args));
+        try {
+            resolver.evaluate("#{#integer.toString}", getMethod(), this, args);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // 空值上的属性访问由 SpEL 抛出异常
+        }
+    }
+
+    @Test
+    public void testResolveAllExpression() throws Exception {
+        StringMethodExpressionResolver resolver = new StringMethodExpressionResolver();
+        resolver.setBeanFactory(beanFactory);
+        Map<String, Object> map = new HashMap<>();
+        map.put("key1", Arrays.asList("a", "${name}"));
+        Object[] args = new Object[]{map, BigDecimal.ONE, 2};
+
+        Assert.assertEquals(Arrays.asList("a", "bear"), resolver.evaluateAll("#{#map.key1}", getMethod(), this, args));
+        Assert.assertEquals(Arrays.asList("2"), resolver.evaluateAll("#{#p2}", getMethod(), this, args));
+        Assert.assertEquals(Arrays.asList("1", "2"),
+                resolver.evaluateAll("#{new int[]{1, #p2}}", getMethod(), this, args));
+        Assert.assertEquals(Arrays.asList("bear", "is"), resolver.evaluateAll("${name}, ${key}", null, null, null));
+    }
+
     @Test(expected = IllegalStateException.class)
     public void testResolveExcetion() throws Exception {
         StringMethodExpressionResolver resolver = new StringMethodExpressionResolver();
@@ -92,6 +157,12 @@ public class StringMethodExpressionResolverTest extends BaseSpringTest {
         resolver.evaluate(expr, getMethod(), this, null);
     }
 
+    private MethodExpressionTemplate compileTemplate(StringMethodExpressionResolver resolver, String expr)
+            throws Exception {
+        return MethodExpressionTemplate.compile(resolver.parseExpression(expr), getMethod(),
+                MethodInvocationEvaluationContext.PARAMETER_NAME_DISCOVERER, resolver::resolveStringValue);
+    }
+
     private Method getMethod() throws Exception {
         return ExpressionService.class.getDeclaredMethod("specificMethod", Map.class, BigDecimal.class, Integer.class);
     }